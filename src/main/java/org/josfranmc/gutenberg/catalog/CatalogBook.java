@@ -0,0 +1,168 @@
+/*
+ *  Copyright (C) 2018-2019 Jose Francisco Mena Ceca <josfranmc@gmail.com>
+ *
+ *  This file is part of JGutenbergDownload.
+ *
+ *  JGutenbergDownload is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  JGutenbergDownload is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with JGutenbergDownload.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package org.josfranmc.gutenberg.catalog;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.josfranmc.gutenberg.download.GutenbergException;
+
+/**
+ * A book of the Gutenberg catalog: its number, type, languages and files. Every file has the media types (formats) it is available in.
+ * @author Jose Francisco Mena Ceca
+ * @version 2.1
+ * @see CatalogReader
+ */
+public class CatalogBook {
+
+	/**
+	 * Type of the books, as opposed to sound recordings, images, etc.
+	 */
+	public static final String TEXT = "Text";
+	
+	private final int id;
+	
+	private String type;
+	
+	private final List<String> languages = new ArrayList<>();
+	
+	/**
+	 * formats of every file, by url, in the order they are added
+	 */
+	private final Map<String, Set<String>> files = new LinkedHashMap<>();
+	
+	
+	/**
+	 * @param id number of the book in the Gutenberg project
+	 */
+	public CatalogBook(int id) {
+		this.id = id;
+	}
+	
+	/**
+	 * @return number of the book in the Gutenberg project
+	 */
+	public int getId() {
+		return id;
+	}
+	
+	/**
+	 * @return type of the book (<i>Text</i>, <i>Sound</i>, ...), or null if the catalog does not tell it
+	 */
+	public String getType() {
+		return type;
+	}
+	
+	/**
+	 * @param type type of the book
+	 */
+	public void setType(String type) {
+		this.type = type;
+	}
+	
+	/**
+	 * @return <i>true</i> if the book is a text, or if the catalog does not tell its type
+	 */
+	public boolean isText() {
+		return type == null || type.equals(TEXT);
+	}
+	
+	/**
+	 * @return languages of the book, according to Gutenberg nomeclature
+	 */
+	public List<String> getLanguages() {
+		return Collections.unmodifiableList(languages);
+	}
+	
+	/**
+	 * @param language language of the book, according to Gutenberg nomeclature
+	 */
+	public void addLanguage(String language) {
+		languages.add(language);
+	}
+	
+	/**
+	 * Adds a file of the book, or a new format of a file already added
+	 * @param url url of the file
+	 * @param format media type of the file, e.g. <i>text/plain; charset=utf-8</i>
+	 */
+	public void addFile(String url, String format) {
+		files.computeIfAbsent(url, u -> new LinkedHashSet<>()).add(format);
+	}
+	
+	/**
+	 * Returns the urls of the files of a type, as the types of files to download are named in <code>DownloadParams</code>.<br>
+	 * Zip files come first, in the order they were added, followed by the rest of the files.
+	 * @param fileType type of file: txt, epub or html
+	 * @return urls of the files of the type, empty if there is none
+	 */
+	public List<String> getFiles(String fileType) {
+		String mediaType = getMediaType(fileType);
+		List<String> zipFiles = new ArrayList<>();
+		List<String> otherFiles = new ArrayList<>();
+		for (Map.Entry<String, Set<String>> file : files.entrySet()) {
+			if (hasMediaType(file.getValue(), mediaType)) {
+				if (file.getKey().endsWith(".zip")) {
+					zipFiles.add(file.getKey());
+				} else {
+					otherFiles.add(file.getKey());
+				}
+			}
+		}
+		zipFiles.addAll(otherFiles);
+		return zipFiles;
+	}
+	
+	private static boolean hasMediaType(Set<String> formats, String mediaType) {
+		for (String format : formats) {
+			if (format.startsWith(mediaType)) {
+				return true;
+			}
+		}
+		return false;
+	}
+	
+	/**
+	 * @param fileType type of file: txt, epub or html
+	 * @return the media type of the files of the type
+	 * @throws GutenbergException if an invalid file type is indicated
+	 */
+	static String getMediaType(String fileType) {
+		switch (fileType) {
+			case "txt":
+				return "text/plain";
+			case "epub":
+				return "application/epub+zip";
+			case "html":
+				return "text/html";
+			default:
+				throw new GutenbergException("org.josfranmc.gutenberg.GutenbergException: Wrong file type " + fileType);
+		}
+	}
+	
+	@Override
+	public String toString() {
+		return "CatalogBook [id=" + id + ", type=" + type + ", languages=" + languages + ", files=" + files.keySet() + "]";
+	}
+}
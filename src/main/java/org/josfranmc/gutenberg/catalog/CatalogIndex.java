@@ -0,0 +1,190 @@
+/*
+ *  Copyright (C) 2018-2019 Jose Francisco Mena Ceca <josfranmc@gmail.com>
+ *
+ *  This file is part of JGutenbergDownload.
+ *
+ *  JGutenbergDownload is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  JGutenbergDownload is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with JGutenbergDownload.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package org.josfranmc.gutenberg.catalog;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.List;
+import java.util.stream.Stream;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.josfranmc.gutenberg.download.GutenbergException;
+
+/**
+ * On-disk index of the books of a catalog in a language, with the urls of their files of a type.<p>
+ * It is built by reading the catalog once with a <code>CatalogReader</code>, and saved in the folder where downloads are saved,
+ * one line per book: its number and the urls of its files, separated by tabs, the preferred file first. The first line identifies
+ * the catalog (path, size and modification time), the language and the type of files, so the index is reused while the catalog
+ * does not change. It is written to a temporary file that replaces the index once complete.<br>
+ * Only text books are indexed, and only if they have files of the type.
+ * @author Jose Francisco Mena Ceca
+ * @version 2.1
+ * @see CatalogReader
+ */
+public class CatalogIndex {
+
+	private static final Logger log = LogManager.getLogger(CatalogIndex.class);
+	
+	/**
+	 * Beginning of the name of the index files. It is followed by the language and the type of files
+	 */
+	static final String FILE_PREFIX = ".catalog-";
+	
+	private static final String HEADER = "# ";
+	
+	private final Path file;
+	
+	private int books;
+	
+	
+	private CatalogIndex(Path file) {
+		this.file = file;
+	}
+	
+	/**
+	 * Returns the index of a catalog, building it if it does not exist or the catalog has changed
+	 * @param catalogPath path of the catalog file or folder
+	 * @param folder folder where the index is saved
+	 * @param language language of the books, according to Gutenberg nomeclature, or null for all of them
+	 * @param fileType type of files: txt, epub or html
+	 * @return the index
+	 * @throws GutenbergException if the catalog cannot be read or the index cannot be written
+	 */
+	public static CatalogIndex open(String catalogPath, String folder, String language, String fileType) {
+		CatalogBook.getMediaType(fileType);
+		String lang = (language == null || language.isEmpty()) ? "all" : language;
+		CatalogIndex index = new CatalogIndex(Paths.get(folder, FILE_PREFIX + lang + "-" + fileType + ".idx"));
+		try {
+			String header = HEADER + getSignature(catalogPath, lang, fileType);
+			if (!index.load(header)) {
+				long start = System.nanoTime();
+				index.build(catalogPath, header, language, fileType);
+				log.info("Catalog indexed in " + (System.nanoTime() - start) / 1000000 + " ms. Books: " + index.books);
+			}
+		} catch (IOException | UncheckedIOException e) {
+			throw new GutenbergException("org.josfranmc.gutenberg.GutenbergException: Cannot build catalog index " + index.file + ". " + e.getMessage(), e);
+		}
+		return index;
+	}
+	
+	private static String getSignature(String catalogPath, String language, String fileType) throws IOException {
+		Path catalog = Paths.get(catalogPath).toAbsolutePath();
+		if (!Files.exists(catalog)) {
+			throw new GutenbergException("org.josfranmc.gutenberg.GutenbergException: Catalog not found " + catalogPath);
+		}
+		return catalog + "\t" + Files.size(catalog) + "\t" + Files.getLastModifiedTime(catalog).toMillis() + "\t" + language + "\t" + fileType;
+	}
+	
+	/**
+	 * @return <i>true</i> if the index exists and was built from the same catalog, language and type of files
+	 */
+	private boolean load(String header) throws IOException {
+		if (!Files.exists(file)) {
+			return false;
+		}
+		try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+			if (!header.equals(reader.readLine())) {
+				return false;
+			}
+			int lines = 0;
+			while (reader.readLine() != null) {
+				lines++;
+			}
+			books = lines;
+		}
+		log.info("Catalog index " + file + " reused. Books: " + books);
+		return true;
+	}
+	
+	private void build(String catalogPath, String header, String language, String fileType) throws IOException {
+		Path temporary = Paths.get(file + ".tmp");
+		books = 0;
+		try (BufferedWriter writer = Files.newBufferedWriter(temporary, StandardCharsets.UTF_8)) {
+			writer.write(header);
+			writer.newLine();
+			CatalogReader.read(catalogPath, book -> {
+				if (book.isText() && (language == null || language.isEmpty() || book.getLanguages().contains(language))) {
+					List<String> files = book.getFiles(fileType);
+					if (!files.isEmpty()) {
+						write(writer, book.getId(), files);
+					}
+				}
+			});
+		} catch (IOException | RuntimeException e) {
+			Files.deleteIfExists(temporary);
+			throw e;
+		}
+		Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING);
+	}
+	
+	private void write(BufferedWriter writer, int id, List<String> files) {
+		try {
+			writer.write(Integer.toString(id));
+			for (String url : files) {
+				writer.write('\t');
+				writer.write(url);
+			}
+			writer.newLine();
+			books++;
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+	
+	/**
+	 * Returns the url of the preferred file of every book of the index, reading the index as the stream is consumed.
+	 * The stream should be closed when it is no longer used.
+	 * @return the urls, in the order of the catalog
+	 * @throws GutenbergException if the index cannot be read
+	 */
+	public Stream<String> links() {
+		try {
+			return Files.lines(file, StandardCharsets.UTF_8).skip(1).map(CatalogIndex::getPreferredFile).filter(link -> link != null);
+		} catch (IOException e) {
+			throw new GutenbergException("org.josfranmc.gutenberg.GutenbergException: Cannot read catalog index " + file, e);
+		}
+	}
+	
+	private static String getPreferredFile(String line) {
+		String[] columns = line.split("\t", 3);
+		return (columns.length > 1) ? columns[1] : null;
+	}
+	
+	/**
+	 * @return the number of books of the index
+	 */
+	public int size() {
+		return books;
+	}
+	
+	/**
+	 * @return the path of the index file
+	 */
+	public String getPath() {
+		return file.toString();
+	}
+}
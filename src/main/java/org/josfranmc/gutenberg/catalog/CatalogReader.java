@@ -0,0 +1,286 @@
+/*
+ *  Copyright (C) 2018-2019 Jose Francisco Mena Ceca <josfranmc@gmail.com>
+ *
+ *  This file is part of JGutenbergDownload.
+ *
+ *  JGutenbergDownload is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  JGutenbergDownload is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with JGutenbergDownload.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package org.josfranmc.gutenberg.catalog;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedReader;
+import java.io.EOFException;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Iterator;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.ZipInputStream;
+
+import org.josfranmc.gutenberg.download.GutenbergException;
+
+/**
+ * Reads the books of a Gutenberg catalog file, supplied locally, without loading it into memory.<p>
+ * The format is taken from the name of the catalog:
+ * <ul>
+ * <li><i>.csv</i> or <i>.csv.gz</i>: CSV catalog (<i>pg_catalog.csv</i>)</li>
+ * <li><i>.rdf</i>: a RDF file</li>
+ * <li><i>.tar</i>, <i>.tar.gz</i> or <i>.tar.zip</i>: RDF tarball (<i>rdf-files.tar.zip</i>), read entry by entry without extracting it</li>
+ * <li>a folder: the RDF files within it and its subfolders, e.g. an extracted RDF tarball</li>
+ * </ul>
+ * The RDF tarball compressed with bzip2 (<i>rdf-files.tar.bz2</i>) must be decompressed first.
+ * @author Jose Francisco Mena Ceca
+ * @version 2.1
+ * @see CatalogBook
+ * @see CatalogIndex
+ */
+public class CatalogReader {
+
+	private static final int TAR_BLOCK_SIZE = 512;
+	
+	
+	CatalogReader() {
+		throw new IllegalStateException("Cannot instantiate class");
+	}
+	
+	/**
+	 * Passes the books of a catalog to a consumer, as they are read
+	 * @param catalogPath path of the catalog file or folder
+	 * @param bookConsumer receives the books, in the order of the catalog
+	 * @return the number of books read
+	 * @throws GutenbergException if the catalog cannot be read or its format is not supported
+	 */
+	public static int read(String catalogPath, Consumer<CatalogBook> bookConsumer) {
+		Path catalog = Paths.get(catalogPath);
+		String name = catalog.getFileName().toString().toLowerCase();
+		try {
+			if (Files.isDirectory(catalog)) {
+				return readFolder(catalog, bookConsumer);
+			} else if (name.endsWith(".csv") || name.endsWith(".csv.gz")) {
+				try (InputStream inputStream = open(catalog, name)) {
+					return new CsvCatalogParser(new BufferedReader(new InputStreamReader(inputStream, StandardCharsets.UTF_8))).parse(bookConsumer);
+				}
+			} else if (name.endsWith(".rdf")) {
+				try (InputStream inputStream = open(catalog, name)) {
+					return new RdfCatalogParser().parse(inputStream, bookConsumer);
+				}
+			} else if (name.endsWith(".tar") || name.endsWith(".tar.gz") || name.endsWith(".tar.zip")) {
+				try (InputStream inputStream = open(catalog, name)) {
+					return readTar(inputStream, bookConsumer);
+				}
+			}
+		} catch (IOException | UncheckedIOException e) {
+			throw new GutenbergException("org.josfranmc.gutenberg.GutenbergException: Cannot read catalog " + catalogPath + ". " + e.getMessage(), e);
+		}
+		throw new GutenbergException("org.josfranmc.gutenberg.GutenbergException: Wrong catalog format " + catalogPath);
+	}
+	
+	/**
+	 * Opens a catalog file, decompressing it if its name ends with <i>.gz</i> or <i>.zip</i>. Of a zip file, only the first entry is read
+	 */
+	private static InputStream open(Path catalog, String name) throws IOException {
+		InputStream inputStream = new BufferedInputStream(Files.newInputStream(catalog), 64 * 1024);
+		try {
+			if (name.endsWith(".gz")) {
+				return new GZIPInputStream(inputStream, 64 * 1024);
+			} else if (name.endsWith(".zip")) {
+				ZipInputStream zipInputStream = new ZipInputStream(inputStream);
+				if (zipInputStream.getNextEntry() == null) {
+					throw new IOException("Empty zip file");
+				}
+				return zipInputStream;
+			}
+			return inputStream;
+		} catch (IOException e) {
+			inputStream.close();
+			throw e;
+		}
+	}
+	
+	private static int readFolder(Path folder, Consumer<CatalogBook> bookConsumer) throws IOException {
+		RdfCatalogParser parser = new RdfCatalogParser();
+		int books = 0;
+		try (Stream<Path> files = Files.walk(folder)) {
+			Iterator<Path> rdfFiles = files.filter(file -> file.toString().endsWith(".rdf") && Files.isRegularFile(file)).iterator();
+			while (rdfFiles.hasNext()) {
+				try (InputStream inputStream = new BufferedInputStream(Files.newInputStream(rdfFiles.next()))) {
+					books += parser.parse(inputStream, bookConsumer);
+				}
+			}
+		}
+		return books;
+	}
+	
+	/**
+	 * Reads the RDF files of a tar archive, entry by entry. Other entries are skipped
+	 */
+	private static int readTar(InputStream inputStream, Consumer<CatalogBook> bookConsumer) throws IOException {
+		RdfCatalogParser parser = new RdfCatalogParser();
+		byte[] header = new byte[TAR_BLOCK_SIZE];
+		int books = 0;
+		while (readTarHeader(inputStream, header)) {
+			String name = getTarEntryName(header);
+			long size = parseOctal(header, 124, 12);
+			byte type = header[156];
+			TarEntryInputStream entry = new TarEntryInputStream(inputStream, size);
+			if ((type == '0' || type == 0) && name.endsWith(".rdf")) {
+				books += parser.parse(entry, bookConsumer);
+			}
+			entry.skipRemaining();
+			skipFully(inputStream, (TAR_BLOCK_SIZE - size % TAR_BLOCK_SIZE) % TAR_BLOCK_SIZE);
+		}
+		return books;
+	}
+	
+	/**
+	 * @return <i>false</i> at the end of the archive: end of the stream or an empty block
+	 */
+	private static boolean readTarHeader(InputStream inputStream, byte[] header) throws IOException {
+		int read = 0;
+		while (read < header.length) {
+			int n = inputStream.read(header, read, header.length - read);
+			if (n < 0) {
+				if (read == 0) {
+					return false;
+				}
+				throw new EOFException("Truncated tar archive");
+			}
+			read += n;
+		}
+		for (byte b : header) {
+			if (b != 0) {
+				return true;
+			}
+		}
+		return false;
+	}
+	
+	private static String getTarEntryName(byte[] header) {
+		String name = getTarString(header, 0, 100);
+		if (getTarString(header, 257, 6).startsWith("ustar")) {
+			String prefix = getTarString(header, 345, 155);
+			if (!prefix.isEmpty()) {
+				name = prefix + "/" + name;
+			}
+		}
+		return name;
+	}
+	
+	private static String getTarString(byte[] header, int offset, int length) {
+		int end = offset;
+		while (end < offset + length && header[end] != 0) {
+			end++;
+		}
+		return new String(header, offset, end - offset, StandardCharsets.UTF_8);
+	}
+	
+	private static long parseOctal(byte[] header, int offset, int length) throws IOException {
+		long value = 0;
+		for (int i = offset; i < offset + length && header[i] != 0; i++) {
+			if (header[i] == ' ') {
+				continue;
+			}
+			if (header[i] < '0' || header[i] > '7') {
+				throw new IOException("Wrong tar header");
+			}
+			value = (value << 3) + (header[i] - '0');
+		}
+		return value;
+	}
+	
+	private static void skipFully(InputStream inputStream, long bytes) throws IOException {
+		while (bytes > 0) {
+			long skipped = inputStream.skip(bytes);
+			if (skipped <= 0) {
+				if (inputStream.read() < 0) {
+					throw new EOFException("Truncated tar archive");
+				}
+				skipped = 1;
+			}
+			bytes -= skipped;
+		}
+	}
+	
+	/**
+	 * Content of an entry of a tar archive. Closing it does not close the archive
+	 */
+	private static class TarEntryInputStream extends FilterInputStream {
+		
+		private long remaining;
+		
+		TarEntryInputStream(InputStream inputStream, long size) {
+			super(inputStream);
+			this.remaining = size;
+		}
+		
+		@Override
+		public int read() throws IOException {
+			if (remaining <= 0) {
+				return -1;
+			}
+			int b = in.read();
+			if (b >= 0) {
+				remaining--;
+			}
+			return b;
+		}
+		
+		@Override
+		public int read(byte[] b, int off, int len) throws IOException {
+			if (remaining <= 0) {
+				return -1;
+			}
+			int n = in.read(b, off, (int) Math.min(len, remaining));
+			if (n > 0) {
+				remaining -= n;
+			}
+			return n;
+		}
+		
+		@Override
+		public long skip(long n) throws IOException {
+			long skipped = in.skip(Math.min(n, remaining));
+			remaining -= skipped;
+			return skipped;
+		}
+		
+		@Override
+		public int available() throws IOException {
+			return (int) Math.min(in.available(), remaining);
+		}
+		
+		@Override
+		public boolean markSupported() {
+			return false;
+		}
+		
+		@Override
+		public void close() {
+			// the archive is closed by its reader
+		}
+		
+		void skipRemaining() throws IOException {
+			skipFully(in, remaining);
+			remaining = 0;
+		}
+	}
+}
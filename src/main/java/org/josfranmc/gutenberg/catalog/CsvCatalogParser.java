@@ -0,0 +1,179 @@
+/*
+ *  Copyright (C) 2018-2019 Jose Francisco Mena Ceca <josfranmc@gmail.com>
+ *
+ *  This file is part of JGutenbergDownload.
+ *
+ *  JGutenbergDownload is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  JGutenbergDownload is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with JGutenbergDownload.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package org.josfranmc.gutenberg.catalog;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * Reads the books of the Gutenberg catalog in CSV format (<i>pg_catalog.csv</i>), record by record.<p>
+ * The columns are found by their names in the first record: <i>Text#</i>, <i>Type</i> and <i>Language</i>; the rest are skipped.
+ * Quoted fields may contain commas, quotes and line breaks. Only the fields of the current record are kept in memory.<br>
+ * The CSV catalog does not have the urls of the files, so every book gets the files of the Gutenberg cache of ebooks,
+ * one for each type of file (see <code>CSV_FILES</code>).
+ * @author Jose Francisco Mena Ceca
+ * @version 2.1
+ */
+class CsvCatalogParser {
+
+	/**
+	 * Url of the folders of the books in the Gutenberg cache of ebooks
+	 */
+	static final String CACHE_URL = "https://www.gutenberg.org/cache/epub/";
+	
+	/**
+	 * Files of every book of the CSV catalog: name of the file after <i>pg&lt;id&gt;</i>, and its format
+	 */
+	private static final String[][] CSV_FILES = {
+		{".txt", "text/plain; charset=utf-8"},
+		{"-images.epub", "application/epub+zip"},
+		{"-images.html", "text/html"}
+	};
+	
+	private final Reader reader;
+	
+	private final List<String> fields = new ArrayList<>();
+	
+	private final StringBuilder field = new StringBuilder();
+	
+	private int idColumn = -1;
+	
+	private int typeColumn = -1;
+	
+	private int languageColumn = -1;
+	
+	
+	/**
+	 * @param reader reader of the catalog. It should be buffered
+	 */
+	CsvCatalogParser(Reader reader) {
+		this.reader = reader;
+	}
+	
+	/**
+	 * Passes the books of the catalog to a consumer. Records without a valid book number are skipped.
+	 * @param bookConsumer receives the books, in the order of the catalog
+	 * @return the number of books read
+	 * @throws IOException if the catalog cannot be read or it has no <i>Text#</i> column
+	 */
+	int parse(Consumer<CatalogBook> bookConsumer) throws IOException {
+		if (!readRecord()) {
+			return 0;
+		}
+		readHeader();
+		int books = 0;
+		while (readRecord()) {
+			CatalogBook book = toBook();
+			if (book != null) {
+				bookConsumer.accept(book);
+				books++;
+			}
+		}
+		return books;
+	}
+	
+	private void readHeader() throws IOException {
+		for (int i = 0; i < fields.size(); i++) {
+			String name = fields.get(i).trim();
+			if (i == 0 && name.startsWith("\uFEFF")) {
+				name = name.substring(1);
+			}
+			if (name.equals("Text#")) {
+				idColumn = i;
+			} else if (name.equals("Type")) {
+				typeColumn = i;
+			} else if (name.equals("Language")) {
+				languageColumn = i;
+			}
+		}
+		if (idColumn < 0) {
+			throw new IOException("Column Text# not found in CSV catalog");
+		}
+	}
+	
+	private CatalogBook toBook() {
+		int id;
+		try {
+			id = Integer.parseInt(getField(idColumn).trim());
+		} catch (NumberFormatException e) {
+			return null;
+		}
+		CatalogBook book = new CatalogBook(id);
+		String type = getField(typeColumn).trim();
+		if (!type.isEmpty()) {
+			book.setType(type);
+		}
+		for (String language : getField(languageColumn).split(";")) {
+			if (!language.trim().isEmpty()) {
+				book.addLanguage(language.trim());
+			}
+		}
+		for (String[] file : CSV_FILES) {
+			book.addFile(CACHE_URL + id + "/pg" + id + file[0], file[1]);
+		}
+		return book;
+	}
+	
+	private String getField(int column) {
+		return (column >= 0 && column < fields.size()) ? fields.get(column) : "";
+	}
+	
+	/**
+	 * Reads the fields of the next record
+	 * @return <i>false</i> if there are no more records
+	 */
+	private boolean readRecord() throws IOException {
+		fields.clear();
+		field.setLength(0);
+		int c = reader.read();
+		if (c < 0) {
+			return false;
+		}
+		boolean quoted = false;
+		while (c >= 0) {
+			if (quoted) {
+				if (c == '"' && (c = reader.read()) != '"') {
+					// closing quote: the next character is read as unquoted
+					quoted = false;
+					continue;
+				}
+				field.append((char) c);
+			} else if (c == '"') {
+				quoted = true;
+			} else if (c == ',') {
+				endField();
+			} else if (c == '\n') {
+				break;
+			} else if (c != '\r') {
+				field.append((char) c);
+			}
+			c = reader.read();
+		}
+		endField();
+		return true;
+	}
+	
+	private void endField() {
+		fields.add(field.toString());
+		field.setLength(0);
+	}
+}
@@ -0,0 +1,157 @@
+/*
+ *  Copyright (C) 2018-2019 Jose Francisco Mena Ceca <josfranmc@gmail.com>
+ *
+ *  This file is part of JGutenbergDownload.
+ *
+ *  JGutenbergDownload is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  JGutenbergDownload is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with JGutenbergDownload.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package org.josfranmc.gutenberg.catalog;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.util.function.Consumer;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+/**
+ * Reads the books of RDF files of the Gutenberg catalog, as they are in the RDF tarball (one file per book).<p>
+ * The files are read with a StAX reader, so they are not loaded into memory. From every <code>pgterms:ebook</code> element
+ * it takes the book number, its type (<code>dcterms:type</code>), its languages (<code>dcterms:language</code>) and its files
+ * (<code>pgterms:file</code> elements of <code>dcterms:hasFormat</code>) with their formats (<code>dcterms:format</code>).
+ * DTDs and external entities are not processed.
+ * @author Jose Francisco Mena Ceca
+ * @version 2.1
+ */
+class RdfCatalogParser {
+
+	private static final String RDF = "http://www.w3.org/1999/02/22-rdf-syntax-ns#";
+	
+	private static final String DCTERMS = "http://purl.org/dc/terms/";
+	
+	private static final String PGTERMS = "http://www.gutenberg.org/2009/pgterms/";
+	
+	/**
+	 * Url the relative urls of books and files are resolved against
+	 */
+	private static final String BASE_URL = "http://www.gutenberg.org/";
+	
+	private final XMLInputFactory factory;
+	
+	
+	RdfCatalogParser() {
+		factory = XMLInputFactory.newInstance();
+		factory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+		factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+		factory.setProperty(XMLInputFactory.IS_NAMESPACE_AWARE, true);
+	}
+	
+	/**
+	 * Passes the books of a RDF file to a consumer
+	 * @param inputStream stream with the file. It is not closed
+	 * @param bookConsumer receives the books, in the order of the file
+	 * @return the number of books read
+	 * @throws IOException if the file cannot be read or it is not valid XML
+	 */
+	int parse(InputStream inputStream, Consumer<CatalogBook> bookConsumer) throws IOException {
+		try {
+			XMLStreamReader reader = factory.createXMLStreamReader(inputStream);
+			try {
+				return parse(reader, bookConsumer);
+			} finally {
+				reader.close();
+			}
+		} catch (XMLStreamException e) {
+			throw new IOException("Wrong RDF file. " + e.getMessage(), e);
+		}
+	}
+	
+	private int parse(XMLStreamReader reader, Consumer<CatalogBook> bookConsumer) throws XMLStreamException {
+		int books = 0;
+		CatalogBook book = null;
+		String element = null;
+		String file = null;
+		while (reader.hasNext()) {
+			int event = reader.next();
+			if (event == XMLStreamConstants.START_ELEMENT) {
+				String namespace = reader.getNamespaceURI();
+				String name = reader.getLocalName();
+				if (PGTERMS.equals(namespace) && name.equals("ebook")) {
+					book = newBook(reader.getAttributeValue(RDF, "about"));
+				} else if (book == null) {
+					continue;
+				} else if (PGTERMS.equals(namespace) && name.equals("file")) {
+					file = resolve(reader.getAttributeValue(RDF, "about"));
+				} else if (DCTERMS.equals(namespace) && (name.equals("type") || name.equals("language") || name.equals("format"))) {
+					element = name;
+				} else if (RDF.equals(namespace) && name.equals("value") && element != null) {
+					addValue(book, element, file, reader.getElementText().trim());
+				}
+			} else if (event == XMLStreamConstants.END_ELEMENT && book != null) {
+				String namespace = reader.getNamespaceURI();
+				String name = reader.getLocalName();
+				if (PGTERMS.equals(namespace) && name.equals("ebook")) {
+					bookConsumer.accept(book);
+					books++;
+					book = null;
+				} else if (PGTERMS.equals(namespace) && name.equals("file")) {
+					file = null;
+				} else if (DCTERMS.equals(namespace) && name.equals(element)) {
+					element = null;
+				}
+			}
+		}
+		return books;
+	}
+	
+	/**
+	 * @param about url of the book, e.g. <i>ebooks/10293</i>
+	 * @return a new book, or null if the url has no valid book number
+	 */
+	private static CatalogBook newBook(String about) {
+		if (about == null) {
+			return null;
+		}
+		try {
+			return new CatalogBook(Integer.parseInt(about.substring(about.lastIndexOf('/') + 1)));
+		} catch (NumberFormatException e) {
+			return null;
+		}
+	}
+	
+	private static void addValue(CatalogBook book, String element, String file, String value) {
+		if (element.equals("type")) {
+			book.setType(value);
+		} else if (element.equals("language")) {
+			book.addLanguage(value);
+		} else if (file != null) {
+			book.addFile(file, value);
+		}
+	}
+	
+	private static String resolve(String url) {
+		if (url == null) {
+			return null;
+		}
+		try {
+			return new URL(new URL(BASE_URL), url).toString();
+		} catch (MalformedURLException e) {
+			return null;
+		}
+	}
+}
@@ -0,0 +1,289 @@
+/*
+ *  Copyright (C) 2018-2019 Jose Francisco Mena Ceca <josfranmc@gmail.com>
+ *
+ *  This file is part of JGutenbergDownload.
+ *
+ *  JGutenbergDownload is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  JGutenbergDownload is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with JGutenbergDownload.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package org.josfranmc.gutenberg.download;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * Limits the number of downloads in flight, adapting the limit to the response of the server (AIMD: additive increase, multiplicative decrease).<p>
+ * Every download must get a permit through <code>acquire</code> before it starts, and report its outcome when it ends:
+ * <ul>
+ * <li><code>onSuccess</code>: if the latency and the error rate are healthy and at least half of the limit is being used,
+ * the limit grows by <i>1/limit</i>, that is, by about one for every round of downloads</li>
+ * <li><code>onDropped</code>: timeouts, connection failures and 429/503 responses cut the limit by the backoff ratio, once per
+ * congestion episode: the drops of downloads started before the last decrease do not cut it again</li>
+ * <li><code>onIgnored</code>: other failures (e.g. 404) do not change the limit, but count for the error rate</li>
+ * </ul>
+ * The latency is healthy while it is below <code>LATENCY_TOLERANCE</code> times the lowest latency observed recently; the error rate,
+ * while less than <code>ERROR_RATE_TOLERANCE</code> of the recent downloads fail.<br>
+ * The current limit and the downloads in flight can be read at any time for monitoring.
+ * @author Jose Francisco Mena Ceca
+ * @version 2.1
+ * @see DownloadBooks
+ */
+public class AdaptiveConcurrencyLimiter {
+
+	private static final Logger log = LogManager.getLogger(AdaptiveConcurrencyLimiter.class);
+	
+	/**
+	 * a latency greater than this factor times the lowest recent latency is not healthy
+	 */
+	static final double LATENCY_TOLERANCE = 2.0;
+	
+	/**
+	 * an error rate greater than this one is not healthy
+	 */
+	static final double ERROR_RATE_TOLERANCE = 0.1;
+	
+	/**
+	 * the limit is multiplied by this ratio when a download is dropped
+	 */
+	static final double BACKOFF_RATIO = 0.5;
+	
+	/**
+	 * weight of the last download in the error rate
+	 */
+	private static final double SMOOTHING = 0.1;
+	
+	/**
+	 * weight of the last latency in the lowest latency, when it is higher
+	 */
+	private static final double BASE_LATENCY_DRIFT = 0.01;
+	
+	private final ReentrantLock lock = new ReentrantLock();
+	
+	private final Condition permitReleased = lock.newCondition();
+	
+	private final int minLimit;
+	
+	private final int maxLimit;
+	
+	private double limit;
+	
+	private int inFlight = 0;
+	
+	/**
+	 * lowest latency observed, slowly raised towards the recent latencies so it follows changes of the network
+	 */
+	private double baseLatency = Double.NaN;
+	
+	private double errorRate = 0;
+	
+	/**
+	 * <i>true</i> once the limit has been decreased
+	 */
+	private boolean decreased = false;
+	
+	/**
+	 * value of <code>System.nanoTime()</code> at the last decrease of the limit
+	 */
+	private long lastDecreaseNanos;
+	
+	
+	/**
+	 * @param initialLimit downloads in flight allowed at the beginning
+	 * @param minLimit lowest limit
+	 * @param maxLimit highest limit
+	 * @throws GutenbergException if the limits are not consistent
+	 */
+	public AdaptiveConcurrencyLimiter(int initialLimit, int minLimit, int maxLimit) {
+		if (minLimit < 1 || maxLimit < minLimit || initialLimit < minLimit || initialLimit > maxLimit) {
+			throw new GutenbergException("org.josfranmc.gutenberg.GutenbergException: Wrong concurrency limits " + minLimit + " <= " + initialLimit + " <= " + maxLimit);
+		}
+		this.limit = initialLimit;
+		this.minLimit = minLimit;
+		this.maxLimit = maxLimit;
+	}
+	
+	/**
+	 * Waits until a download can start.
+	 * @throws InterruptedException if the thread is interrupted while waiting
+	 */
+	public void acquire() throws InterruptedException {
+		lock.lockInterruptibly();
+		try {
+			while (inFlight >= getLimit()) {
+				permitReleased.await();
+			}
+			inFlight++;
+		} finally {
+			lock.unlock();
+		}
+	}
+	
+	/**
+	 * Waits until a download can start, or until the time runs out.
+	 * @param timeout maximum time to wait
+	 * @param unit unit of the time
+	 * @return <i>true</i> if the download can start, <i>false</i> if the time ran out
+	 * @throws InterruptedException if the thread is interrupted while waiting
+	 */
+	public boolean tryAcquire(long timeout, TimeUnit unit) throws InterruptedException {
+		long remaining = unit.toNanos(timeout);
+		lock.lockInterruptibly();
+		try {
+			while (inFlight >= getLimit()) {
+				if (remaining <= 0) {
+					return false;
+				}
+				remaining = permitReleased.awaitNanos(remaining);
+			}
+			inFlight++;
+			return true;
+		} finally {
+			lock.unlock();
+		}
+	}
+	
+	/**
+	 * Reports a successful download and releases its permit.
+	 * @param latencyNanos time taken by the download since its request was sent, in nanoseconds. It should not include the waits
+	 * for the rate limit or between retries, which do not depend on the load of the server
+	 */
+	public void onSuccess(long latencyNanos) {
+		lock.lock();
+		try {
+			boolean limitInUse = inFlight * 2 >= getLimit();
+			errorRate = errorRate * (1 - SMOOTHING);
+			boolean healthyLatency = updateLatency(latencyNanos);
+			if (limitInUse && healthyLatency && errorRate < ERROR_RATE_TOLERANCE && limit < maxLimit) {
+				int previous = getLimit();
+				limit = Math.min(maxLimit, limit + 1.0 / limit);
+				logChange(previous);
+			}
+			release();
+		} finally {
+			lock.unlock();
+		}
+	}
+	
+	/**
+	 * Reports a download dropped because of an overload of the server or of the network (timeouts, connection failures,
+	 * 429 or 503 responses) and releases its permit.<br>
+	 * The limit is only decreased if the download started after the last decrease: the downloads in flight when the limit was
+	 * decreased were sent under the congestion that caused it, so a burst of drops cuts the limit once.
+	 * @param startNanos value of <code>System.nanoTime()</code> when the download started
+	 */
+	public void onDropped(long startNanos) {
+		lock.lock();
+		try {
+			errorRate = errorRate * (1 - SMOOTHING) + SMOOTHING;
+			if (!decreased || startNanos - lastDecreaseNanos >= 0) {
+				int previous = getLimit();
+				limit = Math.max(minLimit, limit * BACKOFF_RATIO);
+				decreased = true;
+				lastDecreaseNanos = System.nanoTime();
+				logChange(previous);
+			}
+			release();
+		} finally {
+			lock.unlock();
+		}
+	}
+	
+	/**
+	 * Reports a failed download not related to the load of the server (e.g. 404) and releases its permit.
+	 */
+	public void onIgnored() {
+		lock.lock();
+		try {
+			errorRate = errorRate * (1 - SMOOTHING) + SMOOTHING;
+			release();
+		} finally {
+			lock.unlock();
+		}
+	}
+	
+	/**
+	 * Releases the permit of a download that could not be sent, without measuring it.
+	 */
+	public void onCancelled() {
+		lock.lock();
+		try {
+			release();
+		} finally {
+			lock.unlock();
+		}
+	}
+	
+	private void release() {
+		inFlight = Math.max(0, inFlight - 1);
+		permitReleased.signalAll();
+	}
+	
+	/**
+	 * @return <i>true</i> if the latency is healthy
+	 */
+	private boolean updateLatency(long latencyNanos) {
+		if (Double.isNaN(baseLatency) || latencyNanos < baseLatency) {
+			baseLatency = latencyNanos;
+			return true;
+		}
+		boolean healthy = latencyNanos <= baseLatency * LATENCY_TOLERANCE;
+		baseLatency = baseLatency + (latencyNanos - baseLatency) * BASE_LATENCY_DRIFT;
+		return healthy;
+	}
+	
+	private void logChange(int previous) {
+		if (getLimit() != previous) {
+			log.debug("[DEBUG] Concurrency limit " + previous + " -> " + getLimit());
+		}
+	}
+	
+	/**
+	 * @return the number of downloads allowed in flight at this moment
+	 */
+	public int getLimit() {
+		lock.lock();
+		try {
+			return (int) limit;
+		} finally {
+			lock.unlock();
+		}
+	}
+	
+	/**
+	 * @return the number of downloads in flight
+	 */
+	public int getInFlight() {
+		lock.lock();
+		try {
+			return inFlight;
+		} finally {
+			lock.unlock();
+		}
+	}
+	
+	/**
+	 * @return the rate of recent downloads that failed, between 0 and 1
+	 */
+	public double getErrorRate() {
+		lock.lock();
+		try {
+			return errorRate;
+		} finally {
+			lock.unlock();
+		}
+	}
+}
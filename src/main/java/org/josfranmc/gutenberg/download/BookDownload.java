@@ -0,0 +1,176 @@
+/*
+ *  Copyright (C) 2018-2019 Jose Francisco Mena Ceca <josfranmc@gmail.com>
+ *
+ *  This file is part of JGutenbergDownload.
+ *
+ *  JGutenbergDownload is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  JGutenbergDownload is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with JGutenbergDownload.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package org.josfranmc.gutenberg.download;
+
+import java.net.URL;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongFieldUpdater;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * The state of the download of a book: its timings and the bytes received so far.<p>
+ * It is updated by the threads that run the download without locks, and it can be read from any thread at any moment.
+ * Times are measured with <code>System.nanoTime()</code>; the times of a download that has not reached a stage yet are
+ * measured up to now. A download sent again after a failed attempt keeps the start of its first attempt, and the bytes
+ * received by all of them.
+ * @author Jose Francisco Mena Ceca
+ * @version 2.1
+ * @see DownloadListener
+ */
+public class BookDownload {
+
+	private static final AtomicLongFieldUpdater<BookDownload> startedAtUpdater = AtomicLongFieldUpdater.newUpdater(BookDownload.class, "startedAt");
+	
+	private final URL url;
+	
+	private final long queuedAt;
+	
+	private volatile long requestSentAt = 0;
+	
+	private volatile long startedAt = 0;
+	
+	private volatile long finishedAt = 0;
+	
+	private volatile long contentLength = -1;
+	
+	private final LongAdder bytesTransferred = new LongAdder();
+	
+	
+	/**
+	 * Creates the download of a book, queued now.
+	 * @param url url of the book
+	 */
+	BookDownload(URL url) {
+		this.url = url;
+		this.queuedAt = System.nanoTime();
+	}
+	
+	void requestSent() {
+		this.requestSentAt = System.nanoTime();
+	}
+	
+	/**
+	 * The transfer of the body has started. Only the first attempt of the download is taken into account
+	 * @return <i>true</i> if it is the first attempt
+	 */
+	boolean started(long contentLength) {
+		if (!startedAtUpdater.compareAndSet(this, 0, System.nanoTime())) {
+			return false;
+		}
+		this.contentLength = contentLength;
+		return true;
+	}
+	
+	void transferred(long bytes) {
+		bytesTransferred.add(bytes);
+	}
+	
+	void finished() {
+		this.finishedAt = System.nanoTime();
+	}
+	
+	/**
+	 * @return the url of the book
+	 */
+	public URL getUrl() {
+		return url;
+	}
+	
+	/**
+	 * @return the length of the body of the book, in bytes, or -1 if it is unknown or the transfer has not started
+	 */
+	public long getContentLength() {
+		return contentLength;
+	}
+	
+	/**
+	 * @return the bytes of the body received so far
+	 */
+	public long getBytesTransferred() {
+		return bytesTransferred.sum();
+	}
+	
+	/**
+	 * @return <i>true</i> if the transfer of the body has started
+	 */
+	public boolean isStarted() {
+		return startedAt != 0;
+	}
+	
+	/**
+	 * @return <i>true</i> if the download has completed or failed
+	 */
+	public boolean isFinished() {
+		return finishedAt != 0;
+	}
+	
+	/**
+	 * @param unit unit of the result
+	 * @return the time from being queued until the transfer started (waiting for a slot, the rate limit and the server)
+	 */
+	public long getWaitTime(TimeUnit unit) {
+		long end = isStarted() ? startedAt : (isFinished() ? finishedAt : System.nanoTime());
+		return unit.convert(end - queuedAt, TimeUnit.NANOSECONDS);
+	}
+	
+	/**
+	 * @param unit unit of the result
+	 * @return the time from sending the last request for the book until the download finished: the latency of the last attempt,
+	 * without the waits for a slot, the rate limit or the retries. If no request has been sent, the time from being queued
+	 */
+	public long getLatency(TimeUnit unit) {
+		long sent = requestSentAt;
+		long end = isFinished() ? finishedAt : System.nanoTime();
+		return unit.convert(end - ((sent != 0) ? sent : queuedAt), TimeUnit.NANOSECONDS);
+	}
+	
+	/**
+	 * @param unit unit of the result
+	 * @return the time spent transferring the body, or zero if the transfer has not started
+	 */
+	public long getTransferTime(TimeUnit unit) {
+		if (!isStarted()) {
+			return 0;
+		}
+		long end = isFinished() ? finishedAt : System.nanoTime();
+		return unit.convert(end - startedAt, TimeUnit.NANOSECONDS);
+	}
+	
+	/**
+	 * @param unit unit of the result
+	 * @return the time from being queued until the download finished
+	 */
+	public long getTotalTime(TimeUnit unit) {
+		long end = isFinished() ? finishedAt : System.nanoTime();
+		return unit.convert(end - queuedAt, TimeUnit.NANOSECONDS);
+	}
+	
+	/**
+	 * @return the transfer rate of the body, in bytes per second, or zero if the transfer has not started
+	 */
+	public double getBytesPerSecond() {
+		long nanos = getTransferTime(TimeUnit.NANOSECONDS);
+		return (nanos > 0) ? getBytesTransferred() * 1e9 / nanos : 0;
+	}
+	
+	@Override
+	public String toString() {
+		return url + " (" + getBytesTransferred() + " bytes in " + getTotalTime(TimeUnit.MILLISECONDS) + " ms)";
+	}
+}
@@ -0,0 +1,85 @@
+/*
+ *  Copyright (C) 2018-2019 Jose Francisco Mena Ceca <josfranmc@gmail.com>
+ *
+ *  This file is part of JGutenbergDownload.
+ *
+ *  JGutenbergDownload is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  JGutenbergDownload is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with JGutenbergDownload.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package org.josfranmc.gutenberg.download;
+
+import java.util.Iterator;
+import java.util.concurrent.BlockingQueue;
+import java.util.function.Predicate;
+import java.util.stream.Stream;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.josfranmc.gutenberg.catalog.CatalogIndex;
+
+/**
+ * Puts the links to books of a local catalog in a queue that is consumed by the downloads, instead of walking the harvest pages.<p>
+ * The catalog is indexed first, for the language and type of files to download (see <code>CatalogIndex</code>); the index is reused
+ * by later runs while the catalog does not change. Then the links of the index are queued as they are read from it,
+ * so neither the catalog nor the index are loaded into memory. Only the links accepted by a filter are queued.
+ * @author Jose Francisco Mena Ceca
+ * @version 2.1
+ * @see DownloadParams#setCatalogPath(String)
+ */
+class CatalogLinkProducer extends LinkProducer {
+
+	private static final Logger log = LogManager.getLogger(CatalogLinkProducer.class);
+	
+	private final DownloadParams parameters;
+	
+	private final Predicate<String> linkFilter;
+	
+	private volatile int catalogs = 0;
+	
+	
+	/**
+	 * @param parameters parameters with the catalog, the language and the type of files to download, and the folder where to save the index
+	 * @param links queue where to put the links to books
+	 * @param linkFilter accepts the links to books that must be downloaded
+	 * @param maxLinks maximum number of links to queue
+	 */
+	CatalogLinkProducer(DownloadParams parameters, BlockingQueue<String> links, Predicate<String> linkFilter, int maxLinks) {
+		super(links, maxLinks);
+		this.parameters = parameters;
+		this.linkFilter = linkFilter;
+	}
+	
+	@Override
+	void produce() throws InterruptedException {
+		CatalogIndex index = CatalogIndex.open(parameters.getCatalogPath(), parameters.getSavePath(), parameters.getLanguage(), parameters.getFileType());
+		catalogs++;
+		log.info("Books in catalog: " + index.size());
+		try (Stream<String> catalogLinks = index.links()) {
+			Iterator<String> iterator = catalogLinks.iterator();
+			while (iterator.hasNext() && !isDone()) {
+				String link = iterator.next();
+				if (linkFilter.test(link)) {
+					queue(link);
+				}
+			}
+		}
+	}
+	
+	/**
+	 * @return 1 once the catalog has been indexed, 0 otherwise
+	 */
+	@Override
+	int getPages() {
+		return catalogs;
+	}
+}
@@ -0,0 +1,273 @@
+/*
+ *  Copyright (C) 2018-2019 Jose Francisco Mena Ceca <josfranmc@gmail.com>
+ *
+ *  This file is part of JGutenbergDownload.
+ *
+ *  JGutenbergDownload is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  JGutenbergDownload is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with JGutenbergDownload.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package org.josfranmc.gutenberg.download;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * Append-only journal of a download process, so an interrupted run can be resumed where it stopped.<p>
+ * It is only kept by the runs with the resume parameter active (otherwise nothing is recorded, see <code>none()</code>), and
+ * it is written in the folder where downloads are saved, one record per line:
+ * <ul>
+ * <li><code>P url</code>: a harvest page has been downloaded; its links are being queued</li>
+ * <li><code>Q link</code>: the link of a book has been queued to be downloaded</li>
+ * <li><code>C link</code>: the book has been downloaded</li>
+ * <li><code>E</code>: the run has ended, all the links have been downloaded</li>
+ * </ul>
+ * Records are written to disk in batches: the file is synchronized with the storage device every <code>SYNC_EVERY</code> records
+ * or once a second, whichever comes first, and when the journal is closed. A crash may lose the last records of a batch; those
+ * books are downloaded again on resume. A record cut by a crash (without line end) is ignored.<br>
+ * Replaying the journal gives the last page visited, the links already downloaded, and the links queued but not downloaded.<br>
+ * The journal is deleted once the run has ended.
+ * @author Jose Francisco Mena Ceca
+ * @version 2.1
+ * @see DownloadParams#setResume(boolean)
+ */
+class CrawlJournal implements Closeable {
+
+	private static final Logger log = LogManager.getLogger(CrawlJournal.class);
+	
+	/**
+	 * Name of the journal file
+	 */
+	static final String FILE_NAME = ".crawl-journal";
+	
+	/**
+	 * records written between two synchronizations with the storage device
+	 */
+	private static final int SYNC_EVERY = 100;
+	
+	private static final long SYNC_INTERVAL_NANOS = TimeUnit.SECONDS.toNanos(1);
+	
+	private final Path file;
+	
+	private final Set<String> completedLinks = new HashSet<>();
+	
+	private final Set<String> pendingLinks = new LinkedHashSet<>();
+	
+	private String lastPage;
+	
+	private FileChannel channel;
+	
+	private final StringBuilder batch = new StringBuilder();
+	
+	private int unsynced = 0;
+	
+	private long lastSync = System.nanoTime();
+	
+	
+	private CrawlJournal(Path file) {
+		this.file = file;
+	}
+	
+	/**
+	 * Opens the journal of a folder, replaying the journal of a previous run that did not end. If there is not, a new one is started.
+	 * @param folder folder where downloads are saved
+	 * @return the journal
+	 * @throws GutenbergException if the journal cannot be read or created
+	 */
+	static CrawlJournal open(String folder) {
+		CrawlJournal journal = new CrawlJournal(Paths.get(folder, FILE_NAME));
+		try {
+			boolean replayed = journal.replay();
+			journal.channel = FileChannel.open(journal.file, StandardOpenOption.CREATE, StandardOpenOption.WRITE, 
+					replayed ? StandardOpenOption.APPEND : StandardOpenOption.TRUNCATE_EXISTING);
+		} catch (IOException e) {
+			throw new GutenbergException("org.josfranmc.gutenberg.GutenbergException: Cannot open crawl journal " + journal.file, e);
+		}
+		return journal;
+	}
+	
+	/**
+	 * @return a journal that records nothing and has nothing to resume, for the runs that cannot be resumed
+	 */
+	static CrawlJournal none() {
+		return new CrawlJournal(null);
+	}
+	
+	/**
+	 * @return <i>true</i> if the journal of a run that did not end has been replayed
+	 */
+	private boolean replay() throws IOException {
+		if (!Files.exists(file)) {
+			return false;
+		}
+		String content = new String(Files.readAllBytes(file), StandardCharsets.UTF_8);
+		int end = content.lastIndexOf('\n');
+		boolean ended = false;
+		for (String line : (end < 0) ? new String[0] : content.substring(0, end).split("\n")) {
+			if (line.equals("E")) {
+				ended = true;
+			} else if (line.length() > 2 && line.charAt(1) == ' ') {
+				String value = line.substring(2);
+				switch (line.charAt(0)) {
+					case 'P':
+						lastPage = value;
+						break;
+					case 'Q':
+						if (!completedLinks.contains(value)) {
+							pendingLinks.add(value);
+						}
+						break;
+					case 'C':
+						completedLinks.add(value);
+						pendingLinks.remove(value);
+						break;
+					default:
+						break;
+				}
+			}
+		}
+		if (ended) {
+			log.info("Previous run ended. Starting a new one");
+			completedLinks.clear();
+			pendingLinks.clear();
+			lastPage = null;
+			return false;
+		}
+		log.info("Resuming run: " + completedLinks.size() + " books downloaded, " + pendingLinks.size() + " pending. Last page " + lastPage);
+		return true;
+	}
+	
+	/**
+	 * @return the url of the last harvest page visited by the replayed run, or null if there is not
+	 */
+	String getLastPage() {
+		return lastPage;
+	}
+	
+	/**
+	 * @return the links downloaded by the replayed run
+	 */
+	Set<String> getCompletedLinks() {
+		return Collections.unmodifiableSet(completedLinks);
+	}
+	
+	/**
+	 * @return the links queued and not downloaded by the replayed run, in the order they were queued
+	 */
+	Collection<String> getPendingLinks() {
+		return Collections.unmodifiableSet(pendingLinks);
+	}
+	
+	/**
+	 * @return <i>true</i> if the link was downloaded or queued by the replayed run, so it must not be queued again from a page
+	 */
+	boolean isKnown(String link) {
+		return completedLinks.contains(link) || pendingLinks.contains(link);
+	}
+	
+	void pageVisited(String url) {
+		append("P " + url);
+	}
+	
+	void queued(String link) {
+		append("Q " + link);
+	}
+	
+	void completed(String link) {
+		append("C " + link);
+	}
+	
+	/**
+	 * Records that the run has ended and deletes the journal, so a later resume starts a new run.
+	 * If it cannot be deleted, the record is left on disk with the same effect.
+	 */
+	synchronized void ended() {
+		if (channel == null) {
+			return;
+		}
+		append("E");
+		sync();
+		closeChannel();
+		try {
+			Files.deleteIfExists(file);
+		} catch (IOException e) {
+			log.warn("[WARN] Cannot delete crawl journal " + file + ". " + e.getMessage());
+		}
+	}
+	
+	private synchronized void append(String record) {
+		if (channel == null) {
+			return;
+		}
+		batch.append(record).append('\n');
+		unsynced++;
+		if (unsynced >= SYNC_EVERY || System.nanoTime() - lastSync >= SYNC_INTERVAL_NANOS) {
+			sync();
+		}
+	}
+	
+	/**
+	 * Writes the pending records and synchronizes the file with the storage device.
+	 * If the journal cannot be written, it is disabled, since downloads can go on without it.
+	 */
+	synchronized void sync() {
+		if (channel == null) {
+			return;
+		}
+		try {
+			ByteBuffer bytes = StandardCharsets.UTF_8.encode(batch.toString());
+			while (bytes.hasRemaining()) {
+				channel.write(bytes);
+			}
+			channel.force(false);
+		} catch (IOException e) {
+			log.error("[ERROR] Cannot write crawl journal " + file + ". " + e.getMessage());
+			closeChannel();
+		}
+		batch.setLength(0);
+		unsynced = 0;
+		lastSync = System.nanoTime();
+	}
+	
+	@Override
+	public synchronized void close() {
+		sync();
+		closeChannel();
+	}
+	
+	private void closeChannel() {
+		if (channel != null) {
+			try {
+				channel.close();
+			} catch (IOException e) {
+				log.warn("[WARN] Error closing crawl journal. " + e.getMessage());
+			}
+			channel = null;
+		}
+	}
+}
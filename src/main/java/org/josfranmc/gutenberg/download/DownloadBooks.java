@@ -21,20 +21,31 @@
  */
 package org.josfranmc.gutenberg.download;
 
+import java.io.InterruptedIOException;
+import java.net.ConnectException;
 import java.net.MalformedURLException;
 import java.net.URL;
-import java.util.Iterator;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Predicate;
 
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import org.josfranmc.gutenberg.download.engine.DownloadEngineFactory;
 import org.josfranmc.gutenberg.download.engine.DownloadResult;
+import org.josfranmc.gutenberg.download.engine.DownloadSession;
+import org.josfranmc.gutenberg.download.engine.HttpStatusException;
 import org.josfranmc.gutenberg.download.engine.IDownloadEngine;
+import org.josfranmc.gutenberg.download.engine.RetryPolicy;
 import org.josfranmc.gutenberg.util.FileManager;
-import org.josfranmc.gutenberg.util.FileScraping;
 
 /**
  * Allows to perform the file download process.
@@ -47,24 +58,125 @@ public class DownloadBooks {
 
 	private static final Logger log = LogManager.getLogger(DownloadBooks.class);
 	
+	/**
+	 * downloads in flight allowed at the beginning, when the concurrency is adaptive
+	 */
+	private static final int INITIAL_CONCURRENCY_LIMIT = 4;
+	
+	/**
+	 * time the requests to a host wait once its circuit breaker opens, in milliseconds
+	 */
+	private static final long CIRCUIT_BREAKER_OPEN_MILLIS = 30000;
+	
 	private ExecutorService executorService;
 	
+	/**
+	 * unzips the books as soon as they are downloaded, if the unzip mode is not <code>AFTER_DOWNLOAD</code>
+	 */
+	private ExecutorService unzipExecutor;
+	
 	private DownloadParams parameters;
 
 	private IDownloadEngine downloadEngine;
 	
-	private int finishedDownloads = 0;
+	private DownloadSession session;
+	
+	/**
+	 * records the progress of the process, so it can be resumed if it is interrupted
+	 */
+	private CrawlJournal journal;
+	
+	/**
+	 * files already downloaded
+	 */
+	private LibraryIndex libraryIndex;
+	
+	/**
+	 * downloads started and not finished yet
+	 */
+	private final Set<CompletableFuture<DownloadResult>> pendingDownloads = ConcurrentHashMap.newKeySet();
+	
+	/**
+	 * books being unzipped
+	 */
+	private final Set<CompletableFuture<Boolean>> pendingExtractions = ConcurrentHashMap.newKeySet();
+	
+	/**
+	 * books unzipped during the download process, whether from the saved zip file or while they were received
+	 */
+	private final AtomicInteger unzippedBooks = new AtomicInteger();
+	
+	/**
+	 * bounds the downloads started and not finished, so they do not pile up in the queue of the executor
+	 */
+	private final Semaphore downloadSlots;
+	
+	/**
+	 * limits the downloads in flight, if the concurrency is adaptive
+	 */
+	private AdaptiveConcurrencyLimiter concurrencyLimiter;
+	
+	/**
+	 * events of the downloads of books and their counters
+	 */
+	private final DownloadEvents events = new DownloadEvents();
+	
+	/**
+	 * downloads of books started, whether they have finished or not
+	 */
+	private int submittedDownloads = 0;
+	
+	/**
+	 * harvest pages processed by the producer
+	 */
+	private int pagesProcessed = 0;
 
 	
 	public DownloadBooks(DownloadParams parameters) {
 		this.parameters = parameters;
-		this.executorService = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors() * 3);
+		this.executorService = DownloadExecutorFactory.create(parameters.getExecutorType(), parameters.getThreadPoolSize());
+		this.downloadSlots = new Semaphore(parameters.getQueueCapacity());
+		if (parameters.isAdaptiveConcurrency()) {
+			int max = parameters.getMaxConcurrentDownloads();
+			this.concurrencyLimiter = new AdaptiveConcurrencyLimiter(Math.min(INITIAL_CONCURRENCY_LIMIT, max), 1, max);
+		}
+		if (isUnzipDuringDownload()) {
+			this.unzipExecutor = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors());
+		}
+	}
+	
+	/**
+	 * Registers a listener of the downloads of books. It should be registered before calling <code>executeDownload</code>.
+	 * @param listener listener to register
+	 * @see DownloadListener
+	 */
+	public void addDownloadListener(DownloadListener listener) {
+		events.addListener(listener);
+	}
+	
+	/**
+	 * @param listener listener to remove
+	 */
+	public void removeDownloadListener(DownloadListener listener) {
+		events.removeListener(listener);
+	}
+	
+	/**
+	 * @return the counters of the downloads of books, updated while the process is running
+	 */
+	public DownloadStatistics getStatistics() {
+		return events.getStatistics();
+	}
+	
+	/**
+	 * @return the limiter of the downloads in flight, or null if the concurrency is not adaptive
+	 */
+	public AdaptiveConcurrencyLimiter getConcurrencyLimiter() {
+		return concurrencyLimiter;
 	}
 	
 	private void settingDownloadEngine() {
-		downloadEngine = DownloadEngineFactory.create(parameters.getEngineType());
-		downloadEngine.setResource(parameters.getUrlBase());
-		downloadEngine.setSavePath(parameters.getZipsPath());
+		downloadEngine = DownloadEngineFactory.create(parameters.getUrlBase(), parameters.getZipsPath(), parameters.getEngineType(), session);
 	}
 	
 	/**
@@ -72,37 +184,172 @@ public class DownloadBooks {
 	 * The first download should be a file with links to the books to download. All existing links are downloaded.
 	 * If there is a link to another page with more links, this page is downloaded and processed in the same way. 
 	 * This process continues until there are no more pages.<p>
-	 * All downloads run on separate threads.
+	 * All downloads run asynchronously, sharing the connections of a <code>DownloadSession</code> that is closed when the process ends.
+	 * The session limits the rate of requests to every host, so there is no pause between downloads.
+	 * Downloads that fail with a transient error are retried, and the requests to a host that keeps failing wait for a while, using up their retries.
+	 * Pages are downloaded ahead by a producer thread, so there is no pause between the books of a page and the books of the next one.
+	 * Engines with a blocking transport run on the threads of an executor; engines with a non-blocking transport keep many
+	 * downloads in flight without parking a thread for each one.<br>
+	 * If the stream pages parameter is active, the first page is not downloaded here: the producer scrapes all the pages while they are received.<br>
+	 * If there is a catalog path, no page is downloaded: the links to books are taken from the local catalog by a <code>CatalogLinkProducer</code>.<p>
+	 * If the resume parameter is active, the pages visited and the books queued and downloaded are recorded on a <code>CrawlJournal</code>,
+	 * which is deleted once the run ends. If the previous run did not end, the process starts at the last page visited, the books left pending
+	 * are downloaded first and the books already downloaded are skipped.<p>
+	 * If the unzip mode is <code>INLINE</code>, every book is unzipped on a worker thread as soon as it has been downloaded. If it is
+	 * <code>STREAMING</code>, the engine unzips the book while it is received, when it can; otherwise it is unzipped as in <code>INLINE</code> mode.
 	 */
 	public boolean executeDownload() {
 		boolean result = true;
 		
-		settingDownloadEngine();
-		
-		log.info("Downloading...");
-		DownloadResult downloadResult = downloadEngine.download();
-		
-		if (isPageWithBookLinks(downloadResult)) { 
-			processPage(downloadResult.getSavedFilePath());
-			try {
-		    	executorService.shutdown();
-				while (!executorService.awaitTermination(2, TimeUnit.MINUTES)) {}
-			} catch (InterruptedException e) {
-				log.warn("InterruptedException shutting down executorService. " + e.getMessage());
-				Thread.currentThread().interrupt();
-			}	
-		} else {
-			log.info("No links to download");
-			return result = false;
+		try (DownloadSession downloadSession = createSession(parameters);
+			 CrawlJournal crawlJournal = parameters.isResume() ? CrawlJournal.open(parameters.getSavePath()) : CrawlJournal.none()) {
+			session = downloadSession;
+			journal = crawlJournal;
+			if (isUnzipDuringDownload() && parameters.getUnzipMode() == UnzipMode.STREAMING) {
+				session.setExtractPath(parameters.getSavePath());
+				session.setExtractFilter(parameters.getUnzipFilter());
+			}
+			settingDownloadEngine();
+			settingLibraryIndex();
+			resumeFromLastPage();
+			
+			log.info("Downloading...");
+			String pageUrl = downloadEngine.getResource().toString();
+			String firstPage = null;
+			boolean pageFound = true;
+			if (!parameters.isStreamPages() && parameters.getCatalogPath() == null) {
+				DownloadResult downloadResult = downloadEngine.download();
+				pageFound = isPageWithBookLinks(downloadResult);
+				firstPage = downloadResult.getSavedFilePath();
+			}
+			
+			if (pageFound) { 
+				boolean allLinksTaken = processPage(firstPage, pageUrl);
+				try {
+					waitPendingDownloads();
+					waitPendingExtractions();
+					if (allLinksTaken && events.getStatistics().getFailed() == 0) {
+						journal.ended();
+					}
+			    	executorService.shutdown();
+					while (!executorService.awaitTermination(2, TimeUnit.MINUTES)) {}
+				} catch (InterruptedException e) {
+					log.warn("InterruptedException shutting down executorService. " + e.getMessage());
+					Thread.currentThread().interrupt();
+				}	
+				if (pagesProcessed == 0) {
+					log.info("No links to download");
+					result = false;
+				}
+			} else {
+				log.info("No links to download");
+				result = false;
+			}
+			printConnectionStatistics();
+		} finally {
+			if (unzipExecutor != null) {
+				unzipExecutor.shutdown();
+			}
 		}
 		return result;
 	}
+	
+	/**
+	 * Creates a session with the transfer, rate limit and retry settings of the parameters. It must be closed when it is no longer used.
+	 * @param parameters application parameters
+	 * @return a new session
+	 */
+	static DownloadSession createSession(DownloadParams parameters) {
+		DownloadSession session = new DownloadSession();
+		session.setTransferMode(parameters.getTransferMode());
+		session.setBufferSize(parameters.getBufferSize());
+		session.setRateLimit(parameters.getEffectiveRequestsPerSecond(), parameters.getBurst());
+		session.setRetryPolicy(new RetryPolicy(parameters.getMaxRetries(), parameters.getRetryBackoff(), RetryPolicy.DEFAULT_MAX_BACKOFF_MILLIS));
+		session.setCircuitBreaker(parameters.getCircuitBreakerThreshold(), CIRCUIT_BREAKER_OPEN_MILLIS);
+		session.setSegments(parameters.getSegments());
+		session.setSegmentThreshold(parameters.getSegmentThreshold());
+		session.setKeepCompressed(parameters.isKeepCompressed());
+		session.setRevalidate(parameters.isRevalidate());
+		session.setMirrors(parameters.getMirrors(), parameters.getMirrorPolicy());
+		return session;
+	}
+	
+	private boolean isUnzipDuringDownload() {
+		return parameters.isUnzip() && parameters.getUnzipMode() != UnzipMode.AFTER_DOWNLOAD;
+	}
+	
+	/**
+	 * Unzips a downloaded book on a worker thread, unless it was unzipped while it was received, or it has not been modified
+	 * since it was downloaded (and unzipped) by a previous run
+	 * @param downloadResult result of the download of the book
+	 */
+	private void unzipBook(DownloadResult downloadResult) {
+		if (downloadResult.isExtracted()) {
+			unzippedBooks.incrementAndGet();
+		} else if (!downloadResult.isNotModified() && downloadResult.getSavedFilePath().endsWith(".zip")) {
+			String zipFile = downloadResult.getSavedFilePath();
+			CompletableFuture<Boolean> extraction = CompletableFuture.supplyAsync(() -> FileManager.unzipFile(zipFile, parameters.getSavePath(), parameters.getUnzipFilter()), unzipExecutor);
+			pendingExtractions.add(extraction);
+			extraction.whenComplete((unzipped, e) -> {
+				try {
+					if (e != null) {
+						log.error("[ERROR] Error unzipping " + zipFile + ". " + e.getMessage());
+					} else if (unzipped) {
+						unzippedBooks.incrementAndGet();
+					}
+				} finally {
+					pendingExtractions.remove(extraction);
+				}
+			});
+		}
+	}
+	
+	private void waitPendingExtractions() {
+		while (!pendingExtractions.isEmpty()) {
+			CompletableFuture.allOf(pendingExtractions.toArray(new CompletableFuture<?>[0])).handle((r, e) -> null).join();
+		}
+	}
+	
+	private void settingLibraryIndex() {
+		libraryIndex = LibraryIndex.scan(downloadEngine.getSavePath());
+		log.info("Files already downloaded: " + libraryIndex.size());
+	}
+	
+	private void resumeFromLastPage() {
+		if (journal.getLastPage() != null) {
+			try {
+				downloadEngine.setResource(new URL(journal.getLastPage()));
+			} catch (MalformedURLException e) {
+				log.warn("[WARN] Cannot resume from page " + journal.getLastPage() + ". Starting from the first page");
+			}
+		}
+	}
+	
+	private void waitPendingDownloads() {
+		while (!pendingDownloads.isEmpty()) {
+			CompletableFuture.allOf(pendingDownloads.toArray(new CompletableFuture<?>[0])).handle((r, e) -> null).join();
+		}
+	}
+	
+	private void printConnectionStatistics() {
+		log.info("Secure requests: " + session.getRequests() + "  Connections opened: " + session.getConnectionsOpened() + "  Connections reused: " + session.getReusedConnections());
+		log.info("Requests delayed by rate limit: " + session.getRateLimitedRequests() + "  Time waited: " + session.getRateLimitWaitMillis() + " ms");
+		log.info("Retries: " + session.getRetries() + "  Circuit breaker trips: " + session.getCircuitBreakerTrips());
+		log.info(events.getStatistics().toString());
+		session.getMirrors().forEach(mirror -> log.info(mirror.toString()));
+		if (concurrencyLimiter != null) {
+			log.info("Concurrency limit: " + concurrencyLimiter.getLimit());
+		}
+		if (unzipExecutor != null) {
+			log.info("Books unzipped: " + unzippedBooks.get());
+		}
+	}
 
 	/**
 	 * @param downloadResult
 	 * @return <i>true</i> if the downloaded file contains links to books, <i>false</i> otherwise
 	 */
-	private boolean isPageWithBookLinks(DownloadResult downloadResult) {
+	static boolean isPageWithBookLinks(DownloadResult downloadResult) {
 		boolean result = false;
 		if (downloadResult.getContentType().contains("text/html") &&
 			downloadResult.getContentLocation().contains("harvest.php") )
@@ -113,49 +360,207 @@ public class DownloadBooks {
 	}
 	
 	/**
-	 * It process a file with links that are the urls to the books to download. Existing links are extracted and then downloaded.<br>
-	 * The last link could be the link to another page with more links. If so, we process the new file calling this method again.
-	 * @param file file with links to the books to download
+	 * It process a file with links that are the urls to the books to download.<br>
+	 * The pages are walked by a <code>HarvestPageProducer</code> on its own thread, which puts the links to books in a queue and
+	 * downloads the next page while the books of the previous ones are being downloaded. If there is a catalog path, the links are
+	 * put in the queue by a <code>CatalogLinkProducer</code> instead. This thread takes the links from the queue
+	 * and starts their downloads, until there are no more links or the maximum number of files to download is reached.<br>
+	 * Both the queue of links and the downloads started and not finished are bounded by the queue capacity. When the downloads
+	 * fall behind, this thread waits for a free slot, the queue fills up and the producer waits before downloading more pages.
+	 * Links already downloaded or left pending by a resumed run are not taken from the pages again; the pending ones are queued first.
+	 * @param file file with links to the books to download, or null to scrape the pages while they are received
+	 * @param pageUrl url of the page
+	 * @return <i>true</i> if all the links have been taken, <i>false</i> if the maximum number of files to download has been reached
 	 */
-	private void processPage(String file) {
-		Iterator<String> it = FileScraping.getLinks(file).iterator();
-		while (it.hasNext() && getFinishedDownloads() < getMaxFilesToDownload()) {
-			String link = it.next();
-			if (createResource(link)) {
-				try {
-					getBook(link);
-				} catch (MalformedURLException e) {
-					try {
-						DownloadResult downloadResult = getNewPageWithBookLinks(link);
-						if (isPageWithBookLinks(downloadResult)) {
-							processPage(downloadResult.getSavedFilePath());
-						}
-					} catch (MalformedURLException ex) {
-						log.error("Cannot get url for " + link);
-						log.error("  Url Base = " + getUrlBase());
-					}
-				}					
+	private boolean processPage(String file, String pageUrl) {
+		boolean allLinksTaken = false;
+		BlockingQueue<String> links = new LinkedBlockingQueue<>(parameters.getQueueCapacity());
+		LinkProducer producer = createProducer(file, pageUrl, links);
+		producer.setPendingLinks(journal.getPendingLinks());
+		Thread producerThread = new Thread(producer, "book-links");
+		producerThread.setDaemon(true);
+		producerThread.start();
+		try {
+			String link;
+			while (getSubmittedDownloads() < getMaxFilesToDownload()) {
+				if ((link = links.take()) == LinkProducer.END_OF_LINKS) {
+					allLinksTaken = true;
+					break;
+				}
+				getBook(link);
 			}
+		} catch (InterruptedException e) {
+			log.warn("InterruptedException waiting for links. " + e.getMessage());
+			Thread.currentThread().interrupt();
+		} finally {
+			stopProducer(producer, producerThread);
+		}
+		if (producer.getFailure() != null) {
+			throw producer.getFailure();
+		}
+		return allLinksTaken;
+	}
+	
+	private LinkProducer createProducer(String file, String pageUrl, BlockingQueue<String> links) {
+		Predicate<String> linkFilter = link -> !journal.isKnown(link) && createResource(link);
+		LinkProducer producer;
+		if (parameters.getCatalogPath() != null) {
+			producer = new CatalogLinkProducer(parameters, links, linkFilter, getMaxFilesToDownload());
+		} else {
+			producer = new HarvestPageProducer(downloadEngine, getUrlBase(), file, pageUrl, links, linkFilter, getMaxFilesToDownload());
 		}
+		producer.setJournal(journal);
+		return producer;
 	}
 	
 	/**
-	 * Downloads a book. The download is runned in a new thread.
+	 * Stops the walk of pages and waits until the producer ends, so the engine is not used once the session is closed
+	 */
+	private void stopProducer(LinkProducer producer, Thread producerThread) {
+		producer.stop();
+		producerThread.interrupt();
+		try {
+			producerThread.join();
+		} catch (InterruptedException e) {
+			log.warn("InterruptedException waiting for harvest pages producer. " + e.getMessage());
+			Thread.currentThread().interrupt();
+		}
+		pagesProcessed = producer.getPages();
+		log.info("Pages processed: " + pagesProcessed);
+	}
+	
+	/**
+	 * Downloads a book. The download is started asynchronously, once there is a free slot; errors are logged when it completes.<br>
+	 * If the concurrency is adaptive, it waits until the limiter allows another download in flight, and reports the outcome of the download to it.<br>
+	 * The listeners receive the events of the download. A download dropped by the engine after a timeout is reported as failed.<br>
+	 * The link is recorded on the journal when the book has been downloaded; the producer records it when it is queued.<br>
+	 * The slot and the permit of the limiter are given back whatever happens, even if the download cannot be started.
 	 * @param link download url
-	 * @throws MalformedURLException
 	 */
-	private void getBook(String link) throws MalformedURLException {
-		URL newURLToDownload = new URL(link);
-		delayDownload();
-		executorService.submit(new DownloadThread(newURLToDownload, parameters));
-		incrementFinishedDownloads();
+	private void getBook(String link) {
+		URL newURLToDownload;
+		try {
+			newURLToDownload = new URL(link);
+		} catch (MalformedURLException e) {
+			log.error("Cannot get url for " + link);
+			return;
+		}
+		BookDownload book = new BookDownload(newURLToDownload);
+		events.queued(book);
+		if (!acquireDownloadSlot()) {
+			events.failed(book, new GutenbergException("org.josfranmc.gutenberg.GutenbergException: Download interrupted"));
+			return;
+		}
+		if (!acquireConcurrencyPermit()) {
+			downloadSlots.release();
+			events.failed(book, new GutenbergException("org.josfranmc.gutenberg.GutenbergException: Download interrupted"));
+			return;
+		}
+		long start = System.nanoTime();
+		CompletableFuture<DownloadResult> download;
+		try {
+			DownloadThread downloadThread = new DownloadThread(newURLToDownload, parameters, session);
+			downloadThread.setTransferListener(events.transferListener(book));
+			download = downloadThread.downloadAsync(executorService);
+		} catch (RuntimeException e) {
+			downloadSlots.release();
+			if (concurrencyLimiter != null) {
+				concurrencyLimiter.onCancelled();
+			}
+			log.error("Error downloading " + newURLToDownload + ". " + e.getMessage());
+			events.failed(book, e);
+			return;
+		}
+		pendingDownloads.add(download);
+		download.whenComplete((downloadResult, e) -> {
+			try {
+				reportToConcurrencyLimiter(downloadResult, e, book, start);
+				if (e != null) {
+					Throwable cause = (e.getCause() != null) ? e.getCause() : e;
+					log.error("Error downloading " + newURLToDownload + ". " + cause.getMessage());
+					events.failed(book, cause);
+				} else if (downloadResult.getSavedFilePath() == null) {
+					events.failed(book, new GutenbergException("org.josfranmc.gutenberg.GutenbergException: Download timeout exceeded"));
+				} else {
+					journal.completed(link);
+					if (downloadResult.isExtracted()) {
+						libraryIndex.addExtracted(link);
+					} else {
+						libraryIndex.add(link);
+					}
+					events.completed(book, downloadResult);
+					if (unzipExecutor != null) {
+						unzipBook(downloadResult);
+					}
+				}
+			} catch (RuntimeException ex) {
+				log.error("[ERROR] Error completing the download of " + newURLToDownload + ". " + ex.getMessage());
+			} finally {
+				downloadSlots.release();
+				pendingDownloads.remove(download);
+			}
+		});
+		incrementSubmittedDownloads();
+	}
+	
+	/**
+	 * @return <i>false</i> if the thread was interrupted while waiting for a free slot
+	 */
+	private boolean acquireDownloadSlot() {
+		try {
+			downloadSlots.acquire();
+		} catch (InterruptedException e) {
+			log.warn("InterruptedException waiting for a download slot. " + e.getMessage());
+			Thread.currentThread().interrupt();
+			return false;
+		}
+		return true;
 	}
 	
-	private DownloadResult getNewPageWithBookLinks(String link) throws MalformedURLException {
-		URL newURLToDownload = new URL(getUrlBase(), link.replace("&amp;", "&"));
-		downloadEngine.setResource(newURLToDownload);
-		log.info("New url " + newURLToDownload.toString());
-		return downloadEngine.download();
+	/**
+	 * @return <i>false</i> if the thread was interrupted while waiting for the limiter
+	 */
+	private boolean acquireConcurrencyPermit() {
+		if (concurrencyLimiter != null) {
+			try {
+				concurrencyLimiter.acquire();
+			} catch (InterruptedException e) {
+				log.warn("InterruptedException waiting for concurrency limiter. " + e.getMessage());
+				Thread.currentThread().interrupt();
+				return false;
+			}
+		}
+		return true;
+	}
+	
+	/**
+	 * A download without saved file has been dropped by the engine after a timeout or a connection failure.
+	 * Among errors, only timeouts, connection failures and 429/503 responses mean an overload.<br>
+	 * The latency of a successful download is the one of its last attempt, so it measures the server and not the waits for the
+	 * rate limit or between retries.
+	 */
+	private void reportToConcurrencyLimiter(DownloadResult downloadResult, Throwable error, BookDownload book, long start) {
+		if (concurrencyLimiter == null) {
+			return;
+		}
+		if (error == null && downloadResult != null && downloadResult.getSavedFilePath() != null) {
+			concurrencyLimiter.onSuccess(book.getLatency(TimeUnit.NANOSECONDS));
+		} else if (error == null || isOverload(error)) {
+			concurrencyLimiter.onDropped(start);
+		} else {
+			concurrencyLimiter.onIgnored();
+		}
+	}
+	
+	private static boolean isOverload(Throwable error) {
+		for (Throwable e = error; e != null; e = e.getCause()) {
+			if (e instanceof HttpStatusException) {
+				return ((HttpStatusException) e).isOverload();
+			} else if (e instanceof InterruptedIOException || e instanceof ConnectException) {
+				return true;
+			}
+		}
+		return false;
 	}
 	
 	/**
@@ -163,6 +568,7 @@ public class DownloadBooks {
 	 * <ul>
 	 * <li>it is the first time the resource is downloaded</li>
 	 * <li>overwrite resources parameter is active</li>
+	 * <li>revalidate resources parameter is active (the resource is only downloaded again if it has changed)</li>
 	 * <li>the resource link contains the word harvest (it is a link to a page with more book links)</li>
 	 * </ul>
 	 * @param link link to the resource to download
@@ -170,27 +576,28 @@ public class DownloadBooks {
 	 */
 	private boolean createResource(String link) {
 		boolean result = false;
-		if (!resourceAlreadyDownloaded(link) || isOverwrite() || link.contains("harvest")) {
+		if (!resourceAlreadyDownloaded(link) || isOverwrite() || isRevalidate() || link.contains("harvest")) {
 			result = true;
 		}
 		return result;
 	}	
 	
 	/**
-	 * Checks if the file corresponding to the resource indicated by a certain link exists in the directory where the resources are downloaded
+	 * Checks if the file corresponding to the resource indicated by a certain link exists in the directory where the resources are downloaded.<br>
+	 * The check is made against the index of the directory, listed once at the beginning of the process and updated as downloads finish.
 	 * @param link resource link to download
 	 * @return <i>true</i> if the resource to download already exists, <i>false</i> otherwise
 	 */
 	private boolean resourceAlreadyDownloaded(String link) {
-		return (FileManager.fileExists(downloadEngine.getSavePath(), link));
+		return libraryIndex.contains(link);
 	}
 	
 	private boolean isOverwrite() {
 		return parameters.isOverwrite();
 	}
 	
-	private int getDelay() {
-		return parameters.getDelay();
+	private boolean isRevalidate() {
+		return parameters.isRevalidate();
 	}
 	
 	private URL getUrlBase() {
@@ -201,22 +608,11 @@ public class DownloadBooks {
 		return parameters.getMaxFilesToDownload();
 	}
 
-	private int getFinishedDownloads() {
-		return finishedDownloads;
+	private int getSubmittedDownloads() {
+		return submittedDownloads;
 	}
 
-	private void incrementFinishedDownloads() {
-		this.finishedDownloads++;
-	}
-	
-	private void delayDownload() {
-		if (getDelay() > 0) {
-			try {
-				Thread.sleep(getDelay());
-			} catch (InterruptedException e) {
-				log.error("InterruptedException delayDownload. " + e);
-				Thread.currentThread().interrupt();
-			}
-		}		
+	private void incrementSubmittedDownloads() {
+		this.submittedDownloads++;
 	}
 }
@@ -0,0 +1,138 @@
+/*
+ *  Copyright (C) 2018-2019 Jose Francisco Mena Ceca <josfranmc@gmail.com>
+ *
+ *  This file is part of JGutenbergDownload.
+ *
+ *  JGutenbergDownload is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  JGutenbergDownload is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with JGutenbergDownload.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package org.josfranmc.gutenberg.download;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.josfranmc.gutenberg.download.engine.DownloadResult;
+import org.josfranmc.gutenberg.download.engine.TransferListener;
+
+/**
+ * Updates the <code>BookDownload</code> of every book and the <code>DownloadStatistics</code> of a download process, and
+ * delivers the events to the registered listeners.<br>
+ * An exception thrown by a listener is logged, so it never breaks a download.
+ * @author Jose Francisco Mena Ceca
+ * @version 2.1
+ * @see DownloadListener
+ */
+class DownloadEvents {
+
+	private static final Logger log = LogManager.getLogger(DownloadEvents.class);
+	
+	private final List<DownloadListener> listeners = new CopyOnWriteArrayList<>();
+	
+	private final DownloadStatistics statistics = new DownloadStatistics();
+	
+	
+	void addListener(DownloadListener listener) {
+		listeners.add(listener);
+	}
+	
+	void removeListener(DownloadListener listener) {
+		listeners.remove(listener);
+	}
+	
+	DownloadStatistics getStatistics() {
+		return statistics;
+	}
+	
+	void queued(BookDownload book) {
+		statistics.queued();
+		for (DownloadListener listener : listeners) {
+			try {
+				listener.queued(book);
+			} catch (RuntimeException e) {
+				logListenerError(e);
+			}
+		}
+	}
+	
+	/**
+	 * @param book the download of a book
+	 * @return the listener of the transfer of the book, which updates it and reports the start of the first attempt and the progress of the transfer
+	 */
+	TransferListener transferListener(BookDownload book) {
+		return new TransferListener() {
+			
+			@Override
+			public void requestSent() {
+				book.requestSent();
+			}
+			
+			@Override
+			public void transferStarted(long contentLength) {
+				if (!book.started(contentLength)) {
+					return;
+				}
+				statistics.started();
+				for (DownloadListener listener : listeners) {
+					try {
+						listener.started(book);
+					} catch (RuntimeException e) {
+						logListenerError(e);
+					}
+				}
+			}
+			
+			@Override
+			public void bytesTransferred(long bytes) {
+				book.transferred(bytes);
+				statistics.transferred(bytes);
+				for (DownloadListener listener : listeners) {
+					try {
+						listener.progress(book, bytes);
+					} catch (RuntimeException e) {
+						logListenerError(e);
+					}
+				}
+			}
+		};
+	}
+	
+	void completed(BookDownload book, DownloadResult result) {
+		book.finished();
+		statistics.completed(book, result.isNotModified());
+		for (DownloadListener listener : listeners) {
+			try {
+				listener.completed(book, result);
+			} catch (RuntimeException e) {
+				logListenerError(e);
+			}
+		}
+	}
+	
+	void failed(BookDownload book, Throwable error) {
+		book.finished();
+		statistics.failed();
+		for (DownloadListener listener : listeners) {
+			try {
+				listener.failed(book, error);
+			} catch (RuntimeException e) {
+				logListenerError(e);
+			}
+		}
+	}
+	
+	private static void logListenerError(RuntimeException e) {
+		log.warn("[WARN] Error in download listener. " + e);
+	}
+}
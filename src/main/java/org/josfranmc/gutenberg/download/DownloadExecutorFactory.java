@@ -0,0 +1,87 @@
+/*
+ *  Copyright (C) 2018-2019 Jose Francisco Mena Ceca <josfranmc@gmail.com>
+ *
+ *  This file is part of JGutenbergDownload.
+ *
+ *  JGutenbergDownload is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  JGutenbergDownload is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with JGutenbergDownload.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package org.josfranmc.gutenberg.download;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * Factory for creating the executor that runs the downloads of books, according to an <code>ExecutorType</code>.<p>
+ * The application is compiled for Java 8, so the virtual thread executor of Java 21 is looked up at runtime. If it does not
+ * exist, a pool of platform threads is created instead.
+ * @author Jose Francisco Mena Ceca
+ * @version 2.1
+ * @see ExecutorType
+ */
+final class DownloadExecutorFactory {
+
+	private static final Logger log = LogManager.getLogger(DownloadExecutorFactory.class);
+	
+	/**
+	 * <code>Executors.newVirtualThreadPerTaskExecutor()</code>, or null if the running Java version has no virtual threads
+	 */
+	private static final MethodHandle newVirtualThreadPerTaskExecutor = findVirtualThreadExecutor();
+	
+	
+	private DownloadExecutorFactory() {
+		throw new IllegalStateException("Cannot instantiate class");
+	}
+	
+	private static MethodHandle findVirtualThreadExecutor() {
+		try {
+			return MethodHandles.publicLookup().findStatic(Executors.class, "newVirtualThreadPerTaskExecutor", MethodType.methodType(ExecutorService.class));
+		} catch (NoSuchMethodException | IllegalAccessException e) {
+			return null;
+		}
+	}
+	
+	/**
+	 * @return <i>true</i> if the running Java version supports virtual threads, <i>false</i> otherwise
+	 */
+	static boolean isVirtualThreadsSupported() {
+		return newVirtualThreadPerTaskExecutor != null;
+	}
+	
+	/**
+	 * Creates an executor for running downloads.
+	 * @param type type of executor (if null, <code>ExecutorType.PLATFORM_THREADS</code> is used)
+	 * @param threadPoolSize number of threads of a pool of platform threads
+	 * @return a new executor
+	 */
+	static ExecutorService create(ExecutorType type, int threadPoolSize) {
+		if (type == ExecutorType.VIRTUAL_THREADS) {
+			if (isVirtualThreadsSupported()) {
+				try {
+					return (ExecutorService) newVirtualThreadPerTaskExecutor.invoke();
+				} catch (Throwable e) {
+					log.warn("[WARN] Cannot create virtual threads. " + e.getMessage());
+				}
+			} else {
+				log.warn("[WARN] Virtual threads require Java 21 or higher. Using platform threads");
+			}
+		}
+		return Executors.newFixedThreadPool(threadPoolSize);
+	}
+}
@@ -0,0 +1,76 @@
+/*
+ *  Copyright (C) 2018-2019 Jose Francisco Mena Ceca <josfranmc@gmail.com>
+ *
+ *  This file is part of JGutenbergDownload.
+ *
+ *  JGutenbergDownload is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  JGutenbergDownload is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with JGutenbergDownload.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package org.josfranmc.gutenberg.download;
+
+import org.josfranmc.gutenberg.download.engine.DownloadResult;
+
+/**
+ * Receives the events of the downloads of books while a download process is running.<p>
+ * A book is <i>queued</i> when its link is taken to be downloaded, <i>started</i> when the server answers and its body starts being
+ * saved, and then <i>completed</i> or <i>failed</i>. Meanwhile, the progress of the transfer is reported as the bytes arrive.
+ * Every event carries the <code>BookDownload</code> of the book, with its timings and byte counts up to that moment.<br>
+ * Methods are called from the threads that run the downloads, several at the same time, so implementations must be thread-safe and
+ * must return quickly. All methods do nothing by default. An exception thrown by a listener is logged and does not stop the download.
+ * @author Jose Francisco Mena Ceca
+ * @version 2.1
+ * @see JGutenbergDownload#addDownloadListener(DownloadListener)
+ * @see BookDownload
+ */
+public interface DownloadListener {
+
+	/**
+	 * The link of a book has been taken to be downloaded. The download waits for a free slot before starting.
+	 * @param book the download of the book
+	 */
+	public default void queued(BookDownload book) {
+	}
+	
+	/**
+	 * The server has answered and the body of the book starts being saved. A book that has not changed on the server
+	 * (see <code>DownloadParams.setRevalidate</code>) is completed without being started. If the download fails and is retried,
+	 * it is called only for the first attempt that gets an answer.
+	 * @param book the download of the book
+	 */
+	public default void started(BookDownload book) {
+	}
+	
+	/**
+	 * A block of the body of the book has been received.
+	 * @param book the download of the book
+	 * @param bytes number of bytes received in this block
+	 */
+	public default void progress(BookDownload book, long bytes) {
+	}
+	
+	/**
+	 * The book has been downloaded, or it has not changed on the server.
+	 * @param book the download of the book
+	 * @param result the result of the download
+	 */
+	public default void completed(BookDownload book, DownloadResult result) {
+	}
+	
+	/**
+	 * The book could not be downloaded.
+	 * @param book the download of the book
+	 * @param error the cause of the failure
+	 */
+	public default void failed(BookDownload book, Throwable error) {
+	}
+}
@@ -20,8 +20,15 @@ package org.josfranmc.gutenberg.download;
 
 import java.net.MalformedURLException;
 import java.net.URL;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
 
 import org.josfranmc.gutenberg.download.engine.DownloadEngineType;
+import org.josfranmc.gutenberg.download.engine.DownloadSession;
+import org.josfranmc.gutenberg.download.engine.MirrorPolicy;
+import org.josfranmc.gutenberg.download.engine.TransferMode;
+import org.josfranmc.gutenberg.util.ZipEntryFilter;
 
 /**
  * Parameters used in the application. They are:
@@ -31,14 +38,39 @@ import org.josfranmc.gutenberg.download.engine.DownloadEngineType;
  * <li><b>urlBase</b>: initial download url</li>
  * <li><b>savePath</b>: path where to get downloaded resources (default <code>System.getProperty("user.dir")</code>)</li>
  * <li><b>overwrite</b>: if the existing files must be overwritten by the downloaded ones (default <i>false</i>)</li>
- * <li><b>delay</b>: delay between downloads, in milliseconds (default 2000)</li>
+ * <li><b>revalidate</b>: if the existing files must be revalidated with a conditional request and downloaded only if they have changed (default <i>false</i>)</li>
+ * <li><b>streamPages</b>: if the links of the harvest pages are extracted while the pages are received, without saving them (default <i>false</i>)</li>
+ * <li><b>resume</b>: if a previous run that did not end must be resumed where it stopped (default <i>false</i>)</li>
+ * <li><b>catalogPath</b>: path of a local Gutenberg catalog (CSV or RDF) from which to take the books, instead of the harvest pages (default none)</li>
+ * <li><b>delay</b>: delay between downloads, in milliseconds (default 2000). It is the rate limit used when <i>requestsPerSecond</i> is not set</li>
+ * <li><b>requestsPerSecond</b>: the requests per second allowed to every host (default 0, derived from <i>delay</i>)</li>
+ * <li><b>burst</b>: the requests that can be sent together to a host after a while without requests (default 1)</li>
+ * <li><b>maxRetries</b>: times a download that failed with a transient error is sent again (default 3)</li>
+ * <li><b>retryBackoff</b>: wait before the first retry, in milliseconds; it doubles on every retry (default 1000)</li>
+ * <li><b>circuitBreakerThreshold</b>: transient failures in a row after which the requests to a host wait for a while (default 5, 0 for never)</li>
  * <li><b>unzip</b>: if downloaded files must be unzipping (default <i>true</i>)</li>
+ * <li><b>unzipMode</b>: when downloaded files are unzipped (default <code>UnzipMode.AFTER_DOWNLOAD</code>)</li>
+ * <li><b>unzipPatterns</b>: glob patterns of the files to extract from downloaded zip files, in order of preference (default none, all the files)</li>
  * <li><b>maxFilesToDownload</b>: the maximum number of files to download (default 10, 0 for download all existing)</li>
  * <li><b>engineType</b>: the type of downloading engine to use (default <code>DownloadEngineType.HTTP_CONNECTION</code>)</li>
+ * <li><b>adaptiveConcurrency</b>: if the number of downloads in flight adapts to the response of the server (default <i>false</i>)</li>
+ * <li><b>maxConcurrentDownloads</b>: the highest number of downloads in flight when the concurrency is adaptive (default 64)</li>
+ * <li><b>queueCapacity</b>: the number of links to books waiting to be downloaded, and of downloads started and not finished, that are kept in memory (default 256)</li>
+ * <li><b>executorType</b>: the type of executor that runs the downloads (default <code>ExecutorType.PLATFORM_THREADS</code>)</li>
+ * <li><b>threadPoolSize</b>: the number of platform threads that run the downloads, not used with virtual threads (default three per processor)</li>
+ * <li><b>transferMode</b>: the way of copying downloads to local files (default <code>TransferMode.DIRECT_BUFFER</code>)</li>
+ * <li><b>bufferSize</b>: the size of the buffer used to copy downloads to local files, in bytes (default 65536)</li>
+ * <li><b>segments</b>: the number of segments in which large files are downloaded at the same time (default 1, a single stream)</li>
+ * <li><b>segmentThreshold</b>: the minimum size of a file to be downloaded in segments, in bytes (default 16 MB)</li>
+ * <li><b>keepCompressed</b>: if downloads compressed by the server (gzip, deflate) are saved without decoding them (default <i>false</i>)</li>
+ * <li><b>mirrors</b>: urls of mirrors with the same folder structure, across which the downloads of books are spread (default none)</li>
+ * <li><b>mirrorPolicy</b>: the way of choosing the mirror of every download (default <code>MirrorPolicy.EWMA_LATENCY</code>)</li>
  * </ul>
  * @author Jose Francisco Mena Ceca
  * @version 2.1
  * @see DownloadEngineType
+ * @see ExecutorType
+ * @see UnzipMode
  * @see JGutenbergDownload
  */
 public class DownloadParams {
@@ -61,15 +93,61 @@ public class DownloadParams {
 	private String zipsPath;
 	
 	private boolean overwrite;
+	
+	private boolean revalidate;
+	
+	private boolean resume;
+	
+	private boolean streamPages;
+	
+	private String catalogPath;
 
 	private int delay;
 	
+	private double requestsPerSecond;
+	
+	private int burst;
+	
+	private int maxRetries;
+	
+	private long retryBackoff;
+	
+	private int circuitBreakerThreshold;
+	
 	private boolean unzip;
+	
+	private UnzipMode unzipMode;
+	
+	private List<String> unzipPatterns;
 
 	private int maxFilesToDownload;
 	
 	private DownloadEngineType engineType;
 	
+	private boolean adaptiveConcurrency;
+	
+	private int maxConcurrentDownloads;
+	
+	private int queueCapacity;
+	
+	private ExecutorType executorType;
+	
+	private int threadPoolSize;
+	
+	private TransferMode transferMode;
+	
+	private int bufferSize;
+	
+	private int segments;
+	
+	private long segmentThreshold;
+	
+	private boolean keepCompressed;
+	
+	private List<String> mirrors;
+	
+	private MirrorPolicy mirrorPolicy;
+	
 
 	/**
 	 * Main constructor. It initializes the object with default values:
@@ -78,10 +156,33 @@ public class DownloadParams {
 	 * <li><b>language</b>: <i>es</i></li>
 	 * <li><b>savePath</b>: <code>System.getProperty("user.dir")</code></li>
 	 * <li><b>overwrite</b>: <i>false</i></li>
+	 * <li><b>revalidate</b>: <i>false</i></li>
+	 * <li><b>resume</b>: <i>false</i></li>
+	 * <li><b>streamPages</b>: <i>false</i></li>
+	 * <li><b>catalogPath</b>: none (the harvest pages are walked)</li>
 	 * <li><b>delay</b>: 2000 milliseconds</li>
+	 * <li><b>requestsPerSecond</b>: 0 (derived from <i>delay</i>)</li>
+	 * <li><b>burst</b>: 1</li>
+	 * <li><b>maxRetries</b>: 3</li>
+	 * <li><b>retryBackoff</b>: 1000 milliseconds</li>
+	 * <li><b>circuitBreakerThreshold</b>: 5</li>
 	 * <li><b>unzip</b>: <i>true</i></li>
+	 * <li><b>unzipMode</b>: <code>UnzipMode.AFTER_DOWNLOAD</code></li>
+	 * <li><b>unzipPatterns</b>: none (all the files)</li>
 	 * <li><b>maxFilesToDownload</b>: 10 (0 for download all existing)</li>
 	 * <li><b>engineType</b>: <code>DownloadEngineType.HTTP_CONNECTION</code></li>
+	 * <li><b>adaptiveConcurrency</b>: <i>false</i></li>
+	 * <li><b>maxConcurrentDownloads</b>: 64</li>
+	 * <li><b>queueCapacity</b>: 256</li>
+	 * <li><b>executorType</b>: <code>ExecutorType.PLATFORM_THREADS</code></li>
+	 * <li><b>threadPoolSize</b>: three per processor</li>
+	 * <li><b>transferMode</b>: <code>TransferMode.DIRECT_BUFFER</code></li>
+	 * <li><b>bufferSize</b>: 65536 bytes</li>
+	 * <li><b>segments</b>: 1</li>
+	 * <li><b>segmentThreshold</b>: 16 MB</li>
+	 * <li><b>keepCompressed</b>: <i>false</i></li>
+	 * <li><b>mirrors</b>: none</li>
+	 * <li><b>mirrorPolicy</b>: <code>MirrorPolicy.EWMA_LATENCY</code></li>
 	 * </ul>
 	 */
 	public DownloadParams() { 
@@ -91,10 +192,33 @@ public class DownloadParams {
 		savePath = System.getProperty("user.dir") + FILE_SEPARATOR + "books" + FILE_SEPARATOR;
 		setZipsPath();
 		overwrite = false;
+		revalidate = false;
+		resume = false;
+		streamPages = false;
+		catalogPath = null;
 		delay = 2000;
+		requestsPerSecond = 0;
+		burst = 1;
+		maxRetries = 3;
+		retryBackoff = 1000;
+		circuitBreakerThreshold = 5;
 		unzip = true;
+		unzipMode = UnzipMode.AFTER_DOWNLOAD;
+		unzipPatterns = Collections.emptyList();
 		maxFilesToDownload = 10;
 		engineType = DownloadEngineType.HTTP_CONNECTION;
+		adaptiveConcurrency = false;
+		maxConcurrentDownloads = 64;
+		queueCapacity = 256;
+		executorType = ExecutorType.PLATFORM_THREADS;
+		threadPoolSize = Runtime.getRuntime().availableProcessors() * 3;
+		transferMode = TransferMode.DIRECT_BUFFER;
+		bufferSize = DownloadSession.DEFAULT_BUFFER_SIZE;
+		segments = 1;
+		segmentThreshold = DownloadSession.DEFAULT_SEGMENT_THRESHOLD;
+		keepCompressed = false;
+		mirrors = Collections.emptyList();
+		mirrorPolicy = MirrorPolicy.EWMA_LATENCY;
 	}
 
 	
@@ -205,6 +329,74 @@ public class DownloadParams {
 		this.overwrite = overwrite;
 	}
 
+	/**
+	 * @return <i>true</i> if the existing files must be revalidated with a conditional request, <i>false</i> otherwise
+	 */
+	public boolean isRevalidate() {
+		return revalidate;
+	}
+
+	/**
+	 * Sets if the existing files must be revalidated with a conditional request (using their Last-Modified and ETag values)
+	 * and downloaded only if they have changed
+	 * @param revalidate <i>true</i> if the existing files must be revalidated, <i>false</i> otherwise
+	 */
+	public void setRevalidate(boolean revalidate) {
+		this.revalidate = revalidate;
+	}
+	
+	/**
+	 * @return <i>true</i> if a previous run that did not end must be resumed, <i>false</i> otherwise
+	 */
+	public boolean isResume() {
+		return resume;
+	}
+
+	/**
+	 * Sets if a previous run that did not end must be resumed where it stopped. The progress of the runs with this parameter active is recorded
+	 * on a journal in the path where downloads are saved, deleted when the run ends. When resuming, the walk of pages starts at the last page
+	 * visited, and the books already downloaded are skipped.
+	 * @param resume <i>true</i> if a previous run must be resumed, <i>false</i> to start a new one
+	 */
+	public void setResume(boolean resume) {
+		this.resume = resume;
+	}
+	
+	/**
+	 * @return <i>true</i> if the links of the harvest pages are extracted while the pages are received, <i>false</i> if the pages are saved first
+	 */
+	public boolean isStreamPages() {
+		return streamPages;
+	}
+
+	/**
+	 * Sets if the links of the harvest pages are extracted while the pages are received, without saving the pages.
+	 * The links to books are queued before the page has been completely received. Only the engine <code>HTTP_CONNECTION</code>
+	 * reads the pages as they are received; with other engines the pages are saved and read as usual.
+	 * @param streamPages <i>true</i> to extract the links while the pages are received, <i>false</i> to save the pages first
+	 */
+	public void setStreamPages(boolean streamPages) {
+		this.streamPages = streamPages;
+	}
+	
+	/**
+	 * @return the path of the local catalog from which to take the books, or null if the harvest pages are walked
+	 */
+	public String getCatalogPath() {
+		return catalogPath;
+	}
+
+	/**
+	 * Sets a local Gutenberg catalog from which to take the books, instead of walking the harvest pages: <i>pg_catalog.csv</i>,
+	 * the RDF tarball, or a folder with its RDF files. The books of the language and type of files to download are indexed once
+	 * in the path where downloads are saved, and the index is reused while the catalog does not change.
+	 * @param catalogPath path of the catalog, or null to walk the harvest pages
+	 * @see org.josfranmc.gutenberg.catalog.CatalogReader
+	 */
+	public void setCatalogPath(String catalogPath) {
+		this.catalogPath = catalogPath;
+	}
+
 	/**
 	 * @return delay between downloads, in milliseconds
 	 */
@@ -224,6 +416,114 @@ public class DownloadParams {
 		this.delay = delay;
 	}
 
+	/**
+	 * @return the requests per second allowed to every host, or zero if it is derived from the delay between downloads
+	 */
+	public double getRequestsPerSecond() {
+		return requestsPerSecond;
+	}
+
+	/**
+	 * Sets the requests per second allowed to every host. It takes precedence over the delay between downloads.
+	 * @param requestsPerSecond requests per second (zero to derive it from the delay between downloads)
+	 * @throws GutenbergException if a number less than zero is indicated
+	 */
+	public void setRequestsPerSecond(double requestsPerSecond) {
+		if (requestsPerSecond < 0) {
+			throw new GutenbergException("org.josfranmc.gutenberg.download.GutenbergException: RequestsPerSecond parameter cannot be less than zero");
+		}
+		this.requestsPerSecond = requestsPerSecond;
+	}
+
+	/**
+	 * @return the requests that can be sent together to a host after a while without requests
+	 */
+	public int getBurst() {
+		return burst;
+	}
+
+	/**
+	 * Sets the requests that can be sent together to a host after a while without requests
+	 * @param burst number of requests
+	 * @throws GutenbergException if a number less than one is indicated
+	 */
+	public void setBurst(int burst) {
+		if (burst < 1) {
+			throw new GutenbergException("org.josfranmc.gutenberg.download.GutenbergException: Burst parameter must be greater than zero");
+		}
+		this.burst = burst;
+	}
+
+	/**
+	 * @return times a download that failed with a transient error is sent again
+	 */
+	public int getMaxRetries() {
+		return maxRetries;
+	}
+
+	/**
+	 * Sets the times a download that failed with a transient error (timeout, connection failure, 429, 5xx, ...) is sent again
+	 * @param maxRetries number of retries (zero to never retry)
+	 * @throws GutenbergException if a number less than zero is indicated
+	 */
+	public void setMaxRetries(int maxRetries) {
+		if (maxRetries < 0) {
+			throw new GutenbergException("org.josfranmc.gutenberg.download.GutenbergException: MaxRetries parameter cannot be less than zero");
+		}
+		this.maxRetries = maxRetries;
+	}
+
+	/**
+	 * @return the wait before the first retry, in milliseconds
+	 */
+	public long getRetryBackoff() {
+		return retryBackoff;
+	}
+
+	/**
+	 * Sets the wait before the first retry. It doubles on every retry, and a random part is added so the retries are spread in time.
+	 * If the server indicates how long to wait (Retry-After header field), that time is waited instead.
+	 * @param retryBackoff wait in milliseconds
+	 * @throws GutenbergException if a number less than zero is indicated
+	 */
+	public void setRetryBackoff(long retryBackoff) {
+		if (retryBackoff < 0) {
+			throw new GutenbergException("org.josfranmc.gutenberg.download.GutenbergException: RetryBackoff parameter cannot be less than zero");
+		}
+		this.retryBackoff = retryBackoff;
+	}
+
+	/**
+	 * @return the transient failures in a row after which the requests to a host wait for a while
+	 */
+	public int getCircuitBreakerThreshold() {
+		return circuitBreakerThreshold;
+	}
+
+	/**
+	 * Sets the transient failures in a row after which the requests to a host wait for a while, instead of being sent. The wait uses up
+	 * a retry of the download; once there are no retries left, the download fails
+	 * @param circuitBreakerThreshold number of failures (zero for never holding requests back)
+	 * @throws GutenbergException if a number less than zero is indicated
+	 */
+	public void setCircuitBreakerThreshold(int circuitBreakerThreshold) {
+		if (circuitBreakerThreshold < 0) {
+			throw new GutenbergException("org.josfranmc.gutenberg.download.GutenbergException: CircuitBreakerThreshold parameter cannot be less than zero");
+		}
+		this.circuitBreakerThreshold = circuitBreakerThreshold;
+	}
+
+	/**
+	 * @return the requests per second allowed to every host: <i>requestsPerSecond</i> if it is set, one request every
+	 * <i>delay</i> milliseconds otherwise, or zero if there is no limit
+	 */
+	public double getEffectiveRequestsPerSecond() {
+		if (requestsPerSecond > 0) {
+			return requestsPerSecond;
+		}
+		return (delay > 0) ? 1000.0 / delay : 0;
+	}
+
 	/**
 	 * @return <i>true</i> if downloaded files must be unzipping, <i>false</i> otherwise
 	 */
@@ -238,6 +538,54 @@ public class DownloadParams {
 	public void setUnzip(boolean unzip) {
 		this.unzip = unzip;
 	}
+	
+	/**
+	 * @return when downloaded files are unzipped
+	 * @see UnzipMode
+	 */
+	public UnzipMode getUnzipMode() {
+		return unzipMode;
+	}
+
+	/**
+	 * Sets when downloaded files are unzipped: once all the downloads have finished, as soon as every download finishes,
+	 * or while it is received. It only applies if downloaded files must be unzipped.
+	 * @param unzipMode unzip mode
+	 * @throws GutenbergException if the mode is null
+	 * @see UnzipMode
+	 */
+	public void setUnzipMode(UnzipMode unzipMode) {
+		if (unzipMode == null) {
+			throw new GutenbergException("org.josfranmc.gutenberg.download.GutenbergException: UnzipMode parameter must not be null");
+		}
+		this.unzipMode = unzipMode;
+	}
+	
+	/**
+	 * @return the glob patterns of the files to extract from downloaded zip files, in order of preference. Empty to extract all the files
+	 */
+	public List<String> getUnzipPatterns() {
+		return unzipPatterns;
+	}
+
+	/**
+	 * Sets the files to extract from downloaded zip files, with glob patterns of their names in order of preference.
+	 * From every zip file, only the files matching the first pattern matched by any of its files are extracted. For example, 
+	 * <code>*-0.txt *-8.txt *.txt</code> extracts the UTF-8 text of a book if there is, otherwise the ISO-8859-1 text, otherwise any text.
+	 * @param unzipPatterns glob patterns, or null or empty to extract all the files
+	 * @throws GutenbergException if a pattern is not valid
+	 * @see ZipEntryFilter
+	 */
+	public void setUnzipPatterns(List<String> unzipPatterns) {
+		this.unzipPatterns = ZipEntryFilter.of(unzipPatterns).getPatterns();
+	}
+	
+	/**
+	 * @return the filter of the files to extract from downloaded zip files, built from the unzip patterns
+	 */
+	public ZipEntryFilter getUnzipFilter() {
+		return ZipEntryFilter.of(unzipPatterns);
+	}
 
 	/**
 	 * @return the maximum number of files to download
@@ -275,6 +623,234 @@ public class DownloadParams {
 		this.engineType = engineType;
 	}
 	
+	/**
+	 * @return <i>true</i> if the number of downloads in flight adapts to the response of the server, <i>false</i> otherwise
+	 */
+	public boolean isAdaptiveConcurrency() {
+		return adaptiveConcurrency;
+	}
+
+	/**
+	 * Sets if the number of downloads in flight adapts to the response of the server: it grows while downloads are fast and
+	 * successful, and it is cut on timeouts, connection failures and 429/503 responses
+	 * @param adaptiveConcurrency <i>true</i> to adapt the number of downloads in flight, <i>false</i> otherwise
+	 * @see AdaptiveConcurrencyLimiter
+	 */
+	public void setAdaptiveConcurrency(boolean adaptiveConcurrency) {
+		this.adaptiveConcurrency = adaptiveConcurrency;
+	}
+
+	/**
+	 * @return the highest number of downloads in flight when the concurrency is adaptive
+	 */
+	public int getMaxConcurrentDownloads() {
+		return maxConcurrentDownloads;
+	}
+
+	/**
+	 * Sets the highest number of downloads in flight when the concurrency is adaptive
+	 * @param maxConcurrentDownloads number of downloads
+	 * @throws GutenbergException if the number is less than one
+	 */
+	public void setMaxConcurrentDownloads(int maxConcurrentDownloads) {
+		if (maxConcurrentDownloads < 1) {
+			throw new GutenbergException("org.josfranmc.gutenberg.download.GutenbergException: MaxConcurrentDownloads parameter must be greater than zero");
+		}
+		this.maxConcurrentDownloads = maxConcurrentDownloads;
+	}
+
+	/**
+	 * @return the number of links waiting to be downloaded, and of downloads started and not finished, that are kept in memory
+	 */
+	public int getQueueCapacity() {
+		return queueCapacity;
+	}
+
+	/**
+	 * Sets the number of links waiting to be downloaded, and of downloads started and not finished, that are kept in memory.
+	 * When they are full, the walk of harvest pages waits until some downloads finish, so the memory used does not depend on the size of the catalog.
+	 * @param queueCapacity number of links
+	 * @throws GutenbergException if the number is less than one
+	 */
+	public void setQueueCapacity(int queueCapacity) {
+		if (queueCapacity < 1) {
+			throw new GutenbergException("org.josfranmc.gutenberg.download.GutenbergException: QueueCapacity parameter must be greater than zero");
+		}
+		this.queueCapacity = queueCapacity;
+	}
+
+	/**
+	 * @return the type of executor that runs the downloads
+	 * @see ExecutorType
+	 */
+	public ExecutorType getExecutorType() {
+		return executorType;
+	}
+
+	/**
+	 * Sets the type of executor that runs the downloads
+	 * @param executorType executor type
+	 * @see ExecutorType
+	 */
+	public void setExecutorType(ExecutorType executorType) {
+		this.executorType = executorType;
+	}
+
+	/**
+	 * @return the number of platform threads that run the downloads
+	 */
+	public int getThreadPoolSize() {
+		return threadPoolSize;
+	}
+
+	/**
+	 * Sets the number of platform threads that run the downloads. It is not used when the downloads run on virtual threads
+	 * @param threadPoolSize number of threads
+	 * @throws GutenbergException if the number is less than one
+	 * @see ExecutorType
+	 */
+	public void setThreadPoolSize(int threadPoolSize) {
+		if (threadPoolSize < 1) {
+			throw new GutenbergException("org.josfranmc.gutenberg.download.GutenbergException: ThreadPoolSize parameter must be greater than zero");
+		}
+		this.threadPoolSize = threadPoolSize;
+	}
+	
+	/**
+	 * @return the way of copying downloads to local files
+	 * @see TransferMode
+	 */
+	public TransferMode getTransferMode() {
+		return transferMode;
+	}
+
+	/**
+	 * Sets the way of copying downloads to local files
+	 * @param transferMode way of copying
+	 * @see TransferMode
+	 */
+	public void setTransferMode(TransferMode transferMode) {
+		this.transferMode = transferMode;
+	}
+
+	/**
+	 * @return the size of the buffer used to copy downloads to local files, in bytes
+	 */
+	public int getBufferSize() {
+		return bufferSize;
+	}
+
+	/**
+	 * Sets the size of the buffer used to copy downloads to local files
+	 * @param bufferSize size in bytes
+	 * @throws GutenbergException if the size is not greater than zero
+	 */
+	public void setBufferSize(int bufferSize) {
+		if (bufferSize <= 0) {
+			throw new GutenbergException("org.josfranmc.gutenberg.download.GutenbergException: BufferSize parameter must be greater than zero");
+		}
+		this.bufferSize = bufferSize;
+	}
+	
+	/**
+	 * @return the number of segments in which large files are downloaded at the same time
+	 */
+	public int getSegments() {
+		return segments;
+	}
+
+	/**
+	 * Sets the number of segments in which large files are downloaded at the same time, each one over its own connection.
+	 * Only files whose server answers ranges and at least as large as the segment threshold are downloaded in segments.
+	 * @param segments number of segments (1 to download every file in a single stream)
+	 * @throws GutenbergException if the number is less than one
+	 */
+	public void setSegments(int segments) {
+		if (segments < 1) {
+			throw new GutenbergException("org.josfranmc.gutenberg.download.GutenbergException: Segments parameter must be greater than zero");
+		}
+		this.segments = segments;
+	}
+
+	/**
+	 * @return the minimum size of a file to be downloaded in segments, in bytes
+	 */
+	public long getSegmentThreshold() {
+		return segmentThreshold;
+	}
+
+	/**
+	 * Sets the minimum size of a file to be downloaded in segments. Smaller files are downloaded in a single stream.
+	 * @param segmentThreshold size in bytes
+	 * @throws GutenbergException if the size is less than zero
+	 */
+	public void setSegmentThreshold(long segmentThreshold) {
+		if (segmentThreshold < 0) {
+			throw new GutenbergException("org.josfranmc.gutenberg.download.GutenbergException: SegmentThreshold parameter cannot be less than zero");
+		}
+		this.segmentThreshold = segmentThreshold;
+	}
+
+	/**
+	 * @return <i>true</i> if downloads compressed by the server are saved without decoding them, <i>false</i> otherwise
+	 */
+	public boolean isKeepCompressed() {
+		return keepCompressed;
+	}
+
+	/**
+	 * Sets if downloads compressed by the server (Content-Encoding gzip or deflate) are saved without decoding them
+	 * @param keepCompressed <i>true</i> to save the compressed bytes, <i>false</i> to decode them
+	 */
+	public void setKeepCompressed(boolean keepCompressed) {
+		this.keepCompressed = keepCompressed;
+	}
+	
+	/**
+	 * @return the urls of the mirrors across which the downloads of books are spread. Empty if there are no mirrors
+	 */
+	public List<String> getMirrors() {
+		return mirrors;
+	}
+
+	/**
+	 * Sets the mirrors across which the downloads of books are spread. A book whose link starts with the url of a mirror
+	 * is downloaded from the mirror chosen by the mirror policy, at the same relative path, and from another mirror if it fails.
+	 * The url of the mirror the harvest pages link to, e.g. <i>http://aleph.gutenberg.org/</i>, should be included.
+	 * @param mirrors urls of the root folders of the books in the mirrors, or null or empty for no mirrors
+	 * @throws GutenbergException if an url is not valid
+	 */
+	public void setMirrors(List<String> mirrors) {
+		List<String> urls = new ArrayList<>();
+		if (mirrors != null) {
+			for (String mirror : mirrors) {
+				try {
+					urls.add(new URL(mirror.endsWith("/") ? mirror : mirror + "/").toString());
+				} catch (MalformedURLException e) {
+					throw new GutenbergException("org.josfranmc.gutenberg.GutenbergException: Wrong mirror url " + mirror);
+				}
+			}
+		}
+		this.mirrors = Collections.unmodifiableList(urls);
+	}
+	
+	/**
+	 * @return the way of choosing the mirror of every download
+	 * @see MirrorPolicy
+	 */
+	public MirrorPolicy getMirrorPolicy() {
+		return mirrorPolicy;
+	}
+
+	/**
+	 * Sets the way of choosing the mirror of every download
+	 * @param mirrorPolicy mirror policy
+	 * @see MirrorPolicy
+	 */
+	public void setMirrorPolicy(MirrorPolicy mirrorPolicy) {
+		this.mirrorPolicy = mirrorPolicy;
+	}
+	
 	/**
 	 * Build the main url from which to download the books
 	 */
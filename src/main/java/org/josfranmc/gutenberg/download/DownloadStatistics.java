@@ -0,0 +1,135 @@
+/*
+ *  Copyright (C) 2018-2019 Jose Francisco Mena Ceca <josfranmc@gmail.com>
+ *
+ *  This file is part of JGutenbergDownload.
+ *
+ *  JGutenbergDownload is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  JGutenbergDownload is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with JGutenbergDownload.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package org.josfranmc.gutenberg.download;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Live counters of the downloads of books of a download process.<p>
+ * Counters are updated without locks by the threads that run the downloads, and can be read from any thread while the process is running.
+ * Since they are read one by one, the values returned at the same moment may not be consistent with each other.
+ * @author Jose Francisco Mena Ceca
+ * @version 2.1
+ * @see DownloadListener
+ */
+public class DownloadStatistics {
+
+	private final LongAdder queued = new LongAdder();
+	
+	private final LongAdder started = new LongAdder();
+	
+	private final LongAdder completed = new LongAdder();
+	
+	private final LongAdder notModified = new LongAdder();
+	
+	private final LongAdder failed = new LongAdder();
+	
+	private final LongAdder bytesTransferred = new LongAdder();
+	
+	private final LongAdder transferNanos = new LongAdder();
+	
+	
+	void queued() {
+		queued.increment();
+	}
+	
+	void started() {
+		started.increment();
+	}
+	
+	void transferred(long bytes) {
+		bytesTransferred.add(bytes);
+	}
+	
+	void completed(BookDownload book, boolean isNotModified) {
+		completed.increment();
+		if (isNotModified) {
+			notModified.increment();
+		}
+		transferNanos.add(book.getTransferTime(TimeUnit.NANOSECONDS));
+	}
+	
+	void failed() {
+		failed.increment();
+	}
+	
+	/**
+	 * @return the number of books taken to be downloaded
+	 */
+	public long getQueued() {
+		return queued.sum();
+	}
+	
+	/**
+	 * @return the number of books whose transfer has started
+	 */
+	public long getStarted() {
+		return started.sum();
+	}
+	
+	/**
+	 * @return the number of books downloaded, including those that have not changed on the server
+	 */
+	public long getCompleted() {
+		return completed.sum();
+	}
+	
+	/**
+	 * @return the number of books that have not changed on the server, so they have not been downloaded again
+	 */
+	public long getNotModified() {
+		return notModified.sum();
+	}
+	
+	/**
+	 * @return the number of books that could not be downloaded
+	 */
+	public long getFailed() {
+		return failed.sum();
+	}
+	
+	/**
+	 * @return the number of books queued that have not completed or failed yet
+	 */
+	public long getPending() {
+		return getQueued() - getCompleted() - getFailed();
+	}
+	
+	/**
+	 * @return the bytes received of all books
+	 */
+	public long getBytesTransferred() {
+		return bytesTransferred.sum();
+	}
+	
+	/**
+	 * @return the mean time spent transferring the body of a completed book, in milliseconds
+	 */
+	public double getMeanTransferMillis() {
+		long count = getCompleted() - getNotModified();
+		return (count > 0) ? transferNanos.sum() / 1e6 / count : 0;
+	}
+	
+	@Override
+	public String toString() {
+		return "Books queued: " + getQueued() + "  Completed: " + getCompleted() + "  Not modified: " + getNotModified() 
+			+ "  Failed: " + getFailed() + "  Bytes: " + getBytesTransferred();
+	}
+}
@@ -19,18 +19,27 @@
 package org.josfranmc.gutenberg.download;
 
 import java.net.URL;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
 
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
 import org.josfranmc.gutenberg.download.engine.DownloadEngineFactory;
+import org.josfranmc.gutenberg.download.engine.DownloadResult;
+import org.josfranmc.gutenberg.download.engine.DownloadSession;
 import org.josfranmc.gutenberg.download.engine.IDownloadEngine;
+import org.josfranmc.gutenberg.download.engine.TransferListener;
 
 /**
  * Downloads a resource.<br>
- * Objects of this class can be runned in separate threads.
+ * Objects of this class can be runned in separate threads, or started asynchronously through <code>downloadAsync</code>.
  * @author Jose Francisco Mena Ceca
  * @version 2.1
  */
 public class DownloadThread implements Runnable {
 
+	private static final Logger log = LogManager.getLogger(DownloadThread.class);
+	
 	private IDownloadEngine downloadEngine;
 	
 	/**
@@ -38,12 +47,54 @@ public class DownloadThread implements Runnable {
 	 * @param parameters settings
 	 */
 	public DownloadThread(URL target, DownloadParams parameters) {
-		downloadEngine = DownloadEngineFactory.create(target, parameters.getZipsPath(), parameters.getEngineType());
+		this(target, parameters, null);
 	}
 	
+	/**
+	 * @param target download url 
+	 * @param parameters settings
+	 * @param session transport shared with the rest of downloads
+	 */
+	public DownloadThread(URL target, DownloadParams parameters, DownloadSession session) {
+		downloadEngine = DownloadEngineFactory.create(target, parameters.getZipsPath(), parameters.getEngineType(), session);
+	}
+	
+	/**
+	 * Runs the download. Errors are logged, since they cannot be thrown from a thread.
+	 */
 	@Override
 	public void run() {
-		downloadEngine.download();
+		try {
+			downloadEngine.download();
+		} catch (GutenbergException e) {
+			log.error("Error downloading " + getTarget() + ". " + ((e.getCause() != null) ? e.getCause().getMessage() : e.getMessage()));
+		}
+	}
+	
+	/**
+	 * Starts the download without blocking the calling thread.
+	 * @param executor executor where to run blocking work, if the engine needs it
+	 * @return a future with the result of the download
+	 * @see org.josfranmc.gutenberg.download.engine.IDownloadEngine#downloadAsync(Executor)
+	 */
+	public CompletableFuture<DownloadResult> downloadAsync(Executor executor) {
+		return downloadEngine.downloadAsync(executor);
+	}
+	
+	/**
+	 * Sets a listener that receives the progress of the transfer
+	 * @param listener listener of the transfer, or null to stop reporting progress
+	 * @see org.josfranmc.gutenberg.download.engine.IDownloadEngine#setTransferListener(TransferListener)
+	 */
+	public void setTransferListener(TransferListener listener) {
+		downloadEngine.setTransferListener(listener);
+	}
+	
+	/**
+	 * @return the url to download
+	 */
+	public URL getTarget() {
+		return downloadEngine.getResource();
 	}
 
 }
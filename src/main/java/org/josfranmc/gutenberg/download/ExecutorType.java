@@ -0,0 +1,41 @@
+/*
+ *  Copyright (C) 2018-2019 Jose Francisco Mena Ceca <josfranmc@gmail.com>
+ *
+ *  This file is part of JGutenbergDownload.
+ *
+ *  JGutenbergDownload is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  JGutenbergDownload is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with JGutenbergDownload.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package org.josfranmc.gutenberg.download;
+
+/**
+ * Types of executors that run the downloads of books
+ * @author Jose Francisco Mena Ceca
+ * @version 2.1
+ * @see DownloadParams
+ */
+public enum ExecutorType {
+
+	/**
+	 * A fixed pool of platform threads, three per available processor
+	 */
+	PLATFORM_THREADS,
+
+	/**
+	 * A new virtual thread for every download (requires Java 21 or higher).<br>
+	 * A virtual thread blocked on the network does not hold a platform thread, so thousands of downloads can be in flight
+	 * without the memory of their stacks. On older versions of Java a pool of platform threads is used instead.
+	 */
+	VIRTUAL_THREADS;
+
+}
@@ -0,0 +1,111 @@
+/*
+ *  Copyright (C) 2018-2019 Jose Francisco Mena Ceca <josfranmc@gmail.com>
+ *
+ *  This file is part of JGutenbergDownload.
+ *
+ *  JGutenbergDownload is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  JGutenbergDownload is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with JGutenbergDownload.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package org.josfranmc.gutenberg.download;
+
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.function.Consumer;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.josfranmc.gutenberg.download.engine.IDownloadEngine;
+
+/**
+ * Walks the harvest pages on demand, passing the links to books one by one.<p>
+ * A page is only downloaded when the links of the previous one have been taken, so just the links of one page are kept in memory
+ * and no page is requested once the consumer stops taking links. The pages are scraped with <code>IDownloadEngine.scrape</code>,
+ * so engines that can read the body as it is received do not save them.<br>
+ * The links are passed in the order of the pages. When it is split for a parallel stream, batches of links already taken are handed over,
+ * while the walk of the pages remains sequential.
+ * @author Jose Francisco Mena Ceca
+ * @version 2.1
+ * @see JGutenbergDownload#links()
+ */
+class HarvestLinkSpliterator extends Spliterators.AbstractSpliterator<URL> {
+
+	private static final Logger log = LogManager.getLogger(HarvestLinkSpliterator.class);
+	
+	private final IDownloadEngine downloadEngine;
+	
+	private final URL urlBase;
+	
+	/**
+	 * links of the last page downloaded not taken yet
+	 */
+	private final Deque<URL> pageLinks = new ArrayDeque<>();
+	
+	/**
+	 * url of the next page to download, or null if there are no more pages
+	 */
+	private URL nextPage;
+	
+	
+	/**
+	 * @param downloadEngine engine used to download the pages. Its resource is the first page
+	 * @param urlBase url the relative links to pages are resolved against
+	 */
+	HarvestLinkSpliterator(IDownloadEngine downloadEngine, URL urlBase) {
+		super(Long.MAX_VALUE, Spliterator.ORDERED | Spliterator.NONNULL);
+		this.downloadEngine = downloadEngine;
+		this.urlBase = urlBase;
+		this.nextPage = downloadEngine.getResource();
+	}
+	
+	/**
+	 * @throws GutenbergException if there is any error downloading a page
+	 */
+	@Override
+	public boolean tryAdvance(Consumer<? super URL> action) {
+		while (pageLinks.isEmpty() && nextPage != null) {
+			scrapePage(nextPage);
+		}
+		URL link = pageLinks.poll();
+		if (link == null) {
+			return false;
+		}
+		action.accept(link);
+		return true;
+	}
+	
+	/**
+	 * Downloads a page, keeping its links to books and the url of the next page
+	 */
+	private void scrapePage(URL pageUrl) {
+		log.info("New url " + pageUrl);
+		nextPage = null;
+		downloadEngine.setResource(pageUrl);
+		downloadEngine.scrape(DownloadBooks::isPageWithBookLinks, this::addLink);
+	}
+	
+	private void addLink(String link) {
+		if (HarvestPageProducer.isPageLink(link)) {
+			nextPage = HarvestPageProducer.resolvePageLink(urlBase, link);
+		} else {
+			try {
+				pageLinks.add(new URL(link));
+			} catch (MalformedURLException e) {
+				log.error("Cannot get url for " + link);
+			}
+		}
+	}
+}
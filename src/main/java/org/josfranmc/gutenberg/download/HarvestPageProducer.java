@@ -0,0 +1,242 @@
+/*
+ *  Copyright (C) 2018-2019 Jose Francisco Mena Ceca <josfranmc@gmail.com>
+ *
+ *  This file is part of JGutenbergDownload.
+ *
+ *  JGutenbergDownload is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  JGutenbergDownload is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with JGutenbergDownload.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package org.josfranmc.gutenberg.download;
+
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.util.concurrent.BlockingQueue;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.josfranmc.gutenberg.download.engine.DownloadResult;
+import org.josfranmc.gutenberg.download.engine.IDownloadEngine;
+import org.josfranmc.gutenberg.util.FileScraping;
+
+/**
+ * Walks the harvest pages, putting the links to books in a queue that is consumed by the downloads.<p>
+ * It runs on its own thread: as soon as the links of a page are queued, the next page is downloaded, while the books of
+ * the previous pages are still being downloaded. Only the links accepted by a filter are queued, and no more pages are downloaded
+ * once the maximum number of links has been queued. When there are no more links, <code>END_OF_LINKS</code> is queued.<br>
+ * If there is a journal, every page is recorded on it before its links are queued, and so once all the links of the previous page
+ * have been recorded. The links left pending by a previous run are queued before the links of the first page.<p>
+ * If the first page has not been downloaded, the pages are scraped while they are received, without saving them: the links to books
+ * are queued before the page has been completely received (see <code>IDownloadEngine.scrape</code>).
+ * @author Jose Francisco Mena Ceca
+ * @version 2.1
+ * @see DownloadBooks
+ */
+class HarvestPageProducer extends LinkProducer {
+
+	private static final Logger log = LogManager.getLogger(HarvestPageProducer.class);
+	
+	private final IDownloadEngine downloadEngine;
+	
+	private final URL urlBase;
+	
+	private final String firstPage;
+	
+	private final String firstPageUrl;
+	
+	private final Predicate<String> linkFilter;
+	
+	/**
+	 * url of the page returned by the last call to <code>getNextPage</code>
+	 */
+	private String nextPageUrl;
+	
+	private volatile int pages = 0;
+	
+	
+	/**
+	 * @param downloadEngine engine used to download the pages. It is only used by this producer
+	 * @param urlBase url the relative links to pages are resolved against
+	 * @param firstPage file of the first page, already downloaded, or null to scrape the pages while they are received
+	 * @param firstPageUrl url of the first page
+	 * @param links queue where to put the links to books
+	 * @param linkFilter accepts the links to books that must be downloaded
+	 * @param maxLinks maximum number of links to queue
+	 */
+	HarvestPageProducer(IDownloadEngine downloadEngine, URL urlBase, String firstPage, String firstPageUrl, BlockingQueue<String> links, Predicate<String> linkFilter, int maxLinks) {
+		super(links, maxLinks);
+		this.downloadEngine = downloadEngine;
+		this.urlBase = urlBase;
+		this.firstPage = firstPage;
+		this.firstPageUrl = firstPageUrl;
+		this.linkFilter = linkFilter;
+	}
+	
+	@Override
+	void produce() throws InterruptedException {
+		if (firstPage == null) {
+			scrapePages();
+			return;
+		}
+		String page = firstPage;
+		String pageUrl = firstPageUrl;
+		while (page != null && !isStopped()) {
+			pageVisited(pageUrl);
+			page = processPage(page);
+			pageUrl = nextPageUrl;
+		}
+	}
+	
+	/**
+	 * Queues the links to books of a page and downloads the page it links to.
+	 * @param file file of the page
+	 * @return the file of the next page, or null if there are no more pages
+	 * @throws InterruptedException if the thread is interrupted while waiting for room in the queue
+	 */
+	private String processPage(String file) throws InterruptedException {
+		pages++;
+		String nextPage = null;
+		for (String link : FileScraping.getLinks(file)) {
+			if (isDone()) {
+				return null;
+			}
+			if (isPageLink(link)) {
+				nextPage = getNextPage(link);
+			} else if (linkFilter.test(link)) {
+				queue(link);
+			}
+		}
+		return nextPage;
+	}
+	
+	private void scrapePages() throws InterruptedException {
+		String pageUrl = firstPageUrl;
+		while (pageUrl != null && !isStopped()) {
+			pageUrl = scrapePage(pageUrl);
+		}
+	}
+	
+	/**
+	 * Downloads a page, queueing its links to books as they are received. The page is not saved.
+	 * @param url url of the page
+	 * @return the url of the next page, or null if there are no more pages
+	 * @throws InterruptedException if the thread is interrupted while waiting for room in the queue
+	 */
+	private String scrapePage(String url) throws InterruptedException {
+		URL pageUrl;
+		try {
+			pageUrl = new URL(url);
+		} catch (MalformedURLException e) {
+			log.error("Cannot get url for " + url);
+			return null;
+		}
+		downloadEngine.setResource(pageUrl);
+		log.info("New url " + url);
+		PageLinkConsumer pageLinks = new PageLinkConsumer();
+		downloadEngine.scrape(result -> isHarvestPage(result, url), pageLinks);
+		if (pageLinks.interrupted) {
+			throw new InterruptedException();
+		}
+		return isDone() ? null : pageLinks.nextPage;
+	}
+	
+	private boolean isHarvestPage(DownloadResult downloadResult, String url) {
+		boolean page = DownloadBooks.isPageWithBookLinks(downloadResult);
+		if (page) {
+			pages++;
+			pageVisited(url);
+		}
+		return page;
+	}
+	
+	private void pageVisited(String url) {
+		if (getJournal() != null) {
+			getJournal().pageVisited(url);
+		}
+	}
+	
+	/**
+	 * Receives the links of a page while it is scraped: queues the links to books and keeps the url of the next page
+	 */
+	private class PageLinkConsumer implements Consumer<String> {
+		
+		private String nextPage;
+		
+		private boolean interrupted = false;
+		
+		@Override
+		public void accept(String link) {
+			if (interrupted || isDone()) {
+				return;
+			}
+			if (isPageLink(link)) {
+				URL nextPageUrl = resolvePageLink(urlBase, link);
+				nextPage = (nextPageUrl != null) ? nextPageUrl.toString() : null;
+			} else if (linkFilter.test(link)) {
+				try {
+					queue(link);
+				} catch (InterruptedException e) {
+					interrupted = true;
+				}
+			}
+		}
+	}
+	
+	/**
+	 * Links to books are absolute urls; the link to the next page is relative to the url base.
+	 */
+	static boolean isPageLink(String link) {
+		try {
+			new URL(link);
+			return false;
+		} catch (MalformedURLException e) {
+			return true;
+		}
+	}
+	
+	private String getNextPage(String link) {
+		URL newURLToDownload = resolvePageLink(urlBase, link);
+		if (newURLToDownload == null) {
+			return null;
+		}
+		downloadEngine.setResource(newURLToDownload);
+		log.info("New url " + newURLToDownload.toString());
+		DownloadResult downloadResult = downloadEngine.download();
+		nextPageUrl = newURLToDownload.toString();
+		return DownloadBooks.isPageWithBookLinks(downloadResult) ? downloadResult.getSavedFilePath() : null;
+	}
+	
+	/**
+	 * @param urlBase url the link is relative to
+	 * @param link link to a page
+	 * @return the url of a link to a page, or null if it is not valid
+	 */
+	static URL resolvePageLink(URL urlBase, String link) {
+		try {
+			return new URL(urlBase, link.replace("&amp;", "&"));
+		} catch (MalformedURLException ex) {
+			log.error("Cannot get url for " + link);
+			log.error("  Url Base = " + urlBase);
+			return null;
+		}
+	}
+	
+	/**
+	 * @return the number of pages processed
+	 */
+	@Override
+	int getPages() {
+		return pages;
+	}
+}
@@ -22,14 +22,24 @@
 package org.josfranmc.gutenberg.download;
 
 import java.io.File;
+import java.net.URL;
 import java.text.DateFormat;
 import java.text.SimpleDateFormat;
+import java.util.Arrays;
 import java.util.Date;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 import org.apache.logging.log4j.Logger;
 import org.apache.logging.log4j.LogManager;
+import org.josfranmc.gutenberg.download.engine.DownloadEngineFactory;
 import org.josfranmc.gutenberg.download.engine.DownloadEngineType;
+import org.josfranmc.gutenberg.download.engine.DownloadSession;
+import org.josfranmc.gutenberg.download.engine.IDownloadEngine;
 import org.josfranmc.gutenberg.util.FileManager;
+import org.josfranmc.gutenberg.util.UnzipReport;
 
 /**
  * It allows to download books from the Gutenberg project repositories.<br>
@@ -38,6 +48,7 @@ import org.josfranmc.gutenberg.util.FileManager;
  * @version 2.1
  * @see DownloadParams
  * @see DownloadEngineType
+ * @see ExecutorType
  * @see GutenbergException
  */
 public class JGutenbergDownload {
@@ -46,6 +57,10 @@ public class JGutenbergDownload {
 
 	private DownloadParams parameters;	
 	
+	private final List<DownloadListener> listeners = new CopyOnWriteArrayList<>();
+	
+	private DownloadStatistics statistics;
+	
 	
 	/**
 	 * Main constructor. It initializes the application with default values.
@@ -73,7 +88,32 @@ public class JGutenbergDownload {
 	}
 	
 	/**
-	 * Begins the process of downloading books.<p>
+	 * Registers a listener that receives the events of the downloads of books, with their timings and byte counts.
+	 * @param listener listener to register
+	 * @see DownloadListener
+	 */
+	public void addDownloadListener(DownloadListener listener) {
+		listeners.add(listener);
+	}
+	
+	/**
+	 * @param listener listener to remove
+	 */
+	public void removeDownloadListener(DownloadListener listener) {
+		listeners.remove(listener);
+	}
+	
+	/**
+	 * @return the counters of the downloads of books of the running or last process, or null if no process has been run.
+	 * They are updated while the process is running
+	 */
+	public DownloadStatistics getStatistics() {
+		return statistics;
+	}
+	
+	/**
+	 * Begins the process of downloading books.<br>
+	 * Downloaded books are unzipped after all the downloads, or during the download process, depending on the unzip mode.<p>
 	 * If there is any problem It can be thrown <code>GutenbergException</code>
 	 * @throws GutenbergException
 	 * @see GutenbergException
@@ -83,14 +123,35 @@ public class JGutenbergDownload {
 		createDirectoriesForDownloads();
 		log.info("BEGIN BOOKS DOWNLOAD " + getCurrentTime());
 		DownloadBooks downloader = new DownloadBooks(parameters);
+		listeners.forEach(downloader::addDownloadListener);
+		statistics = downloader.getStatistics();
 		boolean downloaded = downloader.executeDownload();
-		if (downloaded && parameters.isUnzip()) {
+		if (downloaded && parameters.isUnzip() && parameters.getUnzipMode() == UnzipMode.AFTER_DOWNLOAD) {
 			log.info("Unzipping files... ");
-			FileManager.unzipFiles(parameters.getZipsPath(), parameters.getSavePath());
+			UnzipReport report = FileManager.unzipFiles(parameters.getZipsPath(), parameters.getSavePath(), parameters.getUnzipFilter());
+			log.info(report.toString());
 		}
 		log.info("END BOOKS DOWNLOAD " + getCurrentTime());
 	}
 
+	/**
+	 * Returns the links to the books of the harvest pages, without downloading the books.<p>
+	 * The pages are downloaded lazily, as the stream is consumed: only the links of one page are kept in memory, and no more pages
+	 * are requested once the stream stops taking links, e.g. after <code>limit()</code>. The maximum number of files to download,
+	 * the overwrite parameter and the files already downloaded are not taken into account.<br>
+	 * The pages are requested with the engine type and the rate limit and retry settings of the parameters. The stream holds the connections
+	 * of a session, so it should be closed when it is no longer used, e.g. with a try-with-resources statement.
+	 * If there is any problem downloading a page, <code>GutenbergException</code> is thrown while the stream is consumed.
+	 * @return a sequential stream with the links to books, in the order of the pages
+	 * @see GutenbergException
+	 */
+	public Stream<URL> links() {
+		createDirectoriesForDownloads();
+		DownloadSession session = DownloadBooks.createSession(parameters);
+		IDownloadEngine downloadEngine = DownloadEngineFactory.create(parameters.getUrlBase(), parameters.getZipsPath(), parameters.getEngineType(), session);
+		return StreamSupport.stream(new HarvestLinkSpliterator(downloadEngine, parameters.getUrlBase()), false).onClose(session::close);
+	}
+
 	private void createDirectoriesForDownloads() {
 		createBaseDirectory();
 		createZipsDirectory();
@@ -187,6 +248,67 @@ public class JGutenbergDownload {
 		parameters.setOverwrite(value);
 	}
 	
+	/**
+	 * @return <i>true</i> if the existing files must be revalidated with a conditional request, <i>false</i> otherwise
+	 */
+	public boolean isRevalidate() {
+		return parameters.isRevalidate();
+	}
+	
+	/**
+	 * Sets if the existing files must be revalidated with a conditional request and downloaded only if they have changed
+	 * @param value <i>true</i> if the existing files must be revalidated, <i>false</i> otherwise
+	 */
+	public void setRevalidate(boolean value) {
+		parameters.setRevalidate(value);
+	}
+	
+	/**
+	 * @return <i>true</i> if the links of the harvest pages are extracted while the pages are received, <i>false</i> otherwise
+	 */
+	public boolean isStreamPages() {
+		return parameters.isStreamPages();
+	}
+	
+	/**
+	 * Sets if the links of the harvest pages are extracted while the pages are received, without saving the pages
+	 * @param value <i>true</i> to extract the links while the pages are received, <i>false</i> to save the pages first
+	 */
+	public void setStreamPages(boolean value) {
+		parameters.setStreamPages(value);
+	}
+	
+	/**
+	 * @return the path of the local catalog from which to take the books, or null if the harvest pages are walked
+	 */
+	public String getCatalogPath() {
+		return parameters.getCatalogPath();
+	}
+	
+	/**
+	 * Sets a local Gutenberg catalog (CSV or RDF) from which to take the books, instead of walking the harvest pages
+	 * @param catalogPath path of the catalog, or null to walk the harvest pages
+	 */
+	public void setCatalogPath(String catalogPath) {
+		parameters.setCatalogPath(catalogPath);
+	}
+	
+	/**
+	 * @return <i>true</i> if a previous run that did not end must be resumed, <i>false</i> otherwise
+	 */
+	public boolean isResume() {
+		return parameters.isResume();
+	}
+	
+	/**
+	 * Sets if a previous run that did not end must be resumed where it stopped, skipping the pages and books already processed.
+	 * Only the runs with this parameter active can be resumed
+	 * @param value <i>true</i> if a previous run must be resumed, <i>false</i> to start a new one
+	 */
+	public void setResume(boolean value) {
+		parameters.setResume(value);
+	}
+	
 	/**
 	 * @return delay between downloads, in milliseconds
 	 */
@@ -216,6 +338,39 @@ public class JGutenbergDownload {
 	public void setUnzip(boolean value) {
 		parameters.setUnzip(value);
 	}
+	
+	/**
+	 * @return when downloaded files are unzipped
+	 */
+	public UnzipMode getUnzipMode() {
+		return parameters.getUnzipMode();
+	}
+	
+	/**
+	 * Sets when downloaded files are unzipped: after all the downloads, as soon as each one finishes, or while it is received
+	 * @param value unzip mode
+	 * @throws GutenbergException if the mode is null
+	 * @see UnzipMode
+	 */
+	public void setUnzipMode(UnzipMode value) {
+		parameters.setUnzipMode(value);
+	}
+	
+	/**
+	 * @return the glob patterns of the files to extract from downloaded zip files, in order of preference
+	 */
+	public List<String> getUnzipPatterns() {
+		return parameters.getUnzipPatterns();
+	}
+	
+	/**
+	 * Sets the files to extract from downloaded zip files, with glob patterns in order of preference. From every zip file,
+	 * only the files matching the first pattern matched by any of its files are extracted
+	 * @param value glob patterns, or null or empty to extract all the files
+	 */
+	public void setUnzipPatterns(List<String> value) {
+		parameters.setUnzipPatterns(value);
+	}
 
 	/**
 	 * @return the maximum number of files to download
@@ -233,6 +388,23 @@ public class JGutenbergDownload {
 		parameters.setMaxFilesToDownload(maxFilesToDownload);
 	}
 	
+	/**
+	 * @return the urls of the mirrors across which the downloads of books are spread
+	 */
+	public List<String> getMirrors() {
+		return parameters.getMirrors();
+	}
+	
+	/**
+	 * Sets the mirrors across which the downloads of books are spread, choosing for every book the mirror with the lowest latency
+	 * and moving failed downloads to another mirror. The mirror the harvest pages link to should be included
+	 * @param mirrors urls of the root folders of the books in the mirrors, or null or empty for no mirrors
+	 * @see DownloadParams#setMirrors(List)
+	 */
+	public void setMirrors(List<String> mirrors) {
+		parameters.setMirrors(mirrors);
+	}
+	
 	/**
 	 * @return the type of downloading engine to use
 	 * @see DownloadEngineType
@@ -250,6 +422,23 @@ public class JGutenbergDownload {
 		parameters.setEngineType(engineType);
 	}
 
+	/**
+	 * @return the type of executor that runs the downloads
+	 * @see ExecutorType
+	 */
+	public ExecutorType getExecutorType() {
+		return parameters.getExecutorType();
+	}
+
+	/**
+	 * Sets the type of executor that runs the downloads
+	 * @param executorType executor type
+	 * @see ExecutorType
+	 */
+	public void setExecutorType(ExecutorType executorType) {
+		parameters.setExecutorType(executorType);
+	}
+
 	private String getCurrentTime() {
 		Date date = new Date();
 		DateFormat hourFormat = new SimpleDateFormat("HH:mm:ss dd/MM/yyyy");
@@ -261,8 +450,17 @@ public class JGutenbergDownload {
 		log.info("  urlBase = " + parameters.getUrlBase().toString());
 		log.info("  savePath = " + parameters.getSavePath());
 		log.info("  overwrite = " + parameters.isOverwrite());
+		log.info("  revalidate = " + parameters.isRevalidate());
+		log.info("  resume = " + parameters.isResume());
+		log.info("  streamPages = " + parameters.isStreamPages());
+		log.info("  catalogPath = " + parameters.getCatalogPath());
 		log.info("  delay = " + parameters.getDelay());
 		log.info("  unzip = " + parameters.isUnzip());
+		log.info("  unzipMode = " + parameters.getUnzipMode());
+		log.info("  unzipPatterns = " + parameters.getUnzipFilter());
+		log.info("  mirrors = " + parameters.getMirrors());
+		log.info("  engineType = " + parameters.getEngineType());
+		log.info("  executorType = " + parameters.getExecutorType());
 		String max = (parameters.getMaxFilesToDownload() == 0) ? "all" : Integer.toString(parameters.getMaxFilesToDownload());
 		log.info("  maxDownloads = " + max);
 	}
@@ -312,9 +510,36 @@ public class JGutenbergDownload {
 				} else if (args[i].equals("-o")) {
 					params.setOverwrite(true);
 					step = 1;
+				} else if (args[i].equals("-r")) {
+					params.setRevalidate(true);
+					step = 1;
+				} else if (args[i].equals("-p")) {
+					params.setStreamPages(true);
+					step = 1;
+				} else if (args[i].equals("-k")) {
+					params.setCatalogPath(args[i+1]);
+					step = 2;
+				} else if (args[i].equals("-c")) {
+					params.setResume(true);
+					step = 1;
 				} else if (args[i].equals("-z")) {
 					params.setUnzip(false);
 					step = 1;					
+				} else if (args[i].equals("-x")) {
+					params.setUnzipPatterns(Arrays.asList(args[i+1].trim().split("\\s+")));
+					step = 2;
+				} else if (args[i].equals("-u")) {
+					params.setUnzipMode(getUnzipModeFromCommandLine(args[i+1]));
+					step = 2;
+				} else if (args[i].equals("-w")) {
+					params.setMirrors(Arrays.asList(args[i+1].trim().split("\\s+")));
+					step = 2;
+				} else if (args[i].equals("-e")) {
+					params.setEngineType(getEngineTypeFromCommandLine(args[i+1]));
+					step = 2;
+				} else if (args[i].equals("-t")) {
+					params.setExecutorType(getExecutorTypeFromCommandLine(args[i+1]));
+					step = 2;
 				} else {
 					throw new GutenbergException("org.josfranmc.gutenberg.GutenbergException: Parameter " + args[i]);
 				}
@@ -328,6 +553,30 @@ public class JGutenbergDownload {
 		return params;
 	}
 	
+	private static DownloadEngineType getEngineTypeFromCommandLine(String value) {
+		try {
+			return DownloadEngineType.valueOf(value.toUpperCase());
+		} catch (IllegalArgumentException e) {
+			throw new GutenbergException("org.josfranmc.gutenberg.GutenbergException: Wrong engine type " + value);
+		}
+	}
+	
+	private static ExecutorType getExecutorTypeFromCommandLine(String value) {
+		try {
+			return ExecutorType.valueOf(value.toUpperCase());
+		} catch (IllegalArgumentException e) {
+			throw new GutenbergException("org.josfranmc.gutenberg.GutenbergException: Wrong executor type " + value);
+		}
+	}
+	
+	private static UnzipMode getUnzipModeFromCommandLine(String value) {
+		try {
+			return UnzipMode.valueOf(value.toUpperCase());
+		} catch (IllegalArgumentException e) {
+			throw new GutenbergException("org.josfranmc.gutenberg.GutenbergException: Wrong unzip mode " + value);
+		}
+	}
+	
 	private static void showHelp() {
 		log.info("");
 		log.info("Usage: java -jar JGutenbergDownload [options]");
@@ -338,7 +587,16 @@ public class JGutenbergDownload {
 		log.info("   -d xxx (xxx delay between downloads in milliseconds, default 2000)");
 		log.info("   -m xx  (xx  max number of downloads (default 10, 0 for dowload all)");
 		log.info("   -o     (    overwrite existing files, default: false)");
+		log.info("   -r     (    revalidate existing files, download only if changed, default: false)");
+		log.info("   -p     (    extract links while pages are received, don't save pages, default: false)");
+		log.info("   -c     (    continue the previous run started with -c if it did not end, default: false)");
+		log.info("   -k xxx (xxx local catalog to take the books from: pg_catalog.csv, rdf-files.tar.zip, default: harvest pages)");
 		log.info("   -z     (    don't unzip downloads, default: true)");
+		log.info("   -u xxx (xxx when to unzip: after_download, inline, streaming, default: after_download)");
+		log.info("   -x xxx (xxx files to unzip, glob patterns in order of preference, e.g. \"*-0.txt *-8.txt *.txt\", default: all)");
+		log.info("   -w xxx (xxx mirrors to spread downloads across, e.g. \"http://aleph.gutenberg.org/ http://mirror.example.org/gutenberg/\", default: none)");
+		log.info("   -e xxx (xxx download engine: http_connection, http_client (Java 11+), default: http_connection)");
+		log.info("   -t xxx (xxx threads running downloads: platform_threads, virtual_threads (Java 21+), default: platform_threads)");
 		log.info("");
 		log.info("(only -h to show options list)");
 		log.info("");
@@ -0,0 +1,131 @@
+/*
+ *  Copyright (C) 2018-2019 Jose Francisco Mena Ceca <josfranmc@gmail.com>
+ *
+ *  This file is part of JGutenbergDownload.
+ *
+ *  JGutenbergDownload is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  JGutenbergDownload is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with JGutenbergDownload.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package org.josfranmc.gutenberg.download;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.josfranmc.gutenberg.util.FileManager;
+
+/**
+ * Names of the files already downloaded to a folder, kept in memory.<p>
+ * The folder is listed once, when the index is created, and the index is updated as downloads finish. So checking if the
+ * resource of a link has already been downloaded is a lookup in a set, instead of a file system call for every link.<br>
+ * Files are identified by their name, as it is derived from the download link (see <code>FileManager.getFileNameFromURL</code>).
+ * Files created or removed in the folder by other processes while the index is in use are not noticed.<br>
+ * The books unzipped while they were received have no file in the folder: their names are kept in the <code>EXTRACTED_FILE</code>
+ * list of the folder, one per line, so they are not downloaded again either.<br>
+ * It can be used by several threads at the same time.
+ * @author Jose Francisco Mena Ceca
+ * @version 2.1
+ * @see DownloadBooks
+ */
+class LibraryIndex {
+
+	private static final Logger log = LogManager.getLogger(LibraryIndex.class);
+	
+	/**
+	 * Name of the list of the books unzipped while they were received
+	 */
+	static final String EXTRACTED_FILE = ".extracted-books";
+	
+	private final Set<String> files = ConcurrentHashMap.newKeySet();
+	
+	private final Path extractedFile;
+	
+	
+	private LibraryIndex(Path extractedFile) {
+		this.extractedFile = extractedFile;
+	}
+	
+	/**
+	 * Creates the index of a folder, listing its files and the books unzipped while they were received.
+	 * @param folder folder where the downloads are saved. If it cannot be listed, the index is empty
+	 * @return the index
+	 */
+	static LibraryIndex scan(String folder) {
+		Path path = Paths.get(folder);
+		LibraryIndex index = new LibraryIndex(path.resolve(EXTRACTED_FILE));
+		if (Files.isDirectory(path)) {
+			try (DirectoryStream<Path> stream = Files.newDirectoryStream(path)) {
+				for (Path file : stream) {
+					if (!file.getFileName().toString().equals(EXTRACTED_FILE)) {
+						index.files.add(file.getFileName().toString());
+					}
+				}
+				if (Files.exists(index.extractedFile)) {
+					index.files.addAll(Files.readAllLines(index.extractedFile, StandardCharsets.UTF_8));
+				}
+			} catch (IOException e) {
+				log.warn("[WARN] Cannot list " + folder + ". " + e.getMessage());
+			}
+		}
+		return index;
+	}
+	
+	/**
+	 * @param link download link
+	 * @return <i>true</i> if the file of the link is in the folder
+	 */
+	boolean contains(String link) {
+		return files.contains(FileManager.getFileNameFromURL(link));
+	}
+	
+	/**
+	 * Adds the file of a link that has been downloaded.
+	 * @param link download link
+	 */
+	void add(String link) {
+		files.add(FileManager.getFileNameFromURL(link));
+	}
+	
+	/**
+	 * Adds the file of a link that has been unzipped while it was received, so it has not been saved, and records it on
+	 * the list of the folder. If the list cannot be written, the book will be downloaded again by the next run.
+	 * @param link download link
+	 */
+	void addExtracted(String link) {
+		String name = FileManager.getFileNameFromURL(link);
+		if (files.add(name)) {
+			synchronized (this) {
+				try {
+					Files.write(extractedFile, (name + "\n").getBytes(StandardCharsets.UTF_8), StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+				} catch (IOException e) {
+					log.warn("[WARN] Cannot write " + extractedFile + ". " + e.getMessage());
+				}
+			}
+		}
+	}
+	
+	/**
+	 * @return the number of files in the index
+	 */
+	int size() {
+		return files.size();
+	}
+}
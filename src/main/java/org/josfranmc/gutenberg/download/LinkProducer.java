@@ -0,0 +1,188 @@
+/*
+ *  Copyright (C) 2018-2019 Jose Francisco Mena Ceca <josfranmc@gmail.com>
+ *
+ *  This file is part of JGutenbergDownload.
+ *
+ *  JGutenbergDownload is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  JGutenbergDownload is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with JGutenbergDownload.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package org.josfranmc.gutenberg.download;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * Puts the links to books in a queue that is consumed by the downloads, on its own thread.<p>
+ * The links left pending by a previous run are queued first; then the links of the source of books of the subclass.
+ * If there is a journal, every link is recorded on it before it is put in the queue, so the links still in the queue when a run
+ * is interrupted are left pending for the next one.
+ * No more links are queued once the maximum number of links has been queued or the producer has been stopped.
+ * When there are no more links, <code>END_OF_LINKS</code> is queued.
+ * @author Jose Francisco Mena Ceca
+ * @version 2.1
+ * @see DownloadBooks
+ */
+abstract class LinkProducer implements Runnable {
+
+	/**
+	 * queued after the last link. It is compared by reference
+	 */
+	static final String END_OF_LINKS = new String("END_OF_LINKS");
+	
+	private final BlockingQueue<String> links;
+	
+	private final int maxLinks;
+	
+	private Collection<String> pendingLinks = Collections.emptyList();
+	
+	private CrawlJournal journal;
+	
+	private int queuedLinks = 0;
+	
+	private volatile boolean stopped = false;
+	
+	private volatile RuntimeException failure;
+	
+	
+	/**
+	 * @param links queue where to put the links to books
+	 * @param maxLinks maximum number of links to queue
+	 */
+	LinkProducer(BlockingQueue<String> links, int maxLinks) {
+		this.links = links;
+		this.maxLinks = maxLinks;
+	}
+	
+	/**
+	 * @param pendingLinks links queued by a previous run and not downloaded, to queue before the rest of links
+	 */
+	void setPendingLinks(Collection<String> pendingLinks) {
+		this.pendingLinks = pendingLinks;
+	}
+	
+	/**
+	 * @param journal journal where to record the links queued, or null to not record them
+	 */
+	void setJournal(CrawlJournal journal) {
+		this.journal = journal;
+	}
+	
+	/**
+	 * @return journal where the links queued are recorded, or null if they are not recorded
+	 */
+	CrawlJournal getJournal() {
+		return journal;
+	}
+	
+	@Override
+	public void run() {
+		try {
+			queuePendingLinks();
+			produce();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		} catch (RuntimeException e) {
+			if (!stopped) {
+				failure = e;
+			}
+		} finally {
+			finish();
+		}
+	}
+	
+	/**
+	 * Queues the links of the source of books, with <code>queue</code>, while <code>isDone</code> is <i>false</i>
+	 * @throws InterruptedException if the thread is interrupted while waiting for room in the queue
+	 */
+	abstract void produce() throws InterruptedException;
+	
+	/**
+	 * Queues <code>END_OF_LINKS</code>. If the producer has been stopped, the links not consumed are discarded first.
+	 */
+	private void finish() {
+		try {
+			if (!stopped && !Thread.currentThread().isInterrupted()) {
+				links.put(END_OF_LINKS);
+				return;
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		links.clear();
+		links.offer(END_OF_LINKS);
+	}
+	
+	private void queuePendingLinks() throws InterruptedException {
+		for (String link : pendingLinks) {
+			if (isDone()) {
+				return;
+			}
+			put(link);
+		}
+	}
+	
+	/**
+	 * Records the link on the journal and puts it in the queue
+	 * @param link link to a book
+	 * @throws InterruptedException if the thread is interrupted while waiting for room in the queue
+	 */
+	void queue(String link) throws InterruptedException {
+		if (journal != null) {
+			journal.queued(link);
+		}
+		put(link);
+	}
+	
+	/**
+	 * @param link link to a book, already recorded on the journal
+	 */
+	private void put(String link) throws InterruptedException {
+		links.put(link);
+		queuedLinks++;
+	}
+	
+	/**
+	 * @return <i>true</i> if no more links must be queued: the producer has been stopped or the maximum number of links has been queued
+	 */
+	boolean isDone() {
+		return stopped || queuedLinks >= maxLinks;
+	}
+	
+	/**
+	 * @return <i>true</i> if the producer has been stopped
+	 */
+	boolean isStopped() {
+		return stopped;
+	}
+	
+	/**
+	 * Stops queueing links. Links already queued are discarded. The thread of the producer must be interrupted too, if it may be
+	 * waiting for room in the queue.
+	 */
+	void stop() {
+		stopped = true;
+	}
+	
+	/**
+	 * @return the error that stopped the producer, or null if there was no error. Errors after <code>stop()</code> are ignored
+	 */
+	RuntimeException getFailure() {
+		return failure;
+	}
+	
+	/**
+	 * @return the number of sources of links processed: harvest pages, or catalogs
+	 */
+	abstract int getPages();
+}
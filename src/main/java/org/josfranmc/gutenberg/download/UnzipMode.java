@@ -0,0 +1,47 @@
+/*
+ *  Copyright (C) 2018-2019 Jose Francisco Mena Ceca <josfranmc@gmail.com>
+ *
+ *  This file is part of JGutenbergDownload.
+ *
+ *  JGutenbergDownload is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  JGutenbergDownload is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with JGutenbergDownload.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package org.josfranmc.gutenberg.download;
+
+/**
+ * Ways of unzipping the downloaded books
+ * @author Jose Francisco Mena Ceca
+ * @version 2.1
+ * @see DownloadParams
+ */
+public enum UnzipMode {
+
+	/**
+	 * All the zip files of the downloads folder are unzipped once every download has finished
+	 */
+	AFTER_DOWNLOAD,
+
+	/**
+	 * Every zip file is unzipped on a worker thread as soon as it has been downloaded, while the other books are being downloaded
+	 */
+	INLINE,
+
+	/**
+	 * The zip file is unzipped while it is received, straight from the body of the response, without saving it to disk.<br>
+	 * Only the engine <code>HTTP_CONNECTION</code> can do it, and only for whole downloads; downloads that are resumed, segmented
+	 * or revalidated, and those of other engines, are saved and unzipped as in <code>INLINE</code> mode.
+	 * Since no zip file is kept, a book cannot be found as downloaded by a later run, unless it is resumed.
+	 */
+	STREAMING;
+
+}
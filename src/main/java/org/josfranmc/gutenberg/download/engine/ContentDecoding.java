@@ -0,0 +1,104 @@
+/*
+ *  Copyright (C) 2018-2019 Jose Francisco Mena Ceca <josfranmc@gmail.com>
+ *
+ *  This file is part of JGutenbergDownload.
+ *
+ *  JGutenbergDownload is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  JGutenbergDownload is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with JGutenbergDownload.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package org.josfranmc.gutenberg.download.engine;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PushbackInputStream;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * Decodes the body of a response according to its Content-Encoding header field, while it is read.<p>
+ * Supported encodings are <i>gzip</i> (and <i>x-gzip</i>) and <i>deflate</i>. Since some servers send <i>deflate</i> bodies without
+ * the zlib wrapper required by the HTTP specification, both forms are accepted. Bodies with an unknown encoding are not decoded.
+ * @author Jose Francisco Mena Ceca
+ * @version 2.1
+ */
+final class ContentDecoding {
+
+	private static final Logger log = LogManager.getLogger(ContentDecoding.class);
+	
+	
+	private ContentDecoding() {
+		throw new IllegalStateException("Cannot instantiate class");
+	}
+	
+	/**
+	 * @param contentEncoding value of the Content-Encoding header field
+	 * @return <i>true</i> if the body has been encoded by the server, <i>false</i> otherwise
+	 */
+	static boolean isEncoded(String contentEncoding) {
+		return contentEncoding != null && !contentEncoding.trim().isEmpty() && !contentEncoding.trim().equalsIgnoreCase("identity");
+	}
+	
+	/**
+	 * Returns a stream that decodes the body of a response as it is read. Closing the stream closes the body too.
+	 * @param body body of the response
+	 * @param contentEncoding value of the Content-Encoding header field
+	 * @param bufferSize size of the buffer used to read the encoded body, in bytes
+	 * @return the decoded body, or <code>body</code> if it is not encoded or the encoding is unknown
+	 * @throws IOException if the body cannot be read
+	 */
+	static InputStream decode(InputStream body, String contentEncoding, int bufferSize) throws IOException {
+		if (!isEncoded(contentEncoding)) {
+			return body;
+		}
+		String encoding = contentEncoding.trim().toLowerCase();
+		if (encoding.equals("gzip") || encoding.equals("x-gzip")) {
+			return new GZIPInputStream(body, bufferSize);
+		} else if (encoding.equals("deflate")) {
+			return inflate(body, bufferSize);
+		}
+		log.warn("[WARN] Unknown content encoding " + contentEncoding + ". Body is saved as received");
+		return body;
+	}
+	
+	/**
+	 * The first two bytes tell whether the body has the zlib wrapper (RFC 1950) or is raw deflate data (RFC 1951).
+	 */
+	private static InputStream inflate(InputStream body, int bufferSize) throws IOException {
+		PushbackInputStream pushback = new PushbackInputStream(body, 2);
+		byte[] header = new byte[2];
+		int read = 0;
+		int n = 0;
+		while (read < 2 && (n = pushback.read(header, read, 2 - read)) >= 0) {
+			read += n;
+		}
+		pushback.unread(header, 0, read);
+		boolean zlibWrapped = read == 2 && (header[0] & 0x0f) == 8 && (((header[0] & 0xff) << 8) | (header[1] & 0xff)) % 31 == 0;
+		Inflater inflater = new Inflater(!zlibWrapped);
+		return new InflaterInputStream(pushback, inflater, bufferSize) {
+			private boolean closed = false;
+			
+			@Override
+			public void close() throws IOException {
+				if (!closed) {
+					closed = true;
+					inflater.end();
+					super.close();
+				}
+			}
+		};
+	}
+}
@@ -0,0 +1,107 @@
+/*
+ *  Copyright (C) 2018-2019 Jose Francisco Mena Ceca <josfranmc@gmail.com>
+ *
+ *  This file is part of JGutenbergDownload.
+ *
+ *  JGutenbergDownload is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  JGutenbergDownload is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with JGutenbergDownload.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package org.josfranmc.gutenberg.download.engine;
+
+import java.security.KeyManagementException;
+import java.security.SecureRandom;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.net.ssl.KeyManager;
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLContextSpi;
+import javax.net.ssl.SSLEngine;
+import javax.net.ssl.SSLParameters;
+import javax.net.ssl.SSLServerSocketFactory;
+import javax.net.ssl.SSLSessionContext;
+import javax.net.ssl.SSLSocketFactory;
+import javax.net.ssl.TrustManager;
+
+/**
+ * <code>SSLContext</code> that delegates on another, already initialized, context and counts the TLS connections created through it.<br>
+ * Clients that manage their own connections (as <code>java.net.http.HttpClient</code>) create one <code>SSLEngine</code> per connection.
+ * @author Jose Francisco Mena Ceca
+ * @version 2.1
+ * @see DownloadSession
+ */
+class CountingSSLContext extends SSLContext {
+
+	CountingSSLContext(SSLContext delegate, AtomicLong counter) {
+		super(new CountingSSLContextSpi(delegate, counter), delegate.getProvider(), delegate.getProtocol());
+	}
+	
+	private static class CountingSSLContextSpi extends SSLContextSpi {
+
+		private final SSLContext delegate;
+		
+		private final AtomicLong counter;
+		
+		
+		CountingSSLContextSpi(SSLContext delegate, AtomicLong counter) {
+			this.delegate = delegate;
+			this.counter = counter;
+		}
+		
+		@Override
+		protected void engineInit(KeyManager[] km, TrustManager[] tm, SecureRandom sr) throws KeyManagementException {
+			throw new KeyManagementException("Context is already initialized");
+		}
+
+		@Override
+		protected SSLSocketFactory engineGetSocketFactory() {
+			return new CountingSSLSocketFactory(delegate.getSocketFactory(), counter);
+		}
+
+		@Override
+		protected SSLServerSocketFactory engineGetServerSocketFactory() {
+			return delegate.getServerSocketFactory();
+		}
+
+		@Override
+		protected SSLEngine engineCreateSSLEngine() {
+			counter.incrementAndGet();
+			return delegate.createSSLEngine();
+		}
+
+		@Override
+		protected SSLEngine engineCreateSSLEngine(String host, int port) {
+			counter.incrementAndGet();
+			return delegate.createSSLEngine(host, port);
+		}
+
+		@Override
+		protected SSLSessionContext engineGetServerSessionContext() {
+			return delegate.getServerSessionContext();
+		}
+
+		@Override
+		protected SSLSessionContext engineGetClientSessionContext() {
+			return delegate.getClientSessionContext();
+		}
+		
+		@Override
+		protected SSLParameters engineGetDefaultSSLParameters() {
+			return delegate.getDefaultSSLParameters();
+		}
+		
+		@Override
+		protected SSLParameters engineGetSupportedSSLParameters() {
+			return delegate.getSupportedSSLParameters();
+		}
+	}
+}
@@ -0,0 +1,97 @@
+/*
+ *  Copyright (C) 2018-2019 Jose Francisco Mena Ceca <josfranmc@gmail.com>
+ *
+ *  This file is part of JGutenbergDownload.
+ *
+ *  JGutenbergDownload is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  JGutenbergDownload is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with JGutenbergDownload.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package org.josfranmc.gutenberg.download.engine;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.net.ssl.SSLSocketFactory;
+
+/**
+ * <code>SSLSocketFactory</code> that delegates on another factory and counts the sockets created.<br>
+ * Every socket created corresponds to a new TLS connection, so connections reused from the keep-alive cache are not counted.
+ * @author Jose Francisco Mena Ceca
+ * @version 2.1
+ * @see DownloadSession
+ */
+class CountingSSLSocketFactory extends SSLSocketFactory {
+
+	private final SSLSocketFactory delegate;
+	
+	private final AtomicLong counter;
+	
+	
+	CountingSSLSocketFactory(SSLSocketFactory delegate, AtomicLong counter) {
+		this.delegate = delegate;
+		this.counter = counter;
+	}
+
+	private Socket count(Socket socket) {
+		counter.incrementAndGet();
+		return socket;
+	}
+	
+	@Override
+	public String[] getDefaultCipherSuites() {
+		return delegate.getDefaultCipherSuites();
+	}
+
+	@Override
+	public String[] getSupportedCipherSuites() {
+		return delegate.getSupportedCipherSuites();
+	}
+
+	@Override
+	public Socket createSocket() throws IOException {
+		return count(delegate.createSocket());
+	}
+	
+	@Override
+	public Socket createSocket(Socket s, String host, int port, boolean autoClose) throws IOException {
+		return count(delegate.createSocket(s, host, port, autoClose));
+	}
+
+	@Override
+	public Socket createSocket(Socket s, InputStream consumed, boolean autoClose) throws IOException {
+		return count(delegate.createSocket(s, consumed, autoClose));
+	}
+	
+	@Override
+	public Socket createSocket(String host, int port) throws IOException {
+		return count(delegate.createSocket(host, port));
+	}
+
+	@Override
+	public Socket createSocket(InetAddress host, int port) throws IOException {
+		return count(delegate.createSocket(host, port));
+	}
+
+	@Override
+	public Socket createSocket(String host, int port, InetAddress localHost, int localPort) throws IOException {
+		return count(delegate.createSocket(host, port, localHost, localPort));
+	}
+
+	@Override
+	public Socket createSocket(InetAddress address, int port, InetAddress localAddress, int localPort) throws IOException {
+		return count(delegate.createSocket(address, port, localAddress, localPort));
+	}
+}
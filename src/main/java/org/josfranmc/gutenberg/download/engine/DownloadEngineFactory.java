@@ -18,8 +18,13 @@
  */
 package org.josfranmc.gutenberg.download.engine;
 
+import java.lang.reflect.InvocationTargetException;
 import java.net.URL;
 
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.josfranmc.gutenberg.download.GutenbergException;
+
 /**
  * Factory for creating <code>IDownloadEngine</code> objects.<br>
  * It make use of the <code>create</code> method. This method is overloaded, so it can be invoked combining three parameters:
@@ -28,11 +33,21 @@ import java.net.URL;
  * <li><i>savePath</i>: local path where to save download</li>
  * <li><i>type</i>: engine type for downloading (for default <code>DownloadEngineType.HTTTP_CONNECTION</code> is used)</li>
  * </ul>
+ * Engines that take part in the same download process should be created with the same <code>DownloadSession</code>, so they share connections.
+ * If the session retries failed downloads, the engine is wrapped in an engine that applies its retry policy and circuit breaker.
+ * @see DownloadSession
  * @author Jose Francisco Mena Ceca
  * @version 2.1
  */
 public class DownloadEngineFactory {
 
+	private static final Logger log = LogManager.getLogger(DownloadEngineFactory.class);
+	
+	/**
+	 * Engine based on <code>java.net.http.HttpClient</code>. It is compiled for Java 11, so it is loaded by name to keep this class runnable on Java 8
+	 */
+	private static final String HTTP_CLIENT_ENGINE = "org.josfranmc.gutenberg.download.engine.DownloadHttpClient";
+
 	DownloadEngineFactory() {
 		throw new IllegalStateException("Cannot instantiate class");
 	}
@@ -42,7 +57,7 @@ public class DownloadEngineFactory {
 	 * @return a download engine
 	 */
 	public static IDownloadEngine create() {
-		return createDownloadEngine(null, null, DownloadEngineType.HTTP_CONNECTION);
+		return createDownloadEngine(null, null, DownloadEngineType.HTTP_CONNECTION, null);
 	}
 	
 	/**
@@ -52,7 +67,7 @@ public class DownloadEngineFactory {
 	 * @return a download engine in the form of a <code>IDownloadEngine</code> object
 	 */
 	public static IDownloadEngine create(DownloadEngineType type) {
-		return createDownloadEngine(null, null, type);
+		return createDownloadEngine(null, null, type, null);
 	}
 
 	/**
@@ -63,7 +78,7 @@ public class DownloadEngineFactory {
 	 * @return a download engine in the form of a <code>IDownloadEngine</code> object
 	 */
 	public static IDownloadEngine create(URL target, DownloadEngineType type) {
-		return createDownloadEngine(target, null, type);
+		return createDownloadEngine(target, null, type, null);
 	}
 	
 	/**
@@ -72,7 +87,7 @@ public class DownloadEngineFactory {
 	 * @return a download engine in the form of a <code>IDownloadEngine</code> object
 	 */
 	public static IDownloadEngine create(URL target) {
-		return createDownloadEngine(target, null, DownloadEngineType.HTTP_CONNECTION);
+		return createDownloadEngine(target, null, DownloadEngineType.HTTP_CONNECTION, null);
 	}
 
 	/**
@@ -83,9 +98,21 @@ public class DownloadEngineFactory {
 	 * @return a download engine in the form of a <code>IDownloadEngine</code> object
 	 */
 	public static IDownloadEngine create(URL target, String savePath, DownloadEngineType type) {
-		return createDownloadEngine(target, savePath, type);
+		return createDownloadEngine(target, savePath, type, null);
 	}
  	
+	/**
+	 * Creates an engine for downloading that shares the transport of a session.
+	 * @param target the url address to download
+	 * @param savePath local path where to save download
+	 * @param type engine type for downloading
+	 * @param session transport shared with other engines (if null, the default session is used)
+	 * @return a download engine in the form of a <code>IDownloadEngine</code> object
+	 */
+	public static IDownloadEngine create(URL target, String savePath, DownloadEngineType type, DownloadSession session) {
+		return createDownloadEngine(target, savePath, type, session);
+	}
+	
 	/**
 	 * Creates an engine for downloading. Engine type is <code>DownloadEngineType.HTTP_CONNECTION.</code><br>
 	 * @param target the url address to download
@@ -93,18 +120,49 @@ public class DownloadEngineFactory {
 	 * @return a download engine in the form of a <code>IDownloadEngine</code> object
 	 */
 	public static IDownloadEngine create(URL target, String savePath) {
-		return createDownloadEngine(target, savePath, DownloadEngineType.HTTP_CONNECTION);
+		return createDownloadEngine(target, savePath, DownloadEngineType.HTTP_CONNECTION, null);
 	}
 	
 	/**
 	 * Creates an engine for downloading.<p>
-	 * por ahora type solo puede tomar el valor DownloadEngineType.HTTP_CONNECTION por lo que creamos directamente un objeto de esta clase
+	 * If type is <code>null</code> a <code>DownloadEngineType.HTTP_CONNECTION</code> engine is created.
+	 * If type is <code>DownloadEngineType.HTTP_CLIENT</code> but the running JVM does not provide <code>java.net.http</code> (Java 8),
+	 * a <code>DownloadEngineType.HTTP_CONNECTION</code> engine is created instead.
 	 * @param target the url address to download
 	 * @param savePath local path where to save download
 	 * @param type engine type for downloading
+	 * @param session transport shared with other engines
 	 * @return a download engine in the form of a <code>IDownloadEngine</code> object
 	 */
-	private static IDownloadEngine createDownloadEngine(URL target, String savePath, DownloadEngineType type) {
-		return DownloadHttpUrlConnection.newInstance(target, savePath);
+	private static IDownloadEngine createDownloadEngine(URL target, String savePath, DownloadEngineType type, DownloadSession session) {
+		IDownloadEngine engine = null;
+		if (type == DownloadEngineType.HTTP_CLIENT) {
+			engine = createHttpClientEngine(target, savePath, session);
+		}
+		if (engine == null) {
+			engine = DownloadHttpUrlConnection.newInstance(target, savePath, session);
+		}
+		if (session != null && session.isRetrying()) {
+			engine = new RetryingDownloadEngine(engine, session);
+		}
+		return (session != null && session.getMirrorSelector() != null) ? new MirrorDownloadEngine(engine, session.getMirrorSelector()) : engine;
+	}
+	
+	private static IDownloadEngine createHttpClientEngine(URL target, String savePath, DownloadSession session) {
+		IDownloadEngine engine = null;
+		try {
+			Class<?> engineClass = Class.forName(HTTP_CLIENT_ENGINE);
+			engine = (IDownloadEngine) engineClass.getMethod("newInstance", URL.class, String.class, DownloadSession.class).invoke(null, target, savePath, session);
+		} catch (ClassNotFoundException | LinkageError e) {
+			log.warn("[WARN] HTTP_CLIENT engine needs Java 11 or higher. Using HTTP_CONNECTION engine");
+		} catch (InvocationTargetException e) {
+			if (e.getCause() instanceof RuntimeException) {
+				throw (RuntimeException) e.getCause();
+			}
+			throw new GutenbergException("org.josfranmc.gutenberg.GutenbergException: Cannot create HTTP_CLIENT engine", e.getCause());
+		} catch (ReflectiveOperationException e) {
+			throw new GutenbergException("org.josfranmc.gutenberg.GutenbergException: Cannot create HTTP_CLIENT engine", e);
+		}
+		return engine;
 	}
-}
\ No newline at end of file
+}
@@ -28,6 +28,12 @@ public enum DownloadEngineType {
 	/**
 	 * Downloads based on the <code>java.net.HttpURLConnection</code> object
 	 */
-	HTTP_CONNECTION;
+	HTTP_CONNECTION,
+	
+	/**
+	 * Downloads based on a shared <code>java.net.http.HttpClient</code> object (requires Java 11 or higher).<br>
+	 * HTTP/2 is negotiated when the server supports it, so concurrent downloads from the same host are multiplexed over a few connections.
+	 */
+	HTTP_CLIENT;
 
 }
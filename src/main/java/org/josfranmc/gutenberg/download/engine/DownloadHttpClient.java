@@ -0,0 +1,472 @@
+/*
+ *  Copyright (C) 2018-2019 Jose Francisco Mena Ceca <josfranmc@gmail.com>
+ *
+ *  This file is part of JGutenbergDownload.
+ *
+ *  JGutenbergDownload is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  JGutenbergDownload is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with JGutenbergDownload.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package org.josfranmc.gutenberg.download.engine;
+
+import java.io.IOException;
+import java.net.ConnectException;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.net.http.HttpClient;
+import java.net.http.HttpConnectTimeoutException;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.net.http.HttpResponse.BodyHandler;
+import java.net.http.HttpResponse.BodySubscriber;
+import java.net.http.HttpResponse.BodySubscribers;
+import java.net.http.HttpResponse.ResponseInfo;
+import java.nio.ByteBuffer;
+import java.nio.channels.UnresolvedAddressException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Flow;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.josfranmc.gutenberg.download.GutenbergException;
+import org.josfranmc.gutenberg.util.FileManager;
+
+/**
+ * Allows to download a resource identified by an url and save it in a local folder.<br>
+ * It makes use of the <code>java.net.http.HttpClient</code> class for downloading. All instances created with the same
+ * <code>DownloadSession</code> share the same client, so connections and TLS sessions are reused between downloads and,
+ * when the server supports HTTP/2, concurrent downloads from the same host are multiplexed over a single connection.<p>
+ * This class requires Java 11 or higher. It should be obtained through <code>DownloadEngineFactory</code> with
+ * <code>DownloadEngineType.HTTP_CLIENT</code>.
+ * @author Jose Francisco Mena Ceca
+ * @version 2.1
+ * @see IDownloadEngine
+ * @see DownloadEngineFactory
+ * @see GutenbergException
+ */
+public class DownloadHttpClient implements IDownloadEngine {
+
+	private static final Logger log = LogManager.getLogger(DownloadHttpClient.class);
+
+	private static final int HTTP_PARTIAL = 206;
+
+	private static final int HTTP_NOT_MODIFIED = 304;
+
+	private static final int HTTP_RANGE_NOT_SATISFIABLE = 416;
+
+	/**
+	 * the url of the resource to download
+	 */
+	private URL resource;
+
+	/**
+	 * local path where to save the resource to be download
+	 */
+	private String savePath;
+
+	/**
+	 * transport shared with other engines
+	 */
+	private DownloadSession session;
+
+	/**
+	 * receives the progress of the transfer, if not null
+	 */
+	private TransferListener transferListener;
+
+
+	/**
+	 * Initializes an object with the url of the resource to download and the path where to save it.
+	 * @param target resource url to download
+	 * @param savePath path where to save the download
+	 * @param session transport shared with other engines
+	 */
+	private DownloadHttpClient(URL target, String savePath, DownloadSession session) {
+		setSavePath(savePath);
+		setResource(target);
+		this.session = (session == null) ? DownloadSession.getDefault() : session;
+	}
+
+	/**
+	 * Creates a <code>DownloadHttpClient</code> object which is an <code>IDownloadEngine</code> type instance.
+	 * @param target resource url to download
+	 * @param savePath path where to save the download
+	 * @return an <code>IDownloadEngine</code> instance in the form of a <code>DownloadHttpClient</code>
+	 * @see IDownloadEngine
+	 */
+	public static IDownloadEngine newInstance(URL target, String savePath) {
+		return new DownloadHttpClient(target, savePath, null);
+	}
+
+	/**
+	 * Creates a <code>DownloadHttpClient</code> object which is an <code>IDownloadEngine</code> type instance.
+	 * @param target resource url to download
+	 * @param savePath path where to save the download
+	 * @param session transport shared with other engines
+	 * @return an <code>IDownloadEngine</code> instance in the form of a <code>DownloadHttpClient</code>
+	 * @see IDownloadEngine
+	 * @see DownloadSession
+	 */
+	public static IDownloadEngine newInstance(URL target, String savePath, DownloadSession session) {
+		return new DownloadHttpClient(target, savePath, session);
+	}
+
+	/**
+	 * @return the client shared by all the engines of the session, created the first time it is needed
+	 */
+	private HttpClient getClient() {
+		return session.getTransport(() -> HttpClient.newBuilder()
+				.version(HttpClient.Version.HTTP_2)
+				.followRedirects(HttpClient.Redirect.NORMAL)
+				.connectTimeout(Duration.ofMillis(5000))
+				.sslContext(session.getSSLContext())
+				.build());
+	}
+
+	/**
+	 * Builds the request to send. Headers managed by the client itself (Host, Connection, ...) cannot be set.<br>
+	 * Compressed bodies are not asked for, since the client writes the body to disk as it arrives, without decoding it.
+	 * @param target url to request
+	 * @return a GET request for the url
+	 * @throws URISyntaxException if the url cannot be converted to an URI
+	 */
+	private HttpRequest buildRequest(URL target, PartialDownload partialDownload, ValidatorStore validators, String outputFilePath) throws URISyntaxException {
+		HttpRequest.Builder builder = HttpRequest.newBuilder(target.toURI())
+				.GET()
+				.header("User-Agent", "Mozilla/5.0 (Windows NT 6.3; Win64; x64; rv:58.0) Gecko/20100101 Firefox/58.0")
+				.header("Accept", "text/html,application/xhtml+xml,application/xml;q=0.9,*/*;q=0.8")
+				.header("Accept-Language", "es-ES,es;q=0.8,en-US;q=0.5,en;q=0.3")
+				.header("Upgrade-Insecure-Requests", "1")
+				.header("Cookie", "d404660c5ddf0ca6f3e484fe85677673c4a94196");
+		long offset = partialDownload.getResumeOffset();
+		if (offset > 0) {
+			builder.header("Range", "bytes=" + offset + "-").header("If-Range", partialDownload.getLastModified());
+		} else if (validators != null) {
+			validators.conditionalHeaders(Paths.get(outputFilePath)).forEach(builder::header);
+		}
+		return builder.build();
+	}
+
+	/**
+	 * The body of a successful response is written to the <i>.part</i> file as it arrives: at the end of the file if the response
+	 * continues the bytes already downloaded, or replacing its content if the response sends the whole resource.
+	 * The body of an error response, of a 304 Not Modified response, or of a partial response that does not continue the download, is discarded.<br>
+	 * The bytes of a saved body are reported to the transfer listener, if any.
+	 * @param partialDownload state of the download
+	 * @param offset number of bytes already downloaded
+	 * @return the handler for the body of the response
+	 */
+	private BodyHandler<Path> bodyHandler(PartialDownload partialDownload, long offset) {
+		Path partFile = partialDownload.getPartFile();
+		TransferListener listener = transferListener;
+		return responseInfo -> {
+			int statusCode = responseInfo.statusCode();
+			if (statusCode == HTTP_PARTIAL && offset > 0
+					&& PartialDownload.continuesAt(responseInfo.headers().firstValue("Content-Range").orElse(null), offset)) {
+				return reportingProgress(BodySubscribers.ofFile(partFile, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND), 
+						responseInfo, listener);
+			} else if (statusCode < 400 && statusCode != HTTP_PARTIAL && statusCode != HTTP_NOT_MODIFIED) {
+				if (ContentDecoding.isEncoded(responseInfo.headers().firstValue("Content-Encoding").orElse(""))) {
+					partialDownload.begin("", "");
+				} else {
+					partialDownload.begin(responseInfo.headers().firstValue("Last-Modified").orElse(""),
+							responseInfo.headers().firstValue("Content-Length").orElse(""));
+				}
+				return reportingProgress(BodySubscribers.ofFile(partFile, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING), 
+						responseInfo, listener);
+			}
+			return BodySubscribers.replacing(null);
+		};
+	}
+
+	private static BodySubscriber<Path> reportingProgress(BodySubscriber<Path> subscriber, ResponseInfo responseInfo, TransferListener listener) {
+		if (listener == null) {
+			return subscriber;
+		}
+		listener.transferStarted(responseInfo.headers().firstValueAsLong("Content-Length").orElse(-1));
+		return new ProgressSubscriber(subscriber, listener);
+	}
+
+	/**
+	 * Reports the bytes of every block of the body to a <code>TransferListener</code>, before handing it to the subscriber that saves it
+	 */
+	private static class ProgressSubscriber implements BodySubscriber<Path> {
+
+		private final BodySubscriber<Path> delegate;
+
+		private final TransferListener listener;
+
+		ProgressSubscriber(BodySubscriber<Path> delegate, TransferListener listener) {
+			this.delegate = delegate;
+			this.listener = listener;
+		}
+
+		@Override
+		public CompletionStage<Path> getBody() {
+			return delegate.getBody();
+		}
+
+		@Override
+		public void onSubscribe(Flow.Subscription subscription) {
+			delegate.onSubscribe(subscription);
+		}
+
+		@Override
+		public void onNext(List<ByteBuffer> item) {
+			long bytes = 0;
+			for (ByteBuffer buffer : item) {
+				bytes += buffer.remaining();
+			}
+			listener.bytesTransferred(bytes);
+			delegate.onNext(item);
+		}
+
+		@Override
+		public void onError(Throwable throwable) {
+			delegate.onError(throwable);
+		}
+
+		@Override
+		public void onComplete() {
+			delegate.onComplete();
+		}
+	}
+
+	/**
+	 * @return <i>true</i> if the bytes already downloaded cannot be used with the response received, so the download has to start again
+	 */
+	private boolean mustRestart(HttpResponse<Path> response, long offset) {
+		return offset > 0 && (response.statusCode() == HTTP_RANGE_NOT_SATISFIABLE
+				|| (response.statusCode() == HTTP_PARTIAL && response.body() == null));
+	}
+
+	private DownloadResult toDownloadResult(URL target, HttpResponse<Path> response, PartialDownload partialDownload, 
+			ValidatorStore validators, String outputFilePath) throws IOException {
+		if (response.statusCode() >= 400) {
+			throw new HttpStatusException(response.statusCode(), target, response.headers().firstValue("Retry-After").orElse(null));
+		}
+		DownloadResult downloadResult = new DownloadResult();
+		downloadResult.setHeaders(response.headers().map());
+		downloadResult.setSavedFilePath(outputFilePath);
+		if (response.statusCode() == HTTP_NOT_MODIFIED) {
+			downloadResult.setNotModified(true);
+			log.debug("[DEBUG] Sin cambios \"" + FileManager.getLocalFileName(outputFilePath) + "\" en " + getSavePath());
+			return downloadResult;
+		}
+		partialDownload.complete();
+		if (validators != null) {
+			validators.record(Paths.get(outputFilePath), downloadResult.getETag(), downloadResult.getLastModified());
+		}
+
+		log.debug("[DEBUG] Descargado \"" + FileManager.getLocalFileName(outputFilePath) + "\" en " + getSavePath() + " (" + response.version() + ")");
+		log.debug("[DEBUG] Tipo: " + downloadResult.getContentType() + "  Longitud: " + downloadResult.getContentLength());
+		return downloadResult;
+	}
+
+	/**
+	 * Deals with an error downloading. Timeouts only are logged; the rest of errors are thrown as <code>GutenbergException</code>.
+	 * @param error error produced
+	 * @return an empty result, if the download can be ignored
+	 * @throws GutenbergException if the error cannot be ignored
+	 */
+	private DownloadResult handleError(Throwable error) {
+		Throwable e = (error instanceof CompletionException && error.getCause() != null) ? error.getCause() : error;
+		if (e instanceof HttpConnectTimeoutException) {
+			log.warn("Download timeout exceeded");
+		} else if (e instanceof ConnectException && e.getCause() instanceof UnresolvedAddressException) {
+			log.error("[ERROR] UnknownHostException in download engine");
+			throw new GutenbergException("org.josfranmc.gutenberg.GutenbergException: UnknownHostException in download engine", e);
+		} else if (e instanceof ConnectException) {
+			log.warn("Download timeout exceeded");
+		} else if (e instanceof IOException) {
+			log.error("[ERROR] IOException in download engine");
+			throw new GutenbergException("org.josfranmc.gutenberg.GutenbergException: IOException in download engine", e);
+		} else if (e instanceof URISyntaxException) {
+			log.error("[ERROR] URISyntaxException in download engine");
+			throw new GutenbergException("org.josfranmc.gutenberg.GutenbergException: URISyntaxException in download engine", e);
+		} else if (e instanceof RuntimeException) {
+			throw (RuntimeException) e;
+		} else {
+			throw new GutenbergException("org.josfranmc.gutenberg.GutenbergException: Error in download engine", e);
+		}
+		return new DownloadResult();
+	}
+
+	/**
+	 * Runs a download.<p>
+	 * Previously, it has been necessary to indicate the url address of the resource to download and the path of the folder in which to save it.<br>
+	 * If the download is correct a new file in the indicated folder is obtained. The file name is extracted from download link,
+	 * beginning from the last directory separator character.<br>
+	 * The body of an error response is discarded, so it is not saved as a file.<br>
+	 * The bytes are written to a <i>.part</i> file which is renamed when the transfer is complete. If a previous attempt
+	 * was interrupted, the download is resumed from the bytes already saved (see <code>PartialDownload</code>).<br>
+	 * If the session revalidates files, a file already downloaded is requested with its validators; when the server answers
+	 * 304 Not Modified the local file is kept and the result is marked as not modified.
+	 * @return the result of the download in the form of a DownloadResult object
+	 * @throws GutenbergException if there is any error downloading
+	 * @see DownloadResult
+	 */
+	@Override
+	public DownloadResult download() {
+
+		DownloadResult downloadResult = new DownloadResult();
+
+		if (getResource() != null && getSavePath() != null) {
+			URL target = getResource();
+			try {
+				String outputFilePath = FileManager.getLocalFilePathFromURL(getSavePath(), target.toString());
+				PartialDownload partialDownload = new PartialDownload(outputFilePath);
+				long offset = partialDownload.getResumeOffset();
+				ValidatorStore validators = session.isRevalidate() ? session.getValidatorStore(getSavePath()) : null;
+				HttpRequest request = buildRequest(target, partialDownload, validators, outputFilePath);
+				session.acquirePermit(target);
+				requestSent(target);
+				HttpResponse<Path> response = getClient().send(request, bodyHandler(partialDownload, offset));
+				if (mustRestart(response, offset)) {
+					restart(partialDownload, outputFilePath);
+					return download();
+				}
+				downloadResult = toDownloadResult(target, response, partialDownload, validators, outputFilePath);
+			} catch (IOException | URISyntaxException e) {
+				downloadResult = handleError(e);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new GutenbergException("org.josfranmc.gutenberg.GutenbergException: Download interrupted", e);
+			}
+		} else {
+			log.warn("[WARN] ENGINE It must be indicated resource and route where to obtain the download");
+		}
+		return downloadResult;
+	}
+
+	/**
+	 * Runs a download without blocking the calling thread.<p>
+	 * The request is sent asynchronously and the body is written to disk as it arrives, so no thread is parked while waiting for
+	 * the network and the executor is not used. The resource and the save path are read when this method is called.
+	 * @param executor not used, since this engine does not need to run blocking work
+	 * @return a future with the result of the download
+	 * @see DownloadResult
+	 */
+	@Override
+	public CompletableFuture<DownloadResult> downloadAsync(Executor executor) {
+		if (getResource() == null || getSavePath() == null) {
+			log.warn("[WARN] ENGINE It must be indicated resource and route where to obtain the download");
+			return CompletableFuture.completedFuture(new DownloadResult());
+		}
+		URL target = getResource();
+		String outputFilePath = FileManager.getLocalFilePathFromURL(getSavePath(), target.toString());
+		PartialDownload partialDownload = new PartialDownload(outputFilePath);
+		long offset = partialDownload.getResumeOffset();
+		ValidatorStore validators = session.isRevalidate() ? session.getValidatorStore(getSavePath()) : null;
+		HttpRequest request;
+		try {
+			request = buildRequest(target, partialDownload, validators, outputFilePath);
+		} catch (URISyntaxException e) {
+			return CompletableFuture.supplyAsync(() -> handleError(e), Runnable::run);
+		}
+		return sendWhenPermitted(target, request, bodyHandler(partialDownload, offset)).thenCompose(response -> {
+			if (mustRestart(response, offset)) {
+				restart(partialDownload, outputFilePath);
+				return downloadAsync(executor);
+			}
+			try {
+				return CompletableFuture.completedFuture(toDownloadResult(target, response, partialDownload, validators, outputFilePath));
+			} catch (IOException e) {
+				throw new CompletionException(e);
+			}
+		}).exceptionally(this::handleError);
+	}
+
+	/**
+	 * Sends a request asynchronously once the rate limit of the session allows it. The wait is scheduled, so no thread is blocked.
+	 */
+	private CompletableFuture<HttpResponse<Path>> sendWhenPermitted(URL target, HttpRequest request, BodyHandler<Path> bodyHandler) {
+		long wait = session.reservePermit(target);
+		if (wait <= 0) {
+			requestSent(target);
+			return getClient().sendAsync(request, bodyHandler);
+		}
+		return CompletableFuture.runAsync(() -> requestSent(target), CompletableFuture.delayedExecutor(wait, TimeUnit.NANOSECONDS))
+				.thenCompose(v -> getClient().sendAsync(request, bodyHandler));
+	}
+
+	/**
+	 * Counts a request on the session and reports it to the transfer listener, if any
+	 */
+	private void requestSent(URL target) {
+		session.requestSent(target);
+		TransferListener listener = transferListener;
+		if (listener != null) {
+			listener.requestSent();
+		}
+	}
+
+	/**
+	 * Discards the bytes already downloaded, so the download starts again from the beginning
+	 */
+	private void restart(PartialDownload partialDownload, String outputFilePath) {
+		log.warn("[WARN] Cannot resume \"" + FileManager.getLocalFileName(outputFilePath) + "\". Download starts again");
+		partialDownload.discard();
+	}
+
+	/**
+	 * Sets a listener that receives the progress of the transfer. The bytes reported are the bytes received, as they are saved.
+	 * @param listener listener of the transfer, or null to stop reporting progress
+	 */
+	@Override
+	public void setTransferListener(TransferListener listener) {
+		this.transferListener = listener;
+	}
+
+	/**
+	 * Sets the resource of the url to download, in the form of a URL object
+	 * @param resource url address
+	 */
+	@Override
+	public void setResource(URL resource) {
+		this.resource = resource;
+	}
+
+	/**
+	 * @return the resource of the url to download, in the form of a URL object
+	 */
+	@Override
+	public URL getResource() {
+		return resource;
+	}
+
+	/**
+	 * Sets the local path where to save the resource to be download
+	 * @param savePath local path
+	 */
+	@Override
+	public void setSavePath(String savePath) {
+		this.savePath = (savePath == null) ? System.getProperty("user.dir") : savePath;
+	}
+
+	/**
+	 * @return the local path where to save the resource to be download
+	 */
+	@Override
+	public String getSavePath() {
+		return savePath;
+	}
+}
@@ -21,8 +21,6 @@
  */
 package org.josfranmc.gutenberg.download.engine;
 
-import java.io.BufferedOutputStream;
-import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.net.ConnectException;
@@ -30,11 +28,20 @@ import java.net.HttpURLConnection;
 import java.net.ProtocolException;
 import java.net.URL;
 import java.net.UnknownHostException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+
+import javax.net.ssl.HttpsURLConnection;
 
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import org.josfranmc.gutenberg.download.GutenbergException;
 import org.josfranmc.gutenberg.util.FileManager;
+import org.josfranmc.gutenberg.util.FileScraping;
 
 /**
  * Allows to download a resource identified by an url and save it in a local folder.<br>
@@ -48,6 +55,8 @@ public class DownloadHttpUrlConnection implements IDownloadEngine {
 	
 	private static final Logger log = LogManager.getLogger(DownloadHttpUrlConnection.class);
 	
+	private static final int HTTP_RANGE_NOT_SATISFIABLE = 416;
+	
 	/**
 	 * the url of the resource to download
 	 */
@@ -57,16 +66,28 @@ public class DownloadHttpUrlConnection implements IDownloadEngine {
 	 * local path where to save the resource to be download
 	 */
 	private String savePath;
+	
+	/**
+	 * transport shared with other engines
+	 */
+	private DownloadSession session;
+	
+	/**
+	 * receives the progress of the transfer, if not null
+	 */
+	private TransferListener transferListener;
 
     
 	/**
 	 * Initializes an object with the url of the resource to download and the path where to save it.
 	 * @param target resource url to download
 	 * @param savePath path where to save the download
+	 * @param session transport shared with other engines
 	 */
-	private DownloadHttpUrlConnection(URL target, String savePath) {
+	private DownloadHttpUrlConnection(URL target, String savePath, DownloadSession session) {
     	setSavePath(savePath);
     	setResource(target);
+    	this.session = (session == null) ? DownloadSession.getDefault() : session;
     }
 	
 	/**
@@ -77,7 +98,49 @@ public class DownloadHttpUrlConnection implements IDownloadEngine {
 	 * @see IDownloadEngine
 	 */
 	public static IDownloadEngine newInstance(URL target, String savePath) {
-		return new DownloadHttpUrlConnection(target, savePath);
+		return new DownloadHttpUrlConnection(target, savePath, null);
+	}
+	
+	/**
+	 * Creates a <code>DownloadHttpUrlConnection</code> object which is an <code>IDownloadEngine</code> type instance.
+	 * @param target resource url to download
+	 * @param savePath path where to save the download
+	 * @param session transport shared with other engines
+	 * @return an <code>IDownloadEngine</code> instance in the form of a <code>DownloadHttpUrlConnection</code>
+	 * @see IDownloadEngine
+	 * @see DownloadSession
+	 */
+	public static IDownloadEngine newInstance(URL target, String savePath, DownloadSession session) {
+		return new DownloadHttpUrlConnection(target, savePath, session);
+	}
+	
+	/**
+	 * Opens a connection to the resource, once the rate limit of the session allows it.
+	 * Secure connections are created through the session, so they can be reused by other engines.
+	 * @return the connection to the resource
+	 * @throws IOException
+	 */
+	private HttpURLConnection openConnection() throws IOException {
+		session.acquirePermit(getResource());
+		HttpURLConnection httpConnection = (HttpURLConnection) getResource().openConnection();
+		if (httpConnection instanceof HttpsURLConnection) {
+			((HttpsURLConnection) httpConnection).setSSLSocketFactory(session.getSSLSocketFactory());
+		}
+		session.requestSent(getResource());
+		if (transferListener != null) {
+			transferListener.requestSent();
+		}
+		return httpConnection;
+	}
+	
+	/**
+	 * @return a connection to the resource with the common header values already set
+	 * @throws IOException
+	 */
+	private HttpURLConnection openConfiguredConnection() throws IOException {
+		HttpURLConnection httpConnection = openConnection();
+		configHeader(httpConnection);
+		return httpConnection;
 	}
 	
 	/**
@@ -98,17 +161,47 @@ public class DownloadHttpUrlConnection implements IDownloadEngine {
 		httpConnection.setConnectTimeout(5000);
 	}
 	
+	/**
+	 * Asks only for the bytes not downloaded yet. If the resource has changed since the first attempt, the server sends it whole.<br>
+	 * Only downloads received without compression can be resumed, so the rest of the resource is asked without compression too.
+	 * @param offset number of bytes already downloaded
+	 * @param lastModified value of the Last-Modified header field of the response that began the download
+	 */
+	private void configRangeHeader(HttpURLConnection httpConnection, long offset, String lastModified) {
+		httpConnection.setRequestProperty("Range", "bytes=" + offset + "-");
+		httpConnection.setRequestProperty("If-Range", lastModified);
+		httpConnection.setRequestProperty("Accept-Encoding", "identity");
+	}
+	
 	/**
 	 * Runs a download.<p>
 	 * Previously, it has been necessary to indicate the url address of the resource to download and the path of the folder in which to save it.<br>
      * If the download is correct a new file in the indicated folder is obtained. The file name is extracted from download link,
-     * beginning from the last directory separator character.
+     * beginning from the last directory separator character.<p>
+     * A body compressed by the server (gzip, deflate) is decoded while it is copied, unless the session keeps compressed bodies.<br>
+     * The bytes are written to a <i>.part</i> file which is renamed when the transfer is complete. If a previous attempt
+     * was interrupted, the download is resumed from the bytes already saved (see <code>PartialDownload</code>).<br>
+     * If the session downloads in segments, the first request asks for the first bytes of the resource, and a large resource is fetched
+     * in several ranges at the same time (see <code>SegmentedDownload</code>). A zip resource unzipped while it is received is not
+     * downloaded in segments.<br>
+     * If the session revalidates files, a file already downloaded is requested with its validators; when the server answers
+     * 304 Not Modified the local file is kept and the result is marked as not modified.<br>
+     * If the session has an extract path, a zip resource downloaded whole is unzipped there while it is received, and the zip file is not saved.<p>
+     * The connection is not closed, so it can be reused by later downloads. The body of an error response is read
+     * and discarded for the same purpose.
 	 * @return the result of the download in the form of a DownloadResult object
 	 * @throws GutenbergException if there is any error downloading
 	 * @see DownloadResult
 	 */
 	@Override
 	public DownloadResult download() {
+		return download(true);
+	}
+	
+	/**
+	 * @param segmentable <i>false</i> to download in a single stream, once the server has not answered the first segment as expected
+	 */
+	private DownloadResult download(boolean segmentable) {
 		
 		DownloadResult downloadResult = new DownloadResult();
 		
@@ -116,20 +209,90 @@ public class DownloadHttpUrlConnection implements IDownloadEngine {
 			
 			HttpURLConnection httpConnection = null;
 			try {
-				httpConnection = (HttpURLConnection) getResource().openConnection();
-				configHeader(httpConnection);
-				
 				String outputFilePath = FileManager.getLocalFilePathFromURL(getSavePath(), getResource().toString());
+				PartialDownload partialDownload = new PartialDownload(outputFilePath);
+				long offset = partialDownload.getResumeOffset();
 				
-				InputStream inputStream = httpConnection.getInputStream();
+				ValidatorStore validators = session.isRevalidate() ? session.getValidatorStore(getSavePath()) : null;
+				boolean segmented = segmentable && offset == 0 && session.getSegments() > 1
+						&& !(validators != null && Files.exists(Paths.get(outputFilePath))) && !(validators == null && isZipResource());
 				
-				try (BufferedOutputStream outputFileStream = new BufferedOutputStream (new FileOutputStream(outputFilePath))) {
-
-					copyResource(inputStream, outputFileStream);
+				httpConnection = openConfiguredConnection();
+				if (offset > 0) {
+					configRangeHeader(httpConnection, offset, partialDownload.getLastModified());
+				} else if (segmented) {
+					httpConnection.setRequestProperty("Range", SegmentedDownload.getFirstRange(session));
+				} else if (validators != null) {
+					validators.conditionalHeaders(Paths.get(outputFilePath)).forEach(httpConnection::setRequestProperty);
+				}
+				
+				int responseCode = httpConnection.getResponseCode();
+				if (responseCode == HttpURLConnection.HTTP_NOT_MODIFIED) {
+					discardResponse(httpConnection);
+					downloadResult.setHeaders(httpConnection);
+					downloadResult.setSavedFilePath(outputFilePath);
+					downloadResult.setNotModified(true);
+					log.debug("[DEBUG] Sin cambios \"" + FileManager.getLocalFileName(outputFilePath) + "\" en " + getSavePath());
+					return downloadResult;
+				}
+				if (segmented && responseCode == HttpURLConnection.HTTP_PARTIAL && SegmentedDownload.isFirstSegment(httpConnection)) {
+					DownloadResult segmentedResult = new SegmentedDownload(this::openConfiguredConnection, session, transferListener).download(partialDownload, httpConnection);
+					partialDownload.complete();
+					segmentedResult.setSavedFilePath(outputFilePath);
+					if (validators != null) {
+						validators.record(Paths.get(outputFilePath), segmentedResult.getETag(), segmentedResult.getLastModified());
+					}
+					log.debug("[DEBUG] Descargado \"" + FileManager.getLocalFileName(outputFilePath) + "\" en " + getSavePath());
+					return segmentedResult;
+				}
+				if (segmented && (responseCode == HTTP_RANGE_NOT_SATISFIABLE 
+						|| (responseCode == HttpURLConnection.HTTP_PARTIAL && !SegmentedDownload.isWholeResource(httpConnection)))) {
+					log.debug("[DEBUG] Rango no válido en \"" + FileManager.getLocalFileName(outputFilePath) + "\". Descarga en un solo flujo");
+					discardResponse(httpConnection);
+					return download(false);
+				}
+				boolean resumed = (offset > 0 && responseCode == HttpURLConnection.HTTP_PARTIAL 
+						&& PartialDownload.continuesAt(httpConnection.getHeaderField("Content-Range"), offset));
+				if (offset > 0 && !resumed && (responseCode == HTTP_RANGE_NOT_SATISFIABLE || responseCode == HttpURLConnection.HTTP_PARTIAL)) {
+					log.warn("[WARN] Cannot resume \"" + FileManager.getLocalFileName(outputFilePath) + "\". Download starts again");
+					discardResponse(httpConnection);
+					partialDownload.discard();
+					return download(segmentable);
+				}
+				if (responseCode >= 400) {
+					throw new HttpStatusException(responseCode, getResource(), httpConnection.getHeaderField("Retry-After"));
+				}
+				
+				try (InputStream inputStream = httpConnection.getInputStream()) {
 
 					downloadResult.setHeaders(httpConnection);
+					String contentEncoding = downloadResult.getContentEncoding();
+					if (!resumed && validators == null && isZipResource()) {
+						if (offset > 0) {
+							partialDownload.discard();
+						}
+						return extractResource(inputStream, httpConnection.getContentLengthLong(), contentEncoding, downloadResult);
+					}
+					if (resumed) {
+						log.debug("[DEBUG] Reanudando \"" + FileManager.getLocalFileName(outputFilePath) + "\" desde el byte " + offset);
+					} else if (ContentDecoding.isEncoded(contentEncoding)) {
+						partialDownload.begin("", "");
+					} else {
+						partialDownload.begin(downloadResult.getLastModified(), downloadResult.getContentLength());
+					}
+					if (transferListener != null) {
+						transferListener.transferStarted(httpConnection.getContentLengthLong());
+					}
+					InputStream received = ProgressInputStream.of(inputStream, transferListener);
+					try (InputStream body = session.isKeepCompressed() ? received : ContentDecoding.decode(received, contentEncoding, session.getBufferSize())) {
+						copyResource(body, partialDownload.getPartFile(), resumed);
+					}
+					partialDownload.complete();
 					downloadResult.setSavedFilePath(outputFilePath);	            
 				}
+				if (validators != null) {
+					validators.record(Paths.get(outputFilePath), downloadResult.getETag(), downloadResult.getLastModified());
+				}
 				log.debug("[DEBUG] Descargado \"" + FileManager.getLocalFileName(outputFilePath) + "\" en " + getSavePath());
 				log.debug("[DEBUG] Tipo: " + downloadResult.getContentType() + "  Longitud: " + downloadResult.getContentLength());
 
@@ -139,12 +302,9 @@ public class DownloadHttpUrlConnection implements IDownloadEngine {
 				log.error("[ERROR] UnknownHostException in download engine");
 				throw new GutenbergException("org.josfranmc.gutenberg.GutenbergException: UnknownHostException in download engine", e);
 			} catch (IOException e) {
+				discardResponse(httpConnection);
 				log.error("[ERROR] IOException in download engine");
 				throw new GutenbergException("org.josfranmc.gutenberg.GutenbergException: IOException in download engine", e);
-			} finally {
-				if (httpConnection != null) {
-					httpConnection.disconnect();
-				}
 			}
 		} else {
 			log.warn("[WARN] ENGINE It must be indicated resource and route where to obtain the download");
@@ -152,14 +312,114 @@ public class DownloadHttpUrlConnection implements IDownloadEngine {
 		return downloadResult;
 	}
 
-	private void copyResource(InputStream inputStream, BufferedOutputStream outputFileStream) throws IOException {
-		int offset = 0;
-		final byte[] buffer = new byte[2048];
-		int read = 0;
-		while ((read = inputStream.read(buffer)) >= 0) {
-			outputFileStream.write(buffer, offset, read);
-			outputFileStream.flush();
+	/**
+	 * Downloads a page and passes its links to a consumer as they are received, without saving the page.<br>
+	 * If the response is not accepted as a page, its body is read and discarded.
+	 * @param isPage tells, from the headers of the response, if the resource is a page whose links must be extracted
+	 * @param linkConsumer receives the links of the page, in the order they are found
+	 * @return the result of the download, without saved file path. Without headers if the connection timed out
+	 * @throws GutenbergException if there is any error downloading
+	 */
+	@Override
+	public DownloadResult scrape(Predicate<DownloadResult> isPage, Consumer<String> linkConsumer) {
+		DownloadResult downloadResult = new DownloadResult();
+		if (getResource() == null) {
+			log.warn("[WARN] ENGINE It must be indicated resource to scrape");
+			return downloadResult;
+		}
+		HttpURLConnection httpConnection = null;
+		try {
+			httpConnection = openConfiguredConnection();
+			int responseCode = httpConnection.getResponseCode();
+			if (responseCode >= 400) {
+				throw new HttpStatusException(responseCode, getResource(), httpConnection.getHeaderField("Retry-After"));
+			}
+			downloadResult.setHeaders(httpConnection);
+			if (!isPage.test(downloadResult)) {
+				discardResponse(httpConnection);
+				return downloadResult;
+			}
+			try (InputStream inputStream = httpConnection.getInputStream();
+				 InputStream body = ContentDecoding.decode(ProgressInputStream.of(inputStream, transferListener), downloadResult.getContentEncoding(), session.getBufferSize())) {
+				int links = FileScraping.getLinks(body, linkConsumer);
+				log.debug("[DEBUG] Analizada \"" + getResource() + "\" (" + links + " enlaces)");
+			}
+		} catch (ConnectException e) {
+			log.warn("Download timeout exceeded");
+		} catch (UnknownHostException e) {
+			log.error("[ERROR] UnknownHostException in download engine");
+			throw new GutenbergException("org.josfranmc.gutenberg.GutenbergException: UnknownHostException in download engine", e);
+		} catch (IOException e) {
+			discardResponse(httpConnection);
+			log.error("[ERROR] IOException in download engine");
+			throw new GutenbergException("org.josfranmc.gutenberg.GutenbergException: IOException in download engine", e);
+		}
+		return downloadResult;
+	}
+	
+	private boolean isZipResource() {
+		return session.getExtractPath() != null && getResource().getPath().endsWith(".zip");
+	}
+	
+	/**
+	 * Unzips the body of the response in the extract path of the session, as it is received. The rest of the body after the
+	 * entries of the zip file is read and discarded, so the connection can be reused.
+	 * @throws IOException if the body cannot be read or unzipped; a <code>ZipException</code> if it is not a zip file with some file
+	 * inside, so the download fails and the book is not marked as extracted
+	 */
+	private DownloadResult extractResource(InputStream inputStream, long contentLength, String contentEncoding, DownloadResult downloadResult) throws IOException {
+		if (transferListener != null) {
+			transferListener.transferStarted(contentLength);
+		}
+		try (InputStream body = ContentDecoding.decode(ProgressInputStream.of(inputStream, transferListener), contentEncoding, session.getBufferSize())) {
+			List<String> files = FileManager.unzip(body, session.getExtractPath(), session.getExtractFilter());
+			final byte[] buffer = new byte[2048];
+			while (body.read(buffer) >= 0) {
+				// discard
+			}
+			log.debug("[DEBUG] Descomprimido \"" + FileManager.getLocalFileName(FileManager.getLocalFilePathFromURL(getSavePath(), getResource().toString())) + "\" en " + session.getExtractPath() + " (" + files.size() + " ficheros)");
 		}
+		downloadResult.setSavedFilePath(session.getExtractPath());
+		downloadResult.setExtracted(true);
+		return downloadResult;
+	}
+	
+	/**
+	 * Reads and discards the body of a response that is not going to be saved, so the connection goes back to the keep-alive cache.
+	 * If the body cannot be read the connection is closed.
+	 * @param httpConnection connection with a response
+	 */
+	private void discardResponse(HttpURLConnection httpConnection) {
+		if (httpConnection != null) {
+			try (InputStream bodyStream = (httpConnection.getResponseCode() >= 400) ? httpConnection.getErrorStream() : httpConnection.getInputStream()) {
+				if (bodyStream != null) {
+					final byte[] buffer = new byte[2048];
+					while (bodyStream.read(buffer) >= 0) {
+						// discard
+					}
+				}
+			} catch (IOException e) {
+				httpConnection.disconnect();
+			}
+		}
+	}
+
+	/**
+	 * Copies the body of the response to the local file, in the way and with the buffer size indicated by the session.
+	 * @param append <i>true</i> to add the body at the end of the file, <i>false</i> to replace its content
+	 * @see TransferMode
+	 */
+	private long copyResource(InputStream inputStream, Path outputFile, boolean append) throws IOException {
+		return ResourceTransfer.copy(inputStream, outputFile, session.getTransferMode(), session.getBufferSize(), append);
+	}
+	
+	/**
+	 * Sets a listener that receives the progress of the transfer. The bytes reported are the bytes received, before decoding them.
+	 * @param listener listener of the transfer, or null to stop reporting progress
+	 */
+	@Override
+	public void setTransferListener(TransferListener listener) {
+		this.transferListener = listener;
 	}
 	
 	/**
@@ -21,6 +21,7 @@ package org.josfranmc.gutenberg.download.engine;
 import java.net.URLConnection;
 import java.util.List;
 import java.util.Map;
+import java.util.TreeMap;
 
 /**
  * It encapsulates the result of downloading a resource. This class serves to save together different data related to the download:
@@ -39,11 +40,23 @@ public class DownloadResult {
 	 * Header obtained in response to a connection
 	 */
 	private Map<String, List<String>> headers;
+	
+	/**
+	 * if the server answered that the local file is up to date
+	 */
+	private boolean notModified;
+	
+	/**
+	 * if the resource was unzipped while it was received, instead of saved
+	 */
+	private boolean extracted;
 
 
 	public DownloadResult() {
 		savedFilePath = null;
 		headers = null;
+		notModified = false;
+		extracted = false;
 	}
 
 	/**
@@ -51,7 +64,7 @@ public class DownloadResult {
 	 * @param urlConnection connection made
 	 */
 	public void setHeaders(URLConnection urlConnection) {
-		headers = urlConnection.getHeaderFields();
+		setHeaders(urlConnection.getHeaderFields());
 //        Set<String> keys = headers.keySet();
 //        for (String key : keys) {
 //            String val = urlConnection.getHeaderField(key);
@@ -59,6 +72,19 @@ public class DownloadResult {
 //        }
 	}
 	
+	/**
+	 * Sets the header obtained in response to a connection. Field names are case-insensitive, so they are saved in a map that ignores case.
+	 * @param headers header fields and their values
+	 */
+	public void setHeaders(Map<String, List<String>> headers) {
+		this.headers = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+		for (Map.Entry<String, List<String>> header : headers.entrySet()) {
+			if (header.getKey() != null) {
+				this.headers.put(header.getKey(), header.getValue());
+			}
+		}
+	}
+	
 	/**
 	 * 
 	 * @return the header obtained in response to a connection
@@ -106,6 +132,32 @@ public class DownloadResult {
 		return contentLength;
 	}
 
+	/**
+	 * @return the value of the header field "Content-Encoding"
+	 */
+	public String getContentEncoding() {
+		String contentEncoding = "";
+		try {
+			contentEncoding = (headers != null) ? headers.get("Content-Encoding").get(0) : "";
+		} catch (Exception e) {
+
+		}
+		return contentEncoding;
+	}
+
+	/**
+	 * @return the value of the header field "ETag"
+	 */
+	public String getETag() {
+		String etag = "";
+		try {
+			etag = (headers != null) ? headers.get("ETag").get(0) : "";
+		} catch (Exception e) {
+
+		}
+		return etag;
+	}
+
 	/**
 	 * @return the value of the header field "Content-Location"
 	 */
@@ -133,4 +185,34 @@ public class DownloadResult {
 	public String getSavedFilePath() {
 		return savedFilePath;
 	}
+	
+	/**
+	 * Sets if the server answered that the local file is up to date (304 Not Modified), so nothing was written to disk.
+	 * @param notModified <i>true</i> if the local file has been revalidated, <i>false</i> otherwise
+	 */
+	public void setNotModified(boolean notModified) {
+		this.notModified = notModified;
+	}
+	
+	/**
+	 * @return <i>true</i> if the server answered that the local file is up to date, so nothing was written to disk
+	 */
+	public boolean isNotModified() {
+		return notModified;
+	}
+	
+	/**
+	 * @param extracted <i>true</i> if the resource was unzipped while it was received
+	 */
+	public void setExtracted(boolean extracted) {
+		this.extracted = extracted;
+	}
+	
+	/**
+	 * @return <i>true</i> if the resource was unzipped while it was received, so no zip file was saved. 
+	 * In this case the saved file path is the folder where it was unzipped
+	 */
+	public boolean isExtracted() {
+		return extracted;
+	}
 }
@@ -0,0 +1,625 @@
+/*
+ *  Copyright (C) 2018-2019 Jose Francisco Mena Ceca <josfranmc@gmail.com>
+ *
+ *  This file is part of JGutenbergDownload.
+ *
+ *  JGutenbergDownload is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  JGutenbergDownload is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with JGutenbergDownload.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package org.josfranmc.gutenberg.download.engine;
+
+import java.io.Closeable;
+import java.io.InterruptedIOException;
+import java.net.URL;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.security.NoSuchAlgorithmException;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+import javax.net.ssl.HttpsURLConnection;
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLSocketFactory;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.josfranmc.gutenberg.download.GutenbergException;
+import org.josfranmc.gutenberg.util.ZipEntryFilter;
+
+/**
+ * Transport shared by all the engines taking part in the same download process.<p>
+ * Engines created with the same session reuse idle keep-alive connections and TLS sessions between them, instead of
+ * opening a new connection for every download. The session also keeps count of the secure connections opened and of the
+ * requests sent over them, so the reuse ratio of a run can be reported.<br>
+ * Only secure (https) connections are accounted, since they are created through the session; plain sockets are managed by the JDK.<p>
+ * The session also holds the settings shared by its engines:
+ * <ul>
+ * <li><b>transferMode</b>: the way of copying the body of a response to the local file (default <code>TransferMode.DIRECT_BUFFER</code>)</li>
+ * <li><b>bufferSize</b>: the size of the buffer used to copy the body of a response, in bytes (default 65536)</li>
+ * <li><b>rate limit</b>: the requests per second and the burst allowed to every host (default no limit)</li>
+ * <li><b>retryPolicy</b>: how failed downloads are sent again (default <code>RetryPolicy.NONE</code>)</li>
+ * <li><b>circuit breaker</b>: the failures in a row after which the requests to a host are rejected for a while (default none)</li>
+ * <li><b>segments</b>: the number of segments in which a large resource is downloaded at the same time (default 1, a single stream)</li>
+ * <li><b>segmentThreshold</b>: the minimum length of a resource to be downloaded in segments, in bytes (default 16 MB)</li>
+ * <li><b>keepCompressed</b>: if the body of a compressed response (gzip, deflate) is saved as received instead of decoded (default <i>false</i>)</li>
+ * <li><b>revalidate</b>: if files already downloaded are revalidated with a conditional request (default <i>false</i>)</li>
+ * <li><b>extractPath</b>: folder where zip resources are unzipped while they are received, instead of saved (default none)</li>
+ * <li><b>extractFilter</b>: the files extracted from the zip resources unzipped while they are received (default all)</li>
+ * <li><b>mirrors</b>: the mirrors the downloads of books are spread across, and the policy to choose them (default none)</li>
+ * </ul>
+ * A session should be closed when the download process ends. Engines created without a session use a default one that is never closed.
+ * @author Jose Francisco Mena Ceca
+ * @version 2.1
+ * @see DownloadEngineFactory
+ */
+public class DownloadSession implements Closeable {
+
+	private static final Logger log = LogManager.getLogger(DownloadSession.class);
+
+	/**
+	 * Default size of the buffer used to copy the body of a response, in bytes
+	 */
+	public static final int DEFAULT_BUFFER_SIZE = 64 * 1024;
+	
+	/**
+	 * Default minimum length of a resource to be downloaded in segments, in bytes
+	 */
+	public static final long DEFAULT_SEGMENT_THRESHOLD = 16L * 1024 * 1024;
+	
+	private static final DownloadSession defaultSession = new DownloadSession();
+	
+	/**
+	 * number of changes of validators after which they are written to disk
+	 */
+	private static final int VALIDATORS_SAVE_EVERY = 100;
+
+	/**
+	 * secure connections opened by the engines of this session
+	 */
+	private final AtomicLong connectionsOpened = new AtomicLong();
+
+	/**
+	 * requests sent over secure connections by the engines of this session
+	 */
+	private final AtomicLong requests = new AtomicLong();
+	
+	private final AtomicLong segmentThreads = new AtomicLong();
+	
+	/**
+	 * attempts sent again after a transient failure
+	 */
+	private final AtomicLong retries = new AtomicLong();
+
+	private SSLSocketFactory sslSocketFactory;
+
+	private SSLContext sslContext;
+
+	private TransferMode transferMode = TransferMode.DIRECT_BUFFER;
+	
+	private int bufferSize = DEFAULT_BUFFER_SIZE;
+	
+	/**
+	 * limits the rate of requests to every host, or null if there is no limit
+	 */
+	private volatile HostRateLimiter rateLimiter;
+	
+	private volatile RetryPolicy retryPolicy = RetryPolicy.NONE;
+	
+	/**
+	 * rejects the requests to hosts that keep failing, or null if there is no circuit breaker
+	 */
+	private volatile HostCircuitBreaker circuitBreaker;
+	
+	/**
+	 * schedules the retries of asynchronous downloads
+	 */
+	private ScheduledExecutorService retryScheduler;
+	
+	private int segments = 1;
+	
+	private long segmentThreshold = DEFAULT_SEGMENT_THRESHOLD;
+	
+	/**
+	 * runs the segments of the downloads made in segments
+	 */
+	private ExecutorService segmentExecutor;
+	
+	private boolean keepCompressed = false;
+	
+	private boolean revalidate = false;
+	
+	private String extractPath;
+	
+	private ZipEntryFilter extractFilter = ZipEntryFilter.ALL;
+	
+	private volatile MirrorSelector mirrorSelector;
+	
+	/**
+	 * validators of the downloaded files, by folder
+	 */
+	private final Map<Path, ValidatorStore> validatorStores = new HashMap<>();
+	
+	/**
+	 * transport object specific to an engine type (e.g. the shared client of <code>DownloadHttpClient</code>)
+	 */
+	private Object transport;
+
+
+	/**
+	 * @return the session used by engines created without indicating one
+	 */
+	public static DownloadSession getDefault() {
+		return defaultSession;
+	}
+
+	/**
+	 * @return the way of copying the body of a response to the local file
+	 * @see TransferMode
+	 */
+	public TransferMode getTransferMode() {
+		return transferMode;
+	}
+
+	/**
+	 * Sets the way of copying the body of a response to the local file
+	 * @param transferMode way of copying (if null, the default one is used)
+	 * @see TransferMode
+	 */
+	public void setTransferMode(TransferMode transferMode) {
+		this.transferMode = (transferMode == null) ? TransferMode.DIRECT_BUFFER : transferMode;
+	}
+
+	/**
+	 * @return the size of the buffer used to copy the body of a response, in bytes
+	 */
+	public int getBufferSize() {
+		return bufferSize;
+	}
+
+	/**
+	 * Sets the size of the buffer used to copy the body of a response
+	 * @param bufferSize size in bytes
+	 * @throws GutenbergException if the size is not greater than zero
+	 */
+	public void setBufferSize(int bufferSize) {
+		if (bufferSize <= 0) {
+			throw new GutenbergException("org.josfranmc.gutenberg.GutenbergException: Buffer size must be greater than zero");
+		}
+		this.bufferSize = bufferSize;
+	}
+
+	/**
+	 * Limits the rate of requests sent to every host by the engines of this session. Requests wait just before connecting
+	 * until the host allows them, following a token bucket that holds up to <code>burst</code> requests.
+	 * @param requestsPerSecond requests allowed per second to every host (zero or less for no limit)
+	 * @param burst requests that can be sent together to a host after a while without requests
+	 * @throws GutenbergException if the burst is less than one
+	 */
+	public void setRateLimit(double requestsPerSecond, int burst) {
+		if (burst < 1) {
+			throw new GutenbergException("org.josfranmc.gutenberg.GutenbergException: Burst must be greater than zero");
+		}
+		this.rateLimiter = (requestsPerSecond > 0) ? new HostRateLimiter(requestsPerSecond, burst) : null;
+	}
+
+	/**
+	 * Takes a permit to send a request, waiting until the rate limit of its host allows it.
+	 * @param url url to request
+	 * @throws InterruptedIOException if the thread is interrupted while waiting
+	 */
+	void acquirePermit(URL url) throws InterruptedIOException {
+		HostRateLimiter limiter = rateLimiter;
+		if (limiter != null) {
+			try {
+				limiter.acquire(url.getHost());
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new InterruptedIOException("Interrupted waiting for rate limit of " + url.getHost());
+			}
+		}
+	}
+
+	/**
+	 * Takes a permit to send a request without waiting for it.
+	 * @param url url to request
+	 * @return the time the request has to wait before connecting, in nanoseconds
+	 */
+	long reservePermit(URL url) {
+		HostRateLimiter limiter = rateLimiter;
+		return (limiter != null) ? limiter.reserve(url.getHost()) : 0;
+	}
+
+	/**
+	 * @return the total time requests have waited because of the rate limit, in milliseconds
+	 */
+	public long getRateLimitWaitMillis() {
+		HostRateLimiter limiter = rateLimiter;
+		return (limiter != null) ? TimeUnit.NANOSECONDS.toMillis(limiter.getWaitedNanos()) : 0;
+	}
+
+	/**
+	 * @return the number of requests that have waited because of the rate limit
+	 */
+	public long getRateLimitedRequests() {
+		HostRateLimiter limiter = rateLimiter;
+		return (limiter != null) ? limiter.getDelayedRequests() : 0;
+	}
+
+	/**
+	 * @return the policy that decides how failed downloads are sent again
+	 */
+	public RetryPolicy getRetryPolicy() {
+		return retryPolicy;
+	}
+
+	/**
+	 * Sets how failed downloads are sent again. Engines created by <code>DownloadEngineFactory</code> with this session retry
+	 * transient failures following this policy.
+	 * @param retryPolicy retry policy (null for <code>RetryPolicy.NONE</code>)
+	 * @see RetryPolicy
+	 */
+	public void setRetryPolicy(RetryPolicy retryPolicy) {
+		this.retryPolicy = (retryPolicy == null) ? RetryPolicy.NONE : retryPolicy;
+	}
+
+	/**
+	 * Rejects the requests to a host for a while after a number of transient failures in a row, so a host that is down is not
+	 * flooded with retries. It applies to engines that retry (see <code>setRetryPolicy</code>).
+	 * @param failureThreshold transient failures in a row that open the circuit of a host (zero for no circuit breaker)
+	 * @param openMillis time the requests to the host are rejected before a trial request, in milliseconds
+	 * @throws GutenbergException if any value is less than zero
+	 */
+	public void setCircuitBreaker(int failureThreshold, long openMillis) {
+		if (failureThreshold < 0 || openMillis < 0) {
+			throw new GutenbergException("org.josfranmc.gutenberg.GutenbergException: Circuit breaker values cannot be less than zero");
+		}
+		this.circuitBreaker = (failureThreshold > 0) ? new HostCircuitBreaker(failureThreshold, openMillis) : null;
+	}
+
+	/**
+	 * @return <i>true</i> if engines created with this session must retry failed downloads or apply a circuit breaker
+	 */
+	boolean isRetrying() {
+		return retryPolicy.getMaxRetries() > 0 || circuitBreaker != null;
+	}
+
+	/**
+	 * @param url url to request
+	 * @return <i>false</i> if the circuit of the host is open, so the request must not be sent
+	 */
+	boolean allowRequest(URL url) {
+		HostCircuitBreaker breaker = circuitBreaker;
+		return breaker == null || breaker.allowRequest(url.getHost());
+	}
+
+	/**
+	 * @param url url to request
+	 * @return the time until the circuit of the host allows a trial request, in milliseconds, or 0 if it is not open
+	 */
+	long getCircuitOpenMillis(URL url) {
+		HostCircuitBreaker breaker = circuitBreaker;
+		return (breaker != null) ? breaker.getOpenMillis(url.getHost()) : 0;
+	}
+
+	/**
+	 * Reports the outcome of a download to the circuit breaker
+	 * @param url requested url
+	 * @param transientFailure <i>true</i> if the download failed with a transient error, <i>false</i> if the host answered
+	 */
+	void requestCompleted(URL url, boolean transientFailure) {
+		HostCircuitBreaker breaker = circuitBreaker;
+		if (breaker != null) {
+			if (transientFailure) {
+				breaker.onFailure(url.getHost());
+			} else {
+				breaker.onSuccess(url.getHost());
+			}
+		}
+	}
+
+	void retrySent() {
+		retries.incrementAndGet();
+	}
+
+	/**
+	 * @return the number of attempts sent again after a transient failure
+	 */
+	public long getRetries() {
+		return retries.get();
+	}
+
+	/**
+	 * @return the number of times the circuit of a host has opened
+	 */
+	public long getCircuitBreakerTrips() {
+		HostCircuitBreaker breaker = circuitBreaker;
+		return (breaker != null) ? breaker.getTrips() : 0;
+	}
+
+	/**
+	 * @return the scheduler of the retries of asynchronous downloads. Its thread does not prevent the application from ending
+	 */
+	synchronized ScheduledExecutorService getRetryScheduler() {
+		if (retryScheduler == null) {
+			retryScheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+				Thread thread = new Thread(runnable, "retry-scheduler");
+				thread.setDaemon(true);
+				return thread;
+			});
+		}
+		return retryScheduler;
+	}
+
+	/**
+	 * @return the number of segments in which a large resource is downloaded at the same time
+	 */
+	public int getSegments() {
+		return segments;
+	}
+
+	/**
+	 * Sets the number of segments in which a large resource is downloaded at the same time, each one over its own connection.
+	 * Only resources whose server answers ranges and at least as large as the segment threshold are downloaded in segments.
+	 * The first request of every download asks for the first bytes of the resource up to the threshold, so a smaller resource
+	 * is still received with a single request.
+	 * @param segments number of segments (1 to download every resource in a single stream)
+	 * @throws GutenbergException if the number is less than one
+	 */
+	public void setSegments(int segments) {
+		if (segments < 1) {
+			throw new GutenbergException("org.josfranmc.gutenberg.GutenbergException: Number of segments must be greater than zero");
+		}
+		this.segments = segments;
+	}
+
+	/**
+	 * @return the minimum length of a resource to be downloaded in segments, in bytes
+	 */
+	public long getSegmentThreshold() {
+		return segmentThreshold;
+	}
+
+	/**
+	 * Sets the minimum length of a resource to be downloaded in segments. Smaller resources are downloaded in a single stream.
+	 * @param segmentThreshold length in bytes
+	 * @throws GutenbergException if the length is less than zero
+	 */
+	public void setSegmentThreshold(long segmentThreshold) {
+		if (segmentThreshold < 0) {
+			throw new GutenbergException("org.josfranmc.gutenberg.GutenbergException: Segment threshold cannot be less than zero");
+		}
+		this.segmentThreshold = segmentThreshold;
+	}
+
+	/**
+	 * @return the executor that runs the segments of the downloads made in segments. Its threads are created when needed and
+	 * do not prevent the application from ending
+	 */
+	synchronized Executor getSegmentExecutor() {
+		if (segmentExecutor == null) {
+			segmentExecutor = Executors.newCachedThreadPool(runnable -> {
+				Thread thread = new Thread(runnable, "segment-" + segmentThreads.incrementAndGet());
+				thread.setDaemon(true);
+				return thread;
+			});
+		}
+		return segmentExecutor;
+	}
+
+	/**
+	 * @return <i>true</i> if the body of a compressed response is saved as received, <i>false</i> if it is decoded
+	 */
+	public boolean isKeepCompressed() {
+		return keepCompressed;
+	}
+
+	/**
+	 * Sets if the body of a compressed response (Content-Encoding gzip or deflate) is saved as received.
+	 * By default it is decoded while it is copied to the local file.
+	 * @param keepCompressed <i>true</i> to save the compressed bytes, <i>false</i> to decode them
+	 */
+	public void setKeepCompressed(boolean keepCompressed) {
+		this.keepCompressed = keepCompressed;
+	}
+	
+	/**
+	 * @return the folder where zip resources are unzipped while they are received, or null if they are saved
+	 */
+	public String getExtractPath() {
+		return extractPath;
+	}
+	
+	/**
+	 * Sets a folder where zip resources are unzipped while they are received, without saving the zip file.
+	 * Engines that cannot do it save the zip file as usual.
+	 * @param extractPath folder where to unzip, or null to save zip resources
+	 */
+	public void setExtractPath(String extractPath) {
+		this.extractPath = extractPath;
+	}
+	
+	/**
+	 * @return the filter of the files extracted from the zip resources unzipped while they are received
+	 */
+	public ZipEntryFilter getExtractFilter() {
+		return extractFilter;
+	}
+	
+	/**
+	 * @param extractFilter accepts the files extracted from the zip resources unzipped while they are received
+	 * @see ZipEntryFilter
+	 */
+	public void setExtractFilter(ZipEntryFilter extractFilter) {
+		this.extractFilter = extractFilter;
+	}
+
+	/**
+	 * @return <i>true</i> if files already downloaded are revalidated with a conditional request, <i>false</i> otherwise
+	 */
+	public boolean isRevalidate() {
+		return revalidate;
+	}
+
+	/**
+	 * Sets if files already downloaded are revalidated with a conditional request (If-None-Match / If-Modified-Since).
+	 * When the server answers that the resource has not been modified, the local file is kept and nothing is written to disk.
+	 * @param revalidate <i>true</i> to revalidate files already downloaded, <i>false</i> to download them again
+	 */
+	public void setRevalidate(boolean revalidate) {
+		this.revalidate = revalidate;
+	}
+
+	/**
+	 * Returns the validators of the files downloaded in a folder, loading them the first time they are requested.
+	 * The validators are written to disk when the session is closed; the default session writes them on every change.
+	 * @param folder folder of the downloaded files
+	 * @return the validators of the folder
+	 */
+	synchronized ValidatorStore getValidatorStore(String folder) {
+		return validatorStores.computeIfAbsent(Paths.get(folder).toAbsolutePath().normalize(),
+				path -> new ValidatorStore(path.toString(), (this == defaultSession) ? 1 : VALIDATORS_SAVE_EVERY));
+	}
+
+	/**
+	 * @return a socket factory for <code>HttpsURLConnection</code> objects. All connections with the same factory can be reused between them
+	 */
+	synchronized SSLSocketFactory getSSLSocketFactory() {
+		if (sslSocketFactory == null) {
+			sslSocketFactory = new CountingSSLSocketFactory(HttpsURLConnection.getDefaultSSLSocketFactory(), connectionsOpened);
+		}
+		return sslSocketFactory;
+	}
+
+	/**
+	 * @return a TLS context for clients that create their own connections
+	 */
+	synchronized SSLContext getSSLContext() {
+		if (sslContext == null) {
+			try {
+				sslContext = new CountingSSLContext(SSLContext.getDefault(), connectionsOpened);
+			} catch (NoSuchAlgorithmException e) {
+				throw new GutenbergException("org.josfranmc.gutenberg.GutenbergException: Cannot get default TLS context", e);
+			}
+		}
+		return sslContext;
+	}
+
+	/**
+	 * Returns the transport object of this session, creating it the first time it is requested.
+	 * @param factory creates the transport object if it does not exist yet
+	 * @return the transport object shared by the engines of this session
+	 */
+	@SuppressWarnings("unchecked")
+	synchronized <T> T getTransport(Supplier<T> factory) {
+		if (transport == null) {
+			transport = factory.get();
+		}
+		return (T) transport;
+	}
+
+	/**
+	 * Notifies that an engine is going to send a request.
+	 * @param url requested url
+	 */
+	void requestSent(URL url) {
+		if ("https".equalsIgnoreCase(url.getProtocol())) {
+			requests.incrementAndGet();
+		}
+	}
+
+	/**
+	 * Spreads the downloads of books across several mirrors with the same folder structure. Engines created by <code>DownloadEngineFactory</code>
+	 * with this session download a resource whose url starts with the url of a mirror from the mirror chosen by the policy, and move it
+	 * to another mirror if it fails. The latency and throughput of every mirror are measured as downloads finish.
+	 * @param mirrors urls of the root folders of the books in the mirrors, e.g. <i>http://aleph.gutenberg.org/</i> (null or empty for none)
+	 * @param policy way of choosing the mirror of every download (null for <code>MirrorPolicy.EWMA_LATENCY</code>)
+	 * @throws GutenbergException if any url is not valid
+	 * @see MirrorPolicy
+	 */
+	public void setMirrors(List<String> mirrors, MirrorPolicy policy) {
+		this.mirrorSelector = (mirrors == null || mirrors.isEmpty()) ? null : new MirrorSelector(mirrors, policy);
+	}
+	
+	/**
+	 * @return the mirrors the downloads of books are spread across, with their measures. Empty if there are no mirrors
+	 */
+	public List<Mirror> getMirrors() {
+		MirrorSelector selector = mirrorSelector;
+		return (selector != null) ? selector.getMirrors() : Collections.<Mirror>emptyList();
+	}
+	
+	/**
+	 * @return the selector of the mirrors, or null if there are no mirrors
+	 */
+	MirrorSelector getMirrorSelector() {
+		return mirrorSelector;
+	}
+
+	/**
+	 * @return the number of secure connections opened by the engines of this session
+	 */
+	public long getConnectionsOpened() {
+		return connectionsOpened.get();
+	}
+
+	/**
+	 * @return the number of requests sent over secure connections by the engines of this session
+	 */
+	public long getRequests() {
+		return requests.get();
+	}
+
+	/**
+	 * @return the number of requests that reused an already opened connection
+	 */
+	public long getReusedConnections() {
+		return Math.max(0, getRequests() - getConnectionsOpened());
+	}
+
+	/**
+	 * Releases the transport of this session. Idle connections are closed when the transport supports it.
+	 * Validators not saved yet are written to disk.
+	 */
+	@Override
+	public synchronized void close() {
+		if (this == defaultSession) {
+			return;
+		}
+		validatorStores.values().forEach(ValidatorStore::save);
+		if (segmentExecutor != null) {
+			segmentExecutor.shutdown();
+			segmentExecutor = null;
+		}
+		if (retryScheduler != null) {
+			retryScheduler.shutdown();
+			retryScheduler = null;
+		}
+		if (transport instanceof AutoCloseable) {
+			try {
+				((AutoCloseable) transport).close();
+			} catch (Exception e) {
+				log.warn("[WARN] Error closing download session. " + e.getMessage());
+			}
+		}
+		transport = null;
+	}
+}
@@ -0,0 +1,152 @@
+/*
+ *  Copyright (C) 2018-2019 Jose Francisco Mena Ceca <josfranmc@gmail.com>
+ *
+ *  This file is part of JGutenbergDownload.
+ *
+ *  JGutenbergDownload is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  JGutenbergDownload is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with JGutenbergDownload.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package org.josfranmc.gutenberg.download.engine;
+
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Stops sending requests to a host that keeps failing.<p>
+ * Each host has a circuit that is <i>closed</i> while requests succeed. After <code>failureThreshold</code> transient failures
+ * in a row, the circuit <i>opens</i> and requests to the host are rejected at once, without connecting. Once the open time has
+ * passed, a single trial request is allowed (<i>half open</i>): if it succeeds the circuit closes, and if it fails the circuit
+ * opens again.
+ * @author Jose Francisco Mena Ceca
+ * @version 2.1
+ * @see DownloadSession#setCircuitBreaker(int, long)
+ */
+class HostCircuitBreaker {
+
+	private final int failureThreshold;
+	
+	private final long openNanos;
+	
+	private final Map<String, Circuit> circuits = new ConcurrentHashMap<>();
+	
+	private final AtomicLong trips = new AtomicLong();
+	
+	
+	/**
+	 * @param failureThreshold transient failures in a row that open the circuit of a host
+	 * @param openMillis time a circuit stays open before allowing a trial request, in milliseconds
+	 */
+	HostCircuitBreaker(int failureThreshold, long openMillis) {
+		this.failureThreshold = failureThreshold;
+		this.openNanos = TimeUnit.MILLISECONDS.toNanos(openMillis);
+	}
+	
+	private Circuit circuit(String host) {
+		return circuits.computeIfAbsent(host.toLowerCase(Locale.ROOT), h -> new Circuit());
+	}
+	
+	/**
+	 * @param host host to send a request to
+	 * @return <i>true</i> if the request can be sent, <i>false</i> if the circuit of the host is open
+	 */
+	boolean allowRequest(String host) {
+		return circuit(host).allowRequest(System.nanoTime());
+	}
+	
+	/**
+	 * @param host host to send a request to
+	 * @return the time until the circuit of the host allows a trial request, in milliseconds, or 0 if it is closed or the time has passed
+	 */
+	long getOpenMillis(String host) {
+		return TimeUnit.NANOSECONDS.toMillis(circuit(host).remainingNanos(System.nanoTime()));
+	}
+	
+	/**
+	 * A request to a host has been answered (successfully or with a permanent error)
+	 */
+	void onSuccess(String host) {
+		circuit(host).onSuccess();
+	}
+	
+	/**
+	 * A request to a host has failed with a transient error
+	 */
+	void onFailure(String host) {
+		if (circuit(host).onFailure(System.nanoTime())) {
+			trips.incrementAndGet();
+		}
+	}
+	
+	/**
+	 * @return the number of times a circuit has opened
+	 */
+	long getTrips() {
+		return trips.get();
+	}
+	
+	/**
+	 * State of the circuit of a host
+	 */
+	private class Circuit {
+		
+		private int failures = 0;
+		
+		private boolean open = false;
+		
+		/**
+		 * time when the circuit opened, or when the last trial request failed
+		 */
+		private long openedAt;
+		
+		private boolean trialInProgress = false;
+		
+		synchronized boolean allowRequest(long now) {
+			if (!open) {
+				return true;
+			}
+			if (now - openedAt >= openNanos && !trialInProgress) {
+				trialInProgress = true;
+				return true;
+			}
+			return false;
+		}
+		
+		synchronized long remainingNanos(long now) {
+			return open ? Math.max(0, openNanos - (now - openedAt)) : 0;
+		}
+		
+		synchronized void onSuccess() {
+			failures = 0;
+			open = false;
+			trialInProgress = false;
+		}
+		
+		/**
+		 * @return <i>true</i> if the circuit has opened with this failure
+		 */
+		synchronized boolean onFailure(long now) {
+			failures++;
+			if (trialInProgress || (!open && failures >= failureThreshold)) {
+				boolean opened = !open;
+				open = true;
+				openedAt = now;
+				trialInProgress = false;
+				return opened;
+			}
+			return false;
+		}
+	}
+}
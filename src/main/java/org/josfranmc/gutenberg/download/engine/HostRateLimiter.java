@@ -0,0 +1,132 @@
+/*
+ *  Copyright (C) 2018-2019 Jose Francisco Mena Ceca <josfranmc@gmail.com>
+ *
+ *  This file is part of JGutenbergDownload.
+ *
+ *  JGutenbergDownload is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  JGutenbergDownload is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with JGutenbergDownload.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package org.josfranmc.gutenberg.download.engine;
+
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Limits the rate of requests sent to every host with a token bucket.<p>
+ * Each host has a bucket that holds up to <code>burst</code> tokens and is refilled at <code>requestsPerSecond</code> tokens per second.
+ * Every request takes a token just before connecting; if the bucket is empty, the request waits until its token is available.
+ * Tokens are reserved in order, so the requests waiting for a host are spread evenly in time instead of being released together.<br>
+ * The time spent waiting is accounted, so the politeness applied can be measured.
+ * @author Jose Francisco Mena Ceca
+ * @version 2.1
+ * @see DownloadSession#setRateLimit(double, int)
+ */
+class HostRateLimiter {
+
+	private final double requestsPerSecond;
+	
+	private final int burst;
+	
+	private final Map<String, TokenBucket> buckets = new ConcurrentHashMap<>();
+	
+	private final AtomicLong waitedNanos = new AtomicLong();
+	
+	private final AtomicLong delayedRequests = new AtomicLong();
+	
+	
+	/**
+	 * @param requestsPerSecond requests allowed per second to every host
+	 * @param burst requests that can be sent together to a host after a while without requests
+	 */
+	HostRateLimiter(double requestsPerSecond, int burst) {
+		this.requestsPerSecond = requestsPerSecond;
+		this.burst = Math.max(1, burst);
+	}
+	
+	/**
+	 * Takes a token for a request to a host.
+	 * @param host host to send the request to
+	 * @return the time the request has to wait before connecting, in nanoseconds (zero if it can connect at once)
+	 */
+	long reserve(String host) {
+		long wait = buckets.computeIfAbsent(host.toLowerCase(Locale.ROOT), h -> new TokenBucket(requestsPerSecond, burst)).reserve(System.nanoTime());
+		if (wait > 0) {
+			waitedNanos.addAndGet(wait);
+			delayedRequests.incrementAndGet();
+		}
+		return wait;
+	}
+	
+	/**
+	 * Takes a token for a request to a host, waiting until it is available.
+	 * @param host host to send the request to
+	 * @throws InterruptedException if the thread is interrupted while waiting
+	 */
+	void acquire(String host) throws InterruptedException {
+		long wait = reserve(host);
+		if (wait > 0) {
+			TimeUnit.NANOSECONDS.sleep(wait);
+		}
+	}
+	
+	/**
+	 * @return the total time requests have waited for a token, in nanoseconds
+	 */
+	long getWaitedNanos() {
+		return waitedNanos.get();
+	}
+	
+	/**
+	 * @return the number of requests that have waited for a token
+	 */
+	long getDelayedRequests() {
+		return delayedRequests.get();
+	}
+	
+	/**
+	 * Tokens of a host. A negative number of tokens means tokens already reserved by requests that are waiting.
+	 */
+	static class TokenBucket {
+		
+		private final double nanosPerToken;
+		
+		private final int capacity;
+		
+		private double tokens;
+		
+		private long lastRefill;
+		
+		TokenBucket(double requestsPerSecond, int capacity) {
+			this.nanosPerToken = TimeUnit.SECONDS.toNanos(1) / requestsPerSecond;
+			this.capacity = capacity;
+			this.tokens = capacity;
+			this.lastRefill = System.nanoTime();
+		}
+		
+		/**
+		 * @param now current time, from <code>System.nanoTime()</code>
+		 * @return the time until the reserved token is available, in nanoseconds
+		 */
+		synchronized long reserve(long now) {
+			if (now > lastRefill) {
+				tokens = Math.min(capacity, tokens + (now - lastRefill) / nanosPerToken);
+				lastRefill = now;
+			}
+			tokens -= 1;
+			return (tokens >= 0) ? 0 : (long) Math.ceil(-tokens * nanosPerToken);
+		}
+	}
+}
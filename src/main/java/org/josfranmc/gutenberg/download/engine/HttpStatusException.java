@@ -0,0 +1,114 @@
+/*
+ *  Copyright (C) 2018-2019 Jose Francisco Mena Ceca <josfranmc@gmail.com>
+ *
+ *  This file is part of JGutenbergDownload.
+ *
+ *  JGutenbergDownload is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  JGutenbergDownload is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with JGutenbergDownload.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package org.josfranmc.gutenberg.download.engine;
+
+import java.io.IOException;
+import java.net.URL;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Signals that the server answered a request with an error status code (4xx or 5xx).<br>
+ * It is the cause of the <code>GutenbergException</code> thrown by the engines, so callers can react to the status code
+ * (e.g. slowing down on 429 Too Many Requests or 503 Service Unavailable, or waiting the time indicated by the Retry-After header field).
+ * @author Jose Francisco Mena Ceca
+ * @version 2.1
+ * @see IDownloadEngine
+ */
+public class HttpStatusException extends IOException {
+
+	private static final long serialVersionUID = 1L;
+
+	private final int statusCode;
+	
+	private final long retryAfterMillis;
+
+	/**
+	 * @param statusCode status code of the response
+	 * @param target requested url
+	 */
+	public HttpStatusException(int statusCode, URL target) {
+		this(statusCode, target, null);
+	}
+
+	/**
+	 * @param statusCode status code of the response
+	 * @param target requested url
+	 * @param retryAfter value of the Retry-After header field of the response, or null if there is not
+	 */
+	public HttpStatusException(int statusCode, URL target, String retryAfter) {
+		super("Server returned HTTP response code: " + statusCode + " for URL: " + target);
+		this.statusCode = statusCode;
+		this.retryAfterMillis = parseRetryAfter(retryAfter, System.currentTimeMillis());
+	}
+	
+	/**
+	 * Parses the value of a Retry-After header field, which is either a number of seconds or an HTTP date.
+	 * @param retryAfter value of the header field, or null
+	 * @param now current time, in milliseconds since the epoch
+	 * @return the time to wait, in milliseconds, or -1 if the value is missing or wrong
+	 */
+	static long parseRetryAfter(String retryAfter, long now) {
+		if (retryAfter == null || retryAfter.trim().isEmpty()) {
+			return -1;
+		}
+		String value = retryAfter.trim();
+		try {
+			return TimeUnit.SECONDS.toMillis(Math.max(0, Long.parseLong(value)));
+		} catch (NumberFormatException e) {
+			try {
+				return Math.max(0, ZonedDateTime.parse(value, DateTimeFormatter.RFC_1123_DATE_TIME).toInstant().toEpochMilli() - now);
+			} catch (DateTimeParseException ex) {
+				return -1;
+			}
+		}
+	}
+
+	/**
+	 * @return the status code of the response
+	 */
+	public int getStatusCode() {
+		return statusCode;
+	}
+	
+	/**
+	 * @return <i>true</i> if the status code means that the server is overloaded or limiting the rate of requests (429 or 503)
+	 */
+	public boolean isOverload() {
+		return statusCode == 429 || statusCode == 503;
+	}
+	
+	/**
+	 * @return <i>true</i> if the request may succeed if it is sent again later (408, 425, 429, 500, 502, 503 or 504)
+	 */
+	public boolean isTransient() {
+		return statusCode == 408 || statusCode == 425 || statusCode == 429 || statusCode == 500 
+			|| statusCode == 502 || statusCode == 503 || statusCode == 504;
+	}
+	
+	/**
+	 * @return the time the server asked to wait before sending the request again (Retry-After header field), in milliseconds,
+	 * or -1 if the server did not indicate it
+	 */
+	public long getRetryAfterMillis() {
+		return retryAfterMillis;
+	}
+}
@@ -19,8 +19,14 @@
 package org.josfranmc.gutenberg.download.engine;
 
 import java.net.URL;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
 
 import org.josfranmc.gutenberg.download.GutenbergException;
+import org.josfranmc.gutenberg.util.FileScraping;
 
 /**
  * Defines the behavior that a class have to implement in order to have the ability to download resources on net.
@@ -39,6 +45,59 @@ public interface IDownloadEngine {
 	 */
 	public DownloadResult download();
 	
+	/**
+	 * Runs a download without blocking the calling thread.<p>
+	 * The returned future completes with the result of the download, or exceptionally with a <code>GutenbergException</code>
+	 * if there is any error downloading. Completion callbacks can be attached to it (<code>thenAccept</code>, <code>whenComplete</code>, ...).<br>
+	 * The default implementation runs <code>download()</code> on the given executor, so it keeps one of its threads busy during the whole transfer.
+	 * Engines with a non-blocking transport override this method and do not park any thread while waiting for the network.<br>
+	 * The engine should not be modified until the returned future completes.
+	 * @param executor executor where to run blocking work
+	 * @return a future with the result of the download
+	 * @see DownloadResult
+	 */
+	public default CompletableFuture<DownloadResult> downloadAsync(Executor executor) {
+		return CompletableFuture.supplyAsync(this::download, executor);
+	}
+	
+	/**
+	 * Runs a download without blocking the calling thread. Blocking work, if any, is run on the common <code>ForkJoinPool</code>.
+	 * @return a future with the result of the download
+	 * @see #downloadAsync(Executor)
+	 */
+	public default CompletableFuture<DownloadResult> downloadAsync() {
+		return downloadAsync(ForkJoinPool.commonPool());
+	}
+	
+	/**
+	 * Downloads a page and passes its links to a consumer, as they are found.<p>
+	 * Engines that can read the body of the response as it is received override this method: the links are passed before the page
+	 * has been completely received, and the page is not saved. The default implementation runs <code>download()</code> and then
+	 * reads the links from the saved file.<br>
+	 * The links are only extracted if the result, with the headers of the response, is accepted as a page.
+	 * @param isPage tells, from the headers of the response, if the resource is a page whose links must be extracted
+	 * @param linkConsumer receives the links of the page, in the order they are found
+	 * @return the result of the download in the form of a DownloadResult object. If the page has not been saved, the saved file path is null
+	 * @throws GutenbergException if there is any error downloading
+	 * @see FileScraping#getLinks(java.io.InputStream, Consumer)
+	 */
+	public default DownloadResult scrape(Predicate<DownloadResult> isPage, Consumer<String> linkConsumer) {
+		DownloadResult downloadResult = download();
+		if (downloadResult.getSavedFilePath() != null && isPage.test(downloadResult)) {
+			FileScraping.getLinks(downloadResult.getSavedFilePath()).forEach(linkConsumer);
+		}
+		return downloadResult;
+	}
+	
+	/**
+	 * Sets a listener that receives the progress of the transfer while the resource is being downloaded.<br>
+	 * The default implementation ignores it, for engines that cannot report progress.
+	 * @param listener listener of the transfer, or null to stop reporting progress
+	 * @see TransferListener
+	 */
+	public default void setTransferListener(TransferListener listener) {
+	}
+	
 	/**
 	 * Sets the resource of the url to download, in the form of a URL object
 	 * @param resource url address
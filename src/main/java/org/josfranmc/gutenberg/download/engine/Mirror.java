@@ -0,0 +1,176 @@
+/*
+ *  Copyright (C) 2018-2019 Jose Francisco Mena Ceca <josfranmc@gmail.com>
+ *
+ *  This file is part of JGutenbergDownload.
+ *
+ *  JGutenbergDownload is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  JGutenbergDownload is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with JGutenbergDownload.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package org.josfranmc.gutenberg.download.engine;
+
+import java.net.URL;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A mirror of the Gutenberg books, with the measures of the downloads sent to it.<p>
+ * The latency of every download (from the request until the file is saved) and its throughput are averaged with an
+ * exponentially weighted moving average, so recent downloads weigh more than old ones. A failed download counts as a
+ * download that took at least <code>FAILURE_PENALTY_MILLIS</code>, so the traffic moves away from a mirror that fails.
+ * @author Jose Francisco Mena Ceca
+ * @version 2.1
+ * @see DownloadSession#getMirrors()
+ */
+public class Mirror {
+
+	/**
+	 * weight of the last download in the averages
+	 */
+	private static final double EWMA_WEIGHT = 0.3;
+	
+	/**
+	 * minimum latency of a failed download, in milliseconds
+	 */
+	static final long FAILURE_PENALTY_MILLIS = 10000;
+	
+	private final URL url;
+	
+	private final AtomicInteger inFlight = new AtomicInteger();
+	
+	private final AtomicLong requests = new AtomicLong();
+	
+	private final AtomicLong failures = new AtomicLong();
+	
+	private final AtomicLong bytes = new AtomicLong();
+	
+	/**
+	 * average latency, in nanoseconds, or -1 before the first download
+	 */
+	private double latencyNanos = -1;
+	
+	/**
+	 * average throughput, in bytes per second
+	 */
+	private double bytesPerSecond = 0;
+	
+	
+	/**
+	 * @param url url of the root folder of the books in the mirror
+	 */
+	Mirror(URL url) {
+		this.url = url;
+	}
+	
+	/**
+	 * A download to this mirror has started
+	 */
+	void started() {
+		inFlight.incrementAndGet();
+		requests.incrementAndGet();
+	}
+	
+	/**
+	 * A download to this mirror has finished successfully
+	 * @param elapsedNanos time since the last request of the download was sent
+	 * @param length bytes downloaded, or 0 if unknown
+	 */
+	void completed(long elapsedNanos, long length) {
+		inFlight.decrementAndGet();
+		bytes.addAndGet(length);
+		synchronized (this) {
+			latencyNanos = average(latencyNanos, elapsedNanos);
+			if (length > 0 && elapsedNanos > 0) {
+				bytesPerSecond = average(bytesPerSecond, length * 1e9 / elapsedNanos);
+			}
+		}
+	}
+	
+	/**
+	 * A download to this mirror has failed
+	 * @param elapsedNanos time since the last request of the download was sent
+	 */
+	void failed(long elapsedNanos) {
+		inFlight.decrementAndGet();
+		failures.incrementAndGet();
+		synchronized (this) {
+			latencyNanos = average(latencyNanos, Math.max(elapsedNanos, TimeUnit.MILLISECONDS.toNanos(FAILURE_PENALTY_MILLIS)));
+		}
+	}
+	
+	private static double average(double average, double sample) {
+		return (average < 0) ? sample : average + EWMA_WEIGHT * (sample - average);
+	}
+	
+	/**
+	 * @return the average latency of the downloads in nanoseconds, 0 before the first download
+	 */
+	synchronized double getLatencyNanos() {
+		return Math.max(0, latencyNanos);
+	}
+	
+	/**
+	 * @return url of the root folder of the books in the mirror
+	 */
+	public URL getUrl() {
+		return url;
+	}
+	
+	/**
+	 * @return the number of downloads in flight to this mirror
+	 */
+	public int getInFlight() {
+		return inFlight.get();
+	}
+	
+	/**
+	 * @return the number of downloads sent to this mirror
+	 */
+	public long getRequests() {
+		return requests.get();
+	}
+	
+	/**
+	 * @return the number of downloads to this mirror that failed
+	 */
+	public long getFailures() {
+		return failures.get();
+	}
+	
+	/**
+	 * @return the bytes downloaded from this mirror
+	 */
+	public long getBytes() {
+		return bytes.get();
+	}
+	
+	/**
+	 * @return the average latency of the downloads, in milliseconds
+	 */
+	public long getLatencyMillis() {
+		return TimeUnit.NANOSECONDS.toMillis((long) getLatencyNanos());
+	}
+	
+	/**
+	 * @return the average throughput of the downloads, in bytes per second
+	 */
+	public synchronized long getBytesPerSecond() {
+		return (long) bytesPerSecond;
+	}
+	
+	@Override
+	public String toString() {
+		return "Mirror " + url + "  Requests: " + getRequests() + "  Failures: " + getFailures() + "  Latency: " + getLatencyMillis() 
+				+ " ms  Throughput: " + getBytesPerSecond() / 1024 + " KB/s";
+	}
+}
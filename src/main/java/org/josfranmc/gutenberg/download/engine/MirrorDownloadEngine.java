@@ -0,0 +1,267 @@
+/*
+ *  Copyright (C) 2018-2019 Jose Francisco Mena Ceca <josfranmc@gmail.com>
+ *
+ *  This file is part of JGutenbergDownload.
+ *
+ *  JGutenbergDownload is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  JGutenbergDownload is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with JGutenbergDownload.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package org.josfranmc.gutenberg.download.engine;
+
+import java.io.File;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * Engine that downloads every book from the mirror chosen by the <code>MirrorSelector</code> of its session, and moves the
+ * download to another mirror when it fails.<p>
+ * It wraps the engine that actually downloads, which may retry on the same mirror (see <code>RetryingDownloadEngine</code>).
+ * Only resources whose url starts with the url of a mirror are spread; the rest, like harvest pages, are downloaded as they are.
+ * Every mirror is tried at most once per download, and a failed download moves to the next mirror after at most
+ * <code>MIRROR_RETRIES</code> retries on the same one; only the last mirror left uses all the retries of the session.
+ * If all of them fail, the last error is returned.<br>
+ * The latency and the bytes of every attempt are reported to its mirror. The latency is measured from the last request sent
+ * to the mirror, so it does not include the waits for the rate limit nor the backoffs between retries.
+ * The file is saved with the same name whatever the mirror.
+ * @author Jose Francisco Mena Ceca
+ * @version 2.1
+ * @see DownloadSession#setMirrors(List, MirrorPolicy)
+ */
+class MirrorDownloadEngine implements IDownloadEngine {
+
+	private static final Logger log = LogManager.getLogger(MirrorDownloadEngine.class);
+	
+	/**
+	 * retries of a download on the same mirror before moving to the next one
+	 */
+	static final int MIRROR_RETRIES = 1;
+	
+	private final IDownloadEngine delegate;
+	
+	/**
+	 * the delegate, if it retries the downloads, or null
+	 */
+	private final RetryingDownloadEngine retrying;
+	
+	private final MirrorSelector selector;
+	
+	/**
+	 * listener set on this engine, or null
+	 */
+	private volatile TransferListener listener;
+	
+	/**
+	 * time when the last request of the current attempt was sent
+	 */
+	private volatile long requestSentAt;
+	
+	/**
+	 * resource as it was set, before choosing a mirror
+	 */
+	private URL resource;
+	
+	
+	/**
+	 * @param delegate engine that downloads
+	 * @param selector selector of the mirrors of the session
+	 */
+	MirrorDownloadEngine(IDownloadEngine delegate, MirrorSelector selector) {
+		this.delegate = delegate;
+		this.retrying = (delegate instanceof RetryingDownloadEngine) ? (RetryingDownloadEngine) delegate : null;
+		this.selector = selector;
+		this.resource = delegate.getResource();
+		delegate.setTransferListener(new AttemptListener());
+	}
+	
+	@Override
+	public DownloadResult download() {
+		URL target = resource;
+		Mirror origin = (target != null && getSavePath() != null) ? selector.find(target) : null;
+		if (origin == null) {
+			return delegate.download();
+		}
+		List<Mirror> tried = new ArrayList<>();
+		DownloadResult result = null;
+		RuntimeException error = null;
+		try {
+			Mirror mirror;
+			while ((mirror = selector.select(tried)) != null) {
+				tried.add(mirror);
+				attemptStarted(target, origin, mirror, tried);
+				result = null;
+				error = null;
+				try {
+					result = delegate.download();
+				} catch (RuntimeException e) {
+					error = e;
+				}
+				if (attemptCompleted(mirror, result, error)) {
+					return result;
+				}
+			}
+		} finally {
+			delegate.setResource(target);
+			limitRetries(false);
+		}
+		if (error != null) {
+			throw error;
+		}
+		return result;
+	}
+	
+	@Override
+	public CompletableFuture<DownloadResult> downloadAsync(Executor executor) {
+		URL target = resource;
+		Mirror origin = (target != null && getSavePath() != null) ? selector.find(target) : null;
+		if (origin == null) {
+			return delegate.downloadAsync(executor);
+		}
+		CompletableFuture<DownloadResult> download = new CompletableFuture<>();
+		attempt(target, origin, new ArrayList<>(), executor, download);
+		return download;
+	}
+	
+	/**
+	 * Sends the download to the best mirror not tried yet, and to the next one if it fails
+	 */
+	private void attempt(URL target, Mirror origin, List<Mirror> tried, Executor executor, CompletableFuture<DownloadResult> download) {
+		Mirror mirror = selector.select(tried);
+		tried.add(mirror);
+		attemptStarted(target, origin, mirror, tried);
+		delegate.downloadAsync(executor).whenComplete((result, e) -> {
+			Throwable error = (e instanceof CompletionException && e.getCause() != null) ? e.getCause() : e;
+			if (attemptCompleted(mirror, result, error) || tried.size() == selector.getMirrors().size()) {
+				delegate.setResource(target);
+				limitRetries(false);
+				if (error != null) {
+					download.completeExceptionally(new CompletionException(error));
+				} else {
+					download.complete(result);
+				}
+			} else {
+				attempt(target, origin, tried, executor, download);
+			}
+		});
+	}
+	
+	/**
+	 * Points the delegate to a mirror. Only the last mirror left may use all the retries of the session
+	 */
+	private void attemptStarted(URL target, Mirror origin, Mirror mirror, List<Mirror> tried) {
+		delegate.setResource(MirrorSelector.resolve(target, origin, mirror));
+		limitRetries(tried.size() < selector.getMirrors().size());
+		requestSentAt = System.nanoTime();
+		mirror.started();
+	}
+	
+	private void limitRetries(boolean limited) {
+		if (retrying != null) {
+			retrying.limitRetries(limited ? MIRROR_RETRIES : Integer.MAX_VALUE);
+		}
+	}
+	
+	/**
+	 * Reports the outcome of an attempt to its mirror. A result without saved file (a download dropped after a timeout) is a failure
+	 * @return <i>true</i> if the download succeeded
+	 */
+	private boolean attemptCompleted(Mirror mirror, DownloadResult result, Throwable error) {
+		long elapsed = System.nanoTime() - requestSentAt;
+		if (error == null && result != null && result.getSavedFilePath() != null) {
+			mirror.completed(elapsed, getLength(result));
+			return true;
+		}
+		mirror.failed(elapsed);
+		String reason = (error == null) ? "Download timeout exceeded" : ((error.getCause() != null) ? error.getCause().getMessage() : error.getMessage());
+		log.warn("[WARN] Download of " + resource + " from mirror " + mirror.getUrl() + " failed. " + reason);
+		return false;
+	}
+	
+	private static long getLength(DownloadResult result) {
+		try {
+			return Long.parseLong(result.getContentLength());
+		} catch (NumberFormatException e) {
+			return new File(result.getSavedFilePath()).length();
+		}
+	}
+	
+	@Override
+	public DownloadResult scrape(Predicate<DownloadResult> isPage, Consumer<String> linkConsumer) {
+		return delegate.scrape(isPage, linkConsumer);
+	}
+	
+	@Override
+	public void setTransferListener(TransferListener listener) {
+		this.listener = listener;
+	}
+	
+	@Override
+	public void setResource(URL resource) {
+		this.resource = resource;
+		delegate.setResource(resource);
+	}
+	
+	@Override
+	public URL getResource() {
+		return resource;
+	}
+	
+	@Override
+	public void setSavePath(String savePath) {
+		delegate.setSavePath(savePath);
+	}
+	
+	@Override
+	public String getSavePath() {
+		return delegate.getSavePath();
+	}
+	
+	/**
+	 * Keeps the time of the last request sent, and passes the progress to the listener set on this engine
+	 */
+	private class AttemptListener implements TransferListener {
+		
+		@Override
+		public void requestSent() {
+			requestSentAt = System.nanoTime();
+			TransferListener current = listener;
+			if (current != null) {
+				current.requestSent();
+			}
+		}
+		
+		@Override
+		public void transferStarted(long contentLength) {
+			TransferListener current = listener;
+			if (current != null) {
+				current.transferStarted(contentLength);
+			}
+		}
+		
+		@Override
+		public void bytesTransferred(long bytes) {
+			TransferListener current = listener;
+			if (current != null) {
+				current.bytesTransferred(bytes);
+			}
+		}
+	}
+}
@@ -0,0 +1,39 @@
+/*
+ *  Copyright (C) 2018-2019 Jose Francisco Mena Ceca <josfranmc@gmail.com>
+ *
+ *  This file is part of JGutenbergDownload.
+ *
+ *  JGutenbergDownload is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  JGutenbergDownload is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with JGutenbergDownload.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package org.josfranmc.gutenberg.download.engine;
+
+/**
+ * Ways of choosing the mirror a book is downloaded from
+ * @author Jose Francisco Mena Ceca
+ * @version 2.1
+ * @see DownloadSession#setMirrors(java.util.List, MirrorPolicy)
+ */
+public enum MirrorPolicy {
+
+	/**
+	 * The mirror with fewer downloads in flight. Ties are broken by the average latency
+	 */
+	LEAST_LOADED,
+	
+	/**
+	 * The mirror with the lowest average latency (exponentially weighted moving average), weighted by its downloads in flight
+	 */
+	EWMA_LATENCY;
+	
+}
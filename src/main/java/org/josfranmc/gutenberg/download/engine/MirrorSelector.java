@@ -0,0 +1,129 @@
+/*
+ *  Copyright (C) 2018-2019 Jose Francisco Mena Ceca <josfranmc@gmail.com>
+ *
+ *  This file is part of JGutenbergDownload.
+ *
+ *  JGutenbergDownload is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  JGutenbergDownload is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with JGutenbergDownload.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package org.josfranmc.gutenberg.download.engine;
+
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+
+import org.josfranmc.gutenberg.download.GutenbergException;
+
+/**
+ * Spreads the downloads of books across several mirrors with the same folder structure.<p>
+ * A url that starts with the url of a mirror is a book that every mirror has, at the same path relative to its url.
+ * For every download, the mirror is chosen by a <code>MirrorPolicy</code> from the measures of the previous downloads;
+ * mirrors without measures yet are chosen first, so every mirror gets measured.
+ * @author Jose Francisco Mena Ceca
+ * @version 2.1
+ * @see MirrorDownloadEngine
+ */
+class MirrorSelector {
+
+	private final List<Mirror> mirrors;
+	
+	private final MirrorPolicy policy;
+	
+	
+	/**
+	 * @param urls urls of the root folders of the books in the mirrors
+	 * @param policy way of choosing the mirror of every download
+	 * @throws GutenbergException if any url is not valid
+	 */
+	MirrorSelector(List<String> urls, MirrorPolicy policy) {
+		List<Mirror> list = new ArrayList<>();
+		for (String url : urls) {
+			try {
+				list.add(new Mirror(new URL(url.endsWith("/") ? url : url + "/")));
+			} catch (MalformedURLException e) {
+				throw new GutenbergException("org.josfranmc.gutenberg.GutenbergException: Wrong mirror url " + url, e);
+			}
+		}
+		this.mirrors = Collections.unmodifiableList(list);
+		this.policy = (policy == null) ? MirrorPolicy.EWMA_LATENCY : policy;
+	}
+	
+	/**
+	 * @param url url of a resource
+	 * @return the mirror whose url the resource url starts with (the longest one, if several), or null if there is none
+	 */
+	Mirror find(URL url) {
+		String resource = url.toString();
+		Mirror found = null;
+		for (Mirror mirror : mirrors) {
+			String base = mirror.getUrl().toString();
+			if (resource.startsWith(base) && (found == null || base.length() > found.getUrl().toString().length())) {
+				found = mirror;
+			}
+		}
+		return found;
+	}
+	
+	/**
+	 * Chooses the mirror of a download
+	 * @param excluded mirrors already tried by the download
+	 * @return the best mirror according to the policy, or null if all of them are excluded
+	 */
+	Mirror select(Collection<Mirror> excluded) {
+		Mirror best = null;
+		for (Mirror mirror : mirrors) {
+			if (!excluded.contains(mirror) && (best == null || isBetter(mirror, best))) {
+				best = mirror;
+			}
+		}
+		return best;
+	}
+	
+	private boolean isBetter(Mirror mirror, Mirror other) {
+		if (policy == MirrorPolicy.LEAST_LOADED && mirror.getInFlight() != other.getInFlight()) {
+			return mirror.getInFlight() < other.getInFlight();
+		} else if (policy == MirrorPolicy.EWMA_LATENCY) {
+			double score = mirror.getLatencyNanos() * (mirror.getInFlight() + 1);
+			double otherScore = other.getLatencyNanos() * (other.getInFlight() + 1);
+			if (score != otherScore) {
+				return score < otherScore;
+			}
+			return mirror.getInFlight() < other.getInFlight();
+		}
+		return mirror.getLatencyNanos() < other.getLatencyNanos();
+	}
+	
+	/**
+	 * @param url url of a resource in a mirror
+	 * @param origin mirror of the url
+	 * @param mirror another mirror
+	 * @return the url of the same resource in the other mirror
+	 */
+	static URL resolve(URL url, Mirror origin, Mirror mirror) {
+		try {
+			return new URL(mirror.getUrl() + url.toString().substring(origin.getUrl().toString().length()));
+		} catch (MalformedURLException e) {
+			return url;
+		}
+	}
+	
+	/**
+	 * @return the mirrors, in the order they were configured
+	 */
+	List<Mirror> getMirrors() {
+		return mirrors;
+	}
+}
@@ -0,0 +1,224 @@
+/*
+ *  Copyright (C) 2018-2019 Jose Francisco Mena Ceca <josfranmc@gmail.com>
+ *
+ *  This file is part of JGutenbergDownload.
+ *
+ *  JGutenbergDownload is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  JGutenbergDownload is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with JGutenbergDownload.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package org.josfranmc.gutenberg.download.engine;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.Properties;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * Keeps the state of a download that can be resumed.<p>
+ * The bytes of a download in progress are written to a <i>.part</i> file next to the final file, which is renamed atomically
+ * when the transfer is complete. So a download interrupted never leaves a truncated file with the final name.<br>
+ * Along with the <i>.part</i> file, a small <i>.part.meta</i> file saves the values of the Last-Modified and Content-Length
+ * header fields of the response. In a later attempt, the download is resumed from the end of the <i>.part</i> file with a
+ * Range request, validated with If-Range against the saved Last-Modified value. If the server does not return that value,
+ * the download cannot be resumed and starts again from zero. Neither can it be resumed if the body was compressed by the server,
+ * since the ranges would refer to the compressed bytes.
+ * @author Jose Francisco Mena Ceca
+ * @version 2.1
+ */
+class PartialDownload {
+
+	private static final Logger log = LogManager.getLogger(PartialDownload.class);
+	
+	static final String PART_EXTENSION = ".part";
+	
+	private static final String META_EXTENSION = ".meta";
+	
+	private static final String LAST_MODIFIED = "Last-Modified";
+	
+	private static final String CONTENT_LENGTH = "Content-Length";
+	
+	private final Path targetFile;
+	
+	private final Path partFile;
+	
+	private final Path metaFile;
+	
+	private final Properties meta = new Properties();
+	
+	
+	/**
+	 * @param targetFilePath path of the final file
+	 */
+	PartialDownload(String targetFilePath) {
+		this.targetFile = Paths.get(targetFilePath);
+		this.partFile = Paths.get(targetFilePath + PART_EXTENSION);
+		this.metaFile = Paths.get(targetFilePath + PART_EXTENSION + META_EXTENSION);
+		loadMeta();
+	}
+	
+	private void loadMeta() {
+		if (Files.exists(metaFile)) {
+			try (InputStream is = Files.newInputStream(metaFile)) {
+				meta.load(is);
+			} catch (IOException e) {
+				log.warn("[WARN] Cannot read " + metaFile + ". Download will start from the beginning");
+				meta.clear();
+			}
+		}
+	}
+	
+	/**
+	 * @return the file where the bytes of the download in progress are written
+	 */
+	Path getPartFile() {
+		return partFile;
+	}
+	
+	/**
+	 * @return the number of bytes already downloaded that can be kept, or zero if the download has to start from the beginning
+	 */
+	long getResumeOffset() {
+		long offset = 0;
+		if (!getLastModified().isEmpty() && Files.exists(partFile)) {
+			try {
+				offset = Files.size(partFile);
+			} catch (IOException e) {
+				offset = 0;
+			}
+		}
+		return offset;
+	}
+	
+	/**
+	 * @return the value of the Last-Modified header field of the response that began the download
+	 */
+	String getLastModified() {
+		return meta.getProperty(LAST_MODIFIED, "");
+	}
+	
+	/**
+	 * @return the value of the Content-Length header field of the response that began the download, or -1 if unknown
+	 */
+	long getContentLength() {
+		try {
+			return Long.parseLong(meta.getProperty(CONTENT_LENGTH, "-1"));
+		} catch (NumberFormatException e) {
+			return -1;
+		}
+	}
+	
+	/**
+	 * Saves the values needed to resume the download from a response that sends the whole resource.
+	 * @param lastModified value of the Last-Modified header field
+	 * @param contentLength value of the Content-Length header field
+	 */
+	void begin(String lastModified, String contentLength) {
+		meta.clear();
+		if (lastModified != null && !lastModified.isEmpty()) {
+			meta.setProperty(LAST_MODIFIED, lastModified);
+			if (contentLength != null && !contentLength.isEmpty()) {
+				meta.setProperty(CONTENT_LENGTH, contentLength);
+			}
+			try (OutputStream os = Files.newOutputStream(metaFile)) {
+				meta.store(os, null);
+			} catch (IOException e) {
+				log.warn("[WARN] Cannot write " + metaFile + ". Download will not be resumable");
+			}
+		} else {
+			deleteMeta();
+		}
+	}
+	
+	/**
+	 * Checks whether a partial response (206) continues the bytes already downloaded.
+	 * @param contentRange value of the Content-Range header field of the response
+	 * @param offset number of bytes already downloaded
+	 * @return <i>true</i> if the response begins just where the <i>.part</i> file ends
+	 */
+	static boolean continuesAt(String contentRange, long offset) {
+		return contentRange != null && contentRange.trim().startsWith("bytes " + offset + "-");
+	}
+	
+	/**
+	 * @param contentRange value of the Content-Range header field of a partial response (206), e.g. <i>bytes 0-999/8000</i>
+	 * @return the last byte of the range sent, inclusive, or -1 if the header is not valid
+	 */
+	static long getRangeEnd(String contentRange) {
+		try {
+			String range = contentRange.trim();
+			return Long.parseLong(range.substring(range.indexOf('-') + 1, range.indexOf('/')).trim());
+		} catch (RuntimeException e) {
+			return -1;
+		}
+	}
+	
+	/**
+	 * @param contentRange value of the Content-Range header field of a partial response (206), e.g. <i>bytes 0-999/8000</i>
+	 * @return the length of the whole resource, or -1 if it is unknown or the header is not valid
+	 */
+	static long getCompleteLength(String contentRange) {
+		try {
+			String range = contentRange.trim();
+			return Long.parseLong(range.substring(range.indexOf('/') + 1).trim());
+		} catch (RuntimeException e) {
+			return -1;
+		}
+	}
+	
+	/**
+	 * Finishes the download: the <i>.part</i> file is renamed to the final name, replacing it if already exists.
+	 * @throws IOException if the <i>.part</i> file is shorter than the length announced by the server, or cannot be renamed
+	 */
+	void complete() throws IOException {
+		long expected = getContentLength();
+		long actual = Files.size(partFile);
+		if (expected >= 0 && actual < expected) {
+			throw new IOException("Incomplete download of " + targetFile.getFileName() + ": " + actual + " of " + expected + " bytes");
+		}
+		try {
+			Files.move(partFile, targetFile, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+		} catch (AtomicMoveNotSupportedException e) {
+			Files.move(partFile, targetFile, StandardCopyOption.REPLACE_EXISTING);
+		}
+		deleteMeta();
+	}
+	
+	/**
+	 * Discards the bytes downloaded, so the download starts again from the beginning.
+	 */
+	void discard() {
+		try {
+			Files.deleteIfExists(partFile);
+		} catch (IOException e) {
+			log.warn("[WARN] Cannot delete " + partFile);
+		}
+		deleteMeta();
+	}
+	
+	private void deleteMeta() {
+		meta.clear();
+		try {
+			Files.deleteIfExists(metaFile);
+		} catch (IOException e) {
+			log.warn("[WARN] Cannot delete " + metaFile);
+		}
+	}
+}
@@ -0,0 +1,76 @@
+/*
+ *  Copyright (C) 2018-2019 Jose Francisco Mena Ceca <josfranmc@gmail.com>
+ *
+ *  This file is part of JGutenbergDownload.
+ *
+ *  JGutenbergDownload is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  JGutenbergDownload is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with JGutenbergDownload.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package org.josfranmc.gutenberg.download.engine;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Reports to a <code>TransferListener</code> the bytes read from the body of a response.
+ * @author Jose Francisco Mena Ceca
+ * @version 2.1
+ * @see TransferListener
+ */
+class ProgressInputStream extends FilterInputStream {
+
+	private final TransferListener listener;
+	
+	
+	private ProgressInputStream(InputStream in, TransferListener listener) {
+		super(in);
+		this.listener = listener;
+	}
+	
+	/**
+	 * @param in body of a response
+	 * @param listener listener to report to, or null
+	 * @return a stream that reports the bytes read, or the same stream if there is no listener
+	 */
+	static InputStream of(InputStream in, TransferListener listener) {
+		return (listener == null) ? in : new ProgressInputStream(in, listener);
+	}
+	
+	@Override
+	public int read() throws IOException {
+		int b = super.read();
+		if (b >= 0) {
+			listener.bytesTransferred(1);
+		}
+		return b;
+	}
+	
+	@Override
+	public int read(byte[] b, int off, int len) throws IOException {
+		int read = super.read(b, off, len);
+		if (read > 0) {
+			listener.bytesTransferred(read);
+		}
+		return read;
+	}
+	
+	@Override
+	public long skip(long n) throws IOException {
+		long skipped = super.skip(n);
+		if (skipped > 0) {
+			listener.bytesTransferred(skipped);
+		}
+		return skipped;
+	}
+}
@@ -0,0 +1,221 @@
+/*
+ *  Copyright (C) 2018-2019 Jose Francisco Mena Ceca <josfranmc@gmail.com>
+ *
+ *  This file is part of JGutenbergDownload.
+ *
+ *  JGutenbergDownload is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  JGutenbergDownload is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with JGutenbergDownload.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package org.josfranmc.gutenberg.download.engine;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * Copies the body of a response to a local file, following one of the <code>TransferMode</code> ways.<p>
+ * Direct buffers are expensive to allocate, so they are reused: a platform thread keeps its own one, while virtual threads,
+ * which are created for every download, take them from a small pool shared by all of them.
+ * @author Jose Francisco Mena Ceca
+ * @version 2.1
+ * @see TransferMode
+ */
+final class ResourceTransfer {
+
+	/**
+	 * direct buffers kept for being reused by virtual threads
+	 */
+	static final int MAX_POOLED_BUFFERS = Runtime.getRuntime().availableProcessors() * 2;
+	
+	/**
+	 * direct buffer of every platform thread
+	 */
+	private static final ThreadLocal<ByteBuffer> directBuffers = new ThreadLocal<>();
+	
+	/**
+	 * direct buffers not in use by any virtual thread
+	 */
+	private static final BlockingQueue<ByteBuffer> pooledBuffers = new ArrayBlockingQueue<>(MAX_POOLED_BUFFERS);
+	
+	/**
+	 * <code>Thread.isVirtual()</code>, or null if the running Java version has no virtual threads
+	 */
+	private static final MethodHandle isVirtual = findIsVirtual();
+	
+	
+	private ResourceTransfer() {
+		throw new IllegalStateException("Cannot instantiate class");
+	}
+	
+	private static MethodHandle findIsVirtual() {
+		try {
+			return MethodHandles.publicLookup().findVirtual(Thread.class, "isVirtual", MethodType.methodType(boolean.class));
+		} catch (NoSuchMethodException | IllegalAccessException e) {
+			return null;
+		}
+	}
+	
+	/**
+	 * Copies an input stream to a file. The file is created or truncated if already exists.
+	 * @param inputStream stream to copy, which is read until its end
+	 * @param target file where to copy the stream
+	 * @param mode way of copying
+	 * @param bufferSize size of the buffer used, in bytes
+	 * @return the number of bytes copied
+	 * @throws IOException if there is any error reading or writing
+	 */
+	static long copy(InputStream inputStream, Path target, TransferMode mode, int bufferSize) throws IOException {
+		return copy(inputStream, target, mode, bufferSize, false);
+	}
+	
+	/**
+	 * Copies an input stream to a file. The file is created if it does not exist.
+	 * @param inputStream stream to copy, which is read until its end
+	 * @param target file where to copy the stream
+	 * @param mode way of copying
+	 * @param bufferSize size of the buffer used, in bytes
+	 * @param append <i>true</i> to add the stream at the end of the file, <i>false</i> to replace its content
+	 * @return the number of bytes copied
+	 * @throws IOException if there is any error reading or writing
+	 */
+	static long copy(InputStream inputStream, Path target, TransferMode mode, int bufferSize, boolean append) throws IOException {
+		long copied = 0;
+		StandardOpenOption writeOption = append ? StandardOpenOption.APPEND : StandardOpenOption.TRUNCATE_EXISTING;
+		if (mode == TransferMode.STREAM) {
+			try (OutputStream outputStream = new BufferedOutputStream(Files.newOutputStream(target, StandardOpenOption.CREATE, StandardOpenOption.WRITE, writeOption), bufferSize)) {
+				copied = copyStream(inputStream, outputStream, bufferSize);
+			}
+		} else {
+			try (FileChannel outputChannel = FileChannel.open(target, StandardOpenOption.CREATE, StandardOpenOption.WRITE, writeOption)) {
+				if (append) {
+					outputChannel.position(outputChannel.size());
+				}
+				ReadableByteChannel inputChannel = Channels.newChannel(inputStream);
+				copied = (mode == TransferMode.CHANNEL) ? transferChannel(inputChannel, outputChannel, bufferSize)
+						                                : copyDirectBuffer(inputChannel, outputChannel, bufferSize);
+			}
+		}
+		return copied;
+	}
+	
+	private static long copyStream(InputStream inputStream, OutputStream outputStream, int bufferSize) throws IOException {
+		final byte[] buffer = new byte[bufferSize];
+		long copied = 0;
+		int read = 0;
+		while ((read = inputStream.read(buffer)) >= 0) {
+			outputStream.write(buffer, 0, read);
+			copied += read;
+		}
+		return copied;
+	}
+	
+	private static long transferChannel(ReadableByteChannel inputChannel, FileChannel outputChannel, int bufferSize) throws IOException {
+		long position = outputChannel.position();
+		long start = position;
+		long transferred = 0;
+		while ((transferred = outputChannel.transferFrom(inputChannel, position, bufferSize)) > 0) {
+			position += transferred;
+		}
+		return position - start;
+	}
+	
+	private static long copyDirectBuffer(ReadableByteChannel inputChannel, FileChannel outputChannel, int bufferSize) throws IOException {
+		boolean pooled = isVirtualThread();
+		ByteBuffer buffer = pooled ? takeDirectBuffer(bufferSize) : getDirectBuffer(bufferSize);
+		try {
+			long copied = 0;
+			int read = 0;
+			while ((read = inputChannel.read(buffer)) >= 0) {
+				copied += read;
+				if (!buffer.hasRemaining()) {
+					writeBuffer(buffer, outputChannel);
+				}
+			}
+			writeBuffer(buffer, outputChannel);
+			return copied;
+		} finally {
+			if (pooled) {
+				giveBackDirectBuffer(buffer);
+			}
+		}
+	}
+	
+	private static void writeBuffer(ByteBuffer buffer, FileChannel outputChannel) throws IOException {
+		buffer.flip();
+		while (buffer.hasRemaining()) {
+			outputChannel.write(buffer);
+		}
+		buffer.clear();
+	}
+	
+	private static ByteBuffer getDirectBuffer(int bufferSize) {
+		ByteBuffer buffer = directBuffers.get();
+		if (buffer == null || buffer.capacity() != bufferSize) {
+			buffer = ByteBuffer.allocateDirect(bufferSize);
+			directBuffers.set(buffer);
+		}
+		buffer.clear();
+		return buffer;
+	}
+	
+	/**
+	 * Takes a direct buffer from the pool, or allocates a new one if there is none of the size
+	 * @see #giveBackDirectBuffer(ByteBuffer)
+	 */
+	static ByteBuffer takeDirectBuffer(int bufferSize) {
+		ByteBuffer buffer = pooledBuffers.poll();
+		if (buffer == null || buffer.capacity() != bufferSize) {
+			buffer = ByteBuffer.allocateDirect(bufferSize);
+		}
+		buffer.clear();
+		return buffer;
+	}
+	
+	/**
+	 * Gives back to the pool a direct buffer no longer in use. It is dropped if the pool is full
+	 */
+	static void giveBackDirectBuffer(ByteBuffer buffer) {
+		pooledBuffers.offer(buffer);
+	}
+	
+	/**
+	 * @return the number of direct buffers in the pool, not in use
+	 */
+	static int getPooledBuffers() {
+		return pooledBuffers.size();
+	}
+	
+	private static boolean isVirtualThread() {
+		if (isVirtual == null) {
+			return false;
+		}
+		try {
+			return (boolean) isVirtual.invoke(Thread.currentThread());
+		} catch (Throwable e) {
+			return false;
+		}
+	}
+}
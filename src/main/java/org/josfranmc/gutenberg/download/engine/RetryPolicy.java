@@ -0,0 +1,156 @@
+/*
+ *  Copyright (C) 2018-2019 Jose Francisco Mena Ceca <josfranmc@gmail.com>
+ *
+ *  This file is part of JGutenbergDownload.
+ *
+ *  JGutenbergDownload is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  JGutenbergDownload is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with JGutenbergDownload.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package org.josfranmc.gutenberg.download.engine;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.MalformedURLException;
+import java.net.SocketTimeoutException;
+import java.net.URISyntaxException;
+import java.net.UnknownHostException;
+import java.nio.channels.UnresolvedAddressException;
+import java.nio.file.FileSystemException;
+import java.util.concurrent.ThreadLocalRandom;
+
+import javax.net.ssl.SSLHandshakeException;
+
+import org.josfranmc.gutenberg.download.GutenbergException;
+
+/**
+ * Decides whether a failed download is sent again and how long to wait before it.<p>
+ * Only transient failures are retried: timeouts, connection failures, downloads dropped by the engine and the status codes that
+ * may change later (see <code>HttpStatusException.isTransient()</code>). Unknown hosts, TLS handshake failures, wrong urls,
+ * errors writing the local file and the rest of error responses are permanent.<br>
+ * The wait grows exponentially from the initial backoff up to the maximum backoff, and is randomized between half and the whole
+ * of that value (jitter), so the downloads that failed together are not sent again together. If the server indicated how long
+ * to wait with a Retry-After header field, that time is waited instead, up to <code>MAX_RETRY_AFTER_MILLIS</code>.
+ * @author Jose Francisco Mena Ceca
+ * @version 2.1
+ * @see DownloadSession#setRetryPolicy(RetryPolicy)
+ */
+public class RetryPolicy {
+
+	/**
+	 * Policy that never retries
+	 */
+	public static final RetryPolicy NONE = new RetryPolicy(0, 0, 0);
+	
+	/**
+	 * Default maximum wait between attempts, in milliseconds
+	 */
+	public static final long DEFAULT_MAX_BACKOFF_MILLIS = 30000;
+	
+	/**
+	 * Longest Retry-After honored, in milliseconds. A server asking for a longer wait is waited only this time
+	 */
+	public static final long MAX_RETRY_AFTER_MILLIS = 120000;
+	
+	private final int maxRetries;
+	
+	private final long initialBackoffMillis;
+	
+	private final long maxBackoffMillis;
+	
+	
+	/**
+	 * @param maxRetries times a failed download is sent again (zero to never retry)
+	 * @param initialBackoffMillis wait before the first retry, in milliseconds
+	 * @param maxBackoffMillis maximum wait between attempts, in milliseconds
+	 * @throws GutenbergException if any value is less than zero
+	 */
+	public RetryPolicy(int maxRetries, long initialBackoffMillis, long maxBackoffMillis) {
+		if (maxRetries < 0 || initialBackoffMillis < 0 || maxBackoffMillis < 0) {
+			throw new GutenbergException("org.josfranmc.gutenberg.GutenbergException: Retry policy values cannot be less than zero");
+		}
+		this.maxRetries = maxRetries;
+		this.initialBackoffMillis = initialBackoffMillis;
+		this.maxBackoffMillis = Math.max(initialBackoffMillis, maxBackoffMillis);
+	}
+	
+	/**
+	 * @return times a failed download is sent again
+	 */
+	public int getMaxRetries() {
+		return maxRetries;
+	}
+	
+	/**
+	 * @return wait before the first retry, in milliseconds
+	 */
+	public long getInitialBackoffMillis() {
+		return initialBackoffMillis;
+	}
+	
+	/**
+	 * @return maximum wait between attempts, in milliseconds
+	 */
+	public long getMaxBackoffMillis() {
+		return maxBackoffMillis;
+	}
+	
+	/**
+	 * @param error error of a download, as thrown by the engine (usually a <code>GutenbergException</code> with the original cause)
+	 * @return <i>true</i> if the download may succeed if it is sent again
+	 */
+	public static boolean isTransient(Throwable error) {
+		boolean networkError = false;
+		for (Throwable e = error; e != null; e = e.getCause()) {
+			if (e instanceof HttpStatusException) {
+				return ((HttpStatusException) e).isTransient();
+			} else if (e instanceof SocketTimeoutException) {
+				return true;
+			} else if (e instanceof InterruptedIOException || e instanceof InterruptedException) {
+				return false;
+			} else if (e instanceof UnknownHostException || e instanceof UnresolvedAddressException || e instanceof SSLHandshakeException 
+					|| e instanceof MalformedURLException || e instanceof URISyntaxException || e instanceof FileSystemException) {
+				return false;
+			} else if (e instanceof IOException) {
+				networkError = true;
+			}
+		}
+		return networkError;
+	}
+	
+	/**
+	 * @param retry number of the retry (1 for the first one)
+	 * @param error error of the failed attempt, or null if the engine dropped the download
+	 * @return the time to wait before the retry, in milliseconds
+	 */
+	public long getBackoffMillis(int retry, Throwable error) {
+		long retryAfter = getRetryAfterMillis(error);
+		if (retryAfter >= 0) {
+			return Math.min(retryAfter, MAX_RETRY_AFTER_MILLIS);
+		}
+		long backoff = initialBackoffMillis;
+		for (int i = 1; i < retry && backoff < maxBackoffMillis; i++) {
+			backoff *= 2;
+		}
+		backoff = Math.min(backoff, maxBackoffMillis);
+		return (backoff > 1) ? backoff / 2 + ThreadLocalRandom.current().nextLong(backoff / 2 + 1) : backoff;
+	}
+	
+	private static long getRetryAfterMillis(Throwable error) {
+		for (Throwable e = error; e != null; e = e.getCause()) {
+			if (e instanceof HttpStatusException) {
+				return ((HttpStatusException) e).getRetryAfterMillis();
+			}
+		}
+		return -1;
+	}
+}
@@ -0,0 +1,280 @@
+/*
+ *  Copyright (C) 2018-2019 Jose Francisco Mena Ceca <josfranmc@gmail.com>
+ *
+ *  This file is part of JGutenbergDownload.
+ *
+ *  JGutenbergDownload is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  JGutenbergDownload is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with JGutenbergDownload.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package org.josfranmc.gutenberg.download.engine;
+
+import java.net.URL;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.josfranmc.gutenberg.download.GutenbergException;
+
+/**
+ * Engine that sends a download again when it fails with a transient error, following the <code>RetryPolicy</code> of its session.<p>
+ * It wraps the engine that actually downloads. A download dropped by that engine (a result without saved file, after a timeout)
+ * is a transient failure too. Every outcome is reported to the circuit breaker of the session, and no attempt is sent while the
+ * circuit of the host is open: the attempt waits until the circuit allows a trial request, and the wait counts as a retry.
+ * Once there are no retries left, the download fails at once with a <code>GutenbergException</code>.<br>
+ * A retry resumes the bytes already saved by the failed attempt, if the server allows it.
+ * The synchronous download waits between attempts on the calling thread; the asynchronous one schedules the next attempt, so no
+ * thread is parked while waiting.
+ * @author Jose Francisco Mena Ceca
+ * @version 2.1
+ * @see RetryPolicy
+ * @see DownloadSession#setRetryPolicy(RetryPolicy)
+ */
+class RetryingDownloadEngine implements IDownloadEngine {
+
+	private static final Logger log = LogManager.getLogger(RetryingDownloadEngine.class);
+	
+	private final IDownloadEngine delegate;
+	
+	private final DownloadSession session;
+	
+	/**
+	 * retries allowed per download, if lower than the ones of the retry policy
+	 */
+	private volatile int maxRetries = Integer.MAX_VALUE;
+	
+	
+	/**
+	 * @param delegate engine that downloads
+	 * @param session session with the retry policy and the circuit breaker
+	 */
+	RetryingDownloadEngine(IDownloadEngine delegate, DownloadSession session) {
+		this.delegate = delegate;
+		this.session = session;
+	}
+	
+	/**
+	 * @return the engine that downloads
+	 */
+	IDownloadEngine getDelegate() {
+		return delegate;
+	}
+	
+	/**
+	 * Limits the retries of the next downloads below the ones of the retry policy of the session
+	 * @param maxRetries times a failed download is sent again at most
+	 */
+	void limitRetries(int maxRetries) {
+		this.maxRetries = maxRetries;
+	}
+	
+	private int getMaxRetries(RetryPolicy policy) {
+		return Math.min(policy.getMaxRetries(), maxRetries);
+	}
+	
+	@Override
+	public DownloadResult download() {
+		URL target = getResource();
+		if (target == null || getSavePath() == null) {
+			return delegate.download();
+		}
+		RetryPolicy policy = session.getRetryPolicy();
+		for (int retry = 0; ; retry++) {
+			if (!session.allowRequest(target)) {
+				sleepBeforeRetry(waitForCircuit(target, retry, policy));
+				continue;
+			}
+			DownloadResult result = null;
+			RuntimeException error = null;
+			try {
+				result = delegate.download();
+			} catch (RuntimeException e) {
+				error = e;
+			}
+			if (!mustRetry(target, result, error, retry, policy)) {
+				if (error != null) {
+					throw error;
+				}
+				return result;
+			}
+			sleepBeforeRetry(waitBeforeRetry(target, error, retry + 1, policy));
+		}
+	}
+	
+	/**
+	 * Scrapes a page, sending it again if it fails with a transient error before any link has been passed to the consumer.
+	 * Once some link has been passed, the page is not sent again, so no link is passed twice.
+	 * A result without headers, after a timeout, is a transient failure.
+	 */
+	@Override
+	public DownloadResult scrape(Predicate<DownloadResult> isPage, Consumer<String> linkConsumer) {
+		URL target = getResource();
+		if (target == null) {
+			return delegate.scrape(isPage, linkConsumer);
+		}
+		AtomicBoolean linksFound = new AtomicBoolean(false);
+		Consumer<String> consumer = link -> {
+			linksFound.set(true);
+			linkConsumer.accept(link);
+		};
+		RetryPolicy policy = session.getRetryPolicy();
+		for (int retry = 0; ; retry++) {
+			if (!session.allowRequest(target)) {
+				sleepBeforeRetry(waitForCircuit(target, retry, policy));
+				continue;
+			}
+			DownloadResult result = null;
+			RuntimeException error = null;
+			try {
+				result = delegate.scrape(isPage, consumer);
+			} catch (RuntimeException e) {
+				error = e;
+			}
+			boolean transientFailure = (error != null) ? RetryPolicy.isTransient(error) : (result == null || result.getHeaders() == null);
+			session.requestCompleted(target, transientFailure);
+			if (!transientFailure || linksFound.get() || retry >= getMaxRetries(policy)) {
+				if (error != null) {
+					throw error;
+				}
+				return result;
+			}
+			sleepBeforeRetry(waitBeforeRetry(target, error, retry + 1, policy));
+		}
+	}
+	
+	private void sleepBeforeRetry(long wait) {
+		try {
+			Thread.sleep(wait);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new GutenbergException("org.josfranmc.gutenberg.GutenbergException: Download interrupted", e);
+		}
+		session.retrySent();
+	}
+	
+	@Override
+	public CompletableFuture<DownloadResult> downloadAsync(Executor executor) {
+		URL target = getResource();
+		if (target == null || getSavePath() == null) {
+			return delegate.downloadAsync(executor);
+		}
+		CompletableFuture<DownloadResult> download = new CompletableFuture<>();
+		attempt(target, executor, 0, download);
+		return download;
+	}
+	
+	/**
+	 * Sends an attempt of an asynchronous download, and schedules the next one if it fails with a transient error
+	 */
+	private void attempt(URL target, Executor executor, int retry, CompletableFuture<DownloadResult> download) {
+		if (!session.allowRequest(target)) {
+			try {
+				scheduleAttempt(target, executor, retry + 1, download, waitForCircuit(target, retry, session.getRetryPolicy()), null);
+			} catch (GutenbergException e) {
+				download.completeExceptionally(new CompletionException(e));
+			}
+			return;
+		}
+		delegate.downloadAsync(executor).whenComplete((result, e) -> {
+			Throwable error = (e instanceof CompletionException && e.getCause() != null) ? e.getCause() : e;
+			RetryPolicy policy = session.getRetryPolicy();
+			if (!mustRetry(target, result, error, retry, policy)) {
+				if (error != null) {
+					download.completeExceptionally(new CompletionException(error));
+				} else {
+					download.complete(result);
+				}
+				return;
+			}
+			scheduleAttempt(target, executor, retry + 1, download, waitBeforeRetry(target, error, retry + 1, policy), error);
+		});
+	}
+	
+	/**
+	 * Schedules an attempt of an asynchronous download
+	 * @param error error of the previous attempt, to fail the download with if the attempt cannot be scheduled, or null
+	 */
+	private void scheduleAttempt(URL target, Executor executor, int retry, CompletableFuture<DownloadResult> download, long wait, Throwable error) {
+		try {
+			session.getRetryScheduler().schedule(() -> {
+				session.retrySent();
+				attempt(target, executor, retry, download);
+			}, wait, TimeUnit.MILLISECONDS);
+		} catch (RejectedExecutionException ex) {
+			download.completeExceptionally(new CompletionException(error != null ? error : ex));
+		}
+	}
+	
+	/**
+	 * Reports the outcome of an attempt to the circuit breaker and decides whether it is sent again
+	 */
+	private boolean mustRetry(URL target, DownloadResult result, Throwable error, int retry, RetryPolicy policy) {
+		boolean transientFailure = (error != null) ? RetryPolicy.isTransient(error) : (result == null || result.getSavedFilePath() == null);
+		session.requestCompleted(target, transientFailure);
+		return transientFailure && retry < getMaxRetries(policy);
+	}
+	
+	private long waitBeforeRetry(URL target, Throwable error, int retry, RetryPolicy policy) {
+		long wait = policy.getBackoffMillis(retry, error);
+		String reason = (error == null) ? "Download timeout exceeded" : ((error.getCause() != null) ? error.getCause().getMessage() : error.getMessage());
+		log.warn("[WARN] Retrying " + target + " in " + wait + " ms (" + retry + "/" + getMaxRetries(policy) + "). " + reason);
+		return wait;
+	}
+	
+	/**
+	 * An attempt has not been sent because the circuit of its host is open
+	 * @param retry number of retries already made
+	 * @return the time to wait before sending the attempt again: until the circuit allows a trial request, and at least the backoff of the retry
+	 * @throws GutenbergException if there are no retries left
+	 */
+	private long waitForCircuit(URL target, int retry, RetryPolicy policy) {
+		if (retry >= getMaxRetries(policy)) {
+			log.warn("[WARN] Circuit breaker open for " + target.getHost() + ". Download of " + target + " rejected");
+			throw new GutenbergException("org.josfranmc.gutenberg.GutenbergException: Circuit breaker open for " + target.getHost());
+		}
+		long wait = Math.max(session.getCircuitOpenMillis(target), policy.getBackoffMillis(retry + 1, null));
+		log.warn("[WARN] Circuit breaker open for " + target.getHost() + ". Retrying " + target + " in " + wait + " ms (" + (retry + 1) + "/" + getMaxRetries(policy) + ")");
+		return wait;
+	}
+	
+	@Override
+	public void setTransferListener(TransferListener listener) {
+		delegate.setTransferListener(listener);
+	}
+	
+	@Override
+	public void setResource(URL resource) {
+		delegate.setResource(resource);
+	}
+	
+	@Override
+	public URL getResource() {
+		return delegate.getResource();
+	}
+	
+	@Override
+	public void setSavePath(String savePath) {
+		delegate.setSavePath(savePath);
+	}
+	
+	@Override
+	public String getSavePath() {
+		return delegate.getSavePath();
+	}
+}
@@ -0,0 +1,231 @@
+/*
+ *  Copyright (C) 2018-2019 Jose Francisco Mena Ceca <josfranmc@gmail.com>
+ *
+ *  This file is part of JGutenbergDownload.
+ *
+ *  JGutenbergDownload is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  JGutenbergDownload is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with JGutenbergDownload.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package org.josfranmc.gutenberg.download.engine;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * Downloads a large resource in several segments at the same time, each one over its own connection.<p>
+ * No request is spent in probing the resource: the first request of the download asks for its first bytes, up to the threshold
+ * of the session (see <code>getFirstRange</code>), and the Content-Range of the answer tells the length of the resource. A smaller
+ * resource is received whole with that answer. If it is larger, that answer is the first segment, and the rest of the resource is
+ * split into as many ranges as the other segments; the <i>.part</i> file is preallocated and every range is requested with a Range
+ * header and written at its offset of the file. The first segment is read by the calling thread and the rest by the segment
+ * executor of the session.<br>
+ * A download made in segments cannot be resumed, since the <i>.part</i> file may have holes. If any segment fails, the whole
+ * download fails and the <i>.part</i> file is discarded.
+ * @author Jose Francisco Mena Ceca
+ * @version 2.1
+ * @see DownloadSession#setSegments(int)
+ */
+class SegmentedDownload {
+
+	private static final Logger log = LogManager.getLogger(SegmentedDownload.class);
+	
+	/**
+	 * Opens a connection to the resource with the common request headers already set
+	 */
+	interface ConnectionOpener {
+		HttpURLConnection open() throws IOException;
+	}
+	
+	private final ConnectionOpener opener;
+	
+	private final DownloadSession session;
+	
+	private final TransferListener transferListener;
+	
+	
+	/**
+	 * @param opener opens connections to the resource
+	 * @param session session with the number of segments, the size threshold and the executor for segments
+	 * @param transferListener receives the bytes of all segments, or null
+	 */
+	SegmentedDownload(ConnectionOpener opener, DownloadSession session, TransferListener transferListener) {
+		this.opener = opener;
+		this.session = session;
+		this.transferListener = transferListener;
+	}
+	
+	/**
+	 * @param session session with the size threshold
+	 * @return the value of the Range header field of the first request of a download in segments: the first bytes of the
+	 * resource up to the threshold, so a smaller resource is received whole
+	 */
+	static String getFirstRange(DownloadSession session) {
+		return "bytes=0-" + (Math.max(session.getSegmentThreshold(), 1) - 1);
+	}
+	
+	/**
+	 * @param first connection that has received a partial answer (206) to the first request, asked with <code>getFirstRange</code>
+	 * @return <i>true</i> if the answer is the first segment of a larger resource, which can be downloaded in segments;
+	 * <i>false</i> if it is the whole resource, or the answer cannot be used as a segment
+	 */
+	static boolean isFirstSegment(HttpURLConnection first) {
+		String contentRange = first.getHeaderField("Content-Range");
+		long end = PartialDownload.getRangeEnd(contentRange);
+		return PartialDownload.continuesAt(contentRange, 0) && end >= 0 && end + 1 < PartialDownload.getCompleteLength(contentRange)
+				&& !ContentDecoding.isEncoded(first.getContentEncoding());
+	}
+	
+	/**
+	 * @param first connection that has received a partial answer (206) to the first request, asked with <code>getFirstRange</code>
+	 * @return <i>true</i> if the answer is the whole resource
+	 */
+	static boolean isWholeResource(HttpURLConnection first) {
+		String contentRange = first.getHeaderField("Content-Range");
+		return PartialDownload.continuesAt(contentRange, 0) && PartialDownload.getRangeEnd(contentRange) + 1 == PartialDownload.getCompleteLength(contentRange);
+	}
+	
+	/**
+	 * Downloads the resource in segments, starting with the first one already answered.
+	 * @param partialDownload state of the download, whose <i>.part</i> file is written
+	 * @param first connection that has received the first segment (see <code>isFirstSegment</code>)
+	 * @return the result of the download, with the headers of the first segment and the length of the whole resource
+	 * @throws IOException if there is any error downloading
+	 */
+	DownloadResult download(PartialDownload partialDownload, HttpURLConnection first) throws IOException {
+		String contentRange = first.getHeaderField("Content-Range");
+		long length = PartialDownload.getCompleteLength(contentRange);
+		long firstEnd = PartialDownload.getRangeEnd(contentRange);
+		int others = (int) Math.min(session.getSegments() - 1, length - firstEnd - 1);
+		long segmentSize = (length - firstEnd - 1 + others - 1) / others;
+		
+		DownloadResult downloadResult = new DownloadResult();
+		downloadResult.setHeaders(first);
+		downloadResult.getHeaders().put("Content-Length", Collections.singletonList(String.valueOf(length)));
+		downloadResult.getHeaders().remove("Content-Range");
+		String lastModified = downloadResult.getLastModified();
+		partialDownload.begin("", "");
+		if (transferListener != null) {
+			transferListener.transferStarted(length);
+		}
+		try (FileChannel channel = FileChannel.open(partialDownload.getPartFile(), StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+			preallocate(channel, length);
+			List<CompletableFuture<Void>> pending = new ArrayList<>();
+			for (int i = 0; i < others; i++) {
+				long from = firstEnd + 1 + i * segmentSize;
+				long to = Math.min(length, from + segmentSize) - 1;
+				if (from <= to) {
+					pending.add(CompletableFuture.runAsync(() -> {
+						try {
+							fetchRange(channel, from, to, lastModified);
+						} catch (IOException e) {
+							throw new CompletionException(e);
+						}
+					}, session.getSegmentExecutor()));
+				}
+			}
+			try {
+				copyRange(first, channel, 0, firstEnd);
+			} finally {
+				waitSegments(pending);
+			}
+		} catch (IOException e) {
+			partialDownload.discard();
+			throw e;
+		}
+		log.debug("[DEBUG] Descargado en " + (others + 1) + " segmentos (" + length + " bytes)");
+		return downloadResult;
+	}
+	
+	/**
+	 * Reserves the length of the file, so the segments are written into an already sized file
+	 */
+	private static void preallocate(FileChannel channel, long length) throws IOException {
+		channel.write(ByteBuffer.wrap(new byte[1]), length - 1);
+	}
+	
+	/**
+	 * Waits until all segments end, even if any of them fails, so no segment keeps writing to the file once it is closed
+	 * @throws IOException the error of the first segment that failed
+	 */
+	private static void waitSegments(List<CompletableFuture<Void>> pending) throws IOException {
+		IOException error = null;
+		for (CompletableFuture<Void> segment : pending) {
+			try {
+				segment.join();
+			} catch (CompletionException e) {
+				if (error == null) {
+					error = (e.getCause() instanceof IOException) ? (IOException) e.getCause() : new IOException(e.getCause());
+				}
+			}
+		}
+		if (error != null) {
+			throw error;
+		}
+	}
+	
+	/**
+	 * Requests a range of bytes of the resource and writes it at its offset of the file.
+	 * @param channel channel of the <i>.part</i> file
+	 * @param from first byte of the range
+	 * @param to last byte of the range, inclusive
+	 * @param lastModified value of the Last-Modified header field of the first segment, to make sure all ranges belong to the same resource
+	 * @throws IOException if the range cannot be downloaded completely
+	 */
+	private void fetchRange(FileChannel channel, long from, long to, String lastModified) throws IOException {
+		HttpURLConnection connection = opener.open();
+		connection.setRequestProperty("Accept-Encoding", "identity");
+		connection.setRequestProperty("Range", "bytes=" + from + "-" + to);
+		if (!lastModified.isEmpty()) {
+			connection.setRequestProperty("If-Range", lastModified);
+		}
+		int responseCode = connection.getResponseCode();
+		if (responseCode != HttpURLConnection.HTTP_PARTIAL || !PartialDownload.continuesAt(connection.getHeaderField("Content-Range"), from)) {
+			connection.disconnect();
+			throw new IOException("Server did not return range " + from + "-" + to + " (response code " + responseCode + ")");
+		}
+		copyRange(connection, channel, from, to);
+	}
+	
+	/**
+	 * Writes the body of a partial answer at its offset of the file
+	 * @throws IOException if the range cannot be received completely
+	 */
+	private void copyRange(HttpURLConnection connection, FileChannel channel, long from, long to) throws IOException {
+		long position = from;
+		byte[] buffer = new byte[session.getBufferSize()];
+		try (InputStream inputStream = ProgressInputStream.of(connection.getInputStream(), transferListener)) {
+			int read = 0;
+			while (position <= to && (read = inputStream.read(buffer, 0, (int) Math.min(buffer.length, to - position + 1))) >= 0) {
+				ByteBuffer bytes = ByteBuffer.wrap(buffer, 0, read);
+				while (bytes.hasRemaining()) {
+					position += channel.write(bytes, position);
+				}
+			}
+		}
+		if (position != to + 1) {
+			throw new IOException("Incomplete range " + from + "-" + to + ": " + (position - from) + " bytes received");
+		}
+	}
+}
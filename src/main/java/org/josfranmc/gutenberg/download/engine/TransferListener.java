@@ -0,0 +1,51 @@
+/*
+ *  Copyright (C) 2018-2019 Jose Francisco Mena Ceca <josfranmc@gmail.com>
+ *
+ *  This file is part of JGutenbergDownload.
+ *
+ *  JGutenbergDownload is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  JGutenbergDownload is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with JGutenbergDownload.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package org.josfranmc.gutenberg.download.engine;
+
+/**
+ * Receives the progress of the transfer of a resource while it is being downloaded.<p>
+ * A segmented download reports the bytes of all its segments, so methods can be called from several threads at the same time.
+ * Implementations must be thread-safe and must return quickly, since they are called by the threads that read the network.
+ * @author Jose Francisco Mena Ceca
+ * @version 2.1
+ * @see IDownloadEngine#setTransferListener(TransferListener)
+ */
+public interface TransferListener {
+
+	/**
+	 * Called every time a request for the resource is sent, once the rate limit of the session allows it: once for every attempt
+	 * of the download, and once for every segment of a segmented download. It does nothing by default.
+	 */
+	public default void requestSent() {
+	}
+
+	/**
+	 * Called once the server has answered and the body of the resource starts being saved. It is not called if the body is not
+	 * saved (error responses, 304 Not Modified).
+	 * @param contentLength length of the body, in bytes, or -1 if it is unknown
+	 */
+	public void transferStarted(long contentLength);
+	
+	/**
+	 * Called every time a block of the body is received.
+	 * @param bytes number of bytes received since the last call
+	 */
+	public void bytesTransferred(long bytes);
+	
+}
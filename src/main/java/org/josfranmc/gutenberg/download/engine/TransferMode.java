@@ -0,0 +1,45 @@
+/*
+ *  Copyright (C) 2018-2019 Jose Francisco Mena Ceca <josfranmc@gmail.com>
+ *
+ *  This file is part of JGutenbergDownload.
+ *
+ *  JGutenbergDownload is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  JGutenbergDownload is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with JGutenbergDownload.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package org.josfranmc.gutenberg.download.engine;
+
+/**
+ * Ways of copying the body of a response to the local file
+ * @author Jose Francisco Mena Ceca
+ * @version 2.1
+ * @see DownloadSession#setTransferMode(TransferMode)
+ */
+public enum TransferMode {
+
+	/**
+	 * The body is read into a heap array and written through a <code>BufferedOutputStream</code> of the same size
+	 */
+	STREAM,
+	
+	/**
+	 * The body is read as a <code>ReadableByteChannel</code> and written with <code>FileChannel.transferFrom</code>
+	 */
+	CHANNEL,
+	
+	/**
+	 * The body is read as a <code>ReadableByteChannel</code> into a direct <code>ByteBuffer</code>, reused between downloads of the same thread,
+	 * which is written to a <code>FileChannel</code> each time it gets full
+	 */
+	DIRECT_BUFFER;
+	
+}
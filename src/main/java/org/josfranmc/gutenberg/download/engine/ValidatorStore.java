@@ -0,0 +1,164 @@
+/*
+ *  Copyright (C) 2018-2019 Jose Francisco Mena Ceca <josfranmc@gmail.com>
+ *
+ *  This file is part of JGutenbergDownload.
+ *
+ *  JGutenbergDownload is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  JGutenbergDownload is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with JGutenbergDownload.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package org.josfranmc.gutenberg.download.engine;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Properties;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * Keeps the validators (ETag and Last-Modified header fields) of the files downloaded in a folder, so they can be revalidated
+ * with a conditional request instead of being downloaded again.<p>
+ * The validators are saved in a <i>.validators</i> properties file inside the folder. Changes are kept in memory and written
+ * every <code>saveEvery</code> changes and when the store is saved explicitly.<br>
+ * Files downloaded before the store existed have no validators; for them the modification time of the local file is
+ * used as If-Modified-Since value, since the file cannot be older than the resource it was downloaded from.
+ * @author Jose Francisco Mena Ceca
+ * @version 2.1
+ * @see DownloadSession
+ */
+class ValidatorStore {
+
+	private static final Logger log = LogManager.getLogger(ValidatorStore.class);
+	
+	static final String STORE_FILE_NAME = ".validators";
+	
+	private static final String ETAG = ".etag";
+	
+	private static final String LAST_MODIFIED = ".last-modified";
+	
+	private static final DateTimeFormatter HTTP_DATE = DateTimeFormatter.ofPattern("EEE, dd MMM yyyy HH:mm:ss 'GMT'", Locale.US).withZone(ZoneOffset.UTC);
+	
+	private final Path storeFile;
+	
+	private final Properties validators = new Properties();
+	
+	private final int saveEvery;
+	
+	private int unsavedChanges = 0;
+	
+	
+	/**
+	 * @param folder folder of the files whose validators are kept
+	 * @param saveEvery number of changes after which the store is written to disk
+	 */
+	ValidatorStore(String folder, int saveEvery) {
+		this.storeFile = Paths.get(folder, STORE_FILE_NAME);
+		this.saveEvery = Math.max(1, saveEvery);
+		load();
+	}
+	
+	private void load() {
+		if (Files.exists(storeFile)) {
+			try (InputStream is = Files.newInputStream(storeFile)) {
+				validators.load(is);
+			} catch (IOException e) {
+				log.warn("[WARN] Cannot read " + storeFile + ". Files will be downloaded again");
+				validators.clear();
+			}
+		}
+	}
+	
+	/**
+	 * Returns the header fields of a conditional request for a file already downloaded.
+	 * @param file local file
+	 * @return the If-None-Match and If-Modified-Since header fields to send, or an empty map if the file does not exist
+	 */
+	synchronized Map<String, String> conditionalHeaders(Path file) {
+		Map<String, String> headers = new LinkedHashMap<>();
+		if (Files.isRegularFile(file)) {
+			String name = file.getFileName().toString();
+			String etag = validators.getProperty(name + ETAG);
+			String lastModified = validators.getProperty(name + LAST_MODIFIED);
+			if (etag != null) {
+				headers.put("If-None-Match", etag);
+			}
+			if (lastModified != null) {
+				headers.put("If-Modified-Since", lastModified);
+			} else if (etag == null) {
+				try {
+					headers.put("If-Modified-Since", HTTP_DATE.format(Instant.ofEpochMilli(Files.getLastModifiedTime(file).toMillis())));
+				} catch (IOException e) {
+					// without validators the file is downloaded again
+				}
+			}
+		}
+		return headers;
+	}
+	
+	/**
+	 * Saves the validators of a downloaded file. Empty values are not kept.
+	 * @param file local file
+	 * @param etag value of the ETag header field of the response
+	 * @param lastModified value of the Last-Modified header field of the response
+	 */
+	synchronized void record(Path file, String etag, String lastModified) {
+		String name = file.getFileName().toString();
+		setOrRemove(name + ETAG, etag);
+		setOrRemove(name + LAST_MODIFIED, lastModified);
+		if (++unsavedChanges >= saveEvery) {
+			save();
+		}
+	}
+	
+	private void setOrRemove(String key, String value) {
+		if (value != null && !value.isEmpty()) {
+			validators.setProperty(key, value);
+		} else {
+			validators.remove(key);
+		}
+	}
+	
+	/**
+	 * Writes the validators to disk, if there are changes not saved. The file is replaced atomically.
+	 */
+	synchronized void save() {
+		if (unsavedChanges > 0) {
+			Path tempFile = storeFile.resolveSibling(STORE_FILE_NAME + ".tmp");
+			try {
+				try (OutputStream os = Files.newOutputStream(tempFile)) {
+					validators.store(os, "Validators of downloaded files");
+				}
+				try {
+					Files.move(tempFile, storeFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+				} catch (AtomicMoveNotSupportedException e) {
+					Files.move(tempFile, storeFile, StandardCopyOption.REPLACE_EXISTING);
+				}
+				unsavedChanges = 0;
+			} catch (IOException e) {
+				log.warn("[WARN] Cannot write " + storeFile + ". " + e.getMessage());
+			}
+		}
+	}
+}
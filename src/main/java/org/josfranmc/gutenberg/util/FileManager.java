@@ -22,16 +22,22 @@
 package org.josfranmc.gutenberg.util;
 
 import java.io.File;
-import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.nio.file.DirectoryStream;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
 import java.util.zip.ZipEntry;
+import java.util.zip.ZipException;
+import java.util.zip.ZipFile;
 import java.util.zip.ZipInputStream;
 
 import org.apache.logging.log4j.Logger;
@@ -50,6 +56,16 @@ public class FileManager {
 	
 	private static final String FILE_SEPARATOR = System.getProperty("file.separator");
 	
+	/**
+	 * size of the buffers used to unzip files, in bytes
+	 */
+	private static final int UNZIP_BUFFER_SIZE = 64 * 1024;
+	
+	/**
+	 * a buffer for every thread that unzips files, reused by all the entries it extracts
+	 */
+	private static final ThreadLocal<byte[]> BUFFERS = ThreadLocal.withInitial(() -> new byte[UNZIP_BUFFER_SIZE]);
+	
 	
 	FileManager() {
 		throw new IllegalStateException("Cannot instantiate class");
@@ -76,12 +92,21 @@ public class FileManager {
 	 */
 	public static String getLocalFilePathFromURL(String savePath, String link) {
 		String path = (!savePath.endsWith(FILE_SEPARATOR)) ? savePath + FILE_SEPARATOR : savePath;
-		String fileName = link.substring(link.lastIndexOf('/')+1, link.length())
-				              .replace("?", "_")
-				              .replace("&amp;", "&");
-		return (path + fileName);
+		return (path + getFileNameFromURL(link));
     }
 	
+	/**
+	 * Returns the name a file must have when downloaded on the local machine: the name of the file in the download url, 
+	 * with <i>?</i> and <i>&amp;amp;</i> characters replaced by <i>_</i> and <i>&amp;</i> respectively.
+	 * @param link download link
+	 * @return the name of the file
+	 */
+	public static String getFileNameFromURL(String link) {
+		return link.substring(link.lastIndexOf('/')+1, link.length())
+	               .replace("?", "_")
+	               .replace("&amp;", "&");
+	}
+	
 	/**
 	 * Returns the name of file inside a path.
 	 * @param str file path
@@ -94,32 +119,173 @@ public class FileManager {
 	}
 	
 	/**
-	 * Unzips files in format zip from a certain folder.
+	 * Unzips files in format zip from a certain folder.<br>
+	 * Archives are unzipped in parallel, on a <code>ForkJoinPool</code> with a thread per available processor.
+	 * @param inputPath folder path with zip files
+	 * @param outputPath folder path where unzip files
+	 * @return the counters of the process
+	 * @see #unzipFiles(String, String, ZipEntryFilter, Executor)
+	 */
+	public static UnzipReport unzipFiles(String inputPath, String outputPath) {
+		return unzipFiles(inputPath, outputPath, ZipEntryFilter.ALL);
+	}
+	
+	/**
+	 * Unzips the files selected by a filter from the zip files of a certain folder.<br>
+	 * Archives are unzipped in parallel, on a <code>ForkJoinPool</code> with a thread per available processor.
+	 * @param inputPath folder path with zip files
+	 * @param outputPath folder path where unzip files
+	 * @param filter selects the files to extract from every zip file
+	 * @return the counters of the process
+	 * @see #unzipFiles(String, String, ZipEntryFilter, Executor)
+	 */
+	public static UnzipReport unzipFiles(String inputPath, String outputPath, ZipEntryFilter filter) {
+		ForkJoinPool pool = new ForkJoinPool(Runtime.getRuntime().availableProcessors());
+		try {
+			return unzipFiles(inputPath, outputPath, filter, pool);
+		} finally {
+			pool.shutdown();
+		}
+	}
+	
+	/**
+	 * Unzips files in format zip from a certain folder, running the extraction of every archive on an executor.
+	 * @param inputPath folder path with zip files
+	 * @param outputPath folder path where unzip files
+	 * @param executor executor where to unzip the archives
+	 * @return the counters of the process
+	 * @see #unzipFiles(String, String, ZipEntryFilter, Executor)
+	 */
+	public static UnzipReport unzipFiles(String inputPath, String outputPath, Executor executor) {
+		return unzipFiles(inputPath, outputPath, ZipEntryFilter.ALL, executor);
+	}
+	
+	/**
+	 * Unzips the files selected by a filter from the zip files of a certain folder, running the extraction of every archive on an executor.<br>
+	 * Errors are isolated by archive: a damaged archive is logged and counted as failed, and the others are unzipped anyway.
+	 * The method returns when all the archives have been processed.
 	 * @param inputPath folder path with zip files
 	 * @param outputPath folder path where unzip files
+	 * @param filter selects the files to extract from every zip file
+	 * @param executor executor where to unzip the archives
+	 * @return the counters of the process
+	 * @see #unzipFile(String, String, ZipEntryFilter)
 	 */
-	public static void unzipFiles(String inputPath, String outputPath) {
+	public static UnzipReport unzipFiles(String inputPath, String outputPath, ZipEntryFilter filter, Executor executor) {
+		UnzipReport report = new UnzipReport();
+		long start = System.nanoTime();
 		if (inputPath != null && outputPath != null) {
-			inputPath = checkAndFixPath(inputPath);
-			outputPath = checkAndFixPath(outputPath);
-			for (String zipFile : getZipFiles(inputPath)) {
-				try (ZipInputStream zis = new ZipInputStream(new FileInputStream(zipFile))) {
-					ZipEntry zipEntry = zis.getNextEntry();
-					while (zipEntry != null) {
-						String fileName = getFileName(zipEntry.getName());
-						if (!fileName.isEmpty()) {
-							String targetFile = outputPath + fileName;
-							extractFile(zis, targetFile);
-						}
-						zipEntry = zis.getNextEntry();
-			        }
-				} catch (IOException e) {
-					log.error("IOException with zip file" + zipFile);
-				}	
+			List<CompletableFuture<Void>> extractions = new ArrayList<>();
+			for (String zipFile : getZipFiles(checkAndFixPath(inputPath))) {
+				extractions.add(CompletableFuture.runAsync(() -> unzipFile(zipFile, outputPath, filter, report), executor));
 			}
+			CompletableFuture.allOf(extractions.toArray(new CompletableFuture<?>[0])).join();
 		} else {
 			log.warn("Rutas no válidas");
 		}
+		report.finished(System.nanoTime() - start);
+		return report;
+	}
+	
+	/**
+	 * Unzips a file in format zip. Errors are logged, so a damaged file does not stop the extraction of the others.
+	 * A file without any file inside is considered damaged.
+	 * @param zipFile path of the zip file
+	 * @param outputPath folder path where unzip the file
+	 * @return <i>true</i> if the file has been unzipped, <i>false</i> otherwise
+	 */
+	public static boolean unzipFile(String zipFile, String outputPath) {
+		return unzipFile(zipFile, outputPath, ZipEntryFilter.ALL);
+	}
+	
+	/**
+	 * Unzips the files selected by a filter from a file in format zip.<br>
+	 * The central directory of the zip file is read first, and only the selected entries are read and decompressed; the others are
+	 * not even read from disk. Errors are logged, so a damaged file does not stop the extraction of the others.
+	 * A file without any file inside is considered damaged.
+	 * @param zipFile path of the zip file
+	 * @param outputPath folder path where unzip the file
+	 * @param filter selects the files to extract
+	 * @return <i>true</i> if the file has been unzipped, even if no file was selected, <i>false</i> otherwise
+	 */
+	public static boolean unzipFile(String zipFile, String outputPath, ZipEntryFilter filter) {
+		return unzipFile(zipFile, outputPath, filter, new UnzipReport());
+	}
+	
+	private static boolean unzipFile(String zipFile, String outputPath, ZipEntryFilter filter, UnzipReport report) {
+		try (ZipFile zip = new ZipFile(zipFile)) {
+			List<ZipEntry> entries = new ArrayList<>();
+			for (ZipEntry entry : Collections.list(zip.entries())) {
+				if (!entry.isDirectory()) {
+					entries.add(entry);
+				}
+			}
+			if (entries.isEmpty()) {
+				throw new ZipException("No files found, it is empty or damaged");
+			}
+			List<ZipEntry> selected = filter.select(entries);
+			String path = checkAndFixPath(outputPath);
+			for (ZipEntry entry : selected) {
+				String fileName = getFileName(entry.getName());
+				try (InputStream is = zip.getInputStream(entry)) {
+					report.fileExtracted(extractFile(is, path + fileName));
+				}
+			}
+			report.entriesSkipped(entries.size() - selected.size());
+			report.archiveUnzipped();
+			return true;
+		} catch (IOException | RuntimeException e) {
+			log.error("[ERROR] Error with zip file " + zipFile + ". " + e.getMessage());
+			report.archiveFailed();
+			return false;
+		}
+	}
+	
+	/**
+	 * Unzips the entries of a stream in format zip, as they are read. Files in folders of the zip are extracted to the output folder.
+	 * @param inputStream stream with the content of a zip file. It is not closed
+	 * @param outputPath folder path where unzip the entries
+	 * @return the paths of the extracted files
+	 * @throws IOException if the stream cannot be read or a file cannot be written
+	 * @throws ZipException if the stream has no file inside, because it is empty, damaged or not a zip file
+	 */
+	public static List<String> unzip(InputStream inputStream, String outputPath) throws IOException {
+		return unzip(inputStream, outputPath, ZipEntryFilter.ALL);
+	}
+	
+	/**
+	 * Unzips the entries of a stream in format zip accepted by a filter, as they are read. The entries not accepted are skipped.
+	 * Since the entries are read one by one, every entry matching any pattern of the filter is accepted, regardless of its preference.
+	 * As with the files, a stream without any file inside is considered damaged.
+	 * @param inputStream stream with the content of a zip file. It is not closed
+	 * @param outputPath folder path where unzip the entries
+	 * @param filter accepts the entries to extract
+	 * @return the paths of the extracted files, empty if no file was selected
+	 * @throws IOException if the stream cannot be read or a file cannot be written
+	 * @throws ZipException if the stream has no file inside, because it is empty, damaged or not a zip file
+	 */
+	public static List<String> unzip(InputStream inputStream, String outputPath, ZipEntryFilter filter) throws IOException {
+		List<String> files = new ArrayList<>();
+		outputPath = checkAndFixPath(outputPath);
+		ZipInputStream zis = new ZipInputStream(inputStream);
+		int entries = 0;
+		ZipEntry zipEntry = zis.getNextEntry();
+		while (zipEntry != null) {
+			String fileName = getFileName(zipEntry.getName());
+			if (!fileName.isEmpty()) {
+				entries++;
+			}
+			if (!fileName.isEmpty() && filter.accepts(zipEntry.getName())) {
+				String targetFile = outputPath + fileName;
+				extractFile(zis, targetFile);
+				files.add(targetFile);
+			}
+			zipEntry = zis.getNextEntry();
+		}
+		if (entries == 0) {
+			throw new ZipException("No files found, it is empty or damaged");
+		}
+		return files;
 	}
 	
 	private static String checkAndFixPath(String path) {
@@ -155,15 +321,23 @@ public class FileManager {
 		return fileName;
 	}
 	
-	private static void extractFile(ZipInputStream zis, String targetFile) {
-		byte[] buffer = new byte[1024];
+	/**
+	 * Writes the content of an entry of a zip file to a file, using the buffer of the calling thread.
+	 * @return the number of bytes written
+	 */
+	private static long extractFile(InputStream zis, String targetFile) throws IOException {
+		byte[] buffer = BUFFERS.get();
+		long written = 0;
 		int len = 0;
 		try (FileOutputStream fos = new FileOutputStream(new File(targetFile))) {
 			while ((len = zis.read(buffer)) > 0) {
 				fos.write(buffer, 0, len);
+				written += len;
 			}
+			return written;
 		} catch (IOException e) {
 			log.error("Error unzipping file " + targetFile);
+			throw e;
 		}
 	}
 }
@@ -22,17 +22,12 @@
 package org.josfranmc.gutenberg.util;
 
 import java.io.IOException;
-import java.nio.charset.Charset;
-import java.nio.charset.StandardCharsets;
+import java.io.InputStream;
 import java.nio.file.Files;
-import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.ArrayList;
-import java.util.Iterator;
 import java.util.List;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
-import java.util.stream.Stream;
+import java.util.function.Consumer;
 
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
@@ -47,14 +42,9 @@ public class FileScraping {
 	private static final Logger log = LogManager.getLogger(FileScraping.class);
 	
 	/**
-	 * Coding of the file to analyze
+	 * Size of the blocks read from the stream
 	 */
-	private static final Charset ENCODING = StandardCharsets.ISO_8859_1;
-	
-	/**
-	 * Regular expression pattern for detecting web links
-	 */
-	private static final String PATTERN = ".*href=\"([^\"]*)\".*";
+	private static final int BUFFER_SIZE = 8 * 1024;
 
 	
 	FileScraping() {
@@ -70,23 +60,32 @@ public class FileScraping {
 	public static List<String> getLinks(String filePath) {
 		List<String> links = new ArrayList<>();
 		if (filePath != null) {
-			Path path = Paths.get(filePath);
-			try (Stream<String> stream = Files.lines(path, ENCODING)) {
-				Pattern pattern = Pattern.compile(PATTERN);
-				Matcher matcher = null;
-
-				Iterator<String> it = stream.iterator();
-				while (it.hasNext()) {
-					String line = it.next();
-					matcher = pattern.matcher(line);
-					if (matcher.matches()) {
-						links.add(matcher.group(1));
-					}
-				}
+			try (InputStream inputStream = Files.newInputStream(Paths.get(filePath))) {
+				getLinks(inputStream, links::add);
 			} catch (IOException e) {
 				log.error(e);
 			}
 		}
 		return links;		
 	}
+	
+	/**
+	 * Passes the links within an html stream to a consumer, as they are read.<br>
+	 * The stream is scanned as bytes by a <code>HrefScanner</code>, so every link is passed as soon as it has been received,
+	 * before the rest of the stream. All the links of a line are found, also in minified pages.
+	 * The links are extracted from href attributes of <code>&lt;a&gt;</code> elements.
+	 * @param inputStream stream with html content. It is not closed
+	 * @param linkConsumer receives the links, in the order they are found
+	 * @return the number of links found
+	 * @throws IOException if the stream cannot be read
+	 */
+	public static int getLinks(InputStream inputStream, Consumer<String> linkConsumer) throws IOException {
+		HrefScanner scanner = new HrefScanner(linkConsumer);
+		byte[] buffer = new byte[BUFFER_SIZE];
+		int read;
+		while ((read = inputStream.read(buffer)) >= 0) {
+			scanner.scan(buffer, 0, read);
+		}
+		return scanner.getFound();
+	}
 }
@@ -0,0 +1,118 @@
+/*
+ *  Copyright (C) 2018-2019 Jose Francisco Mena Ceca <josfranmc@gmail.com>
+ *
+ *  This file is part of JGutenbergDownload.
+ *
+ *  JGutenbergDownload is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  JGutenbergDownload is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with JGutenbergDownload.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package org.josfranmc.gutenberg.util;
+
+import java.nio.charset.StandardCharsets;
+import java.util.function.Consumer;
+
+/**
+ * Finds the values of <code>href="..."</code> attributes in html content, working directly on its bytes.<p>
+ * The content is passed in blocks of any size, in the order it is received. A link may be split between two blocks.
+ * Every link of a line is found, and only the bytes of each link are decoded (ISO-8859-1), so nothing is allocated
+ * while scanning content without links. As with the previous line-based search, a value is not allowed to span lines.
+ * @author Jose Francisco Mena Ceca
+ * @version 2.1
+ */
+final class HrefScanner {
+
+	/**
+	 * Bytes preceding the value of a link
+	 */
+	private static final byte[] HREF = {'h', 'r', 'e', 'f', '=', '"'};
+	
+	/**
+	 * Longest value accepted as a link. Longer values are discarded
+	 */
+	private static final int MAX_LINK_LENGTH = 8 * 1024;
+	
+	private final Consumer<String> linkConsumer;
+	
+	/**
+	 * Number of bytes of <code>HREF</code> matched so far
+	 */
+	private int matched = 0;
+	
+	/**
+	 * Bytes of the link being captured
+	 */
+	private byte[] link = new byte[256];
+	
+	/**
+	 * Length of the link being captured, or -1 if no link is being captured
+	 */
+	private int linkLength = -1;
+	
+	private int found = 0;
+	
+	
+	/**
+	 * @param linkConsumer receives the links, in the order they are found
+	 */
+	HrefScanner(Consumer<String> linkConsumer) {
+		this.linkConsumer = linkConsumer;
+	}
+	
+	/**
+	 * Scans a block of content. Each link is passed to the consumer as soon as its closing quote is scanned.
+	 * @param buffer array with the block
+	 * @param offset position of the first byte of the block
+	 * @param length number of bytes of the block
+	 */
+	void scan(byte[] buffer, int offset, int length) {
+		int end = offset + length;
+		for (int i = offset; i < end; i++) {
+			byte b = buffer[i];
+			if (linkLength >= 0) {
+				capture(b);
+			} else if (b == HREF[matched]) {
+				if (++matched == HREF.length) {
+					matched = 0;
+					linkLength = 0;
+				}
+			} else {
+				// 'h' appears only once in HREF, so a mismatch can only be the start of a new match
+				matched = (b == HREF[0]) ? 1 : 0;
+			}
+		}
+	}
+	
+	private void capture(byte b) {
+		if (b == '"') {
+			linkConsumer.accept(new String(link, 0, linkLength, StandardCharsets.ISO_8859_1));
+			found++;
+			linkLength = -1;
+		} else if (b == '\n' || b == '\r' || linkLength == MAX_LINK_LENGTH) {
+			linkLength = -1;
+		} else {
+			if (linkLength == link.length) {
+				byte[] larger = new byte[Math.min(link.length * 2, MAX_LINK_LENGTH)];
+				System.arraycopy(link, 0, larger, 0, linkLength);
+				link = larger;
+			}
+			link[linkLength++] = b;
+		}
+	}
+	
+	/**
+	 * @return the number of links found so far
+	 */
+	int getFound() {
+		return found;
+	}
+}
@@ -0,0 +1,122 @@
+/*
+ *  Copyright (C) 2018-2019 Jose Francisco Mena Ceca <josfranmc@gmail.com>
+ *
+ *  This file is part of JGutenbergDownload.
+ *
+ *  JGutenbergDownload is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  JGutenbergDownload is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with JGutenbergDownload.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package org.josfranmc.gutenberg.util;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counters of an unzip process: archives unzipped and failed, files extracted and skipped, and bytes written.<p>
+ * Counters are updated without locks by the threads that unzip the archives. The elapsed time is set when the process ends.
+ * @author Jose Francisco Mena Ceca
+ * @version 2.1
+ * @see FileManager#unzipFiles(String, String)
+ */
+public class UnzipReport {
+
+	private final LongAdder archives = new LongAdder();
+	
+	private final LongAdder failedArchives = new LongAdder();
+	
+	private final LongAdder files = new LongAdder();
+	
+	private final LongAdder bytes = new LongAdder();
+	
+	private final LongAdder skippedEntries = new LongAdder();
+	
+	private volatile long elapsedNanos;
+	
+	
+	void archiveUnzipped() {
+		archives.increment();
+	}
+	
+	void archiveFailed() {
+		failedArchives.increment();
+	}
+	
+	void fileExtracted(long length) {
+		files.increment();
+		bytes.add(length);
+	}
+	
+	void entriesSkipped(int entries) {
+		skippedEntries.add(entries);
+	}
+	
+	void finished(long elapsedNanos) {
+		this.elapsedNanos = elapsedNanos;
+	}
+	
+	/**
+	 * @return the archives unzipped without errors
+	 */
+	public long getArchives() {
+		return archives.sum();
+	}
+	
+	/**
+	 * @return the archives that could not be unzipped, or not completely
+	 */
+	public long getFailedArchives() {
+		return failedArchives.sum();
+	}
+	
+	/**
+	 * @return the files extracted from the archives
+	 */
+	public long getFiles() {
+		return files.sum();
+	}
+	
+	/**
+	 * @return the bytes written to the extracted files
+	 */
+	public long getBytes() {
+		return bytes.sum();
+	}
+	
+	/**
+	 * @return the files of the archives not extracted because they were not selected by the filter
+	 */
+	public long getSkippedEntries() {
+		return skippedEntries.sum();
+	}
+	
+	/**
+	 * @param unit unit of the returned time
+	 * @return the time the whole process took
+	 */
+	public long getElapsedTime(TimeUnit unit) {
+		return unit.convert(elapsedNanos, TimeUnit.NANOSECONDS);
+	}
+	
+	/**
+	 * @return the bytes written per second during the whole process, or 0 if it has not ended
+	 */
+	public long getBytesPerSecond() {
+		return (elapsedNanos > 0) ? (long) (getBytes() * 1e9 / elapsedNanos) : 0;
+	}
+	
+	@Override
+	public String toString() {
+		return "Archives unzipped: " + getArchives() + "  Failed: " + getFailedArchives() + "  Files: " + getFiles() 
+			+ "  Skipped: " + getSkippedEntries() + "  Bytes: " + getBytes() + "  Time: " + getElapsedTime(TimeUnit.MILLISECONDS) + " ms  Throughput: " + getBytesPerSecond() / 1024 + " KB/s";
+	}
+}
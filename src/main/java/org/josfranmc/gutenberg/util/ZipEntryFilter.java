@@ -0,0 +1,137 @@
+/*
+ *  Copyright (C) 2018-2019 Jose Francisco Mena Ceca <josfranmc@gmail.com>
+ *
+ *  This file is part of JGutenbergDownload.
+ *
+ *  JGutenbergDownload is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  JGutenbergDownload is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with JGutenbergDownload.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package org.josfranmc.gutenberg.util;
+
+import java.nio.file.FileSystems;
+import java.nio.file.InvalidPathException;
+import java.nio.file.PathMatcher;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.zip.ZipEntry;
+
+import org.josfranmc.gutenberg.download.GutenbergException;
+
+/**
+ * Selects the entries of a zip file to extract, by the name of their files.<p>
+ * It is built from glob patterns (<code>*.txt</code>, <code>*-0.txt</code>, <code>*.{txt,htm}</code>, ...) in order of preference.
+ * From the entries of a zip file, those whose file name matches the first pattern matched by any entry are selected. So the patterns
+ * <code>*-0.txt *-8.txt *.txt</code> select the UTF-8 text of a book if the zip file has it, otherwise the ISO-8859-1 text, otherwise
+ * any text.<br>
+ * When the entries are read one by one from a stream, the preference cannot be applied, and every entry matching any pattern is accepted.<br>
+ * A filter without patterns selects all the entries.
+ * @author Jose Francisco Mena Ceca
+ * @version 2.1
+ * @see FileManager
+ */
+public class ZipEntryFilter {
+
+	/**
+	 * selects all the entries
+	 */
+	public static final ZipEntryFilter ALL = new ZipEntryFilter(Collections.emptyList());
+	
+	private final List<String> patterns;
+	
+	private final List<PathMatcher> matchers = new ArrayList<>();
+	
+	
+	private ZipEntryFilter(List<String> patterns) {
+		this.patterns = Collections.unmodifiableList(new ArrayList<>(patterns));
+		for (String pattern : patterns) {
+			try {
+				matchers.add(FileSystems.getDefault().getPathMatcher("glob:" + pattern));
+			} catch (IllegalArgumentException e) {
+				throw new GutenbergException("org.josfranmc.gutenberg.GutenbergException: Wrong file pattern " + pattern, e);
+			}
+		}
+	}
+	
+	/**
+	 * @param patterns glob patterns of the names of the files to extract, in order of preference. Null or empty to extract all of them
+	 * @return the filter
+	 * @throws GutenbergException if a pattern is not valid
+	 */
+	public static ZipEntryFilter of(List<String> patterns) {
+		return (patterns == null || patterns.isEmpty()) ? ALL : new ZipEntryFilter(patterns);
+	}
+	
+	/**
+	 * @return the glob patterns, in order of preference
+	 */
+	public List<String> getPatterns() {
+		return patterns;
+	}
+	
+	/**
+	 * @param entryName name of an entry of a zip file
+	 * @return <i>true</i> if the name of the file of the entry matches any pattern
+	 */
+	public boolean accepts(String entryName) {
+		if (matchers.isEmpty()) {
+			return true;
+		}
+		for (PathMatcher matcher : matchers) {
+			if (matches(matcher, entryName)) {
+				return true;
+			}
+		}
+		return false;
+	}
+	
+	/**
+	 * @param entries entries of a zip file
+	 * @return the entries whose file name matches the first pattern matched by any of them
+	 */
+	public List<ZipEntry> select(List<? extends ZipEntry> entries) {
+		if (matchers.isEmpty()) {
+			return new ArrayList<>(entries);
+		}
+		for (PathMatcher matcher : matchers) {
+			List<ZipEntry> selected = new ArrayList<>();
+			for (ZipEntry entry : entries) {
+				if (matches(matcher, entry.getName())) {
+					selected.add(entry);
+				}
+			}
+			if (!selected.isEmpty()) {
+				return selected;
+			}
+		}
+		return Collections.emptyList();
+	}
+	
+	/**
+	 * Patterns are matched against the name of the file, without the folders of the zip file
+	 */
+	private static boolean matches(PathMatcher matcher, String entryName) {
+		String fileName = entryName.substring(entryName.lastIndexOf('/') + 1);
+		try {
+			return !fileName.isEmpty() && matcher.matches(Paths.get(fileName));
+		} catch (InvalidPathException e) {
+			return false;
+		}
+	}
+	
+	@Override
+	public String toString() {
+		return matchers.isEmpty() ? "all" : String.join(" ", patterns);
+	}
+}
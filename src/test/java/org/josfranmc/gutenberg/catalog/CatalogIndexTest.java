@@ -0,0 +1,85 @@
+package org.josfranmc.gutenberg.catalog;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import org.josfranmc.gutenberg.download.GutenbergException;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class CatalogIndexTest {
+
+	private Path folder;
+
+	private Path catalog;
+
+	@Before
+	public void setUp() throws IOException {
+		folder = Files.createTempDirectory("catalogindex");
+		catalog = folder.resolve("pg_catalog.csv");
+		Files.write(catalog, CatalogReaderTest.CSV.getBytes(StandardCharsets.UTF_8));
+	}
+
+	@After
+	public void tearDown() throws IOException {
+		try (Stream<Path> files = Files.walk(folder)) {
+			files.sorted(Comparator.reverseOrder()).map(Path::toFile).forEach(File::delete);
+		}
+	}
+
+	private static List<String> links(CatalogIndex index) {
+		try (Stream<String> links = index.links()) {
+			return links.collect(Collectors.toList());
+		}
+	}
+
+	/**
+	 * El índice contiene sólo los textos del idioma, con el fichero del tipo indicado
+	 */
+	@Test
+	public void buildIndexTest() {
+		CatalogIndex index = CatalogIndex.open(catalog.toString(), folder.toString(), "es", "txt");
+		assertEquals("Número de libros incorrecto", 2, index.size());
+		assertEquals("Enlaces incorrectos", Arrays.asList(CsvCatalogParser.CACHE_URL + "2000/pg2000.txt", CsvCatalogParser.CACHE_URL + "10293/pg10293.txt"), links(index));
+
+		index = CatalogIndex.open(catalog.toString(), folder.toString(), null, "epub");
+		assertEquals("Número de libros incorrecto", 3, index.size());
+	}
+
+	/**
+	 * El índice se reutiliza mientras el catálogo no cambia, y se reconstruye cuando cambia
+	 */
+	@Test
+	public void reuseIndexTest() throws IOException {
+		CatalogIndex index = CatalogIndex.open(catalog.toString(), folder.toString(), "es", "txt");
+		Files.write(new File(index.getPath()).toPath(), "99\thttp://localhost/99.zip\n".getBytes(StandardCharsets.UTF_8), StandardOpenOption.APPEND);
+		index = CatalogIndex.open(catalog.toString(), folder.toString(), "es", "txt");
+		assertEquals("No se ha reutilizado el índice", 3, index.size());
+		assertEquals("Enlace incorrecto", "http://localhost/99.zip", links(index).get(2));
+
+		Files.write(catalog, "3000,Text,2001-01-01,Nuevo,es,,,,\n".getBytes(StandardCharsets.UTF_8), StandardOpenOption.APPEND);
+		index = CatalogIndex.open(catalog.toString(), folder.toString(), "es", "txt");
+		assertEquals("No se ha reconstruido el índice", 3, index.size());
+		assertEquals("Enlace incorrecto", CsvCatalogParser.CACHE_URL + "3000/pg3000.txt", links(index).get(2));
+	}
+
+	/**
+	 * Si el catálogo no existe se lanza GutenbergException
+	 */
+	@Test(expected=GutenbergException.class)
+	public void catalogNotFoundTest() {
+		CatalogIndex.open(folder.resolve("noexiste.csv").toString(), folder.toString(), "es", "txt");
+	}
+}
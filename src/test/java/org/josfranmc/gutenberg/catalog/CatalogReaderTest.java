@@ -0,0 +1,232 @@
+package org.josfranmc.gutenberg.catalog;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Stream;
+import java.util.zip.GZIPOutputStream;
+
+import org.josfranmc.gutenberg.download.GutenbergException;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class CatalogReaderTest {
+
+	/**
+	 * Catálogo CSV con un título en varias líneas, con comas y comillas, un libro en dos idiomas y una grabación de sonido
+	 */
+	static final String CSV = "Text#,Type,Issued,Title,Language,Authors,Subjects,LoCC,Bookshelves\r\n"
+			+ "1,Text,1971-12-01,The Declaration of Independence of the United States of America,en,\"Jefferson, Thomas, 1743-1826\",United States -- History,E201,Politics\r\n"
+			+ "2000,Text,1999-12-01,\"Don Quijote\r\nsegunda línea, con \"\"comillas\"\"\",es,\"Cervantes Saavedra, Miguel de, 1547-1616\",,PQ,\r\n"
+			+ "10293,Text,2003-11-01,Título,es; en,,,,\r\n"
+			+ "20000,Sound,2006-12-01,Grabación,es,,,,\r\n";
+
+	private Path folder;
+
+	@Before
+	public void setUp() throws IOException {
+		folder = Files.createTempDirectory("catalog");
+	}
+
+	@After
+	public void tearDown() throws IOException {
+		try (Stream<Path> files = Files.walk(folder)) {
+			files.sorted(Comparator.reverseOrder()).map(Path::toFile).forEach(File::delete);
+		}
+	}
+
+	/**
+	 * Fichero RDF de un libro, con un fichero zip de texto y un fichero epub
+	 */
+	static String rdf(int id, String language, String type) {
+		return "<?xml version=\"1.0\" encoding=\"utf-8\"?>\n"
+				+ "<rdf:RDF xml:base=\"http://www.gutenberg.org/\" xmlns:dcterms=\"http://purl.org/dc/terms/\""
+				+ " xmlns:pgterms=\"http://www.gutenberg.org/2009/pgterms/\" xmlns:rdf=\"http://www.w3.org/1999/02/22-rdf-syntax-ns#\""
+				+ " xmlns:dcam=\"http://purl.org/dc/dcam/\">\n"
+				+ "  <pgterms:ebook rdf:about=\"ebooks/" + id + "\">\n"
+				+ "    <dcterms:title>Libro " + id + "</dcterms:title>\n"
+				+ "    <dcterms:hasFormat>\n"
+				+ "      <pgterms:file rdf:about=\"https://www.gutenberg.org/ebooks/" + id + ".epub.images\">\n"
+				+ "        <dcterms:format><rdf:Description rdf:nodeID=\"N1\"><dcam:memberOf rdf:resource=\"http://purl.org/dc/terms/IMT\"/>"
+				+ "<rdf:value rdf:datatype=\"http://purl.org/dc/terms/IMT\">application/epub+zip</rdf:value></rdf:Description></dcterms:format>\n"
+				+ "      </pgterms:file>\n"
+				+ "    </dcterms:hasFormat>\n"
+				+ "    <dcterms:hasFormat>\n"
+				+ "      <pgterms:file rdf:about=\"https://www.gutenberg.org/files/" + id + "/" + id + "-8.zip\">\n"
+				+ "        <dcterms:format><rdf:Description rdf:nodeID=\"N2\">"
+				+ "<rdf:value rdf:datatype=\"http://purl.org/dc/terms/IMT\">text/plain; charset=iso-8859-1</rdf:value></rdf:Description></dcterms:format>\n"
+				+ "        <dcterms:format><rdf:Description rdf:nodeID=\"N3\">"
+				+ "<rdf:value rdf:datatype=\"http://purl.org/dc/terms/IMT\">application/zip</rdf:value></rdf:Description></dcterms:format>\n"
+				+ "      </pgterms:file>\n"
+				+ "    </dcterms:hasFormat>\n"
+				+ "    <dcterms:type><rdf:Description rdf:nodeID=\"N4\"><rdf:value>" + type + "</rdf:value></rdf:Description></dcterms:type>\n"
+				+ "    <dcterms:language><rdf:Description rdf:nodeID=\"N5\">"
+				+ "<rdf:value rdf:datatype=\"http://purl.org/dc/terms/RFC4646\">" + language + "</rdf:value></rdf:Description></dcterms:language>\n"
+				+ "  </pgterms:ebook>\n"
+				+ "</rdf:RDF>\n";
+	}
+
+	/**
+	 * Archivo tar con una entrada por fichero
+	 */
+	static byte[] tar(String[] names, String[] contents) throws IOException {
+		ByteArrayOutputStream tar = new ByteArrayOutputStream();
+		for (int i = 0; i < names.length; i++) {
+			byte[] content = contents[i].getBytes(StandardCharsets.UTF_8);
+			byte[] header = new byte[512];
+			byte[] name = names[i].getBytes(StandardCharsets.UTF_8);
+			System.arraycopy(name, 0, header, 0, name.length);
+			putOctal(header, 100, 8, 0644);
+			putOctal(header, 108, 8, 0);
+			putOctal(header, 116, 8, 0);
+			putOctal(header, 124, 12, content.length);
+			putOctal(header, 136, 12, 0);
+			Arrays.fill(header, 148, 156, (byte) ' ');
+			header[156] = '0';
+			System.arraycopy("ustar\u000000".getBytes(StandardCharsets.US_ASCII), 0, header, 257, 8);
+			int checksum = 0;
+			for (byte b : header) {
+				checksum += b & 0xff;
+			}
+			putOctal(header, 148, 7, checksum);
+			tar.write(header);
+			tar.write(content);
+			tar.write(new byte[(512 - content.length % 512) % 512]);
+		}
+		tar.write(new byte[1024]);
+		return tar.toByteArray();
+	}
+
+	private static void putOctal(byte[] header, int offset, int length, long value) {
+		String octal = String.format("%0" + (length - 1) + "o", value);
+		System.arraycopy(octal.getBytes(StandardCharsets.US_ASCII), 0, header, offset, length - 1);
+	}
+
+	private static List<CatalogBook> read(Path catalog) {
+		List<CatalogBook> books = new ArrayList<>();
+		int read = CatalogReader.read(catalog.toString(), books::add);
+		assertEquals("Número de libros leídos incorrecto", books.size(), read);
+		return books;
+	}
+
+	@Test(expected=IllegalStateException.class)
+	public void createObjectTest() {
+		new CatalogReader();
+	}
+
+	/**
+	 * Del catálogo CSV se obtienen todos los libros, con sus idiomas y los ficheros de la caché de Gutenberg
+	 */
+	@Test
+	public void readCsvTest() throws IOException {
+		Path catalog = folder.resolve("pg_catalog.csv");
+		Files.write(catalog, CSV.getBytes(StandardCharsets.UTF_8));
+		List<CatalogBook> books = read(catalog);
+		assertEquals("Número de libros incorrecto", 4, books.size());
+		assertEquals("Libro incorrecto", 2000, books.get(1).getId());
+		assertEquals("Idiomas incorrectos", Collections.singletonList("es"), books.get(1).getLanguages());
+		assertEquals("Idiomas incorrectos", Arrays.asList("es", "en"), books.get(2).getLanguages());
+		assertEquals("Fichero incorrecto", Collections.singletonList(CsvCatalogParser.CACHE_URL + "2000/pg2000.txt"), books.get(1).getFiles("txt"));
+		assertEquals("Fichero incorrecto", Collections.singletonList(CsvCatalogParser.CACHE_URL + "2000/pg2000-images.epub"), books.get(1).getFiles("epub"));
+		assertTrue("El libro no es un texto", books.get(2).isText());
+		assertFalse("La grabación es un texto", books.get(3).isText());
+	}
+
+	/**
+	 * El catálogo CSV se puede leer comprimido con gzip
+	 */
+	@Test
+	public void readCsvGzipTest() throws IOException {
+		Path catalog = folder.resolve("pg_catalog.csv.gz");
+		try (OutputStream os = new GZIPOutputStream(Files.newOutputStream(catalog))) {
+			os.write(CSV.getBytes(StandardCharsets.UTF_8));
+		}
+		assertEquals("Número de libros incorrecto", 4, read(catalog).size());
+	}
+
+	/**
+	 * De un fichero RDF se obtienen el tipo, el idioma y los ficheros del libro, con el fichero zip primero
+	 */
+	@Test
+	public void readRdfTest() throws IOException {
+		Path catalog = folder.resolve("pg10293.rdf");
+		Files.write(catalog, rdf(10293, "es", "Text").getBytes(StandardCharsets.UTF_8));
+		List<CatalogBook> books = read(catalog);
+		assertEquals("Número de libros incorrecto", 1, books.size());
+		CatalogBook book = books.get(0);
+		assertEquals("Libro incorrecto", 10293, book.getId());
+		assertEquals("Tipo incorrecto", "Text", book.getType());
+		assertEquals("Idiomas incorrectos", Collections.singletonList("es"), book.getLanguages());
+		assertEquals("Ficheros incorrectos", Collections.singletonList("https://www.gutenberg.org/files/10293/10293-8.zip"), book.getFiles("txt"));
+		assertEquals("Ficheros incorrectos", Collections.singletonList("https://www.gutenberg.org/ebooks/10293.epub.images"), book.getFiles("epub"));
+		assertTrue("Hay ficheros html", book.getFiles("html").isEmpty());
+	}
+
+	/**
+	 * Del archivo tar de ficheros RDF se leen sus entradas una a una, sin extraerlas; las que no son RDF se saltan
+	 */
+	@Test
+	public void readTarTest() throws IOException {
+		byte[] tar = tar(new String[] {"cache/epub/1/pg1.rdf", "cache/epub/README", "cache/epub/2/pg2.rdf"},
+				new String[] {rdf(1, "en", "Text"), "no es un fichero RDF", rdf(2, "es", "Sound")});
+		Path catalog = folder.resolve("rdf-files.tar");
+		Files.write(catalog, tar);
+		List<CatalogBook> books = read(catalog);
+		assertEquals("Número de libros incorrecto", 2, books.size());
+		assertEquals("Libro incorrecto", 1, books.get(0).getId());
+		assertEquals("Libro incorrecto", 2, books.get(1).getId());
+		assertFalse("La grabación es un texto", books.get(1).isText());
+
+		Path compressed = folder.resolve("rdf-files.tar.gz");
+		try (OutputStream os = new GZIPOutputStream(Files.newOutputStream(compressed))) {
+			os.write(tar);
+		}
+		assertEquals("Número de libros incorrecto", 2, read(compressed).size());
+	}
+
+	/**
+	 * De una carpeta se leen los ficheros RDF de todas sus subcarpetas
+	 */
+	@Test
+	public void readFolderTest() throws IOException {
+		for (int id = 1; id <= 3; id++) {
+			Path bookFolder = Files.createDirectories(folder.resolve("cache/epub/" + id));
+			Files.write(bookFolder.resolve("pg" + id + ".rdf"), rdf(id, "es", "Text").getBytes(StandardCharsets.UTF_8));
+		}
+		assertEquals("Número de libros incorrecto", 3, read(folder).size());
+	}
+
+	/**
+	 * Si el formato del catálogo no se reconoce se lanza GutenbergException
+	 */
+	@Test(expected=GutenbergException.class)
+	public void wrongFormatTest() throws IOException {
+		Path catalog = folder.resolve("rdf-files.tar.bz2");
+		Files.write(catalog, new byte[10]);
+		CatalogReader.read(catalog.toString(), book -> {});
+	}
+
+	/**
+	 * Un fichero RDF que no es XML válido produce GutenbergException
+	 */
+	@Test(expected=GutenbergException.class)
+	public void wrongRdfTest() throws IOException {
+		Path catalog = folder.resolve("pg1.rdf");
+		Files.write(catalog, "<rdf:RDF><roto".getBytes(StandardCharsets.UTF_8));
+		CatalogReader.read(catalog.toString(), book -> {});
+	}
+}
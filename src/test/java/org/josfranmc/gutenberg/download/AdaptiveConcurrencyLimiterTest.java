@@ -0,0 +1,154 @@
+package org.josfranmc.gutenberg.download;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+public class AdaptiveConcurrencyLimiterTest {
+
+	private static final long LATENCY = TimeUnit.MILLISECONDS.toNanos(100);
+
+	/**
+	 * Completa una ronda de descargas ocupando todo el límite
+	 */
+	private static void successfulRound(AdaptiveConcurrencyLimiter limiter, long latency) throws InterruptedException {
+		int limit = limiter.getLimit();
+		for (int i = 0; i < limit; i++) {
+			limiter.acquire();
+		}
+		for (int i = 0; i < limit; i++) {
+			limiter.onSuccess(latency);
+		}
+	}
+
+	/**
+	 * No se permiten más descargas en curso que el límite
+	 */
+	@Test
+	public void acquireTest() throws InterruptedException {
+		AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter(2, 1, 10);
+		assertTrue(limiter.tryAcquire(0, TimeUnit.MILLISECONDS));
+		assertTrue(limiter.tryAcquire(0, TimeUnit.MILLISECONDS));
+		assertFalse("Se ha superado el límite", limiter.tryAcquire(10, TimeUnit.MILLISECONDS));
+		limiter.onIgnored();
+		assertTrue("No se ha liberado el permiso", limiter.tryAcquire(0, TimeUnit.MILLISECONDS));
+		assertEquals("Descargas en curso incorrectas", 2, limiter.getInFlight());
+	}
+
+	/**
+	 * Una descarga que no se ha podido enviar devuelve el permiso sin contar como error
+	 */
+	@Test
+	public void cancelledTest() throws InterruptedException {
+		AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter(1, 1, 10);
+		limiter.acquire();
+		limiter.onCancelled();
+		assertEquals("No se ha liberado el permiso", 0, limiter.getInFlight());
+		assertEquals("Se ha contado como error", 0.0, limiter.getErrorRate(), 0.0);
+		assertTrue("No se ha liberado el permiso", limiter.tryAcquire(0, TimeUnit.MILLISECONDS));
+	}
+
+	/**
+	 * Con latencia y errores saludables el límite aumenta poco a poco, hasta el máximo
+	 */
+	@Test
+	public void additiveIncreaseTest() throws InterruptedException {
+		AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter(4, 1, 6);
+		successfulRound(limiter, LATENCY);
+		successfulRound(limiter, LATENCY);
+		assertEquals("El límite debe aumentar en uno", 5, limiter.getLimit());
+		for (int i = 0; i < 10; i++) {
+			successfulRound(limiter, LATENCY);
+		}
+		assertEquals("Se ha superado el límite máximo", 6, limiter.getLimit());
+	}
+
+	/**
+	 * Un límite que no se está usando no aumenta
+	 */
+	@Test
+	public void givenLimitNotUsedThenNoIncrease() throws InterruptedException {
+		AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter(4, 1, 10);
+		for (int i = 0; i < 20; i++) {
+			limiter.acquire();
+			limiter.onSuccess(LATENCY);
+		}
+		assertEquals("Descargas en curso incorrectas", 0, limiter.getInFlight());
+		assertEquals("El límite no debe cambiar", 4, limiter.getLimit());
+	}
+
+	/**
+	 * Una descarga descartada (timeout, 429, 503) reduce el límite a la mitad, sin bajar del mínimo
+	 */
+	@Test
+	public void multiplicativeDecreaseTest() throws InterruptedException {
+		AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter(8, 2, 10);
+		limiter.acquire();
+		limiter.onDropped(System.nanoTime());
+		assertEquals("El límite debe reducirse a la mitad", 4, limiter.getLimit());
+		limiter.acquire();
+		limiter.onDropped(System.nanoTime());
+		limiter.acquire();
+		limiter.onDropped(System.nanoTime());
+		assertEquals("El límite no debe bajar del mínimo", 2, limiter.getLimit());
+	}
+
+	/**
+	 * Si se descartan a la vez muchas descargas que estaban en curso, el límite se reduce una sola vez
+	 */
+	@Test
+	public void givenBurstOfDropsThenSingleDecrease() throws InterruptedException {
+		AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter(64, 1, 64);
+		long start = System.nanoTime();
+		for (int i = 0; i < 64; i++) {
+			limiter.acquire();
+		}
+		for (int i = 0; i < 64; i++) {
+			limiter.onDropped(start);
+		}
+		assertEquals("El límite debe reducirse una sola vez", 32, limiter.getLimit());
+		assertEquals("No se han liberado los permisos", 0, limiter.getInFlight());
+		limiter.acquire();
+		limiter.onDropped(System.nanoTime());
+		assertEquals("Una descarga iniciada tras la reducción debe reducir el límite", 16, limiter.getLimit());
+	}
+
+	/**
+	 * Si la latencia crece por encima de la tolerancia, el límite no aumenta
+	 */
+	@Test
+	public void givenHighLatencyThenNoIncrease() throws InterruptedException {
+		AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter(4, 1, 10);
+		limiter.acquire();
+		limiter.onSuccess(LATENCY);
+		successfulRound(limiter, LATENCY * 3);
+		assertEquals("El límite no debe cambiar con latencia alta", 4, limiter.getLimit());
+	}
+
+	/**
+	 * Con una tasa de errores alta, el límite no aumenta aunque no sean errores de sobrecarga
+	 */
+	@Test
+	public void givenHighErrorRateThenNoIncrease() throws InterruptedException {
+		AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter(4, 1, 10);
+		for (int i = 0; i < 5; i++) {
+			limiter.acquire();
+			limiter.onIgnored();
+		}
+		assertTrue("Tasa de errores incorrecta", limiter.getErrorRate() > AdaptiveConcurrencyLimiter.ERROR_RATE_TOLERANCE);
+		successfulRound(limiter, LATENCY);
+		assertEquals("El límite no debe cambiar con errores", 4, limiter.getLimit());
+	}
+
+	/**
+	 * Límites incoherentes
+	 */
+	@Test(expected=GutenbergException.class)
+	public void wrongLimitsTest() {
+		new AdaptiveConcurrencyLimiter(20, 1, 10);
+	}
+}
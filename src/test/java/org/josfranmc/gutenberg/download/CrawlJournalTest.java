@@ -0,0 +1,110 @@
+package org.josfranmc.gutenberg.download;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class CrawlJournalTest {
+
+	private File dir;
+
+	@Before
+	public void setUp() throws IOException {
+		dir = Files.createTempDirectory("journal").toFile();
+	}
+
+	@After
+	public void tearDown() {
+		new File(dir, CrawlJournal.FILE_NAME).delete();
+		dir.delete();
+	}
+
+	private void writeRun() {
+		try (CrawlJournal journal = CrawlJournal.open(dir.getPath())) {
+			journal.pageVisited("http://localhost/harvest");
+			journal.queued("http://localhost/1.zip");
+			journal.queued("http://localhost/2.zip");
+			journal.completed("http://localhost/1.zip");
+			journal.pageVisited("http://localhost/harvest?offset=3");
+			journal.queued("http://localhost/3.zip");
+		}
+	}
+
+	/**
+	 * Al reanudar se obtiene la última página, los libros descargados y los pendientes en el orden en que se pusieron en cola
+	 */
+	@Test
+	public void replayTest() {
+		writeRun();
+		try (CrawlJournal journal = CrawlJournal.open(dir.getPath())) {
+			assertEquals("Última página incorrecta", "http://localhost/harvest?offset=3", journal.getLastPage());
+			assertEquals("Libros descargados incorrectos", 1, journal.getCompletedLinks().size());
+			assertTrue("Libro descargado no encontrado", journal.getCompletedLinks().contains("http://localhost/1.zip"));
+			assertEquals("Libros pendientes incorrectos", Arrays.asList("http://localhost/2.zip", "http://localhost/3.zip"), new ArrayList<>(journal.getPendingLinks()));
+			assertTrue("El libro pendiente debe ser conocido", journal.isKnown("http://localhost/2.zip"));
+			assertFalse("El libro no debe ser conocido", journal.isKnown("http://localhost/4.zip"));
+		}
+	}
+
+	/**
+	 * Un registro cortado al final del fichero se ignora
+	 */
+	@Test
+	public void tornRecordTest() throws IOException {
+		writeRun();
+		Files.write(new File(dir, CrawlJournal.FILE_NAME).toPath(), "C http://localhost/3.z".getBytes(StandardCharsets.UTF_8), StandardOpenOption.APPEND);
+		try (CrawlJournal journal = CrawlJournal.open(dir.getPath())) {
+			assertFalse("Se ha leído un registro incompleto", journal.getCompletedLinks().contains("http://localhost/3.z"));
+			assertTrue("El libro debe seguir pendiente", journal.getPendingLinks().contains("http://localhost/3.zip"));
+		}
+	}
+
+	/**
+	 * Si la ejecución anterior terminó se empieza una nueva: el diario se borra al terminar, o se ignora si no se pudo borrar
+	 */
+	@Test
+	public void newRunTest() throws IOException {
+		writeRun();
+		try (CrawlJournal journal = CrawlJournal.open(dir.getPath())) {
+			journal.ended();
+		}
+		assertFalse("No se ha borrado el diario", new File(dir, CrawlJournal.FILE_NAME).exists());
+		try (CrawlJournal journal = CrawlJournal.open(dir.getPath())) {
+			assertNull("La ejecución terminada no se debe reanudar", journal.getLastPage());
+		}
+		writeRun();
+		Files.write(new File(dir, CrawlJournal.FILE_NAME).toPath(), "E\n".getBytes(StandardCharsets.UTF_8), StandardOpenOption.APPEND);
+		try (CrawlJournal journal = CrawlJournal.open(dir.getPath())) {
+			assertNull("La ejecución terminada no se debe reanudar", journal.getLastPage());
+			assertTrue("No debe haber libros pendientes", journal.getPendingLinks().isEmpty());
+		}
+	}
+
+	/**
+	 * Sin reanudación no se registra nada ni se crea el fichero del diario
+	 */
+	@Test
+	public void noneTest() {
+		try (CrawlJournal journal = CrawlJournal.none()) {
+			journal.pageVisited("http://localhost/harvest");
+			journal.queued("http://localhost/1.zip");
+			journal.ended();
+			assertNull("No se debe reanudar", journal.getLastPage());
+			assertFalse("El libro no debe ser conocido", journal.isKnown("http://localhost/1.zip"));
+		}
+		assertFalse("Se ha creado el diario", new File(dir, CrawlJournal.FILE_NAME).exists());
+	}
+}
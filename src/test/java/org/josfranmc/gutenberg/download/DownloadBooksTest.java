@@ -0,0 +1,648 @@
+package org.josfranmc.gutenberg.download;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import org.josfranmc.gutenberg.download.engine.DownloadEngineFactory;
+import org.josfranmc.gutenberg.download.engine.DownloadEngineType;
+import org.josfranmc.gutenberg.download.engine.DownloadResult;
+import org.josfranmc.gutenberg.download.engine.DownloadSession;
+import org.josfranmc.gutenberg.download.engine.IDownloadEngine;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * Pruebas del proceso de descarga contra un servidor http local que simula las páginas harvest del proyecto Gutenberg.<br>
+ * Hay dos páginas con tres libros cada una; la primera página enlaza con la segunda.
+ */
+public class DownloadBooksTest {
+
+	private HttpServer server;
+
+	private File saveDir;
+
+	/**
+	 * pausa en milisegundos antes de enviar cada libro
+	 */
+	private volatile long bookDelay = 0;
+
+	private volatile long secondPageRequested;
+
+	private volatile long firstBookSent;
+
+	private final AtomicInteger booksInFlight = new AtomicInteger();
+
+	private final AtomicInteger maxBooksInFlight = new AtomicInteger();
+
+	private final AtomicInteger firstPageRequests = new AtomicInteger();
+
+	private final AtomicInteger bookRequests = new AtomicInteger();
+
+	/**
+	 * libro que se envía como una página de error en lugar de un fichero zip, o null
+	 */
+	private volatile String notZipBook;
+
+	/**
+	 * libro cuya primera petición se corta a mitad del cuerpo, o null
+	 */
+	private volatile String droppedBook;
+
+	/**
+	 * enlace que se añade a la primera página, o null
+	 */
+	private volatile String extraLink;
+
+	@Before
+	public void setUp() throws IOException {
+		server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+		server.createContext("/robot/harvest", exchange -> {
+			boolean secondPage = exchange.getRequestURI().getQuery().contains("offset=3");
+			if (secondPage) {
+				secondPageRequested = System.nanoTime();
+			} else {
+				firstPageRequests.incrementAndGet();
+			}
+			StringBuilder page = new StringBuilder("<html><body>\n");
+			for (int i = 1; i <= 3; i++) {
+				int book = secondPage ? i + 3 : i;
+				page.append("<p><a href=\"").append(baseUrl()).append("/books/").append(book).append(".zip\">book</a></p>\n");
+			}
+			if (!secondPage && extraLink != null) {
+				page.append("<p><a href=\"").append(extraLink).append("\">book</a></p>\n");
+			}
+			if (!secondPage) {
+				page.append("<p><a href=\"harvest?offset=3&amp;filetypes[]=txt&amp;langs[]=es\">Next Page</a></p>\n");
+			}
+			page.append("</body></html>\n");
+			exchange.getResponseHeaders().add("Content-Type", "text/html; charset=UTF-8");
+			exchange.getResponseHeaders().add("Content-Location", "harvest.php");
+			send(exchange, page.toString().getBytes());
+		});
+		server.createContext("/books/", exchange -> {
+			String name = exchange.getRequestURI().getPath().replace("/books/", "").replace(".zip", "");
+			exchange.getResponseHeaders().add("Content-Type", "application/zip");
+			bookRequests.incrementAndGet();
+			if (exchange.getRequestHeaders().containsKey("If-Modified-Since")) {
+				exchange.sendResponseHeaders(304, -1);
+				exchange.close();
+				return;
+			}
+			maxBooksInFlight.accumulateAndGet(booksInFlight.incrementAndGet(), Math::max);
+			pause(bookDelay);
+			booksInFlight.decrementAndGet();
+			if (name.equals(droppedBook)) {
+				droppedBook = null;
+				byte[] body = zip(name + ".txt", "Libro " + name);
+				exchange.getResponseHeaders().add("Last-Modified", "Wed, 21 Oct 2015 07:28:00 GMT");
+				exchange.sendResponseHeaders(200, body.length);
+				OutputStream os = exchange.getResponseBody();
+				os.write(body, 0, body.length / 2);
+				os.flush();
+				// el servidor cierra la conexión si la petición termina con un error
+				throw new IOException("Conexión cortada");
+			}
+			if (name.equals(notZipBook)) {
+				send(exchange, "<html><body>Error</body></html>".getBytes());
+				return;
+			}
+			send(exchange, zip(name + ".txt", "Libro " + name));
+			if (name.equals("1")) {
+				firstBookSent = System.nanoTime();
+			}
+		});
+		server.setExecutor(Executors.newCachedThreadPool());
+		server.start();
+		saveDir = Files.createTempDirectory("downloadbooks").toFile();
+	}
+
+	@After
+	public void tearDown() throws IOException {
+		server.stop(0);
+		try (Stream<Path> files = Files.walk(saveDir.toPath())) {
+			files.sorted(Comparator.reverseOrder()).map(Path::toFile).forEach(File::delete);
+		}
+	}
+
+	private String baseUrl() {
+		return "http://localhost:" + server.getAddress().getPort();
+	}
+
+	private static void send(HttpExchange exchange, byte[] body) throws IOException {
+		exchange.sendResponseHeaders(200, body.length);
+		try (OutputStream os = exchange.getResponseBody()) {
+			os.write(body);
+		}
+	}
+
+	private static void pause(long millis) {
+		try {
+			Thread.sleep(millis);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	private static byte[] zip(String entryName, String content) throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		try (ZipOutputStream zos = new ZipOutputStream(bytes)) {
+			zos.putNextEntry(new ZipEntry(entryName));
+			zos.write(content.getBytes());
+			zos.closeEntry();
+		}
+		return bytes.toByteArray();
+	}
+
+	private DownloadParams parameters(DownloadEngineType engineType) {
+		DownloadParams params = new DownloadParams();
+		params.setUrl(baseUrl() + "/robot/");
+		params.setSavePath(saveDir.getPath());
+		params.setDelay(0);
+		params.setMaxFilesToDownload(0);
+		params.setEngineType(engineType);
+		new File(params.getZipsPath()).mkdirs();
+		return params;
+	}
+
+	private void assertBooksDownloaded(DownloadParams params, int books) {
+		for (int i = 1; i <= books; i++) {
+			assertTrue("No se ha descargado el libro " + i, new File(params.getZipsPath() + i + ".zip").exists());
+		}
+		assertFalse("Se han descargado libros de más", new File(params.getZipsPath() + (books + 1) + ".zip").exists());
+	}
+
+	/**
+	 * Se deben descargar todos los libros de todas las páginas
+	 */
+	@Test
+	public void downloadAllPagesTest() {
+		DownloadParams params = parameters(DownloadEngineType.HTTP_CONNECTION);
+		assertTrue("No se han encontrado enlaces", new DownloadBooks(params).executeDownload());
+		assertBooksDownloaded(params, 6);
+		assertFalse("Se ha creado el diario sin reanudación", new File(saveDir, CrawlJournal.FILE_NAME).exists());
+	}
+
+	/**
+	 * Con el motor HTTP_CLIENT las descargas se realizan de forma asíncrona
+	 */
+	@Test
+	public void downloadAllPagesWithHttpClientTest() {
+		DownloadParams params = parameters(DownloadEngineType.HTTP_CLIENT);
+		assertTrue("No se han encontrado enlaces", new DownloadBooks(params).executeDownload());
+		assertBooksDownloaded(params, 6);
+	}
+
+	/**
+	 * Con hilos virtuales (o hilos de plataforma si la versión de Java no los admite) se descargan todos los libros
+	 */
+	@Test
+	public void downloadAllPagesWithVirtualThreadsTest() {
+		DownloadParams params = parameters(DownloadEngineType.HTTP_CONNECTION);
+		params.setExecutorType(ExecutorType.VIRTUAL_THREADS);
+		assertTrue("No se han encontrado enlaces", new DownloadBooks(params).executeDownload());
+		assertBooksDownloaded(params, 6);
+	}
+
+	/**
+	 * Con concurrencia adaptativa se descargan todos los libros y el límite se mantiene dentro de los valores indicados
+	 */
+	@Test
+	public void downloadAllPagesWithAdaptiveConcurrencyTest() {
+		DownloadParams params = parameters(DownloadEngineType.HTTP_CONNECTION);
+		params.setAdaptiveConcurrency(true);
+		params.setMaxConcurrentDownloads(8);
+		DownloadBooks downloadBooks = new DownloadBooks(params);
+		assertTrue("No se han encontrado enlaces", downloadBooks.executeDownload());
+		assertBooksDownloaded(params, 6);
+		int limit = downloadBooks.getConcurrencyLimiter().getLimit();
+		assertTrue("Límite de concurrencia incorrecto: " + limit, limit >= 1 && limit <= 8);
+		assertEquals("Quedan descargas en curso", 0, downloadBooks.getConcurrencyLimiter().getInFlight());
+	}
+
+	/**
+	 * La siguiente página se descarga mientras se están descargando los libros de la página anterior
+	 */
+	@Test
+	public void nextPageIsPrefetchedTest() {
+		bookDelay = 500;
+		DownloadParams params = parameters(DownloadEngineType.HTTP_CONNECTION);
+		assertTrue("No se han encontrado enlaces", new DownloadBooks(params).executeDownload());
+		assertBooksDownloaded(params, 6);
+		assertTrue("No se ha descargado la segunda página antes de terminar los libros de la primera", secondPageRequested < firstBookSent);
+	}
+
+	/**
+	 * Las descargas en curso no superan la capacidad de la cola, y aun así se descargan todos los libros
+	 */
+	@Test
+	public void boundedQueueTest() {
+		bookDelay = 100;
+		DownloadParams params = parameters(DownloadEngineType.HTTP_CONNECTION);
+		params.setQueueCapacity(2);
+		assertTrue("No se han encontrado enlaces", new DownloadBooks(params).executeDownload());
+		assertBooksDownloaded(params, 6);
+		assertTrue("Demasiadas descargas en curso: " + maxBooksInFlight.get(), maxBooksInFlight.get() <= 2);
+	}
+
+	/**
+	 * Los listeners reciben todos los eventos de cada libro, y los contadores coinciden con ellos
+	 */
+	@Test
+	public void downloadListenerTest() {
+		downloadListenerTest(DownloadEngineType.HTTP_CONNECTION);
+		downloadListenerTest(DownloadEngineType.HTTP_CLIENT);
+	}
+
+	private void downloadListenerTest(DownloadEngineType engineType) {
+		AtomicInteger queued = new AtomicInteger();
+		AtomicInteger started = new AtomicInteger();
+		AtomicLong progress = new AtomicLong();
+		List<BookDownload> completed = new CopyOnWriteArrayList<>();
+		DownloadParams params = parameters(engineType);
+		params.setOverwrite(true);
+		DownloadBooks downloadBooks = new DownloadBooks(params);
+		downloadBooks.addDownloadListener(new DownloadListener() {
+			@Override
+			public void queued(BookDownload book) {
+				queued.incrementAndGet();
+			}
+			@Override
+			public void started(BookDownload book) {
+				started.incrementAndGet();
+			}
+			@Override
+			public void progress(BookDownload book, long bytes) {
+				progress.addAndGet(bytes);
+			}
+			@Override
+			public void completed(BookDownload book, DownloadResult result) {
+				completed.add(book);
+			}
+		});
+		assertTrue("No se han encontrado enlaces", downloadBooks.executeDownload());
+		DownloadStatistics statistics = downloadBooks.getStatistics();
+		assertEquals("Número de libros en cola incorrecto con " + engineType, 6, queued.get());
+		assertEquals("Número de libros iniciados incorrecto con " + engineType, 6, started.get());
+		assertEquals("Número de libros descargados incorrecto con " + engineType, 6, completed.size());
+		assertEquals("Contador de libros descargados incorrecto con " + engineType, 6, statistics.getCompleted());
+		assertEquals("No deben quedar libros pendientes con " + engineType, 0, statistics.getPending());
+		long bytes = 0;
+		for (BookDownload book : completed) {
+			assertTrue("El libro no ha terminado", book.isFinished());
+			assertEquals("Bytes del libro incorrectos", new File(params.getZipsPath() + new File(book.getUrl().getPath()).getName()).length(), book.getBytesTransferred());
+			assertEquals("Longitud del libro incorrecta", book.getContentLength(), book.getBytesTransferred());
+			bytes += book.getBytesTransferred();
+		}
+		assertEquals("Bytes notificados incorrectos con " + engineType, bytes, progress.get());
+		assertEquals("Contador de bytes incorrecto con " + engineType, bytes, statistics.getBytesTransferred());
+	}
+
+	/**
+	 * Un libro cuyo primer intento se corta a mitad del cuerpo se cuenta y se notifica como iniciado una sola vez, con los dos motores
+	 */
+	@Test
+	public void startedOnceWithRetriesTest() {
+		for (DownloadEngineType engineType : new DownloadEngineType[] {DownloadEngineType.HTTP_CONNECTION, DownloadEngineType.HTTP_CLIENT}) {
+			droppedBook = "1";
+			bookRequests.set(0);
+			AtomicInteger started = new AtomicInteger();
+			DownloadParams params = parameters(engineType);
+			params.setOverwrite(true);
+			params.setRetryBackoff(10);
+			DownloadBooks downloadBooks = new DownloadBooks(params);
+			downloadBooks.addDownloadListener(new DownloadListener() {
+				@Override
+				public void started(BookDownload book) {
+					started.incrementAndGet();
+				}
+			});
+			assertTrue("No se han encontrado enlaces", downloadBooks.executeDownload());
+			assertEquals("No se ha reintentado el libro cortado con " + engineType, 7, bookRequests.get());
+			assertBooksDownloaded(params, 6);
+			assertEquals("Número de libros iniciados incorrecto con " + engineType, 6, started.get());
+			assertEquals("Contador de libros iniciados incorrecto con " + engineType, 6, downloadBooks.getStatistics().getStarted());
+			assertEquals("Contador de libros descargados incorrecto con " + engineType, 6, downloadBooks.getStatistics().getCompleted());
+		}
+	}
+
+	/**
+	 * Al reanudar una ejecución interrumpida se empieza por la última página visitada y no se descargan de nuevo los libros ya descargados,
+	 * aunque se sobrescriban los ficheros existentes
+	 */
+	@Test
+	public void resumeTest() {
+		DownloadParams params = parameters(DownloadEngineType.HTTP_CONNECTION);
+		params.setOverwrite(true);
+		params.setMaxFilesToDownload(4);
+		params.setResume(true);
+		new DownloadBooks(params).executeDownload();
+		assertBooksDownloaded(params, 4);
+		assertEquals("Número de descargas de la primera página incorrecto", 1, firstPageRequests.get());
+
+		params.setMaxFilesToDownload(0);
+		assertTrue("No se han encontrado enlaces", new DownloadBooks(params).executeDownload());
+		assertBooksDownloaded(params, 6);
+		assertEquals("Se ha descargado de nuevo la primera página", 1, firstPageRequests.get());
+		assertEquals("Se han descargado de nuevo libros ya descargados", 6, bookRequests.get());
+		assertFalse("No se ha borrado el diario de la ejecución terminada", new File(saveDir, CrawlJournal.FILE_NAME).exists());
+
+		// la ejecución anterior terminó, así que se empieza una nueva
+		new DownloadBooks(params).executeDownload();
+		assertEquals("No se ha empezado una nueva ejecución", 2, firstPageRequests.get());
+		assertEquals("No se han descargado de nuevo los libros", 12, bookRequests.get());
+	}
+
+	/**
+	 * Si la ejecución se interrumpe cuando ya se ha registrado la página siguiente, los libros que quedaban en la cola
+	 * de enlaces deben quedar pendientes para la reanudación
+	 */
+	@Test
+	public void resumeWithLinksInQueueTest() throws Exception {
+		DownloadParams params = parameters(DownloadEngineType.HTTP_CONNECTION);
+		BlockingQueue<String> links = new LinkedBlockingQueue<>(3);
+		try (DownloadSession session = DownloadBooks.createSession(params);
+			 CrawlJournal journal = CrawlJournal.open(saveDir.getPath())) {
+			URL firstPage = new URL(baseUrl() + "/robot/harvest?filetypes[]=txt&langs[]=es");
+			IDownloadEngine engine = DownloadEngineFactory.create(firstPage, params.getZipsPath(), DownloadEngineType.HTTP_CONNECTION, session);
+			HarvestPageProducer producer = new HarvestPageProducer(engine, new URL(baseUrl() + "/robot/"), null, firstPage.toString(), links, link -> true, Integer.MAX_VALUE);
+			producer.setJournal(journal);
+			Thread producerThread = new Thread(producer);
+			producerThread.start();
+			// nadie consume la cola: el productor queda esperando con los libros de la primera página en la cola
+			while (secondPageRequested == 0 || producerThread.getState() != Thread.State.WAITING) {
+				pause(10);
+			}
+			assertEquals("La cola de enlaces no está llena", 3, links.size());
+			journal.sync();
+			// caída: se lee el diario tal y como ha quedado en disco
+			try (CrawlJournal resumed = CrawlJournal.open(saveDir.getPath())) {
+				assertTrue("No se ha registrado la segunda página", resumed.getLastPage().contains("offset=3"));
+				for (int i = 1; i <= 3; i++) {
+					assertTrue("Se ha perdido el libro " + i + " que estaba en la cola", resumed.getPendingLinks().contains(baseUrl() + "/books/" + i + ".zip"));
+				}
+			}
+			producer.stop();
+			producerThread.interrupt();
+			producerThread.join();
+		}
+	}
+
+	/**
+	 * Extrayendo los enlaces según se reciben las páginas, se descargan todos los libros y no se guarda ninguna página
+	 */
+	@Test
+	public void streamPagesTest() {
+		DownloadParams params = parameters(DownloadEngineType.HTTP_CONNECTION);
+		params.setStreamPages(true);
+		assertTrue("No se han encontrado enlaces", new DownloadBooks(params).executeDownload());
+		assertBooksDownloaded(params, 6);
+		assertEquals("Se han guardado páginas", 6, new File(params.getZipsPath()).listFiles().length);
+	}
+
+	/**
+	 * En modo INLINE cada libro se descomprime en cuanto se descarga, y se conserva el fichero zip
+	 */
+	@Test
+	public void inlineUnzipTest() throws IOException {
+		DownloadParams params = parameters(DownloadEngineType.HTTP_CONNECTION);
+		params.setUnzipMode(UnzipMode.INLINE);
+		assertTrue("No se han encontrado enlaces", new DownloadBooks(params).executeDownload());
+		assertBooksDownloaded(params, 6);
+		assertBooksUnzipped(params, 6);
+	}
+
+	/**
+	 * Al revalidar, un libro que no ha cambiado no se vuelve a descomprimir
+	 */
+	@Test
+	public void revalidateInlineUnzipTest() throws IOException {
+		DownloadParams params = parameters(DownloadEngineType.HTTP_CONNECTION);
+		params.setUnzipMode(UnzipMode.INLINE);
+		params.setRevalidate(true);
+		assertTrue("No se han encontrado enlaces", new DownloadBooks(params).executeDownload());
+		assertBooksUnzipped(params, 6);
+		File book = new File(params.getSavePath(), "1.txt");
+		book.delete();
+
+		assertTrue("No se han encontrado enlaces", new DownloadBooks(params).executeDownload());
+		assertEquals("No se han revalidado los libros", 12, bookRequests.get());
+		assertFalse("Se ha descomprimido de nuevo un libro sin cambios", book.exists());
+	}
+
+	/**
+	 * En modo STREAMING el motor HTTP_CONNECTION descomprime los libros según los recibe, sin guardar el fichero zip;
+	 * el motor HTTP_CLIENT guarda el fichero zip y lo descomprime después
+	 */
+	@Test
+	public void streamingUnzipTest() throws IOException {
+		DownloadParams params = parameters(DownloadEngineType.HTTP_CONNECTION);
+		params.setUnzipMode(UnzipMode.STREAMING);
+		assertTrue("No se han encontrado enlaces", new DownloadBooks(params).executeDownload());
+		assertBooksUnzipped(params, 6);
+		assertFalse("Se ha guardado el fichero zip", new File(params.getZipsPath() + "1.zip").exists());
+
+		params.setEngineType(DownloadEngineType.HTTP_CLIENT);
+		params.setOverwrite(true);
+		assertTrue("No se han encontrado enlaces", new DownloadBooks(params).executeDownload());
+		assertBooksDownloaded(params, 6);
+		assertBooksUnzipped(params, 6);
+	}
+
+	/**
+	 * Los libros descomprimidos según se reciben no se vuelven a descargar en la siguiente ejecución, aunque no se haya guardado el zip
+	 */
+	@Test
+	public void streamingUnzipTwiceTest() throws IOException {
+		DownloadParams params = parameters(DownloadEngineType.HTTP_CONNECTION);
+		params.setUnzipMode(UnzipMode.STREAMING);
+		assertTrue("No se han encontrado enlaces", new DownloadBooks(params).executeDownload());
+		assertBooksUnzipped(params, 6);
+		assertEquals("Número de libros pedidos incorrecto", 6, bookRequests.get());
+
+		assertTrue("No se han encontrado enlaces", new DownloadBooks(params).executeDownload());
+		assertEquals("Se han descargado de nuevo libros ya descomprimidos", 6, bookRequests.get());
+	}
+
+	/**
+	 * Una descarga que no se puede iniciar devuelve su hueco en la cola y su permiso, y el resto de libros se descargan
+	 */
+	@Test(timeout = 20000)
+	public void submissionFailureTest() {
+		extraLink = "ftp://localhost:" + server.getAddress().getPort() + "/books/7.zip";
+		DownloadParams params = parameters(DownloadEngineType.HTTP_CLIENT);
+		params.setQueueCapacity(1);
+		params.setAdaptiveConcurrency(true);
+		DownloadBooks downloadBooks = new DownloadBooks(params);
+		assertTrue("No se han encontrado enlaces", downloadBooks.executeDownload());
+		assertBooksDownloaded(params, 6);
+		assertEquals("Quedan descargas en curso", 0, downloadBooks.getConcurrencyLimiter().getInFlight());
+	}
+
+	/**
+	 * Un libro recibido en modo STREAMING que no es un fichero zip no se da por descomprimido, y se descarga de nuevo en la siguiente ejecución
+	 */
+	@Test
+	public void streamingNotZipTest() throws IOException {
+		notZipBook = "1";
+		DownloadParams params = parameters(DownloadEngineType.HTTP_CONNECTION);
+		params.setUnzipMode(UnzipMode.STREAMING);
+		params.setMaxRetries(0);
+		assertTrue("No se han encontrado enlaces", new DownloadBooks(params).executeDownload());
+		assertFalse("Se ha descomprimido un libro que no es un fichero zip", new File(params.getSavePath(), "1.txt").exists());
+		File extracted = new File(params.getZipsPath(), LibraryIndex.EXTRACTED_FILE);
+		assertTrue("No se han anotado los libros descomprimidos", extracted.exists());
+		assertFalse("Se ha anotado como descomprimido un libro que no es un fichero zip", Files.readAllLines(extracted.toPath()).contains("1.zip"));
+
+		notZipBook = null;
+		bookRequests.set(0);
+		assertTrue("No se han encontrado enlaces", new DownloadBooks(params).executeDownload());
+		assertEquals("No se ha descargado de nuevo el libro", 1, bookRequests.get());
+		assertBooksUnzipped(params, 6);
+	}
+
+	private void assertBooksUnzipped(DownloadParams params, int books) throws IOException {
+		for (int i = 1; i <= books; i++) {
+			File book = new File(params.getSavePath(), i + ".txt");
+			assertTrue("No se ha descomprimido el libro " + i, book.exists());
+			assertEquals("Contenido del libro incorrecto", "Libro " + i, new String(Files.readAllBytes(book.toPath())));
+		}
+	}
+
+	/**
+	 * No se deben descargar más libros de los indicados
+	 */
+	@Test
+	public void maxFilesToDownloadTest() {
+		DownloadParams params = parameters(DownloadEngineType.HTTP_CONNECTION);
+		params.setMaxFilesToDownload(2);
+		new DownloadBooks(params).executeDownload();
+		assertBooksDownloaded(params, 2);
+		assertEquals("Número de libros descargados incorrecto", 3, new File(params.getZipsPath()).listFiles().length);
+	}
+
+	/**
+	 * Los enlaces de todas las páginas se obtienen en orden, sin descargar los libros
+	 */
+	@Test
+	public void linksTest() {
+		for (DownloadEngineType engineType : DownloadEngineType.values()) {
+			JGutenbergDownload jg = new JGutenbergDownload();
+			jg.setParameters(parameters(engineType));
+			List<String> links;
+			try (Stream<URL> stream = jg.links()) {
+				links = stream.map(URL::toString).collect(Collectors.toList());
+			}
+			assertEquals("Número de enlaces incorrecto con " + engineType, 6, links.size());
+			for (int i = 1; i <= 6; i++) {
+				assertEquals("Enlace incorrecto con " + engineType, baseUrl() + "/books/" + i + ".zip", links.get(i - 1));
+			}
+		}
+		assertEquals("Se han descargado libros", 0, bookRequests.get());
+	}
+
+	/**
+	 * Las páginas se descargan según se consumen los enlaces: si bastan los de la primera página, no se pide la segunda
+	 */
+	@Test
+	public void linksAreLazyTest() {
+		JGutenbergDownload jg = new JGutenbergDownload();
+		jg.setParameters(parameters(DownloadEngineType.HTTP_CONNECTION));
+		try (Stream<URL> stream = jg.links()) {
+			assertEquals("Número de enlaces incorrecto", 2, stream.limit(2).count());
+		}
+		assertEquals("Número de peticiones de la primera página incorrecto", 1, firstPageRequests.get());
+		assertEquals("Se ha pedido la segunda página", 0, secondPageRequested);
+	}
+
+	/**
+	 * Con un catálogo local no se pide ninguna página: se descargan los libros del idioma indicado que hay en el catálogo
+	 */
+	@Test
+	public void catalogTest() throws IOException {
+		Path rdfFolder = Files.createDirectories(saveDir.toPath().resolve("catalog"));
+		for (int i = 1; i <= 4; i++) {
+			String rdf = "<rdf:RDF xmlns:dcterms=\"http://purl.org/dc/terms/\" xmlns:pgterms=\"http://www.gutenberg.org/2009/pgterms/\""
+					+ " xmlns:rdf=\"http://www.w3.org/1999/02/22-rdf-syntax-ns#\"><pgterms:ebook rdf:about=\"ebooks/" + i + "\">"
+					+ "<dcterms:hasFormat><pgterms:file rdf:about=\"" + baseUrl() + "/books/" + i + ".zip\"><dcterms:format><rdf:Description>"
+					+ "<rdf:value>text/plain; charset=utf-8</rdf:value></rdf:Description></dcterms:format></pgterms:file></dcterms:hasFormat>"
+					+ "<dcterms:language><rdf:Description><rdf:value>" + ((i == 4) ? "en" : "es") + "</rdf:value></rdf:Description></dcterms:language>"
+					+ "</pgterms:ebook></rdf:RDF>";
+			Files.write(rdfFolder.resolve("pg" + i + ".rdf"), rdf.getBytes());
+		}
+		DownloadParams params = parameters(DownloadEngineType.HTTP_CONNECTION);
+		params.setCatalogPath(rdfFolder.toString());
+		assertTrue("No se han encontrado enlaces", new DownloadBooks(params).executeDownload());
+		assertBooksDownloaded(params, 3);
+		assertEquals("Se han pedido páginas", 0, firstPageRequests.get());
+		assertEquals("Número de libros pedidos incorrecto", 3, bookRequests.get());
+	}
+
+	/**
+	 * Con varios espejos los libros se reparten entre ellos, y los que fallan en un espejo caído se descargan de otro
+	 */
+	@Test
+	public void mirrorsTest() throws IOException {
+		AtomicInteger mirrorRequests = new AtomicInteger();
+		HttpServer mirror = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+		mirror.createContext("/gutenberg/books/", exchange -> {
+			String name = exchange.getRequestURI().getPath().replace("/gutenberg/books/", "").replace(".zip", "");
+			mirrorRequests.incrementAndGet();
+			exchange.getResponseHeaders().add("Content-Type", "application/zip");
+			send(exchange, zip(name + ".txt", "Libro " + name));
+		});
+		AtomicInteger downRequests = new AtomicInteger();
+		HttpServer down = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+		down.createContext("/", exchange -> {
+			downRequests.incrementAndGet();
+			exchange.sendResponseHeaders(503, -1);
+			exchange.close();
+		});
+		mirror.setExecutor(Executors.newCachedThreadPool());
+		mirror.start();
+		down.start();
+		try {
+			bookDelay = 100;
+			DownloadParams params = parameters(DownloadEngineType.HTTP_CONNECTION);
+			params.setMaxRetries(0);
+			params.setMirrors(Arrays.asList(baseUrl() + "/books/", "http://localhost:" + mirror.getAddress().getPort() + "/gutenberg/books/",
+					"http://localhost:" + down.getAddress().getPort() + "/books/"));
+			assertTrue("No se han encontrado enlaces", new DownloadBooks(params).executeDownload());
+			assertBooksDownloaded(params, 6);
+			assertTrue("No se han pedido libros al servidor original", bookRequests.get() > 0);
+			assertTrue("No se han pedido libros al espejo", mirrorRequests.get() > 0);
+			assertEquals("Número de libros descargados incorrecto", 6, bookRequests.get() + mirrorRequests.get());
+			assertTrue("No se ha probado el espejo caído", downRequests.get() > 0);
+			assertTrue("Se ha insistido en el espejo caído", downRequests.get() < 6);
+		} finally {
+			mirror.stop(0);
+			down.stop(0);
+		}
+	}
+}
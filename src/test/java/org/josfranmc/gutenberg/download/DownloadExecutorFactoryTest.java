@@ -0,0 +1,66 @@
+package org.josfranmc.gutenberg.download;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ThreadPoolExecutor;
+
+import org.junit.Test;
+
+public class DownloadExecutorFactoryTest {
+
+	private static boolean isVirtual(Thread thread) {
+		try {
+			return (Boolean) Thread.class.getMethod("isVirtual").invoke(thread);
+		} catch (ReflectiveOperationException e) {
+			return false;
+		}
+	}
+
+	/**
+	 * Con hilos virtuales, cada tarea se ejecuta en un hilo virtual si la versión de Java lo permite; si no, en un hilo de plataforma
+	 */
+	@Test
+	public void virtualThreadsTest() throws InterruptedException, ExecutionException {
+		ExecutorService executor = DownloadExecutorFactory.create(ExecutorType.VIRTUAL_THREADS, 2);
+		assertNotNull("No se ha creado el ejecutor", executor);
+		try {
+			boolean virtual = executor.submit(() -> isVirtual(Thread.currentThread())).get();
+			assertEquals("Tipo de hilo incorrecto", DownloadExecutorFactory.isVirtualThreadsSupported(), virtual);
+		} finally {
+			executor.shutdown();
+		}
+	}
+
+	/**
+	 * Con hilos de plataforma, o si no se indica tipo, las tareas nunca se ejecutan en hilos virtuales
+	 */
+	@Test
+	public void platformThreadsTest() throws InterruptedException, ExecutionException {
+		for (ExecutorType type : new ExecutorType[] {ExecutorType.PLATFORM_THREADS, null}) {
+			ExecutorService executor = DownloadExecutorFactory.create(type, 2);
+			try {
+				assertEquals("Tipo de hilo incorrecto", false, executor.submit(() -> isVirtual(Thread.currentThread())).get());
+			} finally {
+				executor.shutdown();
+			}
+		}
+	}
+
+	/**
+	 * El número de hilos de plataforma es el indicado
+	 */
+	@Test
+	public void threadPoolSizeTest() {
+		ExecutorService executor = DownloadExecutorFactory.create(ExecutorType.PLATFORM_THREADS, 5);
+		try {
+			assertTrue("El ejecutor no es un pool de hilos", executor instanceof ThreadPoolExecutor);
+			assertEquals("Número de hilos incorrecto", 5, ((ThreadPoolExecutor) executor).getMaximumPoolSize());
+		} finally {
+			executor.shutdown();
+		}
+	}
+}
@@ -2,9 +2,13 @@ package org.josfranmc.gutenberg.download;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
 
+import java.util.Arrays;
+
 import org.josfranmc.gutenberg.download.engine.DownloadEngineType;
+import org.josfranmc.gutenberg.download.engine.MirrorPolicy;
 import org.junit.Test;
 
 /**
@@ -46,6 +50,122 @@ public class DownloadParamsTest {
 		assertTrue(p.isOverwrite());
 	}
 	
+	@Test
+	public void executorTypeTest() {
+		DownloadParams p = new DownloadParams();
+		assertEquals(ExecutorType.PLATFORM_THREADS, p.getExecutorType());
+		p.setExecutorType(ExecutorType.VIRTUAL_THREADS);
+		assertEquals(ExecutorType.VIRTUAL_THREADS, p.getExecutorType());
+	}
+	
+	@Test
+	public void revalidateTest() {
+		DownloadParams p = new DownloadParams();
+		assertFalse(p.isRevalidate());
+		p.setRevalidate(true);
+		assertTrue(p.isRevalidate());
+	}
+	
+	@Test
+	public void unzipModeTest() {
+		DownloadParams p = new DownloadParams();
+		assertEquals(UnzipMode.AFTER_DOWNLOAD, p.getUnzipMode());
+		p.setUnzipMode(UnzipMode.STREAMING);
+		assertEquals(UnzipMode.STREAMING, p.getUnzipMode());
+	}
+	
+	@Test
+	public void unzipPatternsTest() {
+		DownloadParams p = new DownloadParams();
+		assertTrue("Por defecto se deben extraer todos los ficheros", p.getUnzipPatterns().isEmpty());
+		p.setUnzipPatterns(Arrays.asList("*-0.txt", "*.txt"));
+		assertEquals(Arrays.asList("*-0.txt", "*.txt"), p.getUnzipPatterns());
+		assertTrue(p.getUnzipFilter().accepts("10293-0.txt"));
+		p.setUnzipPatterns(null);
+		assertTrue(p.getUnzipPatterns().isEmpty());
+	}
+	
+	@Test(expected=GutenbergException.class)
+	public void unzipPatternsWrongTest() {
+		new DownloadParams().setUnzipPatterns(Arrays.asList("[txt"));
+	}
+	
+	@Test
+	public void resumeTest() {
+		DownloadParams p = new DownloadParams();
+		assertFalse(p.isResume());
+		p.setResume(true);
+		assertTrue(p.isResume());
+	}
+	
+	@Test
+	public void catalogPathTest() {
+		DownloadParams p = new DownloadParams();
+		assertNull(p.getCatalogPath());
+		p.setCatalogPath("pg_catalog.csv");
+		assertEquals("pg_catalog.csv", p.getCatalogPath());
+	}
+	
+	@Test
+	public void mirrorsTest() {
+		DownloadParams p = new DownloadParams();
+		assertTrue("Por defecto no debe haber espejos", p.getMirrors().isEmpty());
+		assertEquals(MirrorPolicy.EWMA_LATENCY, p.getMirrorPolicy());
+		p.setMirrors(Arrays.asList("http://aleph.gutenberg.org", "http://mirror.example.org/gutenberg/"));
+		assertEquals(Arrays.asList("http://aleph.gutenberg.org/", "http://mirror.example.org/gutenberg/"), p.getMirrors());
+		p.setMirrors(null);
+		assertTrue(p.getMirrors().isEmpty());
+	}
+	
+	@Test(expected=GutenbergException.class)
+	public void mirrorsWrongTest() {
+		new DownloadParams().setMirrors(Arrays.asList("aleph.gutenberg.org"));
+	}
+	
+	@Test
+	public void queueCapacityTest() {
+		DownloadParams p = new DownloadParams();
+		assertEquals("Capacidad de la cola por defecto incorrecta", 256, p.getQueueCapacity());
+		p.setQueueCapacity(10);
+		assertEquals("Capacidad de la cola incorrecta", 10, p.getQueueCapacity());
+	}
+	
+	@Test(expected=GutenbergException.class)
+	public void queueCapacityExceptionTest() {
+		DownloadParams p = new DownloadParams();
+		p.setQueueCapacity(0);
+	}
+	
+	@Test
+	public void threadPoolSizeTest() {
+		DownloadParams p = new DownloadParams();
+		assertEquals("Número de hilos por defecto incorrecto", Runtime.getRuntime().availableProcessors() * 3, p.getThreadPoolSize());
+		p.setThreadPoolSize(4);
+		assertEquals("Número de hilos incorrecto", 4, p.getThreadPoolSize());
+	}
+	
+	@Test(expected=GutenbergException.class)
+	public void threadPoolSizeExceptionTest() {
+		DownloadParams p = new DownloadParams();
+		p.setThreadPoolSize(0);
+	}
+	
+	@Test
+	public void retriesTest() {
+		DownloadParams p = new DownloadParams();
+		assertEquals("Reintentos por defecto incorrectos", 3, p.getMaxRetries());
+		p.setMaxRetries(0);
+		assertEquals("Reintentos incorrectos", 0, p.getMaxRetries());
+		p.setCircuitBreakerThreshold(0);
+		assertEquals("Umbral del circuito incorrecto", 0, p.getCircuitBreakerThreshold());
+	}
+	
+	@Test(expected=GutenbergException.class)
+	public void retryBackoffExceptionTest() {
+		DownloadParams p = new DownloadParams();
+		p.setRetryBackoff(-1);
+	}
+	
 	@Test
 	public void unzipTest() {
 		DownloadParams p = new DownloadParams();
@@ -77,4 +197,10 @@ public class DownloadParamsTest {
 		DownloadParams p = new DownloadParams();
 		p.setUrl("fail://www.never.com");
 	}
+	
+	@Test(expected=GutenbergException.class)
+	public void unzipModeExceptionTest() {
+		DownloadParams p = new DownloadParams();
+		p.setUnzipMode(null);
+	}
 }
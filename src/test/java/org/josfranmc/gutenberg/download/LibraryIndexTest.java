@@ -0,0 +1,71 @@
+package org.josfranmc.gutenberg.download;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+
+import org.junit.Test;
+
+public class LibraryIndexTest {
+
+	/**
+	 * El índice contiene los ficheros de la carpeta al crearlo y los que se añaden después, identificados por el nombre que toman de su enlace
+	 */
+	@Test
+	public void scanAndAddTest() throws IOException {
+		File dir = Files.createTempDirectory("library").toFile();
+		File book = new File(dir, "10293.zip");
+		File page = new File(dir, "harvest_offset=3&filetypes[]=txt");
+		try {
+			Files.write(book.toPath(), new byte[1]);
+			Files.write(page.toPath(), new byte[1]);
+			LibraryIndex index = LibraryIndex.scan(dir.getPath());
+			assertEquals("Número de ficheros incorrecto", 2, index.size());
+			assertTrue("No se ha encontrado el libro", index.contains("http://aleph.gutenberg.org/1/0/2/9/10293/10293.zip"));
+			assertTrue("No se ha encontrado la página", index.contains("http://www.gutenberg.org/robot/harvest?offset=3&amp;filetypes[]=txt"));
+			assertFalse("Libro no descargado encontrado", index.contains("http://aleph.gutenberg.org/1/0/5/0/10506/10506.zip"));
+			
+			index.add("http://aleph.gutenberg.org/1/0/5/0/10506/10506.zip");
+			assertTrue("No se ha añadido el libro", index.contains("http://aleph.gutenberg.org/1/0/5/0/10506/10506.zip"));
+		} finally {
+			book.delete();
+			page.delete();
+			dir.delete();
+		}
+	}
+
+	/**
+	 * Los libros descomprimidos según se reciben no tienen fichero en la carpeta, pero se encuentran al volver a crear el índice
+	 */
+	@Test
+	public void extractedTest() throws IOException {
+		File dir = Files.createTempDirectory("library").toFile();
+		File extracted = new File(dir, LibraryIndex.EXTRACTED_FILE);
+		try {
+			LibraryIndex index = LibraryIndex.scan(dir.getPath());
+			index.addExtracted("http://aleph.gutenberg.org/1/0/2/9/10293/10293.zip");
+			index.addExtracted("http://aleph.gutenberg.org/1/0/2/9/10293/10293.zip");
+			assertTrue("No se ha añadido el libro", index.contains("http://aleph.gutenberg.org/1/0/2/9/10293/10293.zip"));
+			
+			index = LibraryIndex.scan(dir.getPath());
+			assertEquals("Número de ficheros incorrecto", 1, index.size());
+			assertTrue("No se ha encontrado el libro descomprimido", index.contains("http://aleph.gutenberg.org/1/0/2/9/10293/10293.zip"));
+			assertEquals("Libro repetido en la lista", 1, Files.readAllLines(extracted.toPath()).size());
+		} finally {
+			extracted.delete();
+			dir.delete();
+		}
+	}
+
+	/**
+	 * Si la carpeta no existe el índice está vacío
+	 */
+	@Test
+	public void missingFolderTest() {
+		assertEquals(0, LibraryIndex.scan("carpeta-que-no-existe").size());
+	}
+}
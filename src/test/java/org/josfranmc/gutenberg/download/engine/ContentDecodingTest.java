@@ -0,0 +1,91 @@
+package org.josfranmc.gutenberg.download.engine;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Random;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.GZIPOutputStream;
+
+import org.junit.Test;
+
+public class ContentDecodingTest {
+
+	private static final byte[] CONTENT = new byte[200000];
+
+	static {
+		Random random = new Random(3);
+		for (int i = 0; i < CONTENT.length; i++) {
+			CONTENT[i] = (byte) ('a' + random.nextInt(4));
+		}
+	}
+
+	private static byte[] gzip(byte[] content) throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		try (OutputStream os = new GZIPOutputStream(bytes)) {
+			os.write(content);
+		}
+		return bytes.toByteArray();
+	}
+
+	private static byte[] deflate(byte[] content, boolean zlibWrapped) throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		try (OutputStream os = new DeflaterOutputStream(bytes, new Deflater(Deflater.DEFAULT_COMPRESSION, !zlibWrapped))) {
+			os.write(content);
+		}
+		return bytes.toByteArray();
+	}
+
+	private static byte[] readAll(InputStream is) throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		byte[] buffer = new byte[4096];
+		int read = 0;
+		try (InputStream in = is) {
+			while ((read = in.read(buffer)) >= 0) {
+				bytes.write(buffer, 0, read);
+			}
+		}
+		return bytes.toByteArray();
+	}
+
+	/**
+	 * Un cuerpo comprimido con gzip se descomprime mientras se lee
+	 */
+	@Test
+	public void gzipTest() throws IOException {
+		InputStream decoded = ContentDecoding.decode(new ByteArrayInputStream(gzip(CONTENT)), "gzip", 8192);
+		assertArrayEquals("Contenido descomprimido incorrecto", CONTENT, readAll(decoded));
+	}
+
+	/**
+	 * Se admite deflate con y sin la envoltura zlib
+	 */
+	@Test
+	public void deflateTest() throws IOException {
+		InputStream zlib = ContentDecoding.decode(new ByteArrayInputStream(deflate(CONTENT, true)), "deflate", 8192);
+		assertArrayEquals("Contenido deflate (zlib) incorrecto", CONTENT, readAll(zlib));
+		InputStream raw = ContentDecoding.decode(new ByteArrayInputStream(deflate(CONTENT, false)), "Deflate", 8192);
+		assertArrayEquals("Contenido deflate (raw) incorrecto", CONTENT, readAll(raw));
+	}
+
+	/**
+	 * Un cuerpo sin codificar, o con una codificación desconocida, se devuelve tal cual
+	 */
+	@Test
+	public void notEncodedTest() throws IOException {
+		InputStream body = new ByteArrayInputStream(CONTENT);
+		assertSame("No debe decodificarse sin Content-Encoding", body, ContentDecoding.decode(body, "", 8192));
+		assertSame("No debe decodificarse con identity", body, ContentDecoding.decode(body, "identity", 8192));
+		assertSame("No debe decodificarse con una codificación desconocida", body, ContentDecoding.decode(body, "br", 8192));
+		assertFalse(ContentDecoding.isEncoded(null));
+		assertTrue(ContentDecoding.isEncoded("gzip"));
+	}
+}
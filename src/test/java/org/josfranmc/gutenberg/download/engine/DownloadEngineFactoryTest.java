@@ -108,4 +108,20 @@ public class DownloadEngineFactoryTest {
 			e.printStackTrace();
 		}
 	}
+	
+	/**
+	 * Si se indica DownloadEngineType.HTTP_CLIENT, entonces se debe crear un IDownloadEngine basado en java.net.http.HttpClient
+	 */
+	@Test
+	public void createHttpClientEngine() {
+		IDownloadEngine engine = null;
+		try {
+			engine = DownloadEngineFactory.create(new URL("http://url_test"), "path_test", DownloadEngineType.HTTP_CLIENT);
+			assertEquals("No se ha creado el tipo de engine adecuado", "DownloadHttpClient", engine.getClass().getSimpleName());
+			assertEquals("Directorio para guardar incorrecto", "path_test", engine.getSavePath());
+			assertEquals("Url de descarga incorrecta", "http://url_test", engine.getResource().toString());
+		} catch (MalformedURLException e) {
+			e.printStackTrace();
+		}
+	}
 }
@@ -0,0 +1,130 @@
+package org.josfranmc.gutenberg.download.engine;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
+import org.josfranmc.gutenberg.download.GutenbergException;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * Pruebas del motor de descarga DownloadEngineType.HTTP_CLIENT contra un servidor http local
+ */
+public class DownloadHttpClientTest {
+
+	private static final byte[] CONTENT = "Contenido de prueba".getBytes();
+
+	private HttpServer server;
+
+	private File saveDir;
+
+	@Before
+	public void setUp() throws IOException {
+		server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+		server.createContext("/book.zip", exchange -> {
+			exchange.getResponseHeaders().add("Content-Type", "application/zip");
+			exchange.getResponseHeaders().add("Last-Modified", "Mon, 01 Jan 2018 00:00:00 GMT");
+			exchange.sendResponseHeaders(200, CONTENT.length);
+			try (OutputStream os = exchange.getResponseBody()) {
+				os.write(CONTENT);
+			}
+		});
+		server.createContext("/missing.zip", exchange -> {
+			exchange.sendResponseHeaders(404, -1);
+			exchange.close();
+		});
+		server.start();
+		saveDir = Files.createTempDirectory("httpclient").toFile();
+	}
+
+	@After
+	public void tearDown() {
+		server.stop(0);
+		for (File f : saveDir.listFiles()) {
+			f.delete();
+		}
+		saveDir.delete();
+	}
+
+	private URL url(String path) throws IOException {
+		return new URL("http://localhost:" + server.getAddress().getPort() + path);
+	}
+
+	/**
+	 * Comprobar que se descarga el recurso en la carpeta indicada y se obtienen sus cabeceras
+	 */
+	@Test
+	public void downloadTest() throws IOException {
+		IDownloadEngine engine = DownloadEngineFactory.create(url("/book.zip"), saveDir.getPath(), DownloadEngineType.HTTP_CLIENT);
+		DownloadResult result = engine.download();
+
+		assertNotNull("No se ha obtenido la ruta del fichero descargado", result.getSavedFilePath());
+		assertArrayEquals("Contenido descargado incorrecto", CONTENT, Files.readAllBytes(new File(result.getSavedFilePath()).toPath()));
+		assertEquals("Valor Content-Type incorrecto", "application/zip", result.getContentType());
+		assertEquals("Valor Last-Modified incorrecto", "Mon, 01 Jan 2018 00:00:00 GMT", result.getLastModified());
+	}
+
+	/**
+	 * Si el servidor responde con un error, se lanza GutenbergException y no se crea ningún fichero
+	 */
+	@Test
+	public void givenErrorResponseThenGutenbergException() throws IOException {
+		IDownloadEngine engine = DownloadEngineFactory.create(url("/missing.zip"), saveDir.getPath(), DownloadEngineType.HTTP_CLIENT);
+		try {
+			engine.download();
+		} catch (GutenbergException e) {
+			assertFalse("Se ha guardado el cuerpo de la respuesta de error", new File(saveDir, "missing.zip").exists());
+			return;
+		}
+		throw new AssertionError("No se ha lanzado GutenbergException");
+	}
+
+	/**
+	 * Varias descargas asíncronas simultáneas deben completarse con el resultado de cada una
+	 */
+	@Test
+	public void downloadAsyncTest() throws IOException {
+		List<CompletableFuture<DownloadResult>> downloads = new ArrayList<>();
+		for (int i = 0; i < 20; i++) {
+			IDownloadEngine engine = DownloadEngineFactory.create(url("/book.zip?n=" + i), saveDir.getPath(), DownloadEngineType.HTTP_CLIENT);
+			downloads.add(engine.downloadAsync());
+		}
+		for (CompletableFuture<DownloadResult> download : downloads) {
+			DownloadResult result = download.join();
+			assertArrayEquals("Contenido descargado incorrecto", CONTENT, Files.readAllBytes(new File(result.getSavedFilePath()).toPath()));
+		}
+		assertEquals("Número de ficheros descargados incorrecto", 20, saveDir.listFiles().length);
+	}
+
+	/**
+	 * Si el servidor responde con un error, la descarga asíncrona termina con GutenbergException
+	 */
+	@Test
+	public void givenErrorResponseWhenAsyncThenGutenbergException() throws IOException {
+		IDownloadEngine engine = DownloadEngineFactory.create(url("/missing.zip"), saveDir.getPath(), DownloadEngineType.HTTP_CLIENT);
+		try {
+			engine.downloadAsync().join();
+		} catch (CompletionException e) {
+			assertTrue("Excepción incorrecta", e.getCause() instanceof GutenbergException);
+			return;
+		}
+		throw new AssertionError("No se ha lanzado GutenbergException");
+	}
+}
@@ -1,18 +1,29 @@
 package org.josfranmc.gutenberg.download.engine;
 
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
 
+import java.io.ByteArrayOutputStream;
 import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
 import java.net.MalformedURLException;
 import java.net.URL;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.GZIPOutputStream;
 
 import org.josfranmc.gutenberg.download.GutenbergException;
 
 import org.junit.Test;
 
+import com.sun.net.httpserver.HttpServer;
+
 public class DownloadHttpUrlConnectionTest {
 
 	/**
@@ -66,4 +77,77 @@ public class DownloadHttpUrlConnectionTest {
 			e.printStackTrace();
 		}
 	}
+	
+	/**
+	 * Tras una respuesta de error, la conexión debe reutilizarse en la siguiente descarga al mismo servidor.
+	 */
+	@Test
+	public void givenErrorResponseThenConnectionIsReused() throws IOException {
+		final List<Integer> clientPorts = new ArrayList<>();
+		HttpServer server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+		server.createContext("/", exchange -> {
+			clientPorts.add(exchange.getRemoteAddress().getPort());
+			byte[] body = "contenido".getBytes();
+			exchange.sendResponseHeaders(exchange.getRequestURI().getPath().contains("missing") ? 404 : 200, body.length);
+			try (OutputStream os = exchange.getResponseBody()) {
+				os.write(body);
+			}
+		});
+		server.start();
+		File saveDir = Files.createTempDirectory("urlconnection").toFile();
+		try {
+			String base = "http://localhost:" + server.getAddress().getPort();
+			try {
+				DownloadHttpUrlConnection.newInstance(new URL(base + "/missing.zip"), saveDir.getPath()).download();
+			} catch (GutenbergException e) {
+				// respuesta de error esperada
+			}
+			DownloadResult dr = DownloadHttpUrlConnection.newInstance(new URL(base + "/book.zip"), saveDir.getPath()).download();
+			assertNotNull("No se ha descargado el recurso", dr.getSavedFilePath());
+			assertEquals("Número de peticiones incorrecto", 2, clientPorts.size());
+			assertEquals("No se ha reutilizado la conexión", clientPorts.get(0), clientPorts.get(1));
+			new File(dr.getSavedFilePath()).delete();
+		} finally {
+			server.stop(0);
+			saveDir.delete();
+		}
+	}
+	
+	/**
+	 * Un cuerpo comprimido con gzip se guarda descomprimido, salvo que la sesión indique conservarlo comprimido
+	 */
+	@Test
+	public void givenGzipResponseThenSavedDecoded() throws IOException {
+		byte[] content = "<html><body><a href=\"http://localhost/1.zip\">libro</a></body></html>".getBytes();
+		ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+		try (OutputStream os = new GZIPOutputStream(compressed)) {
+			os.write(content);
+		}
+		HttpServer server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+		server.createContext("/", exchange -> {
+			byte[] body = compressed.toByteArray();
+			exchange.getResponseHeaders().add("Content-Encoding", "gzip");
+			exchange.getResponseHeaders().add("Last-Modified", "Mon, 01 Jan 2018 00:00:00 GMT");
+			exchange.sendResponseHeaders(200, body.length);
+			try (OutputStream os = exchange.getResponseBody()) {
+				os.write(body);
+			}
+		});
+		server.start();
+		File saveDir = Files.createTempDirectory("urlconnection").toFile();
+		try {
+			URL url = new URL("http://localhost:" + server.getAddress().getPort() + "/page.html");
+			DownloadResult dr = DownloadHttpUrlConnection.newInstance(url, saveDir.getPath()).download();
+			assertArrayEquals("No se ha descomprimido el contenido", content, Files.readAllBytes(new File(dr.getSavedFilePath()).toPath()));
+			
+			DownloadSession session = new DownloadSession();
+			session.setKeepCompressed(true);
+			dr = DownloadHttpUrlConnection.newInstance(url, saveDir.getPath(), session).download();
+			assertArrayEquals("No se ha conservado el contenido comprimido", compressed.toByteArray(), Files.readAllBytes(new File(dr.getSavedFilePath()).toPath()));
+			new File(dr.getSavedFilePath()).delete();
+		} finally {
+			server.stop(0);
+			saveDir.delete();
+		}
+	}
 }
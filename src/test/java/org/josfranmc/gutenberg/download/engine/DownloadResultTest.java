@@ -2,6 +2,11 @@ package org.josfranmc.gutenberg.download.engine;
 
 import static org.junit.Assert.assertEquals;
 
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
 import org.junit.Test;
 
 public class DownloadResultTest {
@@ -14,4 +19,17 @@ public class DownloadResultTest {
 		assertEquals("Valor Content-Length incorrecto", "", r.getContentLength());
 		assertEquals("Valor Content-Location incorrecto", "", r.getContentLocation());
 	}
+	
+	/**
+	 * Los nombres de las cabeceras no distinguen mayúsculas de minúsculas
+	 */
+	@Test
+	public void headerNamesCaseInsensitiveTest() {
+		Map<String, List<String>> headers = new HashMap<>();
+		headers.put(null, Collections.singletonList("HTTP/1.1 200 OK"));
+		headers.put("content-location", Collections.singletonList("harvest.php"));
+		DownloadResult r = new DownloadResult();
+		r.setHeaders(headers);
+		assertEquals("Valor Content-Location incorrecto", "harvest.php", r.getContentLocation());
+	}
 }
@@ -0,0 +1,52 @@
+package org.josfranmc.gutenberg.download.engine;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+import java.io.IOException;
+import java.net.Socket;
+import java.net.URL;
+
+import org.junit.Test;
+
+public class DownloadSessionTest {
+
+	/**
+	 * Cada socket creado por la factoría de la sesión es una nueva conexión segura
+	 */
+	@Test
+	public void connectionsOpenedTest() throws IOException {
+		DownloadSession session = new DownloadSession();
+		try (Socket s = session.getSSLSocketFactory().createSocket()) {
+			assertEquals("Número de conexiones abiertas incorrecto", 1, session.getConnectionsOpened());
+		}
+		assertSame("La factoría de sockets debe ser compartida", session.getSSLSocketFactory(), session.getSSLSocketFactory());
+	}
+	
+	/**
+	 * Solo se contabilizan las peticiones https. Las peticiones que no abren conexión reutilizan una existente.
+	 */
+	@Test
+	public void reusedConnectionsTest() throws IOException {
+		DownloadSession session = new DownloadSession();
+		session.requestSent(new URL("http://www.gutenberg.org/robot/harvest"));
+		assertEquals("Las peticiones http no deben contabilizarse", 0, session.getRequests());
+		
+		session.requestSent(new URL("https://www.gutenberg.org/robot/harvest"));
+		session.requestSent(new URL("https://www.gutenberg.org/robot/harvest"));
+		session.getSSLSocketFactory().createSocket().close();
+		assertEquals("Número de peticiones incorrecto", 2, session.getRequests());
+		assertEquals("Número de conexiones reutilizadas incorrecto", 1, session.getReusedConnections());
+	}
+	
+	/**
+	 * El objeto de transporte se crea una sola vez por sesión
+	 */
+	@Test
+	public void transportTest() {
+		DownloadSession session = new DownloadSession();
+		Object transport = session.getTransport(Object::new);
+		assertSame("El transporte debe ser compartido", transport, session.getTransport(Object::new));
+		session.close();
+	}
+}
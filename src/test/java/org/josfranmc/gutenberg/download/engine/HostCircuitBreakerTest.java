@@ -0,0 +1,51 @@
+package org.josfranmc.gutenberg.download.engine;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class HostCircuitBreakerTest {
+
+	/**
+	 * Tras los fallos seguidos indicados se rechazan las peticiones al servidor, pero no a otros servidores
+	 */
+	@Test
+	public void opensAfterThresholdTest() {
+		HostCircuitBreaker breaker = new HostCircuitBreaker(3, 60000);
+		for (int i = 0; i < 2; i++) {
+			breaker.onFailure("www.gutenberg.org");
+		}
+		assertTrue("El circuito no debe abrirse antes del umbral", breaker.allowRequest("www.gutenberg.org"));
+		breaker.onSuccess("www.gutenberg.org");
+		for (int i = 0; i < 2; i++) {
+			breaker.onFailure("www.gutenberg.org");
+		}
+		assertTrue("Un éxito debe reiniciar la cuenta de fallos", breaker.allowRequest("www.gutenberg.org"));
+		breaker.onFailure("www.gutenberg.org");
+		assertFalse("El circuito debe abrirse tras el umbral", breaker.allowRequest("www.gutenberg.org"));
+		assertTrue("Otros servidores no deben verse afectados", breaker.allowRequest("aleph.gutenberg.org"));
+		long openMillis = breaker.getOpenMillis("www.gutenberg.org");
+		assertTrue("Tiempo de apertura restante incorrecto: " + openMillis, openMillis > 50000 && openMillis <= 60000);
+		assertEquals("Otros servidores no tienen el circuito abierto", 0, breaker.getOpenMillis("aleph.gutenberg.org"));
+		assertEquals("Número de aperturas incorrecto", 1, breaker.getTrips());
+	}
+
+	/**
+	 * Pasado el tiempo de apertura se permite una única petición de prueba, que cierra el circuito si tiene éxito o lo vuelve a abrir si falla
+	 */
+	@Test
+	public void halfOpenTest() {
+		HostCircuitBreaker breaker = new HostCircuitBreaker(1, 0);
+		breaker.onFailure("www.gutenberg.org");
+		assertTrue("Debe permitirse la petición de prueba", breaker.allowRequest("www.gutenberg.org"));
+		assertFalse("Solo debe permitirse una petición de prueba", breaker.allowRequest("www.gutenberg.org"));
+		breaker.onFailure("www.gutenberg.org");
+		assertTrue("Debe permitirse una nueva petición de prueba", breaker.allowRequest("www.gutenberg.org"));
+		breaker.onSuccess("www.gutenberg.org");
+		assertTrue("El circuito debe cerrarse", breaker.allowRequest("www.gutenberg.org"));
+		assertTrue("El circuito debe estar cerrado", breaker.allowRequest("www.gutenberg.org"));
+		assertEquals("Número de aperturas incorrecto", 1, breaker.getTrips());
+	}
+}
@@ -0,0 +1,52 @@
+package org.josfranmc.gutenberg.download.engine;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.net.URL;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+public class HostRateLimiterTest {
+
+	/**
+	 * Las peticiones de la ráfaga no esperan; las siguientes esperan un intervalo más que la anterior
+	 */
+	@Test
+	public void reserveAfterBurstTest() {
+		HostRateLimiter limiter = new HostRateLimiter(1, 2);
+		assertEquals("La primera petición de la ráfaga no debe esperar", 0, limiter.reserve("www.gutenberg.org"));
+		assertEquals("La segunda petición de la ráfaga no debe esperar", 0, limiter.reserve("www.gutenberg.org"));
+		long first = limiter.reserve("www.gutenberg.org");
+		long second = limiter.reserve("www.gutenberg.org");
+		assertTrue("Espera incorrecta tras la ráfaga: " + first, first > TimeUnit.MILLISECONDS.toNanos(900) && first <= TimeUnit.SECONDS.toNanos(1));
+		assertTrue("Las esperas no se reparten en el tiempo: " + second, second - first > TimeUnit.MILLISECONDS.toNanos(900));
+		assertEquals("Número de peticiones retrasadas incorrecto", 2, limiter.getDelayedRequests());
+		assertEquals("Tiempo de espera acumulado incorrecto", first + second, limiter.getWaitedNanos());
+	}
+
+	/**
+	 * Cada servidor tiene su propio límite
+	 */
+	@Test
+	public void hostsAreIndependentTest() {
+		HostRateLimiter limiter = new HostRateLimiter(1, 1);
+		assertEquals("No debe esperar la primera petición", 0, limiter.reserve("www.gutenberg.org"));
+		assertEquals("No debe esperar la primera petición a otro servidor", 0, limiter.reserve("aleph.gutenberg.org"));
+		assertTrue("Debe esperar la segunda petición al mismo servidor", limiter.reserve("WWW.gutenberg.org") > 0);
+	}
+
+	/**
+	 * Sin límite en la sesión no se espera
+	 */
+	@Test
+	public void sessionWithoutRateLimitTest() throws Exception {
+		DownloadSession session = new DownloadSession();
+		session.setRateLimit(0, 1);
+		for (int i = 0; i < 10; i++) {
+			session.acquirePermit(new URL("http://localhost/" + i + ".zip"));
+		}
+		assertEquals("No debe haber peticiones retrasadas", 0, session.getRateLimitedRequests());
+	}
+}
@@ -0,0 +1,95 @@
+package org.josfranmc.gutenberg.download.engine;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.josfranmc.gutenberg.download.GutenbergException;
+import org.junit.Test;
+
+public class MirrorSelectorTest {
+
+	private static final List<String> URLS = Arrays.asList("http://aleph.gutenberg.org", "http://mirror.example.org/gutenberg/", "http://mirror.example.org/gutenberg/cache/");
+
+	/**
+	 * Se debe obtener el espejo de la url más larga con la que empieza el recurso, y ninguno si no empieza por la de ningún espejo
+	 */
+	@Test
+	public void findTest() throws MalformedURLException {
+		MirrorSelector selector = new MirrorSelector(URLS, MirrorPolicy.EWMA_LATENCY);
+		List<Mirror> mirrors = selector.getMirrors();
+		assertEquals("Url del espejo sin barra final", "http://aleph.gutenberg.org/", mirrors.get(0).getUrl().toString());
+		assertSame("Espejo incorrecto", mirrors.get(0), selector.find(new URL("http://aleph.gutenberg.org/1/0/10/10.zip")));
+		assertSame("Espejo incorrecto", mirrors.get(1), selector.find(new URL("http://mirror.example.org/gutenberg/1/0/10/10.zip")));
+		assertSame("No se ha elegido la url más larga", mirrors.get(2), selector.find(new URL("http://mirror.example.org/gutenberg/cache/10.zip")));
+		assertNull("Se ha encontrado espejo de una página", selector.find(new URL("http://www.gutenberg.org/robot/harvest")));
+	}
+
+	/**
+	 * Un recurso de un espejo se debe encontrar en la misma ruta relativa del otro espejo
+	 */
+	@Test
+	public void resolveTest() throws MalformedURLException {
+		List<Mirror> mirrors = new MirrorSelector(URLS, null).getMirrors();
+		URL url = MirrorSelector.resolve(new URL("http://aleph.gutenberg.org/1/0/10/10.zip"), mirrors.get(0), mirrors.get(1));
+		assertEquals("Url en el otro espejo incorrecta", "http://mirror.example.org/gutenberg/1/0/10/10.zip", url.toString());
+	}
+
+	/**
+	 * Con EWMA_LATENCY se eligen primero los espejos sin medir y después el de menor latencia por descargas en curso;
+	 * un fallo penaliza al espejo
+	 */
+	@Test
+	public void selectByLatencyTest() {
+		MirrorSelector selector = new MirrorSelector(URLS.subList(0, 2), MirrorPolicy.EWMA_LATENCY);
+		Mirror first = selector.getMirrors().get(0);
+		Mirror second = selector.getMirrors().get(1);
+		assertSame("No se ha elegido el primer espejo", first, selector.select(Collections.<Mirror>emptyList()));
+		first.started();
+		assertSame("No se ha repartido entre los espejos sin medir", second, selector.select(Collections.<Mirror>emptyList()));
+		first.completed(1000000, 100);
+		second.started();
+		second.completed(5000000, 100);
+		assertSame("No se ha elegido el espejo más rápido", first, selector.select(Collections.<Mirror>emptyList()));
+		for (int i = 0; i < 5; i++) {
+			first.started();
+		}
+		assertSame("No se han tenido en cuenta las descargas en curso", second, selector.select(Collections.<Mirror>emptyList()));
+		second.started();
+		second.failed(5000000);
+		assertSame("No se ha penalizado el fallo", first, selector.select(Collections.<Mirror>emptyList()));
+		assertSame("No se ha excluido el espejo ya probado", second, selector.select(Collections.singletonList(first)));
+		assertNull("Se ha elegido un espejo excluido", selector.select(selector.getMirrors()));
+	}
+
+	/**
+	 * Con LEAST_LOADED se elige el espejo con menos descargas en curso, y a igualdad el de menor latencia
+	 */
+	@Test
+	public void selectLeastLoadedTest() {
+		MirrorSelector selector = new MirrorSelector(URLS.subList(0, 2), MirrorPolicy.LEAST_LOADED);
+		Mirror first = selector.getMirrors().get(0);
+		Mirror second = selector.getMirrors().get(1);
+		first.started();
+		first.completed(9000000, 100);
+		second.started();
+		second.completed(1000000, 100);
+		assertSame("No se ha elegido el espejo de menor latencia", second, selector.select(Collections.<Mirror>emptyList()));
+		second.started();
+		assertSame("No se ha elegido el espejo con menos descargas", first, selector.select(Collections.<Mirror>emptyList()));
+	}
+
+	/**
+	 * Si la url de un espejo no es válida se debe lanzar GutenbergException
+	 */
+	@Test(expected=GutenbergException.class)
+	public void wrongUrlTest() {
+		new MirrorSelector(Arrays.asList("aleph.gutenberg.org"), MirrorPolicy.EWMA_LATENCY);
+	}
+}
@@ -0,0 +1,202 @@
+package org.josfranmc.gutenberg.download.engine;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * Pruebas de la reanudación de descargas interrumpidas, con los dos motores de descarga, contra un servidor http local que admite
+ * peticiones Range validadas con If-Range.
+ */
+public class PartialDownloadTest {
+
+	private static final String LAST_MODIFIED = "Mon, 01 Jan 2018 00:00:00 GMT";
+
+	private static final byte[] CONTENT = new byte[50000];
+
+	static {
+		new Random(7).nextBytes(CONTENT);
+	}
+
+	private HttpServer server;
+
+	private File saveDir;
+
+	private String lastRange;
+
+	private boolean rangeNotSatisfiable;
+
+	@Before
+	public void setUp() throws IOException {
+		server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+		server.createContext("/book.zip", this::sendBook);
+		server.start();
+		saveDir = Files.createTempDirectory("partial").toFile();
+	}
+
+	@After
+	public void tearDown() {
+		server.stop(0);
+		for (File f : saveDir.listFiles()) {
+			f.delete();
+		}
+		saveDir.delete();
+	}
+
+	private void sendBook(HttpExchange exchange) throws IOException {
+		lastRange = exchange.getRequestHeaders().getFirst("Range");
+		String ifRange = exchange.getRequestHeaders().getFirst("If-Range");
+		exchange.getResponseHeaders().add("Last-Modified", LAST_MODIFIED);
+		byte[] body = CONTENT;
+		if (lastRange != null && rangeNotSatisfiable) {
+			exchange.sendResponseHeaders(416, -1);
+			exchange.close();
+			return;
+		} else if (lastRange != null && LAST_MODIFIED.equals(ifRange)) {
+			int from = Integer.parseInt(lastRange.replace("bytes=", "").replace("-", ""));
+			body = Arrays.copyOfRange(CONTENT, from, CONTENT.length);
+			exchange.getResponseHeaders().add("Content-Range", "bytes " + from + "-" + (CONTENT.length - 1) + "/" + CONTENT.length);
+			exchange.sendResponseHeaders(206, body.length);
+		} else {
+			exchange.sendResponseHeaders(200, body.length);
+		}
+		try (OutputStream os = exchange.getResponseBody()) {
+			os.write(body);
+		}
+	}
+
+	private IDownloadEngine engine(DownloadEngineType type) throws IOException {
+		URL url = new URL("http://localhost:" + server.getAddress().getPort() + "/book.zip");
+		return DownloadEngineFactory.create(url, saveDir.getPath(), type);
+	}
+
+	private String targetPath() {
+		return new File(saveDir, "book.zip").getPath();
+	}
+
+	/**
+	 * Simula una descarga interrumpida: fichero .part con los primeros bytes y metadatos de la respuesta original
+	 */
+	private void interruptedDownload(int bytes, String lastModified) throws IOException {
+		PartialDownload partialDownload = new PartialDownload(targetPath());
+		partialDownload.begin(lastModified, String.valueOf(CONTENT.length));
+		Files.write(partialDownload.getPartFile(), Arrays.copyOf(CONTENT, bytes));
+	}
+
+	private void assertCompleted() throws IOException {
+		assertArrayEquals("Contenido descargado incorrecto", CONTENT, Files.readAllBytes(new File(targetPath()).toPath()));
+		assertFalse("No se ha eliminado el fichero .part", new File(targetPath() + ".part").exists());
+		assertFalse("No se han eliminado los metadatos", new File(targetPath() + ".part.meta").exists());
+	}
+
+	/**
+	 * Una descarga interrumpida se reanuda desde el último byte guardado
+	 */
+	@Test
+	public void resumeDownloadTest() throws IOException {
+		for (DownloadEngineType type : DownloadEngineType.values()) {
+			interruptedDownload(20000, LAST_MODIFIED);
+			engine(type).download();
+			assertEquals("No se ha pedido el resto del recurso con " + type, "bytes=20000-", lastRange);
+			assertCompleted();
+		}
+	}
+
+	/**
+	 * Si el recurso ha cambiado desde la descarga interrumpida, se descarga completo
+	 */
+	@Test
+	public void givenModifiedResourceThenDownloadFromBeginning() throws IOException {
+		for (DownloadEngineType type : DownloadEngineType.values()) {
+			interruptedDownload(20000, "Sun, 01 Jan 2017 00:00:00 GMT");
+			engine(type).download();
+			assertCompleted();
+		}
+	}
+
+	/**
+	 * Sin metadatos no se puede validar el fichero .part, así que la descarga empieza desde el principio
+	 */
+	@Test
+	public void givenPartFileWithoutMetaThenDownloadFromBeginning() throws IOException {
+		for (DownloadEngineType type : DownloadEngineType.values()) {
+			Files.write(new File(targetPath() + ".part").toPath(), new byte[100]);
+			engine(type).download();
+			assertNull("Se ha enviado una petición Range con " + type, lastRange);
+			assertCompleted();
+		}
+	}
+
+	/**
+	 * Si el servidor no puede servir el rango pedido, se descarta el fichero .part y la descarga empieza de nuevo
+	 */
+	@Test
+	public void givenRangeNotSatisfiableThenDownloadFromBeginning() throws IOException {
+		rangeNotSatisfiable = true;
+		for (DownloadEngineType type : DownloadEngineType.values()) {
+			interruptedDownload(20000, LAST_MODIFIED);
+			engine(type).download();
+			assertCompleted();
+		}
+	}
+
+	/**
+	 * Con la descarga asíncrona también se reanuda la descarga interrumpida
+	 */
+	@Test
+	public void resumeDownloadAsyncTest() throws IOException {
+		for (DownloadEngineType type : DownloadEngineType.values()) {
+			interruptedDownload(30000, LAST_MODIFIED);
+			engine(type).downloadAsync().join();
+			assertEquals("No se ha pedido el resto del recurso con " + type, "bytes=30000-", lastRange);
+			assertCompleted();
+		}
+	}
+
+	/**
+	 * Un fichero .part más corto que la longitud anunciada por el servidor no se renombra
+	 */
+	@Test
+	public void givenIncompletePartFileThenNotRenamed() throws IOException {
+		interruptedDownload(100, LAST_MODIFIED);
+		PartialDownload partialDownload = new PartialDownload(targetPath());
+		assertEquals("Posición de reanudación incorrecta", 100, partialDownload.getResumeOffset());
+		try {
+			partialDownload.complete();
+			throw new AssertionError("Se ha completado una descarga incompleta");
+		} catch (IOException e) {
+			assertFalse("Se ha renombrado el fichero incompleto", new File(targetPath()).exists());
+			assertTrue("Se ha eliminado el fichero .part", new File(targetPath() + ".part").exists());
+		}
+	}
+
+	/**
+	 * Del Content-Range de una respuesta parcial se obtienen el último byte del rango y la longitud del recurso completo
+	 */
+	@Test
+	public void contentRangeTest() {
+		assertTrue("El rango no empieza en el byte indicado", PartialDownload.continuesAt("bytes 0-999/8000", 0));
+		assertEquals("Último byte del rango incorrecto", 999, PartialDownload.getRangeEnd("bytes 0-999/8000"));
+		assertEquals("Longitud del recurso incorrecta", 8000, PartialDownload.getCompleteLength("bytes 0-999/8000"));
+		assertEquals("La longitud del recurso debe ser desconocida", -1, PartialDownload.getCompleteLength("bytes 0-999/*"));
+		assertEquals("El rango debe ser inválido", -1, PartialDownload.getRangeEnd(null));
+	}
+}
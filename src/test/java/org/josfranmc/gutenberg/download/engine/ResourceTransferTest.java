@@ -0,0 +1,67 @@
+package org.josfranmc.gutenberg.download.engine;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+
+import org.junit.Test;
+
+public class ResourceTransferTest {
+
+	/**
+	 * Todos los modos de transferencia deben obtener una copia idéntica, aunque el tamaño no sea múltiplo del buffer
+	 */
+	@Test
+	public void copyWithAllModesTest() throws IOException {
+		byte[] content = new byte[100 * 1024 + 17];
+		new Random(1).nextBytes(content);
+		Path target = Files.createTempFile("transfer", ".zip");
+		try {
+			for (TransferMode mode : TransferMode.values()) {
+				long copied = ResourceTransfer.copy(new ByteArrayInputStream(content), target, mode, 4096);
+				assertEquals("Número de bytes copiados incorrecto con " + mode, content.length, copied);
+				assertArrayEquals("Contenido copiado incorrecto con " + mode, content, Files.readAllBytes(target));
+			}
+		} finally {
+			Files.delete(target);
+		}
+	}
+
+	/**
+	 * Si el fichero ya existe, su contenido se sustituye
+	 */
+	@Test
+	public void copyOverExistingFileTest() throws IOException {
+		Path target = Files.createTempFile("transfer", ".zip");
+		try {
+			Files.write(target, new byte[10000]);
+			ResourceTransfer.copy(new ByteArrayInputStream("abc".getBytes()), target, TransferMode.DIRECT_BUFFER, 4096);
+			assertArrayEquals("El fichero no se ha truncado", "abc".getBytes(), Files.readAllBytes(target));
+		} finally {
+			Files.delete(target);
+		}
+	}
+
+	/**
+	 * Los buffers directos devueltos al pool se reutilizan, y el pool no guarda más de su capacidad
+	 */
+	@Test
+	public void pooledDirectBuffersTest() {
+		ByteBuffer buffer = ResourceTransfer.takeDirectBuffer(4096);
+		assertTrue("El buffer no es directo", buffer.isDirect());
+		ResourceTransfer.giveBackDirectBuffer(buffer);
+		assertSame("El buffer no se ha reutilizado", buffer, ResourceTransfer.takeDirectBuffer(4096));
+		for (int i = 0; i < ResourceTransfer.MAX_POOLED_BUFFERS + 5; i++) {
+			ResourceTransfer.giveBackDirectBuffer(ByteBuffer.allocateDirect(4096));
+		}
+		assertEquals("El pool guarda demasiados buffers", ResourceTransfer.MAX_POOLED_BUFFERS, ResourceTransfer.getPooledBuffers());
+	}
+}
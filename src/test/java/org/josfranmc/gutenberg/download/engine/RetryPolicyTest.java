@@ -0,0 +1,74 @@
+package org.josfranmc.gutenberg.download.engine;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.net.ConnectException;
+import java.net.SocketTimeoutException;
+import java.net.URL;
+import java.net.UnknownHostException;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+
+import org.josfranmc.gutenberg.download.GutenbergException;
+import org.junit.Test;
+
+public class RetryPolicyTest {
+
+	private static HttpStatusException status(int code, String retryAfter) throws IOException {
+		return new HttpStatusException(code, new URL("http://localhost/1.zip"), retryAfter);
+	}
+
+	/**
+	 * Los fallos de red y los códigos 429 y 5xx son transitorios; el resto de errores son permanentes
+	 */
+	@Test
+	public void isTransientTest() throws IOException {
+		assertTrue("Un timeout debe ser transitorio", RetryPolicy.isTransient(new GutenbergException("error", new SocketTimeoutException())));
+		assertTrue("Un fallo de conexión debe ser transitorio", RetryPolicy.isTransient(new GutenbergException("error", new ConnectException())));
+		assertTrue("Un 503 debe ser transitorio", RetryPolicy.isTransient(new GutenbergException("error", status(503, null))));
+		assertTrue("Un 429 debe ser transitorio", RetryPolicy.isTransient(new GutenbergException("error", status(429, null))));
+		assertFalse("Un 404 debe ser permanente", RetryPolicy.isTransient(new GutenbergException("error", status(404, null))));
+		assertFalse("Un servidor desconocido debe ser permanente", RetryPolicy.isTransient(new GutenbergException("error", new UnknownHostException())));
+		assertFalse("Un error sin causa de red debe ser permanente", RetryPolicy.isTransient(new GutenbergException("error")));
+	}
+
+	/**
+	 * La espera crece exponencialmente, con una parte aleatoria, hasta el máximo
+	 */
+	@Test
+	public void backoffTest() {
+		RetryPolicy policy = new RetryPolicy(5, 100, 1000);
+		for (int i = 0; i < 20; i++) {
+			long first = policy.getBackoffMillis(1, null);
+			long third = policy.getBackoffMillis(3, null);
+			long tenth = policy.getBackoffMillis(10, null);
+			assertTrue("Espera del primer reintento incorrecta: " + first, first >= 50 && first <= 100);
+			assertTrue("Espera del tercer reintento incorrecta: " + third, third >= 200 && third <= 400);
+			assertTrue("Espera máxima superada: " + tenth, tenth >= 500 && tenth <= 1000);
+		}
+	}
+
+	/**
+	 * Si el servidor indica cuánto esperar (Retry-After), se espera ese tiempo
+	 */
+	@Test
+	public void retryAfterTest() throws IOException {
+		RetryPolicy policy = new RetryPolicy(5, 100, 1000);
+		assertEquals("No se ha respetado Retry-After en segundos", 7000, policy.getBackoffMillis(1, new GutenbergException("error", status(503, "7"))));
+		assertEquals("No se ha limitado Retry-After", RetryPolicy.MAX_RETRY_AFTER_MILLIS, policy.getBackoffMillis(1, status(429, "86400")));
+		long now = System.currentTimeMillis();
+		String date = DateTimeFormatter.RFC_1123_DATE_TIME.format(ZonedDateTime.now(ZoneOffset.UTC).plusSeconds(30));
+		long wait = HttpStatusException.parseRetryAfter(date, now);
+		assertTrue("Retry-After como fecha incorrecto: " + wait, wait > 28000 && wait <= 31000);
+		assertEquals("Retry-After incorrecto debe ignorarse", -1, HttpStatusException.parseRetryAfter("pronto", now));
+	}
+
+	@Test(expected=GutenbergException.class)
+	public void negativeRetriesTest() {
+		new RetryPolicy(-1, 100, 1000);
+	}
+}
@@ -0,0 +1,267 @@
+package org.josfranmc.gutenberg.download.engine;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.josfranmc.gutenberg.download.GutenbergException;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * Pruebas de los reintentos contra un servidor http local que falla las primeras peticiones
+ */
+public class RetryingDownloadEngineTest {
+
+	private static final byte[] CONTENT = "contenido del libro".getBytes();
+
+	private HttpServer server;
+
+	private File saveDir;
+
+	private DownloadSession session;
+
+	private final AtomicInteger requests = new AtomicInteger();
+
+	/**
+	 * número de peticiones que fallan antes de enviar el libro
+	 */
+	private volatile int failures = 2;
+
+	private volatile int failureCode = 503;
+
+	/**
+	 * valor de la cabecera Retry-After de los fallos, o null para no enviarla
+	 */
+	private volatile String retryAfter = "0";
+
+	@Before
+	public void setUp() throws IOException {
+		server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+		server.createContext("/", exchange -> {
+			if (requests.incrementAndGet() <= failures) {
+				if (retryAfter != null) {
+					exchange.getResponseHeaders().add("Retry-After", retryAfter);
+				}
+				exchange.sendResponseHeaders(failureCode, -1);
+				exchange.close();
+				return;
+			}
+			exchange.sendResponseHeaders(200, CONTENT.length);
+			try (OutputStream os = exchange.getResponseBody()) {
+				os.write(CONTENT);
+			}
+		});
+		server.start();
+		saveDir = Files.createTempDirectory("retry").toFile();
+		session = new DownloadSession();
+		session.setRetryPolicy(new RetryPolicy(3, 10, 100));
+	}
+
+	@After
+	public void tearDown() {
+		session.close();
+		server.stop(0);
+		for (File f : saveDir.listFiles()) {
+			f.delete();
+		}
+		saveDir.delete();
+	}
+
+	private IDownloadEngine engine(DownloadEngineType type) throws IOException {
+		URL url = new URL("http://localhost:" + server.getAddress().getPort() + "/book.zip");
+		return DownloadEngineFactory.create(url, saveDir.getPath(), type, session);
+	}
+
+	/**
+	 * Los errores transitorios se reintentan hasta obtener el recurso
+	 */
+	@Test
+	public void givenTransientErrorsThenRetried() throws IOException {
+		DownloadResult result = engine(DownloadEngineType.HTTP_CONNECTION).download();
+		assertEquals("Número de peticiones incorrecto", 3, requests.get());
+		assertEquals("Número de reintentos incorrecto", 2, session.getRetries());
+		assertArrayEquals("Contenido descargado incorrecto", CONTENT, Files.readAllBytes(new File(result.getSavedFilePath()).toPath()));
+	}
+
+	/**
+	 * Las descargas asíncronas también se reintentan
+	 */
+	@Test
+	public void givenTransientErrorsThenAsyncDownloadRetried() throws IOException {
+		DownloadResult result = engine(DownloadEngineType.HTTP_CLIENT).downloadAsync(ForkJoinPool.commonPool()).join();
+		assertEquals("Número de peticiones incorrecto", 3, requests.get());
+		assertArrayEquals("Contenido descargado incorrecto", CONTENT, Files.readAllBytes(new File(result.getSavedFilePath()).toPath()));
+	}
+
+	/**
+	 * Cada intento avisa al receptor de la transferencia cuando envía su petición, tras las esperas entre reintentos,
+	 * con los dos motores
+	 */
+	@Test
+	public void givenRetriesThenEveryRequestReported() throws IOException {
+		session.setRetryPolicy(new RetryPolicy(3, 200, 200));
+		retryAfter = null;
+		for (DownloadEngineType type : new DownloadEngineType[] {DownloadEngineType.HTTP_CONNECTION, DownloadEngineType.HTTP_CLIENT}) {
+			requests.set(0);
+			AtomicInteger sent = new AtomicInteger();
+			AtomicLong lastSent = new AtomicLong();
+			IDownloadEngine engine = engine(type);
+			engine.setTransferListener(new TransferListener() {
+				@Override
+				public void requestSent() {
+					sent.incrementAndGet();
+					lastSent.set(System.nanoTime());
+				}
+				@Override
+				public void transferStarted(long contentLength) {
+				}
+				@Override
+				public void bytesTransferred(long bytes) {
+				}
+			});
+			long start = System.nanoTime();
+			engine.downloadAsync(ForkJoinPool.commonPool()).join();
+			assertEquals("Número de peticiones avisadas incorrecto con " + type, 3, sent.get());
+			assertTrue("La última petición se ha avisado antes de las esperas con " + type, lastSent.get() - start >= TimeUnit.MILLISECONDS.toNanos(200));
+			new File(saveDir, "book.zip").delete();
+		}
+	}
+
+	/**
+	 * Los errores permanentes no se reintentan
+	 */
+	@Test
+	public void givenPermanentErrorThenNotRetried() throws IOException {
+		failureCode = 404;
+		try {
+			engine(DownloadEngineType.HTTP_CONNECTION).download();
+			throw new AssertionError("No se ha lanzado GutenbergException");
+		} catch (GutenbergException e) {
+			assertEquals("Un error permanente no debe reintentarse", 1, requests.get());
+		}
+	}
+
+	/**
+	 * Si se agotan los reintentos, la descarga falla con el último error
+	 */
+	@Test
+	public void givenTooManyErrorsThenGutenbergException() throws IOException {
+		failures = 10;
+		try {
+			engine(DownloadEngineType.HTTP_CLIENT).downloadAsync(ForkJoinPool.commonPool()).join();
+			throw new AssertionError("No se ha lanzado GutenbergException");
+		} catch (CompletionException e) {
+			assertTrue("Error incorrecto: " + e.getCause(), e.getCause() instanceof GutenbergException);
+			assertEquals("Número de peticiones incorrecto", 4, requests.get());
+		}
+	}
+
+	/**
+	 * Con el circuito abierto y sin reintentos disponibles, la descarga falla sin enviar la petición al servidor
+	 */
+	@Test
+	public void givenOpenCircuitThenRequestsRejected() throws IOException {
+		failures = 10;
+		session.setRetryPolicy(new RetryPolicy(0, 10, 100));
+		session.setCircuitBreaker(1, 60000);
+		for (int i = 0; i < 2; i++) {
+			try {
+				engine(DownloadEngineType.HTTP_CONNECTION).download();
+				throw new AssertionError("No se ha lanzado GutenbergException");
+			} catch (GutenbergException e) {
+				// circuito abierto
+			}
+		}
+		assertEquals("Se han enviado peticiones con el circuito abierto", 1, requests.get());
+		assertEquals("Número de aperturas incorrecto", 1, session.getCircuitBreakerTrips());
+	}
+
+	/**
+	 * Con el circuito abierto, la descarga espera a que se permita una petición de prueba en lugar de fallar
+	 */
+	@Test
+	public void givenOpenCircuitThenDownloadWaits() throws IOException {
+		failures = 1;
+		session.setCircuitBreaker(1, 300);
+		long start = System.nanoTime();
+		DownloadResult result = engine(DownloadEngineType.HTTP_CONNECTION).download();
+		assertTrue("No se ha esperado a que el circuito se cierre", System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(250));
+		assertEquals("Se han enviado peticiones con el circuito abierto", 2, requests.get());
+		assertArrayEquals("Contenido descargado incorrecto", CONTENT, Files.readAllBytes(new File(result.getSavedFilePath()).toPath()));
+	}
+
+	/**
+	 * Las descargas asíncronas también esperan a que el circuito permita una petición de prueba
+	 */
+	@Test
+	public void givenOpenCircuitThenAsyncDownloadWaits() throws IOException {
+		failures = 1;
+		session.setCircuitBreaker(1, 300);
+		DownloadResult result = engine(DownloadEngineType.HTTP_CLIENT).downloadAsync(ForkJoinPool.commonPool()).join();
+		assertEquals("Se han enviado peticiones con el circuito abierto", 2, requests.get());
+		assertArrayEquals("Contenido descargado incorrecto", CONTENT, Files.readAllBytes(new File(result.getSavedFilePath()).toPath()));
+	}
+
+	/**
+	 * Un espejo que falla se reintenta una sola vez antes de pasar la descarga al siguiente espejo, con los dos motores
+	 */
+	@Test
+	public void givenFailingMirrorThenFailoverBeforeRetries() throws IOException {
+		failures = 100;
+		AtomicInteger mirrorRequests = new AtomicInteger();
+		HttpServer mirror = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+		mirror.createContext("/", exchange -> {
+			mirrorRequests.incrementAndGet();
+			exchange.sendResponseHeaders(200, CONTENT.length);
+			try (OutputStream os = exchange.getResponseBody()) {
+				os.write(CONTENT);
+			}
+		});
+		mirror.start();
+		try {
+			for (DownloadEngineType type : new DownloadEngineType[] {DownloadEngineType.HTTP_CONNECTION, DownloadEngineType.HTTP_CLIENT}) {
+				requests.set(0);
+				mirrorRequests.set(0);
+				session.setMirrors(Arrays.asList("http://localhost:" + server.getAddress().getPort() + "/", "http://localhost:" + mirror.getAddress().getPort() + "/"), null);
+				IDownloadEngine engine = engine(type);
+				DownloadResult result = (type == DownloadEngineType.HTTP_CONNECTION) ? engine.download() : engine.downloadAsync(ForkJoinPool.commonPool()).join();
+				assertEquals("Número de peticiones al espejo que falla incorrecto con " + type, 1 + MirrorDownloadEngine.MIRROR_RETRIES, requests.get());
+				assertEquals("Número de peticiones al segundo espejo incorrecto con " + type, 1, mirrorRequests.get());
+				assertArrayEquals("Contenido descargado incorrecto", CONTENT, Files.readAllBytes(new File(result.getSavedFilePath()).toPath()));
+			}
+		} finally {
+			mirror.stop(0);
+		}
+	}
+
+	/**
+	 * La latencia de un espejo se mide desde la petición del último intento, sin las esperas entre reintentos
+	 */
+	@Test
+	public void givenRetriesThenMirrorLatencyExcludesBackoff() throws IOException {
+		failures = 1;
+		retryAfter = null;
+		session.setRetryPolicy(new RetryPolicy(3, 500, 500));
+		session.setMirrors(Arrays.asList("http://localhost:" + server.getAddress().getPort() + "/"), null);
+		engine(DownloadEngineType.HTTP_CONNECTION).download();
+		assertEquals("Número de peticiones incorrecto", 2, requests.get());
+		assertTrue("La latencia incluye la espera entre reintentos", session.getMirrors().get(0).getLatencyMillis() < 400);
+	}
+}
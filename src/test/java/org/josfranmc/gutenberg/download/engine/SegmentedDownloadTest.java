@@ -0,0 +1,212 @@
+package org.josfranmc.gutenberg.download.engine;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import org.josfranmc.gutenberg.download.GutenbergException;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * Pruebas de la descarga en segmentos contra un servidor http local que admite peticiones Range
+ */
+public class SegmentedDownloadTest {
+
+	private static final byte[] CONTENT = new byte[100003];
+
+	static {
+		new Random(11).nextBytes(CONTENT);
+	}
+
+	private HttpServer server;
+
+	private File saveDir;
+
+	private DownloadSession session;
+
+	private final AtomicInteger requests = new AtomicInteger();
+
+	private final AtomicInteger rangeRequests = new AtomicInteger();
+
+	private boolean acceptRanges = true;
+
+	private boolean brokenRange = false;
+
+	@Before
+	public void setUp() throws IOException {
+		server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+		server.setExecutor(Executors.newFixedThreadPool(8));
+		server.createContext("/book.epub", exchange -> sendBook(exchange, CONTENT));
+		server.createContext("/book.zip", exchange -> sendBook(exchange, zip()));
+		server.start();
+		saveDir = Files.createTempDirectory("segmented").toFile();
+		session = new DownloadSession();
+		session.setSegments(4);
+		session.setSegmentThreshold(1000);
+	}
+
+	@After
+	public void tearDown() {
+		session.close();
+		server.stop(0);
+		for (File f : saveDir.listFiles()) {
+			f.delete();
+		}
+		saveDir.delete();
+	}
+
+	private static byte[] zip() throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		try (ZipOutputStream zos = new ZipOutputStream(bytes)) {
+			zos.putNextEntry(new ZipEntry("book.txt"));
+			zos.write(CONTENT);
+			zos.closeEntry();
+		}
+		return bytes.toByteArray();
+	}
+
+	private void sendBook(HttpExchange exchange, byte[] content) throws IOException {
+		requests.incrementAndGet();
+		if (acceptRanges) {
+			exchange.getResponseHeaders().add("Accept-Ranges", "bytes");
+		}
+		exchange.getResponseHeaders().add("Last-Modified", "Mon, 01 Jan 2018 00:00:00 GMT");
+		String range = exchange.getRequestHeaders().getFirst("Range");
+		byte[] body = content;
+		if (range != null && acceptRanges) {
+			String[] limits = range.replace("bytes=", "").split("-");
+			int from = Integer.parseInt(limits[0]);
+			int to = Math.min(Integer.parseInt(limits[1]), content.length - 1);
+			rangeRequests.incrementAndGet();
+			if (brokenRange && from > 0) {
+				from = 0;
+			}
+			body = Arrays.copyOfRange(content, from, to + 1);
+			exchange.getResponseHeaders().add("Content-Range", "bytes " + from + "-" + to + "/" + content.length);
+			exchange.sendResponseHeaders(206, body.length);
+		} else {
+			exchange.sendResponseHeaders(200, body.length);
+		}
+		try (OutputStream os = exchange.getResponseBody()) {
+			os.write(body);
+		}
+	}
+
+	private DownloadResult download() throws IOException {
+		URL url = new URL("http://localhost:" + server.getAddress().getPort() + "/book.epub");
+		return DownloadHttpUrlConnection.newInstance(url, saveDir.getPath(), session).download();
+	}
+
+	/**
+	 * Un fichero grande se descarga en tantos segmentos como se indique y se obtiene el contenido completo,
+	 * sin peticiones de más: la primera petición es el primer segmento
+	 */
+	@Test
+	public void segmentedDownloadTest() throws IOException {
+		DownloadResult result = download();
+		assertEquals("Número de segmentos incorrecto", 4, rangeRequests.get());
+		assertEquals("Número de peticiones incorrecto", 4, requests.get());
+		assertEquals("Longitud del recurso incorrecta", String.valueOf(CONTENT.length), result.getContentLength());
+		assertArrayEquals("Contenido descargado incorrecto", CONTENT, Files.readAllBytes(new File(result.getSavedFilePath()).toPath()));
+		assertEquals("Solo debe quedar el fichero descargado", 1, saveDir.listFiles().length);
+	}
+
+	/**
+	 * Se notifican los bytes recibidos de todos los segmentos
+	 */
+	@Test
+	public void segmentedDownloadProgressTest() throws IOException {
+		AtomicLong contentLength = new AtomicLong();
+		AtomicLong received = new AtomicLong();
+		URL url = new URL("http://localhost:" + server.getAddress().getPort() + "/book.epub");
+		IDownloadEngine engine = DownloadHttpUrlConnection.newInstance(url, saveDir.getPath(), session);
+		engine.setTransferListener(new TransferListener() {
+			@Override
+			public void transferStarted(long length) {
+				contentLength.set(length);
+			}
+			@Override
+			public void bytesTransferred(long bytes) {
+				received.addAndGet(bytes);
+			}
+		});
+		engine.download();
+		assertEquals("Longitud notificada incorrecta", CONTENT.length, contentLength.get());
+		assertEquals("Bytes notificados incorrectos", CONTENT.length, received.get());
+	}
+
+	/**
+	 * Un fichero menor que el umbral se recibe entero con la primera petición
+	 */
+	@Test
+	public void givenSmallFileThenSingleStream() throws IOException {
+		session.setSegmentThreshold(CONTENT.length + 1);
+		DownloadResult result = download();
+		assertEquals("Número de peticiones incorrecto", 1, requests.get());
+		assertArrayEquals("Contenido descargado incorrecto", CONTENT, Files.readAllBytes(new File(result.getSavedFilePath()).toPath()));
+	}
+
+	/**
+	 * Si el servidor no admite rangos, el fichero se descarga en un solo flujo
+	 */
+	@Test
+	public void givenNoAcceptRangesThenSingleStream() throws IOException {
+		acceptRanges = false;
+		DownloadResult result = download();
+		assertEquals("No debe descargarse en segmentos", 0, rangeRequests.get());
+		assertEquals("Número de peticiones incorrecto", 1, requests.get());
+		assertArrayEquals("Contenido descargado incorrecto", CONTENT, Files.readAllBytes(new File(result.getSavedFilePath()).toPath()));
+	}
+
+	/**
+	 * Si un segmento no corresponde al rango pedido, la descarga falla y no queda ningún fichero
+	 */
+	@Test
+	public void givenWrongSegmentThenGutenbergException() throws IOException {
+		brokenRange = true;
+		try {
+			download();
+			throw new AssertionError("No se ha lanzado GutenbergException");
+		} catch (GutenbergException e) {
+			assertFalse("Se ha creado el fichero", new File(saveDir, "book.epub").exists());
+			assertFalse("No se ha eliminado el fichero .part", new File(saveDir, "book.epub.part").exists());
+		}
+	}
+
+	/**
+	 * Un fichero zip que se descomprime según se recibe no se descarga en segmentos
+	 */
+	@Test
+	public void givenExtractedZipThenNotSegmented() throws IOException {
+		File extractDir = new File(saveDir, "extract");
+		extractDir.mkdir();
+		session.setExtractPath(extractDir.getPath());
+		URL url = new URL("http://localhost:" + server.getAddress().getPort() + "/book.zip");
+		DownloadResult result = DownloadHttpUrlConnection.newInstance(url, saveDir.getPath(), session).download();
+		assertTrue("No se ha descomprimido el fichero", result.isExtracted());
+		assertEquals("No debe descargarse en segmentos", 0, rangeRequests.get());
+		assertArrayEquals("Contenido descomprimido incorrecto", CONTENT, Files.readAllBytes(new File(extractDir, "book.txt").toPath()));
+		new File(extractDir, "book.txt").delete();
+	}
+}
@@ -0,0 +1,132 @@
+package org.josfranmc.gutenberg.download.engine;
+
+import java.io.BufferedOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Compara la copia de un fichero epub de varios megas a disco con cada <code>TransferMode</code> y con la copia anterior
+ * (<i>LEGACY</i>: array de 2 KB y <code>flush</code> tras cada bloque, es decir, una llamada <code>write</code> al sistema cada 2 KB).<p>
+ * El cuerpo de la respuesta se simula con un stream en memoria que entrega como mucho 16 KB por lectura, como un socket.<br>
+ * Ejecución (tras <code>mvn test-compile</code> y <code>mvn dependency:build-classpath -Dmdep.outputFile=cp.txt</code>):
+ * <pre>
+ * java -cp target/test-classes:target/classes:$(cat cp.txt) org.josfranmc.gutenberg.download.engine.TransferModeBenchmark
+ * </pre>
+ * Para comparar el número de llamadas al sistema de cada modo se puede ejecutar con <code>strace -f -c -e trace=write,pwrite64</code>.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class TransferModeBenchmark {
+
+	private static final int FILE_SIZE = 8 * 1024 * 1024;
+
+	private static final int SOCKET_READ_SIZE = 16 * 1024;
+
+	@Param({"LEGACY", "STREAM", "CHANNEL", "DIRECT_BUFFER"})
+	public String mode;
+
+	@Param({"8192", "65536"})
+	public int bufferSize;
+
+	private byte[] content;
+
+	private Path target;
+
+	@Setup(Level.Trial)
+	public void setUp() throws IOException {
+		content = new byte[FILE_SIZE];
+		new Random(42).nextBytes(content);
+		target = Files.createTempFile("transfer", ".epub");
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() throws IOException {
+		Files.deleteIfExists(target);
+	}
+
+	@Benchmark
+	public long copy() throws IOException {
+		InputStream body = new SocketLikeInputStream(content);
+		if (mode.equals("LEGACY")) {
+			return legacyCopy(body);
+		}
+		return ResourceTransfer.copy(body, target, TransferMode.valueOf(mode), bufferSize);
+	}
+
+	/**
+	 * Copia tal y como se hacía antes de los modos de transferencia
+	 */
+	private long legacyCopy(InputStream inputStream) throws IOException {
+		long copied = 0;
+		try (BufferedOutputStream outputFileStream = new BufferedOutputStream(new FileOutputStream(target.toFile()))) {
+			final byte[] buffer = new byte[2048];
+			int read = 0;
+			while ((read = inputStream.read(buffer)) >= 0) {
+				outputFileStream.write(buffer, 0, read);
+				outputFileStream.flush();
+				copied += read;
+			}
+		}
+		return copied;
+	}
+
+	/**
+	 * Stream en memoria que, como un socket, no entrega más de <code>SOCKET_READ_SIZE</code> bytes por lectura
+	 */
+	private static class SocketLikeInputStream extends InputStream {
+
+		private final byte[] content;
+
+		private int position = 0;
+
+		SocketLikeInputStream(byte[] content) {
+			this.content = content;
+		}
+
+		@Override
+		public int read() {
+			return (position < content.length) ? (content[position++] & 0xff) : -1;
+		}
+
+		@Override
+		public int read(byte[] b, int off, int len) {
+			if (position >= content.length) {
+				return -1;
+			}
+			int n = Math.min(Math.min(len, SOCKET_READ_SIZE), content.length - position);
+			System.arraycopy(content, position, b, off, n);
+			position += n;
+			return n;
+		}
+	}
+
+	public static void main(String[] args) throws RunnerException {
+		new Runner(new OptionsBuilder().include(TransferModeBenchmark.class.getSimpleName()).build()).run();
+	}
+}
@@ -0,0 +1,156 @@
+package org.josfranmc.gutenberg.download.engine;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Map;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * Pruebas de la revalidación de ficheros ya descargados, con los dos motores de descarga, contra un servidor http local que
+ * responde 304 Not Modified a las peticiones condicionales.
+ */
+public class ValidatorStoreTest {
+
+	private static final String ETAG = "\"abc123\"";
+
+	private static final String LAST_MODIFIED = "Mon, 01 Jan 2018 00:00:00 GMT";
+
+	private static final byte[] CONTENT = "Contenido de prueba".getBytes();
+
+	private HttpServer server;
+
+	private File saveDir;
+
+	private String ifNoneMatch;
+
+	private String ifModifiedSince;
+
+	@Before
+	public void setUp() throws IOException {
+		server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+		server.createContext("/book.zip", this::sendBook);
+		server.start();
+		saveDir = Files.createTempDirectory("validators").toFile();
+	}
+
+	@After
+	public void tearDown() {
+		server.stop(0);
+		for (File f : saveDir.listFiles()) {
+			f.delete();
+		}
+		saveDir.delete();
+	}
+
+	private void sendBook(HttpExchange exchange) throws IOException {
+		ifNoneMatch = exchange.getRequestHeaders().getFirst("If-None-Match");
+		ifModifiedSince = exchange.getRequestHeaders().getFirst("If-Modified-Since");
+		exchange.getResponseHeaders().add("ETag", ETAG);
+		exchange.getResponseHeaders().add("Last-Modified", LAST_MODIFIED);
+		if (ETAG.equals(ifNoneMatch)) {
+			exchange.sendResponseHeaders(304, -1);
+			exchange.close();
+			return;
+		}
+		exchange.sendResponseHeaders(200, CONTENT.length);
+		try (OutputStream os = exchange.getResponseBody()) {
+			os.write(CONTENT);
+		}
+	}
+
+	private IDownloadEngine engine(DownloadEngineType type, DownloadSession session) throws IOException {
+		URL url = new URL("http://localhost:" + server.getAddress().getPort() + "/book.zip");
+		return DownloadEngineFactory.create(url, saveDir.getPath(), type, session);
+	}
+
+	private Path bookPath() {
+		return new File(saveDir, "book.zip").toPath();
+	}
+
+	/**
+	 * Un fichero ya descargado se revalida con su ETag y, si no ha cambiado, no se escribe en disco
+	 */
+	@Test
+	public void givenNotModifiedThenNothingWritten() throws IOException {
+		for (DownloadEngineType type : DownloadEngineType.values()) {
+			DownloadSession session = new DownloadSession();
+			session.setRevalidate(true);
+			assertFalse("La primera descarga no debe ser condicional", engine(type, session).download().isNotModified());
+			assertNull("La primera descarga no debe ser condicional", ifNoneMatch);
+
+			byte[] local = "copia local".getBytes();
+			Files.write(bookPath(), local);
+			DownloadResult result = engine(type, session).download();
+			assertEquals("No se ha enviado el ETag con " + type, ETAG, ifNoneMatch);
+			assertEquals("No se ha enviado el Last-Modified con " + type, LAST_MODIFIED, ifModifiedSince);
+			assertTrue("El resultado debe indicar que no hay cambios con " + type, result.isNotModified());
+			assertEquals("Ruta del fichero incorrecta", bookPath().toString(), result.getSavedFilePath());
+			assertArrayEquals("Se ha escrito en disco con " + type, local, Files.readAllBytes(bookPath()));
+			session.close();
+			Files.delete(bookPath());
+		}
+	}
+
+	/**
+	 * Los validadores se guardan en disco al cerrar la sesión y se usan en sesiones posteriores
+	 */
+	@Test
+	public void validatorsSavedWhenSessionClosed() throws IOException {
+		DownloadSession session = new DownloadSession();
+		session.setRevalidate(true);
+		engine(DownloadEngineType.HTTP_CONNECTION, session).download();
+		session.close();
+		assertTrue("No se han guardado los validadores", new File(saveDir, ValidatorStore.STORE_FILE_NAME).exists());
+
+		Map<String, String> headers = new ValidatorStore(saveDir.getPath(), 1).conditionalHeaders(bookPath());
+		assertEquals("ETag guardado incorrecto", ETAG, headers.get("If-None-Match"));
+		assertEquals("Last-Modified guardado incorrecto", LAST_MODIFIED, headers.get("If-Modified-Since"));
+	}
+
+	/**
+	 * Un fichero descargado sin validadores se revalida con su fecha de modificación
+	 */
+	@Test
+	public void givenFileWithoutValidatorsThenModificationTimeUsed() throws IOException {
+		Files.write(bookPath(), "copia local".getBytes());
+		DownloadSession session = new DownloadSession();
+		session.setRevalidate(true);
+		engine(DownloadEngineType.HTTP_CONNECTION, session).download();
+		assertNull("No debe enviarse ETag", ifNoneMatch);
+		assertNotNull("No se ha enviado If-Modified-Since", ifModifiedSince);
+		assertTrue("Formato de fecha incorrecto: " + ifModifiedSince, ifModifiedSince.endsWith(" GMT"));
+		assertArrayEquals("No se ha descargado el fichero", CONTENT, Files.readAllBytes(bookPath()));
+		session.close();
+	}
+
+	/**
+	 * Sin revalidación no se envían peticiones condicionales ni se guardan validadores
+	 */
+	@Test
+	public void givenRevalidateOffThenNoConditionalRequest() throws IOException {
+		Files.write(bookPath(), "copia local".getBytes());
+		DownloadSession session = new DownloadSession();
+		engine(DownloadEngineType.HTTP_CONNECTION, session).download();
+		session.close();
+		assertNull("Se ha enviado una petición condicional", ifModifiedSince);
+		assertFalse("Se han guardado validadores", new File(saveDir, ValidatorStore.STORE_FILE_NAME).exists());
+	}
+}
@@ -4,8 +4,25 @@ import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 
+import java.io.ByteArrayInputStream;
 import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
 import java.net.URISyntaxException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipException;
+import java.util.zip.ZipOutputStream;
 
 import org.junit.Test;
 
@@ -96,4 +113,111 @@ public class FileManagerTest {
 			fail("URISyntaxException");
 		}
 	}
+	
+	/**
+	 * Las entradas de un zip se extraen según se leen del stream, y se devuelven sus rutas
+	 */
+	@Test
+	public void unzipStreamTest() throws URISyntaxException, IOException {
+		File zipFile = new File(FileManagerTest.class.getResource("/zips/10293-8.zip").toURI());
+		File unzipFolder = Files.createTempDirectory("unzip").toFile();
+		try (InputStream is = new FileInputStream(zipFile)) {
+			List<String> files = FileManager.unzip(is, unzipFolder.toString());
+			assertEquals("Número de ficheros extraídos incorrecto", 1, files.size());
+			File unzipFile = new File(unzipFolder, "10293-8.txt");
+			assertTrue("No se ha extraído el fichero", unzipFile.exists());
+			assertEquals("Ruta del fichero extraído incorrecta", unzipFile.getPath(), files.get(0));
+			unzipFile.delete();
+		} finally {
+			unzipFolder.delete();
+		}
+	}
+	
+	/**
+	 * Un stream que no es un fichero zip se considera dañado
+	 */
+	@Test(expected=ZipException.class)
+	public void unzipStreamNotZipTest() throws IOException {
+		File unzipFolder = Files.createTempDirectory("unzip").toFile();
+		try {
+			FileManager.unzip(new ByteArrayInputStream("<html><body>Error</body></html>".getBytes()), unzipFolder.toString());
+		} finally {
+			unzipFolder.delete();
+		}
+	}
+	
+	/**
+	 * Los ficheros se descomprimen en paralelo; un fichero dañado no impide descomprimir los demás y se cuenta como fallido
+	 */
+	@Test
+	public void unzipFilesInParallelTest() throws IOException {
+		File zipFolder = Files.createTempDirectory("zips").toFile();
+		File unzipFolder = Files.createTempDirectory("unzip").toFile();
+		ExecutorService executor = Executors.newFixedThreadPool(4);
+		try {
+			for (int i = 1; i <= 20; i++) {
+				try (ZipOutputStream zos = new ZipOutputStream(new FileOutputStream(new File(zipFolder, i + ".zip")))) {
+					zos.putNextEntry(new ZipEntry("libro/" + i + ".txt"));
+					zos.write(("Libro " + i).getBytes());
+					zos.closeEntry();
+				}
+			}
+			Files.write(new File(zipFolder, "roto.zip").toPath(), "no es un zip".getBytes());
+			try (ZipOutputStream zos = new ZipOutputStream(new FileOutputStream(new File(zipFolder, "fuera.zip")))) {
+				zos.putNextEntry(new ZipEntry("libro/.."));
+				zos.closeEntry();
+			}
+			
+			UnzipReport report = FileManager.unzipFiles(zipFolder.toString(), unzipFolder.toString(), executor);
+			assertEquals("Número de ficheros descomprimidos incorrecto", 20, report.getArchives());
+			assertEquals("Número de ficheros fallidos incorrecto", 2, report.getFailedArchives());
+			assertEquals("Número de ficheros extraídos incorrecto", 20, report.getFiles());
+			long bytes = 0;
+			for (int i = 1; i <= 20; i++) {
+				File book = new File(unzipFolder, i + ".txt");
+				assertTrue("No se ha extraído el libro " + i, book.exists());
+				bytes += book.length();
+			}
+			assertEquals("Número de bytes extraídos incorrecto", bytes, report.getBytes());
+			assertTrue("No se ha medido el tiempo", report.getElapsedTime(TimeUnit.NANOSECONDS) > 0);
+		} finally {
+			executor.shutdown();
+			deleteFolder(zipFolder);
+			deleteFolder(unzipFolder);
+		}
+	}
+	
+	/**
+	 * Solo se extraen los ficheros seleccionados por el filtro; los demás se cuentan como descartados
+	 */
+	@Test
+	public void unzipFilesWithFilterTest() throws IOException {
+		File zipFolder = Files.createTempDirectory("zips").toFile();
+		File unzipFolder = Files.createTempDirectory("unzip").toFile();
+		try {
+			try (ZipOutputStream zos = new ZipOutputStream(new FileOutputStream(new File(zipFolder, "10293.zip")))) {
+				for (String name : new String[] {"10293/10293-8.txt", "10293/10293-0.txt", "10293/images/portada.jpg"}) {
+					zos.putNextEntry(new ZipEntry(name));
+					zos.write(name.getBytes());
+					zos.closeEntry();
+				}
+			}
+			ZipEntryFilter filter = ZipEntryFilter.of(Arrays.asList("*-0.txt", "*-8.txt"));
+			UnzipReport report = FileManager.unzipFiles(zipFolder.toString(), unzipFolder.toString(), filter);
+			assertEquals("Número de ficheros descomprimidos incorrecto", 1, report.getArchives());
+			assertEquals("Número de ficheros extraídos incorrecto", 1, report.getFiles());
+			assertEquals("Número de ficheros descartados incorrecto", 2, report.getSkippedEntries());
+			assertTrue("No se ha extraído el texto preferido", new File(unzipFolder, "10293-0.txt").exists());
+			assertEquals("Se han extraído ficheros no seleccionados", 1, unzipFolder.list().length);
+		} finally {
+			deleteFolder(zipFolder);
+			deleteFolder(unzipFolder);
+		}
+	}
+	
+	private static void deleteFolder(File folder) throws IOException {
+		try (Stream<Path> files = Files.walk(folder.toPath())) {
+			files.sorted(Comparator.reverseOrder()).map(Path::toFile).forEach(File::delete);
+		}
+	}
 }
@@ -0,0 +1,104 @@
+package org.josfranmc.gutenberg.util;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Compara la búsqueda de enlaces de <code>FileScraping</code> (<i>SCANNER</i>: bytes recorridos por <code>HrefScanner</code>) con la
+ * búsqueda anterior (<i>LEGACY</i>: líneas decodificadas a <code>String</code> y la expresión regular <code>.*href="([^"]*)".*</code>).<p>
+ * Se usa una página de cosecha de 1000 libros, con un enlace por línea (<i>harvest</i>) o con todo el html en una línea (<i>minified</i>).
+ * En la página minimizada la búsqueda anterior sólo encuentra el último enlace, lo que se puede ver en el número de enlaces devuelto.
+ * Para medir también la memoria reservada se puede añadir <code>-prof gc</code> a la ejecución.<br>
+ * Ejecución (tras <code>mvn test-compile</code> y <code>mvn dependency:build-classpath -Dmdep.outputFile=cp.txt</code>):
+ * <pre>
+ * java -cp target/test-classes:target/classes:$(cat cp.txt) org.josfranmc.gutenberg.util.FileScrapingBenchmark
+ * </pre>
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class FileScrapingBenchmark {
+
+	private static final int BOOKS = 1000;
+
+	private static final Pattern LINK_PATTERN = Pattern.compile(".*href=\"([^\"]*)\".*");
+
+	@Param({"LEGACY", "SCANNER"})
+	public String mode;
+
+	@Param({"harvest", "minified"})
+	public String page;
+
+	private byte[] content;
+
+	@Setup(Level.Trial)
+	public void setUp() {
+		String separator = page.equals("minified") ? "" : "\n";
+		StringBuilder html = new StringBuilder("<html><head><title>Harvest</title></head><body>").append(separator);
+		for (int i = 0; i < BOOKS; i++) {
+			int book = 10000 + i;
+			html.append("<p>Libro número ").append(book).append(" del catálogo</p>").append(separator);
+			html.append("<p><a href=\"http://aleph.gutenberg.org/1/0/").append(book).append('/').append(book).append("-8.zip\">")
+				.append(book).append("-8.zip</a></p>").append(separator);
+		}
+		html.append("<p><a href=\"harvest?offset=1000&amp;filetypes[]=txt\">Next Page</a></p></body></html>").append(separator);
+		content = html.toString().getBytes(StandardCharsets.ISO_8859_1);
+	}
+
+	@Benchmark
+	public int getLinks(Blackhole blackhole) throws IOException {
+		InputStream body = new ByteArrayInputStream(content);
+		if (mode.equals("LEGACY")) {
+			return legacyGetLinks(body, blackhole);
+		}
+		return FileScraping.getLinks(body, blackhole::consume);
+	}
+
+	/**
+	 * Búsqueda tal y como se hacía antes de <code>HrefScanner</code>
+	 */
+	private int legacyGetLinks(InputStream inputStream, Blackhole blackhole) throws IOException {
+		int found = 0;
+		BufferedReader reader = new BufferedReader(new InputStreamReader(inputStream, StandardCharsets.ISO_8859_1));
+		Matcher matcher = LINK_PATTERN.matcher("");
+		String line;
+		while ((line = reader.readLine()) != null) {
+			if (matcher.reset(line).matches()) {
+				blackhole.consume(matcher.group(1));
+				found++;
+			}
+		}
+		return found;
+	}
+
+	public static void main(String[] args) throws RunnerException {
+		new Runner(new OptionsBuilder().include(FileScrapingBenchmark.class.getSimpleName()).build()).run();
+	}
+}
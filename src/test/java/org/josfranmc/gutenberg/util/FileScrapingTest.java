@@ -3,7 +3,13 @@ package org.josfranmc.gutenberg.util;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertTrue;
 
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.SequenceInputStream;
 import java.net.URL;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 
 import org.junit.Test;
@@ -28,4 +34,63 @@ public class FileScrapingTest {
 		assertTrue(!links.isEmpty());
 		assertEquals("Link incorrecto", "http://aleph.gutenberg.org/1/0/2/9/10293/10293-8.zip", links.get(0));
 	}
+	
+	/**
+	 * Los enlaces se pasan según se leen, antes de que termine el stream
+	 */
+	@Test
+	public void getLinksFromStreamTest() {
+		String page = "<p><a href=\"http://aleph.gutenberg.org/1/0/2/9/10293/10293-8.zip\">libro</a></p>\n"
+				+ "<p><a href=\"harvest?offset=3&amp;filetypes[]=txt\">Next Page</a></p>\n";
+		InputStream brokenStream = new InputStream() {
+			@Override
+			public int read() throws IOException {
+				throw new IOException("Conexión cerrada");
+			}
+		};
+		List<String> links = new ArrayList<>();
+		try {
+			FileScraping.getLinks(new SequenceInputStream(new ByteArrayInputStream(page.getBytes()), brokenStream), links::add);
+		} catch (IOException e) {
+			// esperada tras los enlaces ya recibidos
+		}
+		assertEquals("Número de enlaces incorrecto", 2, links.size());
+		assertEquals("Link incorrecto", "http://aleph.gutenberg.org/1/0/2/9/10293/10293-8.zip", links.get(0));
+		assertEquals("Link incorrecto", "harvest?offset=3&amp;filetypes[]=txt", links.get(1));
+	}
+	
+	/**
+	 * En una página minimizada se obtienen todos los enlaces de la línea, aunque lleguen partidos entre lecturas
+	 */
+	@Test
+	public void getLinksFromMinifiedPageTest() throws IOException {
+		String page = "<p><a href=\"1.zip\">uno</a></p><p><a href=\"2.zip\">dos</a></p><p><a href=\"harvest?offset=3\">Next Page</a></p>";
+		final ByteArrayInputStream content = new ByteArrayInputStream(page.getBytes());
+		InputStream slowStream = new InputStream() {
+			@Override
+			public int read() {
+				return content.read();
+			}
+			
+			@Override
+			public int read(byte[] b, int off, int len) {
+				return content.read(b, off, Math.min(len, 3));
+			}
+		};
+		List<String> links = new ArrayList<>();
+		int found = FileScraping.getLinks(slowStream, links::add);
+		assertEquals("Número de enlaces incorrecto", 3, found);
+		assertEquals("Enlaces incorrectos", Arrays.asList("1.zip", "2.zip", "harvest?offset=3"), links);
+	}
+	
+	/**
+	 * Un valor sin comillas de cierre en su línea no es un enlace, pero no impide encontrar los siguientes
+	 */
+	@Test
+	public void getLinksWhenValueNotClosedTest() throws IOException {
+		String page = "<a href=\"roto.zip>roto</a>\n<a href=\"\"></a><a hhref=\"bueno.zip\">bueno</a>\n";
+		List<String> links = new ArrayList<>();
+		FileScraping.getLinks(new ByteArrayInputStream(page.getBytes()), links::add);
+		assertEquals("Enlaces incorrectos", Arrays.asList("", "bueno.zip"), links);
+	}
 }
@@ -0,0 +1,69 @@
+package org.josfranmc.gutenberg.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.zip.ZipEntry;
+
+import org.josfranmc.gutenberg.download.GutenbergException;
+import org.junit.Test;
+
+public class ZipEntryFilterTest {
+
+	private static List<ZipEntry> entries(String... names) {
+		ZipEntry[] entries = new ZipEntry[names.length];
+		for (int i = 0; i < names.length; i++) {
+			entries[i] = new ZipEntry(names[i]);
+		}
+		return Arrays.asList(entries);
+	}
+
+	/**
+	 * Se seleccionan las entradas del primer patrón que coincide con alguna entrada
+	 */
+	@Test
+	public void selectPreferredPatternTest() {
+		ZipEntryFilter filter = ZipEntryFilter.of(Arrays.asList("*-0.txt", "*-8.txt", "*.txt"));
+		List<ZipEntry> selected = filter.select(entries("10293/10293-8.txt", "10293/10293-0.txt", "10293/images/portada.jpg"));
+		assertEquals("Número de entradas seleccionadas incorrecto", 1, selected.size());
+		assertEquals("Entrada seleccionada incorrecta", "10293/10293-0.txt", selected.get(0).getName());
+
+		selected = filter.select(entries("10293/10293-8.txt", "10293/images/portada.jpg"));
+		assertEquals("Entrada seleccionada incorrecta", "10293/10293-8.txt", selected.get(0).getName());
+
+		assertTrue("No se debe seleccionar ninguna entrada", filter.select(entries("portada.jpg")).isEmpty());
+	}
+
+	/**
+	 * Leyendo entrada a entrada, se acepta cualquier entrada que coincida con algún patrón
+	 */
+	@Test
+	public void acceptsAnyPatternTest() {
+		ZipEntryFilter filter = ZipEntryFilter.of(Arrays.asList("*-0.txt", "*.{htm,html}"));
+		assertTrue(filter.accepts("10293/10293-0.txt"));
+		assertTrue(filter.accepts("10293/10293-h/10293-h.htm"));
+		assertFalse(filter.accepts("10293/10293-8.txt"));
+		assertFalse("Una carpeta no debe aceptarse", filter.accepts("10293/"));
+	}
+
+	/**
+	 * Sin patrones se seleccionan todas las entradas
+	 */
+	@Test
+	public void noPatternsTest() {
+		assertSame(ZipEntryFilter.ALL, ZipEntryFilter.of(null));
+		assertSame(ZipEntryFilter.ALL, ZipEntryFilter.of(Collections.emptyList()));
+		assertTrue(ZipEntryFilter.ALL.accepts("portada.jpg"));
+		assertEquals(2, ZipEntryFilter.ALL.select(entries("a.txt", "b.jpg")).size());
+	}
+
+	@Test(expected=GutenbergException.class)
+	public void wrongPatternTest() {
+		ZipEntryFilter.of(Arrays.asList("*.{txt"));
+	}
+}